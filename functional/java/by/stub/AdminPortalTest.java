@@ -163,6 +163,26 @@ public class AdminPortalTest {
       assertThat(statusMessage).isEqualTo(expectedMessage);
    }
 
+   @Test
+   public void should_ExportMetricsInPrometheusFormat_WhenSuccessfulGetMade_ToMetrics() throws Exception {
+
+      final String stubsUrl = String.format("http://localhost:%s/invoice/not/stubbed", STUBS_PORT);
+      HttpUtils.constructHttpRequest(HttpMethods.GET, stubsUrl).execute();
+
+      final String requestUrl = String.format("%s/metrics", ADMIN_URL);
+      final HttpRequest httpGetRequest = HttpUtils.constructHttpRequest(HttpMethods.GET, requestUrl);
+
+      final HttpResponse httpResponse = httpGetRequest.execute();
+      final String responseContent = httpResponse.parseAsString().trim();
+
+      assertThat(httpResponse.getStatusCode()).isEqualTo(HttpStatus.OK_200);
+      assertThat(httpResponse.getContentType()).startsWith("text/plain; version=0.0.4");
+      assertThat(responseContent).contains("# TYPE stubby_stub_hits_total counter");
+      assertThat(responseContent).matches("(?s).*\nstubby_unmatched_requests_total [1-9].*");
+      assertThat(responseContent).matches("(?s).*\nstubby_jetty_threads [1-9].*");
+      assertThat(responseContent).contains("stubby_reload_seconds_bucket{le=\"+Inf\"}");
+   }
+
    @Test
    public void should_ReturnExpectedError_WhenSuccessfulPutMade_ToAdminPortalRoot() throws Exception {
 
@@ -266,6 +266,54 @@ public class StubsPortalTest {
       assertThat(contentTypeHeader).contains(HEADER_APPLICATION_JSON);
    }
 
+   @Test
+   public void should_ReturnPartialContent_WhenRangeRequestMade() throws Exception {
+
+      final URL jsonContentUrl = StubsPortalTest.class.getResource("/json/response.json");
+      final String expectedContent = StringUtils.inputStreamToString(jsonContentUrl.openStream()).trim();
+
+      final String requestUrl = String.format("%s%s", STUBS_URL, "/invoice?status=active&type=full");
+      final HttpRequest request = HttpUtils.constructHttpRequest(HttpMethods.GET, requestUrl);
+      request.getHeaders().setRange("bytes=0-9");
+      final HttpResponse response = request.execute();
+
+      assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT_206);
+      assertThat(response.getHeaders().getContentRange()).isEqualTo(String.format("bytes 0-9/%s", StringUtils.getBytesUtf8(expectedContent).length));
+      assertThat(response.getContentEncoding()).isNull();
+      assertThat(response.parseAsString()).isEqualTo(expectedContent.substring(0, 10));
+   }
+
+   @Test
+   public void should_ReturnRangeNotSatisfiable_WhenRangeStartsAfterFileEnd() throws Exception {
+
+      final String requestUrl = String.format("%s%s", STUBS_URL, "/pdf/hello-world");
+      final HttpRequest request = HttpUtils.constructHttpRequest(HttpMethods.GET, requestUrl);
+      request.getHeaders().setRange("bytes=100000000-");
+      final HttpResponse response = request.execute();
+
+      assertThat(response.getStatusCode()).isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE_416);
+      assertThat(response.getHeaders().getContentRange()).startsWith("bytes */");
+   }
+
+   @Test
+   public void should_ReturnNotModified_WhenRevalidatingWithEntityTag() throws Exception {
+
+      final String requestUrl = String.format("%s%s", STUBS_URL, "/pdf/hello-world");
+      final HttpResponse firstResponse = HttpUtils.constructHttpRequest(HttpMethods.GET, requestUrl).execute();
+      final String entityTag = firstResponse.getHeaders().getETag();
+
+      assertThat(firstResponse.getStatusCode()).isEqualTo(HttpStatus.OK_200);
+      assertThat(entityTag).isNotNull();
+      assertThat(firstResponse.getHeaders().getLastModified()).isNotNull();
+
+      final HttpRequest revalidatingRequest = HttpUtils.constructHttpRequest(HttpMethods.GET, requestUrl);
+      revalidatingRequest.getHeaders().setIfNoneMatch(entityTag);
+      final HttpResponse revalidatedResponse = revalidatingRequest.execute();
+
+      assertThat(revalidatedResponse.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED_304);
+      assertThat(revalidatedResponse.getHeaders().getETag()).isEqualTo(entityTag);
+   }
+
    @Test
    public void should_FailToReturnAllProducts_WhenGetRequestMadeWithoutRequiredQueryString() throws Exception {
 
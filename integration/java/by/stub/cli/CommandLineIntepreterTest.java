@@ -31,17 +31,46 @@ public class CommandLineIntepreterTest {
       System.setOut(oldPrintStream);
 
       final String expectedConsoleOutput = "usage:" + BR +
-         "       java -jar stubby4j-x.x.xx.jar [-a <arg>] [-d <arg>] [-h] [-k <arg>]" + BR +
-         "       [-l <arg>] [-m] [-p <arg>] [-s <arg>] [-t <arg>] [-v] [-w]" + BR +
+         "       java -jar stubby4j-x.x.xx.jar [-a <arg>] [-c <arg>] [-d <arg>] [-f" + BR +
+         "       <arg>] [-h] [-j <arg>] [-k <arg>] [-l <arg>] [-m] [-p <arg>] [-r]" + BR +
+         "       [-s <arg>] [-t <arg>] [-v] [-w]" + BR +
          " -a,--admin <arg>      Port for admin portal. Defaults to 8889." + BR +
+         " -c,--cache <arg>      Caches which stub matched recently seen requests," + BR +
+         "                       so repeated requests are not compared to the stubs" + BR +
+         "                       again. The flag can accept an optional arg value" + BR +
+         "                       which is the maximum number of cached requests. If" + BR +
+         "                       the number is not provided, up to 1000 requests are" + BR +
+         "                       cached. The cache is cleared whenever the stub" + BR +
+         "                       configuration changes" + BR +
          " -d,--data <arg>       Data file to pre-load endpoints. Valid YAML 1.1" + BR +
          "                       expected." + BR +
+         " -f,--mapfiles <arg>   Serves large response files from memory mapped" + BR +
+         "                       outside of heap, instead of loading them into heap." + BR +
+         "                       The flag can accept an optional arg value which is" + BR +
+         "                       the minimal size in bytes of mapped files. If the" + BR +
+         "                       size is not provided, files of 1048576 bytes or" + BR +
+         "                       more are mapped. Text files with template tokens or" + BR +
+         "                       with line separators that differ from the system" + BR +
+         "                       ones are always loaded into heap" + BR +
          " -h,--help             This help text." + BR +
+         " -j,--journal <arg>    Journals the last 32768 requests made to the stubs" + BR +
+         "                       portal outside of heap, which are queried as JSON" + BR +
+         "                       at /journal on the admin portal. The flag can" + BR +
+         "                       accept an optional arg value which is the path of a" + BR +
+         "                       file to keep the journal in, so that it survives" + BR +
+         "                       restarts. If the path is not provided, the journal" + BR +
+         "                       is kept in memory only" + BR +
          " -k,--keystore <arg>   Keystore file for custom TLS. By default TLS is" + BR +
          "                       enabled using internal keystore." + BR +
          " -l,--location <arg>   Hostname at which to bind stubby." + BR +
          " -m,--mute             Prevent stubby from printing to the console." + BR +
          " -p,--password <arg>   Password for the provided keystore file." + BR +
+         " -r,--automaton        Matches stubbed regex URLs using one automaton" + BR +
+         "                       combined from all of them, instead of trying every" + BR +
+         "                       regex in turn. Worth enabling when many stubs have" + BR +
+         "                       regex URLs. Regexes which the automaton cannot" + BR +
+         "                       express, ie.: with backreferences or lookarounds," + BR +
+         "                       are still tried in turn." + BR +
          " -s,--stubs <arg>      Port for stub portal. Defaults to 8882." + BR +
          " -t,--tls <arg>        Port for TLS connection. Defaults to 7443." + BR +
          " -v,--version          Prints out to console stubby version." + BR +
@@ -0,0 +1,498 @@
+package by.stub.database;
+
+import by.stub.builder.stubs.StubRequestBuilder;
+import by.stub.builder.yaml.YamlBuilder;
+import by.stub.utils.FileUtils;
+import by.stub.utils.RegexUtils;
+import by.stub.yaml.YamlParser;
+import by.stub.yaml.stubs.StubHttpLifecycle;
+import by.stub.yaml.stubs.StubRequest;
+import by.stub.yaml.stubs.StubResponse;
+import by.stub.yaml.stubs.StubResponseTypes;
+import org.json.JSONException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONCompare;
+import org.skyscreamer.jsonassert.JSONCompareMode;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+import static by.stub.utils.FileUtils.BR;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Micro benchmarks of the request matching hot path. The numbers are printed to the console,
+ * assertions only verify the relative difference, so that the tests are not sensitive to the build machine
+ */
+public class StubbedDataManagerLoadTest {
+
+   private static final YamlBuilder YAML_BUILDER = new YamlBuilder();
+   private static final StubRequestBuilder REQUEST_BUILDER = new StubRequestBuilder();
+
+   private static final int NUMBER_OF_HTTPCYCLES = 2000;
+   private static final int WARMUP_ITERATIONS = 20;
+   private static final int MEASURED_ITERATIONS = 50;
+   private static final int CONCURRENT_THREADS = Math.max(8, Runtime.getRuntime().availableProcessors());
+   private static final int CONCURRENT_OPERATIONS = 10;
+
+   private static List<StubHttpLifecycle> loadedHttpCycles;
+   private static List<String> stubbedUrls;
+
+   @BeforeClass
+   public static void beforeClass() throws Exception {
+      final StringBuilder builder = new StringBuilder(128);
+
+      for (int idx = 1; idx <= NUMBER_OF_HTTPCYCLES; idx++) {
+         final String yaml = YAML_BUILDER.newStubbedRequest()
+            .withMethodGet()
+            .withUrl(String.format("^/resource/%s/([a-z]+)/item/([0-9]+)$", idx))
+            .withQuery("type", String.format("([a-z]{%s,})", (idx % 5) + 1))
+            .newStubbedResponse()
+            .withStatus("200")
+            .withLiteralBody("Hello, this is a response body").build();
+
+         builder.append(yaml).append(BR + BR);
+      }
+
+      loadedHttpCycles = new YamlParser().parse(".", FileUtils.constructReader(builder.toString()));
+      assertThat(loadedHttpCycles.size()).isEqualTo(NUMBER_OF_HTTPCYCLES);
+
+      stubbedUrls = new ArrayList<String>(NUMBER_OF_HTTPCYCLES);
+      for (final StubHttpLifecycle stubHttpLifecycle : loadedHttpCycles) {
+         final String url = stubHttpLifecycle.getRequest().getUrl();
+         stubbedUrls.add(url.substring(0, url.indexOf('?')));
+      }
+   }
+
+   @Test
+   public void loadTest_regexMatchingCost_WhenPatternsCompiledOnceVersusOnEveryComparison() throws Exception {
+
+      final String missedUrl = "/resource/0/abc/item/123";
+
+      final long compilePerComparisonNanos = measure(new Runnable() {
+         @Override
+         public void run() {
+            compilePerComparison(missedUrl);
+         }
+      });
+
+      final long compileOnceNanos = measure(new Runnable() {
+         @Override
+         public void run() {
+            compileOnce(missedUrl);
+         }
+      });
+
+      report("regex matching of a missed request", "compiled per comparison", compilePerComparisonNanos, "compiled once", compileOnceNanos);
+
+      assertThat(compileOnceNanos).isLessThan(compilePerComparisonNanos);
+   }
+
+   @Test
+   public void loadTest_shouldReportPerRequestCost_WhenRequestDoesNotMatchAnyStub() throws Exception {
+
+      final StubbedDataManager stubbedDataManager = new StubbedDataManager(new File("."), loadedHttpCycles);
+      final StubRequest assertingRequest = REQUEST_BUILDER.withUrl("/resource/0/abc/item/123").withMethodGet().withQuery("type", "abcdef").build();
+
+      final long perRequestNanos = measure(new Runnable() {
+         @Override
+         public void run() {
+            final StubResponse stubResponse = stubbedDataManager.findStubResponseFor(assertingRequest);
+            assertThat(stubResponse.getStubResponseType()).isEqualTo(StubResponseTypes.NOTFOUND);
+         }
+      });
+
+      report(String.format("missed request over %s stubs", NUMBER_OF_HTTPCYCLES), "findStubResponseFor", perRequestNanos);
+   }
+
+   @Test
+   public void loadTest_stubLookupCost_WhenLinearScanVersusIndexedLookup() throws Exception {
+
+      final StubbedDataManager stubbedDataManager = new StubbedDataManager(new File("."), loadedHttpCycles);
+      final StubRequest assertingRequest = REQUEST_BUILDER.withUrl(String.format("/resource/%s/abc/item/123", NUMBER_OF_HTTPCYCLES)).withMethodGet().withQuery("type", "abcdef").build();
+      final StubHttpLifecycle assertingLifecycle = new StubHttpLifecycle();
+      assertingLifecycle.setRequest(assertingRequest);
+
+      final long linearScanNanos = measure(new Runnable() {
+         @Override
+         public void run() {
+            assertThat(loadedHttpCycles.indexOf(assertingLifecycle)).isEqualTo(NUMBER_OF_HTTPCYCLES - 1);
+         }
+      });
+
+      final long indexedLookupNanos = measure(new Runnable() {
+         @Override
+         public void run() {
+            final StubResponse stubResponse = stubbedDataManager.findStubResponseFor(assertingRequest);
+            assertThat(stubResponse.getStubResponseType()).isEqualTo(StubResponseTypes.OK_200);
+         }
+      });
+
+      report(String.format("request matching the last of %s stubs", NUMBER_OF_HTTPCYCLES), "linear scan", linearScanNanos, "indexed lookup", indexedLookupNanos);
+
+      assertThat(indexedLookupNanos).isLessThan(linearScanNanos);
+   }
+
+   @Test
+   public void loadTest_concurrentLookupThroughput_WhenReadsLockedOnMonitorVersusReadFromSnapshot() throws Exception {
+
+      final StubbedDataManager stubbedDataManager = new StubbedDataManager(new File("."), loadedHttpCycles);
+      // Goes through URL regex and query regex of the last stub, but does not match it
+      final StubRequest assertingRequest = REQUEST_BUILDER.withUrl(String.format("/resource/%s/abc/item/123", NUMBER_OF_HTTPCYCLES)).withMethodGet().withQuery("type", "123").build();
+      final Object monitor = new Object();
+
+      final long lockedNanos = measureConcurrently(new Runnable() {
+         @Override
+         public void run() {
+            // What every stubs request did before, when the lookup was synchronized on the StubbedDataManager
+            synchronized (monitor) {
+               stubbedDataManager.findStubResponseFor(assertingRequest);
+            }
+         }
+      });
+
+      final long snapshotNanos = measureConcurrently(new Runnable() {
+         @Override
+         public void run() {
+            stubbedDataManager.findStubResponseFor(assertingRequest);
+         }
+      });
+
+      report(String.format("concurrent lookups on %s threads, %s cores", CONCURRENT_THREADS, Runtime.getRuntime().availableProcessors()),
+         "locked on monitor", lockedNanos, "read from snapshot", snapshotNanos);
+   }
+
+   @Test
+   public void loadTest_concurrentLookups_ShouldNotBeBlockedOrBroken_WhenStubbedDataReplacedConcurrently() throws Exception {
+
+      final StubbedDataManager stubbedDataManager = new StubbedDataManager(new File("."), loadedHttpCycles);
+      final StubRequest assertingRequest = REQUEST_BUILDER.withUrl(String.format("/resource/%s/abc/item/123", NUMBER_OF_HTTPCYCLES)).withMethodGet().withQuery("type", "123").build();
+      final AtomicBoolean isRunning = new AtomicBoolean(true);
+
+      final Thread writer = new Thread(new Runnable() {
+         @Override
+         public void run() {
+            while (isRunning.get()) {
+               stubbedDataManager.resetStubHttpLifecycles(loadedHttpCycles);
+            }
+         }
+      });
+      writer.start();
+
+      try {
+         measureConcurrently(new Runnable() {
+            @Override
+            public void run() {
+               final StubResponse stubResponse = stubbedDataManager.findStubResponseFor(assertingRequest);
+               assertThat(stubResponse.getStubResponseType()).isEqualTo(StubResponseTypes.NOTFOUND);
+            }
+         });
+      } finally {
+         isRunning.set(false);
+         writer.join();
+      }
+   }
+
+   /**
+    * @return wall clock nanos per operation, while operations run on {@link #CONCURRENT_THREADS} threads
+    */
+   static long measureConcurrently(final Runnable runnable) throws Exception {
+      final ExecutorService executorService = Executors.newFixedThreadPool(CONCURRENT_THREADS);
+      try {
+         runConcurrently(executorService, runnable, WARMUP_ITERATIONS);
+
+         final long start = System.nanoTime();
+         runConcurrently(executorService, runnable, MEASURED_ITERATIONS);
+
+         return (System.nanoTime() - start) / (CONCURRENT_THREADS * MEASURED_ITERATIONS * CONCURRENT_OPERATIONS);
+      } finally {
+         executorService.shutdownNow();
+      }
+   }
+
+   private static void runConcurrently(final ExecutorService executorService, final Runnable runnable, final int iterations) throws Exception {
+      final List<Future<?>> futures = new ArrayList<Future<?>>(CONCURRENT_THREADS);
+      for (int thread = 0; thread < CONCURRENT_THREADS; thread++) {
+         futures.add(executorService.submit(new Runnable() {
+            @Override
+            public void run() {
+               for (int operation = 0; operation < iterations * CONCURRENT_OPERATIONS; operation++) {
+                  runnable.run();
+               }
+            }
+         }));
+      }
+
+      // Rethrows assertion errors from the worker threads
+      for (final Future<?> future : futures) {
+         future.get();
+      }
+   }
+
+   @Test
+   public void loadTest_allocationsPerComparison_WhenHeadersNormalizedOnEveryReadVersusOnceOnPut() throws Exception {
+
+      final StubRequestBuilder requestBuilder = REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet();
+      final Map<String, String> stubbedHeaders = new LinkedHashMap<String, String>();
+      final Map<String, String> incomingHeaders = new LinkedHashMap<String, String>();
+      for (int idx = 0; idx < 12; idx++) {
+         if (idx < 4) {
+            stubbedHeaders.put(String.format("X-Stubbed-Header-%s", idx), String.format("value-%s", idx));
+         }
+         incomingHeaders.put(String.format("X-Stubbed-Header-%s", idx), String.format("value-%s", idx));
+      }
+      for (final Map.Entry<String, String> entry : stubbedHeaders.entrySet()) {
+         requestBuilder.withHeaders(entry.getKey(), entry.getValue());
+      }
+      final StubRequest stubbedRequest = requestBuilder.build();
+
+      final StubRequestBuilder assertingRequestBuilder = REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet();
+      for (final Map.Entry<String, String> entry : incomingHeaders.entrySet()) {
+         assertingRequestBuilder.withHeaders(entry.getKey(), entry.getValue());
+      }
+      final StubRequest assertingRequest = assertingRequestBuilder.build();
+
+      final long normalizedOnEveryReadBytes = measureAllocatedBytes(new Runnable() {
+         @Override
+         public void run() {
+            // What every comparison did before, on top of matching the header values
+            normalizeHeadersOnRead(stubbedHeaders);
+            normalizeHeadersOnRead(incomingHeaders);
+            final Map<String, String> stubbedHeadersCopy = new HashMap<String, String>(stubbedHeaders);
+            stubbedHeadersCopy.remove(StubRequest.AUTH_HEADER);
+            new HashMap<String, String>(stubbedHeadersCopy);
+            new HashMap<String, String>(incomingHeaders);
+         }
+      });
+
+      final long normalizedOnceBytes = measureAllocatedBytes(new Runnable() {
+         @Override
+         public void run() {
+            assertThat(assertingRequest.equals(stubbedRequest)).isTrue();
+         }
+      });
+
+      reportAllocations("comparison of request with 12 headers to stub with 4 headers",
+         "removed header normalization on every read", normalizedOnEveryReadBytes, "whole comparison now", normalizedOnceBytes);
+   }
+
+   @Test
+   public void loadTest_jsonPostMatchingCost_WhenBodiesReparsedOnEveryComparisonVersusParsedOnce() throws Exception {
+
+      final int numberOfJsonStubs = 200;
+      final List<StubHttpLifecycle> jsonHttpCycles = parseJsonHttpCycles(numberOfJsonStubs);
+      final StubbedDataManager stubbedDataManager = new StubbedDataManager(new File("."), jsonHttpCycles);
+      final String assertingPost = jsonUser(numberOfJsonStubs);
+
+      final long reparsedNanos = measure(new Runnable() {
+         @Override
+         public void run() {
+            // What every comparison did before, the stubbed and incoming bodies were parsed for each stub
+            for (final StubHttpLifecycle jsonHttpCycle : jsonHttpCycles) {
+               try {
+                  if (JSONCompare.compareJSON(jsonHttpCycle.getRequest().getPostBody(), assertingPost, JSONCompareMode.NON_EXTENSIBLE).passed()) {
+                     break;
+                  }
+               } catch (final JSONException e) {
+                  throw new IllegalStateException(e);
+               }
+            }
+         }
+      });
+
+      final long parsedOnceNanos = measure(new Runnable() {
+         @Override
+         public void run() {
+            final StubRequest assertingRequest = REQUEST_BUILDER.withUrl("/users").withMethodPost().withPost(assertingPost).build();
+            final StubResponse stubResponse = stubbedDataManager.findStubResponseFor(assertingRequest);
+            assertThat(stubResponse.getStatus()).isEqualTo("201");
+         }
+      });
+
+      report(String.format("JSON post matching the last of %s stubs", numberOfJsonStubs), "reparsed on every comparison", reparsedNanos, "parsed once", parsedOnceNanos);
+
+      assertThat(parsedOnceNanos).isLessThan(reparsedNanos);
+   }
+
+   @Test
+   public void loadTest_repeatedJsonPostsCost_WhenMatchedEveryTimeVersusMatchResultsCached() throws Exception {
+
+      final int numberOfJsonStubs = 200;
+      final int numberOfRequestShapes = 100;
+      final List<StubHttpLifecycle> jsonHttpCycles = parseJsonHttpCycles(numberOfJsonStubs);
+      final StubbedDataManager uncachedStubbedDataManager = new StubbedDataManager(new File("."), jsonHttpCycles);
+      final StubbedDataManager cachingStubbedDataManager = new StubbedDataManager(new File("."), jsonHttpCycles, numberOfRequestShapes);
+
+      final long matchedEveryTimeNanos = measure(new Runnable() {
+         @Override
+         public void run() {
+            postRequestShapes(uncachedStubbedDataManager, numberOfRequestShapes);
+         }
+      });
+
+      final long cachedNanos = measure(new Runnable() {
+         @Override
+         public void run() {
+            postRequestShapes(cachingStubbedDataManager, numberOfRequestShapes);
+         }
+      });
+
+      report(String.format("%s repeated JSON posts to %s stubs", numberOfRequestShapes, numberOfJsonStubs), "matched every time", matchedEveryTimeNanos, "match results cached", cachedNanos);
+
+      assertThat(cachingStubbedDataManager.getMatchCacheMisses()).isEqualTo(numberOfRequestShapes);
+      assertThat(cachedNanos).isLessThan(matchedEveryTimeNanos);
+   }
+
+   private static void postRequestShapes(final StubbedDataManager stubbedDataManager, final int numberOfRequestShapes) {
+      for (int idx = 1; idx <= numberOfRequestShapes; idx++) {
+         final StubRequest assertingRequest = REQUEST_BUILDER.withUrl("/users").withMethodPost().withPost(jsonUser(idx * 2)).build();
+         assertThat(stubbedDataManager.findStubResponseFor(assertingRequest).getStatus()).isEqualTo("201");
+      }
+   }
+
+   private static List<StubHttpLifecycle> parseJsonHttpCycles(final int numberOfJsonStubs) throws Exception {
+      final StringBuilder builder = new StringBuilder(128);
+      for (int idx = 1; idx <= numberOfJsonStubs; idx++) {
+         final String yaml = YAML_BUILDER.newStubbedRequest()
+            .withMethodPost()
+            .withUrl("/users")
+            .withFoldedPost(jsonUser(idx))
+            .newStubbedResponse()
+            .withStatus("201").build();
+
+         builder.append(yaml).append(BR + BR);
+      }
+
+      return new YamlParser().parse(".", FileUtils.constructReader(builder.toString()));
+   }
+
+   @Test
+   public void loadTest_regexUrlMatchingCost_WhenRegexesTriedInTurnVersusCombinedIntoAutomaton() throws Exception {
+
+      final int numberOfRegexUrls = 10000;
+      final StringBuilder builder = new StringBuilder(128);
+      for (int idx = 1; idx <= numberOfRegexUrls; idx++) {
+         // Alternation leaves no literal URL prefix to narrow down the candidates by
+         final String yaml = YAML_BUILDER.newStubbedRequest()
+            .withMethodGet()
+            .withUrl(String.format("^/(v1|v2)/resource/%s/([a-z]+)/item/([0-9]+)$", idx))
+            .newStubbedResponse()
+            .withStatus("200").build();
+
+         builder.append(yaml).append(BR + BR);
+      }
+
+      final List<StubHttpLifecycle> regexUrlHttpCycles = new YamlParser().parse(".", FileUtils.constructReader(builder.toString()));
+      final StubbedDataManager inTurnStubbedDataManager = new StubbedDataManager(new File("."), regexUrlHttpCycles);
+      final StubbedDataManager automatonStubbedDataManager = new StubbedDataManager(new File("."), regexUrlHttpCycles, 0, true);
+      final StubRequest assertingRequest = REQUEST_BUILDER.withUrl(String.format("/v2/resource/%s/abc/item/123", numberOfRegexUrls)).withMethodGet().build();
+
+      final long inTurnNanos = measure(new Runnable() {
+         @Override
+         public void run() {
+            assertThat(inTurnStubbedDataManager.findStubResponseFor(assertingRequest).getStatus()).isEqualTo("200");
+         }
+      });
+
+      final long automatonNanos = measure(new Runnable() {
+         @Override
+         public void run() {
+            assertThat(automatonStubbedDataManager.findStubResponseFor(assertingRequest).getStatus()).isEqualTo("200");
+         }
+      });
+
+      report(String.format("request matching the last of %s regex URLs", numberOfRegexUrls), "regexes tried in turn", inTurnNanos, "combined automaton", automatonNanos);
+
+      assertThat(automatonNanos).isLessThan(inTurnNanos);
+   }
+
+   private static String jsonUser(final int id) {
+      return String.format("{\"id\": %s, \"name\": \"user-%s\", \"roles\": [\"reader\", \"writer\"], \"address\": {\"city\": \"Melbourne\", \"zip\": \"3000\"}}", id, id);
+   }
+
+   private static void normalizeHeadersOnRead(final Map<String, String> headers) {
+      final Map<String, String> headersCopy = new LinkedHashMap<String, String>(headers);
+      headers.clear();
+      for (final Map.Entry<String, String> entry : headersCopy.entrySet()) {
+         headers.put(entry.getKey().toLowerCase(Locale.US), entry.getValue());
+      }
+   }
+
+   /**
+    * @return bytes allocated by the current thread per operation, or -1 when the JVM cannot tell
+    */
+   static long measureAllocatedBytes(final Runnable runnable) {
+      final java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+      if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+         return -1;
+      }
+
+      final com.sun.management.ThreadMXBean allocationsMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+      final long threadId = Thread.currentThread().getId();
+      for (int iteration = 0; iteration < WARMUP_ITERATIONS; iteration++) {
+         runnable.run();
+      }
+
+      final long allocatedBefore = allocationsMXBean.getThreadAllocatedBytes(threadId);
+      for (int iteration = 0; iteration < MEASURED_ITERATIONS; iteration++) {
+         runnable.run();
+      }
+
+      return (allocationsMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore) / MEASURED_ITERATIONS;
+   }
+
+   static void reportAllocations(final String benchmark, final Object... labelsAndBytes) {
+      final StringBuilder builder = new StringBuilder(String.format("[load test] %s:", benchmark));
+      for (int idx = 0; idx < labelsAndBytes.length; idx += 2) {
+         builder.append(String.format(" %s %s bytes/op", labelsAndBytes[idx], labelsAndBytes[idx + 1]));
+      }
+      System.out.println(builder.toString());
+   }
+
+   private static void compilePerComparison(final String assertingUrl) {
+      for (final String stubbedUrl : stubbedUrls) {
+         Pattern.compile(stubbedUrl, Pattern.MULTILINE).matcher(assertingUrl).matches();
+      }
+   }
+
+   private static void compileOnce(final String assertingUrl) {
+      for (final String stubbedUrl : stubbedUrls) {
+         RegexUtils.compilePattern(stubbedUrl).matcher(assertingUrl).matches();
+      }
+   }
+
+   static long measure(final Runnable runnable) {
+      for (int iteration = 0; iteration < WARMUP_ITERATIONS; iteration++) {
+         runnable.run();
+      }
+
+      final long start = System.nanoTime();
+      for (int iteration = 0; iteration < MEASURED_ITERATIONS; iteration++) {
+         runnable.run();
+      }
+
+      return (System.nanoTime() - start) / MEASURED_ITERATIONS;
+   }
+
+   static void report(final String benchmark, final Object... labelsAndNanos) {
+      final StringBuilder builder = new StringBuilder(String.format("[load test] %s:", benchmark));
+      for (int idx = 0; idx < labelsAndNanos.length; idx += 2) {
+         final long nanos = (Long) labelsAndNanos[idx + 1];
+         builder.append(String.format(" %s %sus/op", labelsAndNanos[idx], TimeUnit.NANOSECONDS.toMicros(nanos)));
+      }
+      System.out.println(builder.toString());
+   }
+}
@@ -0,0 +1,116 @@
+package by.stub.handlers;
+
+import by.stub.builder.stubs.StubRequestBuilder;
+import by.stub.cli.ANSITerminal;
+import by.stub.database.StubbedDataManager;
+import by.stub.server.TimerWheelScheduler;
+import by.stub.yaml.stubs.StubHttpLifecycle;
+import by.stub.yaml.stubs.StubResponse;
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Serves many concurrent requests to a stub with latency through a real Jetty server with a small thread pool.
+ * In-memory connector is used, so the number of concurrent requests is not limited by open file descriptors
+ */
+public class StubsPortalHandlerLoadTest {
+
+   private static final StubRequestBuilder REQUEST_BUILDER = new StubRequestBuilder();
+
+   private static final int MAX_SERVER_THREADS = 16;
+   private static final int CONCURRENT_DELAYED_REQUESTS = 10000;
+   private static final long LATENCY_MILLIS = 5000;
+
+   private static Server server;
+   private static StubResponse delayedStubResponse;
+   private static LocalConnector localConnector;
+
+   @BeforeClass
+   public static void beforeClass() throws Exception {
+      ANSITerminal.muteConsole(true);
+
+      final List<StubHttpLifecycle> stubHttpLifecycles = new ArrayList<StubHttpLifecycle>();
+      stubHttpLifecycles.add(buildStubHttpLifecycle("/delayed", String.valueOf(LATENCY_MILLIS)));
+      delayedStubResponse = stubHttpLifecycles.get(0).getResponse(false);
+      stubHttpLifecycles.add(buildStubHttpLifecycle("/immediate", null));
+
+      server = new Server(new QueuedThreadPool(MAX_SERVER_THREADS, MAX_SERVER_THREADS));
+      localConnector = new LocalConnector(server);
+      localConnector.setIdleTimeout(TimeUnit.MINUTES.toMillis(5));
+      server.addConnector(localConnector);
+
+      final Scheduler latencyScheduler = new TimerWheelScheduler("stubby-latency-scheduler", 10, 512);
+      server.addBean(latencyScheduler);
+      final ContextHandler contextHandler = new ContextHandler("/");
+      contextHandler.setHandler(new StubsPortalHandler(new StubbedDataManager(new File("."), stubHttpLifecycles), latencyScheduler));
+      server.setHandler(contextHandler);
+      server.start();
+   }
+
+   @AfterClass
+   public static void afterClass() throws Exception {
+      server.stop();
+   }
+
+   @Test
+   public void loadTest_shouldServeConcurrentDelayedRequests_WhenThreadPoolIsMuchSmaller() throws Exception {
+
+      final long startNanos = System.nanoTime();
+      final List<LocalConnector.LocalEndPoint> delayedEndPoints = new ArrayList<LocalConnector.LocalEndPoint>(CONCURRENT_DELAYED_REQUESTS);
+      for (int idx = 0; idx < CONCURRENT_DELAYED_REQUESTS; idx++) {
+         delayedEndPoints.add(localConnector.executeRequest(buildRawRequest("/delayed")));
+      }
+
+      // While all delayed requests are suspended, other stubs are still served, only after the queued requests were accepted
+      final long immediateStartNanos = System.nanoTime();
+      final LocalConnector.LocalEndPoint immediateEndPoint = localConnector.executeRequest(buildRawRequest("/immediate"));
+      immediateEndPoint.waitUntilClosed();
+      final long immediateMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - immediateStartNanos);
+      assertThat(immediateEndPoint.getOutputString()).startsWith("HTTP/1.1 200 OK");
+
+      int okResponses = 0;
+      for (final LocalConnector.LocalEndPoint delayedEndPoint : delayedEndPoints) {
+         delayedEndPoint.waitUntilClosed();
+         if (delayedEndPoint.getOutputString().startsWith("HTTP/1.1 200 OK")) {
+            okResponses++;
+         }
+      }
+      final long totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+      System.out.println(String.format("[load test] %s concurrent requests with %sms latency on %s server threads: all served in %sms, stub without latency served in %sms meanwhile, realized latency %s",
+         CONCURRENT_DELAYED_REQUESTS, LATENCY_MILLIS, MAX_SERVER_THREADS, totalMillis, immediateMillis, delayedStubResponse.getLatencyHistogram()));
+
+      assertThat(okResponses).isEqualTo(CONCURRENT_DELAYED_REQUESTS);
+      assertThat(totalMillis).isGreaterThanOrEqualTo(LATENCY_MILLIS);
+      // Sleeping on server threads would take (requests / threads) * latency, which is nearly an hour
+      assertThat(totalMillis).isLessThan(LATENCY_MILLIS * 10);
+      assertThat(immediateMillis).isLessThan(LATENCY_MILLIS);
+      assertThat(delayedStubResponse.getLatencyHistogram().getCount()).isEqualTo(CONCURRENT_DELAYED_REQUESTS);
+      assertThat(delayedStubResponse.getLatencyHistogram().getValueAtQuantile(0)).isGreaterThanOrEqualTo(LATENCY_MILLIS);
+   }
+
+   private static StubHttpLifecycle buildStubHttpLifecycle(final String url, final String latency) {
+      final StubHttpLifecycle stubHttpLifecycle = new StubHttpLifecycle();
+      stubHttpLifecycle.setRequest(REQUEST_BUILDER.withUrl(url).withMethodGet().build());
+      stubHttpLifecycle.setResponse(new StubResponse("200", "response of " + url, null, latency, null));
+
+      return stubHttpLifecycle;
+   }
+
+   private static String buildRawRequest(final String url) {
+      return String.format("GET %s HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n", url);
+   }
+}
@@ -0,0 +1,80 @@
+package by.stub.server;
+
+import by.stub.database.LatencyHistogram;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Keeps a hundred thousand delays pending at once, scheduled from several threads, and measures how late they fire
+ */
+public class TimerWheelSchedulerLoadTest {
+
+   private static final int SUBMITTING_THREADS = 8;
+   private static final int TASKS_PER_THREAD = 12500;
+   private static final long MAX_DELAY_MILLIS = 3000;
+   private static final long TICK_MILLIS = 10;
+
+   private static TimerWheelScheduler timerWheelScheduler;
+
+   @BeforeClass
+   public static void beforeClass() throws Exception {
+      timerWheelScheduler = new TimerWheelScheduler("load-test-timer-wheel", TICK_MILLIS, 512);
+      timerWheelScheduler.start();
+   }
+
+   @AfterClass
+   public static void afterClass() throws Exception {
+      timerWheelScheduler.stop();
+   }
+
+   @Test
+   public void loadTest_shouldFireAllPendingDelays_WithinTickPrecision() throws Exception {
+      final int totalTasks = SUBMITTING_THREADS * TASKS_PER_THREAD;
+      final CountDownLatch fired = new CountDownLatch(totalTasks);
+      final LatencyHistogram lateness = new LatencyHistogram();
+
+      final long startNanos = System.nanoTime();
+      final Thread[] submittingThreads = new Thread[SUBMITTING_THREADS];
+      for (int threadIdx = 0; threadIdx < SUBMITTING_THREADS; threadIdx++) {
+         submittingThreads[threadIdx] = new Thread(new Runnable() {
+            @Override
+            public void run() {
+               for (int idx = 0; idx < TASKS_PER_THREAD; idx++) {
+                  final long delayMillis = ThreadLocalRandom.current().nextLong(MAX_DELAY_MILLIS);
+                  final long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+                  timerWheelScheduler.schedule(new Runnable() {
+                     @Override
+                     public void run() {
+                        lateness.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - deadlineNanos));
+                        fired.countDown();
+                     }
+                  }, delayMillis, TimeUnit.MILLISECONDS);
+               }
+            }
+         });
+         submittingThreads[threadIdx].start();
+      }
+      for (final Thread submittingThread : submittingThreads) {
+         submittingThread.join();
+      }
+      final long submittedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+      assertThat(fired.await(MAX_DELAY_MILLIS * 10, TimeUnit.MILLISECONDS)).isTrue();
+      final long totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+      System.out.println(String.format("[load test] %s delays of up to %sms scheduled in %sms and fired in %sms, lateness %s",
+         totalTasks, MAX_DELAY_MILLIS, submittedMillis, totalMillis, lateness));
+
+      assertThat(lateness.getCount()).isEqualTo(totalTasks);
+      // Typical deadline is missed by less than a couple of ticks, the tail depends on how busy the machine is
+      assertThat(lateness.getValueAtQuantile(0.5)).isLessThanOrEqualTo(TICK_MILLIS * 2);
+      assertThat(lateness.getMax()).isLessThan(1000);
+   }
+}
@@ -1,6 +1,7 @@
 package by.stub.utils;
 
 import by.stub.cli.ANSITerminal;
+import by.stub.cli.AsyncConsole;
 import by.stub.javax.servlet.http.HttpServletResponseWithGetStatus;
 import org.junit.After;
 import org.junit.Before;
@@ -23,6 +24,7 @@ import static org.mockito.Mockito.when;
 public class ConsoleUtilsTest {
 
    private static final String URI = "/some/uri/to/resource/123";
+   private static final long FLUSH_TIMEOUT_MILLIS = 5000;
 
    private ByteArrayOutputStream consoleCaptor;
    private HttpServletRequest httpServletRequestMock = mock(HttpServletRequest.class);
@@ -58,6 +60,7 @@ public class ConsoleUtilsTest {
       wrapper.setStatus(expectedStatus);
 
       ConsoleUtils.logOutgoingResponse(httpServletRequestMock.getRequestURI(), wrapper);
+      assertThat(AsyncConsole.flush(FLUSH_TIMEOUT_MILLIS)).isTrue();
       final String actualConsoleOutput = consoleCaptor.toString(StringUtils.UTF_8).trim();
 
       assertThat(actualConsoleOutput).contains(expectedConsoleOutput);
@@ -75,6 +78,7 @@ public class ConsoleUtilsTest {
       wrapper.setStatus(expectedStatus);
 
       ConsoleUtils.logOutgoingResponse(httpServletRequestMock.getRequestURI(), wrapper);
+      assertThat(AsyncConsole.flush(FLUSH_TIMEOUT_MILLIS)).isTrue();
       final String actualConsoleOutput = consoleCaptor.toString(StringUtils.UTF_8).trim();
 
       assertThat(actualConsoleOutput).contains(expectedConsoleOutput);
@@ -92,6 +96,7 @@ public class ConsoleUtilsTest {
       wrapper.setStatus(expectedStatus);
 
       ConsoleUtils.logOutgoingResponse(httpServletRequestMock.getRequestURI(), wrapper);
+      assertThat(AsyncConsole.flush(FLUSH_TIMEOUT_MILLIS)).isTrue();
       final String actualConsoleOutput = consoleCaptor.toString(StringUtils.UTF_8).trim();
 
       assertThat(actualConsoleOutput).contains(expectedConsoleOutput);
@@ -109,6 +114,7 @@ public class ConsoleUtilsTest {
       wrapper.setStatus(expectedStatus);
 
       ConsoleUtils.logOutgoingResponse(httpServletRequestMock.getRequestURI(), wrapper);
+      assertThat(AsyncConsole.flush(FLUSH_TIMEOUT_MILLIS)).isTrue();
       final String actualConsoleOutput = consoleCaptor.toString(StringUtils.UTF_8).trim();
 
       assertThat(actualConsoleOutput).contains(expectedConsoleOutput);
@@ -126,6 +132,7 @@ public class ConsoleUtilsTest {
       wrapper.setStatus(expectedStatus);
 
       ConsoleUtils.logOutgoingResponse(httpServletRequestMock.getRequestURI(), wrapper);
+      assertThat(AsyncConsole.flush(FLUSH_TIMEOUT_MILLIS)).isTrue();
       final String actualConsoleOutput = consoleCaptor.toString(StringUtils.UTF_8).trim();
 
       assertThat(actualConsoleOutput).contains(expectedConsoleOutput);
@@ -142,8 +149,22 @@ public class ConsoleUtilsTest {
       wrapper.setStatus(expectedStatus);
 
       ConsoleUtils.logOutgoingResponse(httpServletRequestMock.getRequestURI(), wrapper);
+      assertThat(AsyncConsole.flush(FLUSH_TIMEOUT_MILLIS)).isTrue();
       final String actualConsoleOutput = consoleCaptor.toString(StringUtils.UTF_8).trim();
 
       assertThat(actualConsoleOutput).contains(expectedConsoleOutput);
    }
+
+   @Test
+   public void shouldPrintIncomingRequestAndBody_InOrderTheyWereLogged() throws Exception {
+
+      when(httpServletRequestMock.getMethod()).thenReturn("POST");
+
+      ConsoleUtils.logIncomingRequest(httpServletRequestMock);
+      AsyncConsole.incoming("{\"posted\": true}".getBytes(StringUtils.UTF_8));
+      assertThat(AsyncConsole.flush(FLUSH_TIMEOUT_MILLIS)).isTrue();
+      final String actualConsoleOutput = consoleCaptor.toString(StringUtils.UTF_8).trim();
+
+      assertThat(actualConsoleOutput).matches("(?s).*\\[\\d{2}:\\d{2}:\\d{2}\\] -> POST \\[" + URI + "\\].*\\{\"posted\": true\\}.*");
+   }
 }
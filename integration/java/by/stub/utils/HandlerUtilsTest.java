@@ -5,6 +5,8 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.util.Date;
+
 import static org.fest.assertions.api.Assertions.assertThat;
 
 /**
@@ -23,6 +25,21 @@ public class HandlerUtilsTest {
       assertThat("<html><head></head><body>%s</body></html>").isEqualTo(templateContent);
    }
 
+   @Test
+   public void shouldFormatHeaderDateOnce_WhenCalledWithinTheSameSecond() throws Exception {
+      String firstDate;
+      String secondDate;
+      long startSecond;
+      do {
+         startSecond = System.currentTimeMillis() / 1000;
+         firstDate = HandlerUtils.currentHeaderDate();
+         secondDate = HandlerUtils.currentHeaderDate();
+      } while (System.currentTimeMillis() / 1000 != startSecond);
+
+      assertThat(secondDate).isSameAs(firstDate);
+      assertThat(firstDate).isEqualTo(new Date(startSecond * 1000).toString());
+   }
+
    @Test
    public void shouldPopulateHtmlTemplate() throws Exception {
       final String templateContent = HandlerUtils.populateHtmlTemplate("test-template", "alex");
@@ -31,12 +31,12 @@ public final class ANSITerminal {
    private static final String RESET = String.format("%s[0m", ESCAPE);
    private static final String BLACK = String.format("%s[30m", ESCAPE);
    private static final String BOLD_BLACK = String.format("%s%s", BOLD, BLACK);
-   private static final String BLUE = String.format("%s[34m", ESCAPE);
-   private static final String CYAN = String.format("%s[36m", ESCAPE);
-   private static final String GREEN = String.format("%s[32m", ESCAPE);
+   static final String BLUE = String.format("%s[34m", ESCAPE);
+   static final String CYAN = String.format("%s[36m", ESCAPE);
+   static final String GREEN = String.format("%s[32m", ESCAPE);
    private static final String MAGENTA = String.format("%s[35m", ESCAPE);
-   private static final String RED = String.format("%s[31m", ESCAPE);
-   private static final String YELLOW = String.format("%s[33m", ESCAPE);
+   static final String RED = String.format("%s[31m", ESCAPE);
+   static final String YELLOW = String.format("%s[33m", ESCAPE);
    private static boolean mute = false;
 
    private ANSITerminal() {
@@ -47,7 +47,11 @@ public final class ANSITerminal {
       if (mute) {
          return;
       }
-      System.out.println(String.format("%s%s%s", color, msg, RESET));
+      System.out.println(paint(color, msg));
+   }
+
+   static String paint(final String color, final String msg) {
+      return String.format("%s%s%s", color, msg, RESET);
    }
 
    public static void log(final String msg) {
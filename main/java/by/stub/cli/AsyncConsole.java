@@ -0,0 +1,190 @@
+/*
+HTTP stub server written in Java with embedded Jetty
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.cli;
+
+import java.io.PrintStream;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static by.stub.utils.FileUtils.BR;
+
+/**
+ * Prints request and response messages to the console off the request path. Request threads only push
+ * small immutable events into a lock-free ring, a background thread formats and prints them in batches.
+ * When the ring is full, events are dropped and the drops are counted and reported. The background thread
+ * is started with the first event, and sleeps whenever there is nothing to print.
+ *
+ * @see ANSITerminal
+ */
+public final class AsyncConsole {
+
+   private static final int RING_CAPACITY = 8192;
+   private static final int MAX_BATCH_EVENTS = 512;
+
+   private static final ConsoleEventRing RING = new ConsoleEventRing(RING_CAPACITY);
+   // Set by the writer before it parks on an empty ring, so producers know it has to be woken up
+   private static volatile boolean isWriterParked;
+
+   private AsyncConsole() {
+
+   }
+
+   public static void incomingRequest(final String method, final String uri) {
+      if (!ANSITerminal.isMute()) {
+         publish(ConsoleEvent.incomingRequest(System.currentTimeMillis(), method, uri));
+      }
+   }
+
+   public static void incomingRequestError(final String method, final String source, final String uri, final String error) {
+      if (!ANSITerminal.isMute()) {
+         publish(ConsoleEvent.incomingRequestError(System.currentTimeMillis(), method, source, uri, error));
+      }
+   }
+
+   public static void outgoingResponse(final int status, final String url) {
+      if (!ANSITerminal.isMute()) {
+         publish(ConsoleEvent.outgoingResponse(System.currentTimeMillis(), status, url));
+      }
+   }
+
+   /**
+    * Prints message in cyan colour, same as {@link ANSITerminal#incoming(String)}. Long messages are truncated
+    */
+   public static void incoming(final String msg) {
+      if (!ANSITerminal.isMute()) {
+         publish(ConsoleEvent.incomingText(msg));
+      }
+   }
+
+   /**
+    * Prints UTF-8 content in cyan colour. Short content is decoded by the writer thread, so it must not be modified,
+    * only a copied prefix of long content is printed
+    */
+   public static void incoming(final byte[] content) {
+      if (!ANSITerminal.isMute()) {
+         publish(ConsoleEvent.incomingBytes(content));
+      }
+   }
+
+   /**
+    * @return number of events dropped so far, because the writer could not keep up with request threads
+    */
+   public static long getDroppedEvents() {
+      return RING.getDropped();
+   }
+
+   /**
+    * Waits until events pushed before the call are printed
+    *
+    * @return false if the events were not printed in time
+    */
+   public static boolean flush(final long timeoutMillis) {
+      final long accepted = RING.getAccepted();
+      final long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+      while (RING.getConsumed() < accepted) {
+         if (System.nanoTime() - deadlineNanos > 0) {
+            return false;
+         }
+         LockSupport.unpark(Writer.THREAD);
+         Thread.yield();
+      }
+
+      return true;
+   }
+
+   private static void publish(final ConsoleEvent event) {
+      // Referencing the writer starts it with the first event
+      final Thread writer = Writer.THREAD;
+      if (RING.offer(event) && isWriterParked) {
+         LockSupport.unpark(writer);
+      }
+   }
+
+   private static void writeEvents() {
+      final StringBuilder batch = new StringBuilder(MAX_BATCH_EVENTS * 64);
+      final Calendar calendar = Calendar.getInstance(Locale.US);
+      long timeSecond = -1;
+      String time = "";
+      long reportedDrops = 0;
+
+      while (true) {
+         int batchEvents = 0;
+         ConsoleEvent event;
+         while (batchEvents < MAX_BATCH_EVENTS && (event = RING.poll()) != null) {
+            if (event.isTimed() && event.getTimeMillis() / 1000 != timeSecond) {
+               timeSecond = event.getTimeMillis() / 1000;
+               calendar.setTimeInMillis(event.getTimeMillis());
+               time = String.format("%02d:%02d:%02d", calendar.get(Calendar.HOUR_OF_DAY), calendar.get(Calendar.MINUTE), calendar.get(Calendar.SECOND));
+            }
+            batch.append(event.format(time)).append(BR);
+            batchEvents++;
+         }
+
+         final long drops = RING.getDropped();
+         if (drops != reportedDrops) {
+            batch.append(ANSITerminal.paint(ANSITerminal.YELLOW,
+               String.format("%s console messages dropped, %s in total", drops - reportedDrops, drops))).append(BR);
+            reportedDrops = drops;
+         }
+
+         if (batch.length() > 0) {
+            if (!ANSITerminal.isMute()) {
+               final PrintStream out = System.out;
+               out.print(batch);
+               out.flush();
+            }
+            batch.setLength(0);
+         }
+         RING.markConsumed();
+
+         if (batchEvents == 0) {
+            // Producers check the flag after publishing, the writer checks the ring after raising it, so no event is missed
+            isWriterParked = true;
+            if (RING.isEmpty()) {
+               LockSupport.park();
+            }
+            isWriterParked = false;
+         }
+      }
+   }
+
+   /**
+    * Holder of the writer thread, which is started when the holder is first used
+    */
+   private static final class Writer {
+
+      private static final Thread THREAD = startWriter();
+
+      private static Thread startWriter() {
+         final Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+               writeEvents();
+            }
+         }, "stubby-console-writer");
+         writer.setDaemon(true);
+         writer.start();
+
+         return writer;
+      }
+   }
+}
@@ -51,6 +51,10 @@ public final class CommandLineInterpreter {
    public static final String OPTION_KEYPASS = "password";
    public static final String OPTION_MUTE = "mute";
    public static final String OPTION_WATCH = "watch";
+   public static final String OPTION_MATCH_CACHE = "cache";
+   public static final String OPTION_URL_AUTOMATON = "automaton";
+   public static final String OPTION_MAP_FILES = "mapfiles";
+   public static final String OPTION_JOURNAL = "journal";
    public static final String OPTION_HELP = "help";
    public static final String OPTION_VERSION = "version";
 
@@ -69,6 +73,7 @@ public final class CommandLineInterpreter {
       OPTIONS.addOption("h", OPTION_HELP, false, "This help text.");
       OPTIONS.addOption("m", OPTION_MUTE, false, "Prevent stubby from printing to the console.");
       OPTIONS.addOption("v", OPTION_VERSION, false, "Prints out to console stubby version.");
+      OPTIONS.addOption("r", OPTION_URL_AUTOMATON, false, "Matches stubbed regex URLs using one automaton combined from all of them, instead of trying every regex in turn. Worth enabling when many stubs have regex URLs. Regexes which the automaton cannot express, ie.: with backreferences or lookarounds, are still tried in turn.");
       @SuppressWarnings("static-access")
       Option watch =
          OptionBuilder
@@ -77,6 +82,30 @@ public final class CommandLineInterpreter {
             .hasOptionalArg()
             .create("w");
       OPTIONS.addOption(watch);
+      @SuppressWarnings("static-access")
+      Option matchCache =
+         OptionBuilder
+            .withDescription("Caches which stub matched recently seen requests, so repeated requests are not compared to the stubs again. The flag can accept an optional arg value which is the maximum number of cached requests. If the number is not provided, up to 1000 requests are cached. The cache is cleared whenever the stub configuration changes")
+            .withLongOpt(OPTION_MATCH_CACHE)
+            .hasOptionalArg()
+            .create("c");
+      OPTIONS.addOption(matchCache);
+      @SuppressWarnings("static-access")
+      Option mapFiles =
+         OptionBuilder
+            .withDescription("Serves large response files from memory mapped outside of heap, instead of loading them into heap. The flag can accept an optional arg value which is the minimal size in bytes of mapped files. If the size is not provided, files of 1048576 bytes or more are mapped. Text files with template tokens or with line separators that differ from the system ones are always loaded into heap")
+            .withLongOpt(OPTION_MAP_FILES)
+            .hasOptionalArg()
+            .create("f");
+      OPTIONS.addOption(mapFiles);
+      @SuppressWarnings("static-access")
+      Option journal =
+         OptionBuilder
+            .withDescription("Journals the last 32768 requests made to the stubs portal outside of heap, which are queried as JSON at /journal on the admin portal. The flag can accept an optional arg value which is the path of a file to keep the journal in, so that it survives restarts. If the path is not provided, the journal is kept in memory only")
+            .withLongOpt(OPTION_JOURNAL)
+            .hasOptionalArg()
+            .create("j");
+      OPTIONS.addOption(journal);
    }
 
 
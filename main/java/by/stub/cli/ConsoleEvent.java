@@ -0,0 +1,139 @@
+/*
+HTTP stub server written in Java with embedded Jetty
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.cli;
+
+import by.stub.utils.StringUtils;
+import org.eclipse.jetty.http.HttpStatus;
+
+import java.util.Arrays;
+
+/**
+ * Immutable console message pushed by a request thread, formatted later by the console writer thread
+ */
+final class ConsoleEvent {
+
+   // Characters of longer texts or bytes of longer bodies are logged truncated, so each event in the ring stays small
+   static final int MAX_LOGGED_LENGTH = 4 * 1024;
+
+   enum Type {
+      INCOMING_REQUEST, INCOMING_REQUEST_ERROR, OUTGOING_RESPONSE, INCOMING_TEXT, INCOMING_BYTES
+   }
+
+   private final Type type;
+   private final long timeMillis;
+   private final String method;
+   private final String uri;
+   private final int status;
+   private final String text;
+   // Response body as stubbed or its logged prefix, only read and never modified after loading
+   private final byte[] bytes;
+   // Length of the whole text or body, when only its prefix is logged
+   private final int totalLength;
+
+   private ConsoleEvent(final Type type, final long timeMillis, final String method, final String uri, final int status, final String text, final byte[] bytes) {
+      this(type, timeMillis, method, uri, status, text, bytes, 0);
+   }
+
+   private ConsoleEvent(final Type type, final long timeMillis, final String method, final String uri, final int status, final String text, final byte[] bytes, final int totalLength) {
+      this.type = type;
+      this.timeMillis = timeMillis;
+      this.method = method;
+      this.uri = uri;
+      this.status = status;
+      this.text = text;
+      this.bytes = bytes;
+      this.totalLength = totalLength;
+   }
+
+   static ConsoleEvent incomingRequest(final long timeMillis, final String method, final String uri) {
+      return new ConsoleEvent(Type.INCOMING_REQUEST, timeMillis, method, uri, 0, null, null);
+   }
+
+   static ConsoleEvent incomingRequestError(final long timeMillis, final String method, final String source, final String uri, final String error) {
+      return new ConsoleEvent(Type.INCOMING_REQUEST_ERROR, timeMillis, method, uri, 0, String.format("[%s]%s: %s", source, uri, error), null);
+   }
+
+   static ConsoleEvent outgoingResponse(final long timeMillis, final int status, final String url) {
+      return new ConsoleEvent(Type.OUTGOING_RESPONSE, timeMillis, null, url, status, null, null);
+   }
+
+   static ConsoleEvent incomingText(final String text) {
+      if (text.length() <= MAX_LOGGED_LENGTH) {
+         return new ConsoleEvent(Type.INCOMING_TEXT, 0, null, null, 0, text, null);
+      }
+      return new ConsoleEvent(Type.INCOMING_TEXT, 0, null, null, 0, text.substring(0, MAX_LOGGED_LENGTH), null, text.length());
+   }
+
+   static ConsoleEvent incomingBytes(final byte[] bytes) {
+      if (bytes.length <= MAX_LOGGED_LENGTH) {
+         return new ConsoleEvent(Type.INCOMING_BYTES, 0, null, null, 0, null, bytes);
+      }
+      // Cut before a UTF-8 continuation byte, so the last logged character is whole
+      int loggedLength = MAX_LOGGED_LENGTH;
+      while (loggedLength > 0 && (bytes[loggedLength] & 0xC0) == 0x80) {
+         loggedLength--;
+      }
+      return new ConsoleEvent(Type.INCOMING_BYTES, 0, null, null, 0, null, Arrays.copyOf(bytes, loggedLength), bytes.length);
+   }
+
+   long getTimeMillis() {
+      return timeMillis;
+   }
+
+   boolean isTimed() {
+      return type == Type.INCOMING_REQUEST || type == Type.INCOMING_REQUEST_ERROR || type == Type.OUTGOING_RESPONSE;
+   }
+
+   /**
+    * @param time time of the event formatted as HH:mm:ss, ignored by untimed events
+    * @return coloured console line, same as printed by {@link ANSITerminal}
+    */
+   String format(final String time) {
+      switch (type) {
+         case INCOMING_REQUEST:
+            return ANSITerminal.paint(ANSITerminal.CYAN, String.format("[%s] -> %s [%s]", time, method, uri));
+         case INCOMING_REQUEST_ERROR:
+            return ANSITerminal.paint(ANSITerminal.RED, String.format("[%s] -> %s %s", time, method, text));
+         case OUTGOING_RESPONSE:
+            return ANSITerminal.paint(statusColor(), String.format("[%s] <- %s [%s] %s", time, status, uri, HttpStatus.getMessage(status)));
+         case INCOMING_BYTES:
+            return ANSITerminal.paint(ANSITerminal.CYAN, StringUtils.newStringUtf8(bytes) + truncationNote());
+         default:
+            return ANSITerminal.paint(ANSITerminal.CYAN, text + truncationNote());
+      }
+   }
+
+   private String truncationNote() {
+      return totalLength == 0 ? "" : String.format("... (%s in total)", totalLength);
+   }
+
+   private String statusColor() {
+      if (status >= HttpStatus.BAD_REQUEST_400) {
+         return ANSITerminal.RED;
+      } else if (status >= HttpStatus.MULTIPLE_CHOICES_300) {
+         return ANSITerminal.YELLOW;
+      } else if (status >= HttpStatus.OK_200) {
+         return ANSITerminal.GREEN;
+      } else if (status >= HttpStatus.CONTINUE_100) {
+         return ANSITerminal.BLUE;
+      }
+      return "";
+   }
+}
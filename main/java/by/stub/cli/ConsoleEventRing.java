@@ -0,0 +1,132 @@
+/*
+HTTP stub server written in Java with embedded Jetty
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.cli;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring of console events, offered by many request threads and polled by a single writer thread.
+ * Each slot carries a sequence number, telling producers whether the slot is free and the consumer whether
+ * the event in it has been published.
+ */
+final class ConsoleEventRing {
+
+   private final int mask;
+   private final AtomicReferenceArray<ConsoleEvent> events;
+   private final AtomicLongArray sequences;
+   private final AtomicLong tail = new AtomicLong();
+   private final AtomicLong dropped = new AtomicLong();
+   // Read and written only by the single consumer, published through the slot sequences
+   private long head;
+   private volatile long consumed;
+
+   /**
+    * @param capacity number of slots, rounded up to a power of two
+    */
+   ConsoleEventRing(final int capacity) {
+      final int slots = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+      this.mask = slots - 1;
+      this.events = new AtomicReferenceArray<ConsoleEvent>(slots);
+      this.sequences = new AtomicLongArray(slots);
+      for (int idx = 0; idx < slots; idx++) {
+         sequences.set(idx, idx);
+      }
+   }
+
+   /**
+    * @return false if the ring is full, in which case the event is dropped and counted
+    */
+   boolean offer(final ConsoleEvent event) {
+      long position = tail.get();
+      while (true) {
+         final int slot = (int) position & mask;
+         final long difference = sequences.get(slot) - position;
+         if (difference == 0) {
+            if (tail.compareAndSet(position, position + 1)) {
+               events.lazySet(slot, event);
+               sequences.set(slot, position + 1);
+               return true;
+            }
+            position = tail.get();
+         } else if (difference < 0) {
+            // The slot still holds an event from the previous lap, that was not written yet
+            dropped.incrementAndGet();
+            return false;
+         } else {
+            position = tail.get();
+         }
+      }
+   }
+
+   /**
+    * Must be called by the single consumer thread only
+    *
+    * @return the oldest published event, or null if there is none
+    */
+   ConsoleEvent poll() {
+      final int slot = (int) head & mask;
+      if (sequences.get(slot) != head + 1) {
+         return null;
+      }
+      final ConsoleEvent event = events.get(slot);
+      events.lazySet(slot, null);
+      sequences.set(slot, head + mask + 1);
+      head++;
+
+      return event;
+   }
+
+   /**
+    * Must be called by the single consumer thread only
+    *
+    * @return true if there is no published event to poll
+    */
+   boolean isEmpty() {
+      return sequences.get((int) head & mask) != head + 1;
+   }
+
+   /**
+    * Called by the consumer once polled events were written
+    */
+   void markConsumed() {
+      consumed = head;
+   }
+
+   /**
+    * @return number of events accepted into the ring so far, including those not published yet
+    */
+   long getAccepted() {
+      return tail.get();
+   }
+
+   long getConsumed() {
+      return consumed;
+   }
+
+   long getDropped() {
+      return dropped.get();
+   }
+
+   int getCapacity() {
+      return mask + 1;
+   }
+}
@@ -0,0 +1,57 @@
+/*
+HTTP stub server written in Java with embedded Jetty
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.database;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size set of bits, which many threads can set at once without locking. Bits are never cleared,
+ * a new set is created instead
+ */
+final class ConcurrentBitSet {
+
+   private final AtomicLongArray words;
+   private final int size;
+
+   ConcurrentBitSet(final int size) {
+      this.words = new AtomicLongArray((size + 63) >>> 6);
+      this.size = size;
+   }
+
+   /**
+    * Sets the bit at the given index, touching shared memory only if it is not set yet
+    */
+   void set(final int index) {
+      final int wordIndex = index >>> 6;
+      final long mask = 1L << index;
+      long word = words.get(wordIndex);
+      while ((word & mask) == 0 && !words.compareAndSet(wordIndex, word, word | mask)) {
+         word = words.get(wordIndex);
+      }
+   }
+
+   boolean get(final int index) {
+      return (words.get(index >>> 6) & (1L << index)) != 0;
+   }
+
+   int size() {
+      return size;
+   }
+}
@@ -0,0 +1,99 @@
+/*
+HTTP stub server written in Java with embedded Jetty
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.database;
+
+import by.stub.utils.ObjectUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts failures of stubby by category and keeps samples of the most recent ones. Failures are counted in striped
+ * counters, so threads failing at once do not contend. Samples are kept in a fixed ring, where the oldest sample is
+ * overwritten by the newest one.
+ * <p>
+ * Failures are counted where they happen, so one request may be counted in more than one category,
+ * ie.: a template failure also ends in an internal server error
+ */
+public final class ErrorAccounting {
+
+   public static final int SAMPLE_CAPACITY = 64;
+
+   private static final ErrorCategory[] CATEGORIES = ErrorCategory.values();
+   private static final LongAdder[] COUNTERS = new LongAdder[CATEGORIES.length];
+   private static final AtomicReferenceArray<ErrorSample> SAMPLES = new AtomicReferenceArray<ErrorSample>(SAMPLE_CAPACITY);
+   private static final AtomicLong LAST_SEQUENCE = new AtomicLong(0);
+
+   static {
+      for (int idx = 0; idx < COUNTERS.length; idx++) {
+         COUNTERS[idx] = new LongAdder();
+      }
+   }
+
+   private ErrorAccounting() {
+
+   }
+
+   public static void record(final ErrorCategory category, final Throwable cause) {
+      record(category, cause.toString());
+   }
+
+   public static void record(final ErrorCategory category, final String message) {
+      COUNTERS[category.ordinal()].increment();
+
+      final long sequence = LAST_SEQUENCE.incrementAndGet();
+      SAMPLES.set((int) (sequence % SAMPLE_CAPACITY), new ErrorSample(sequence, System.currentTimeMillis(), category, message));
+   }
+
+   public static long getCount(final ErrorCategory category) {
+      return COUNTERS[category.ordinal()].sum();
+   }
+
+   public static long getTotal() {
+      long total = 0;
+      for (final LongAdder counter : COUNTERS) {
+         total += counter.sum();
+      }
+
+      return total;
+   }
+
+   /**
+    * @return samples of the most recent failures, newest first. A sample being overwritten
+    * while the ring is read is left out
+    */
+   public static List<ErrorSample> getRecentErrors() {
+      final long newestSequence = LAST_SEQUENCE.get();
+      final long oldestSequence = Math.max(1, newestSequence - SAMPLE_CAPACITY + 1);
+      final List<ErrorSample> samples = new ArrayList<ErrorSample>();
+      for (long sequence = newestSequence; sequence >= oldestSequence; sequence--) {
+         final ErrorSample sample = SAMPLES.get((int) (sequence % SAMPLE_CAPACITY));
+         // Slot is claimed before the sample is stored, so it may still hold an older or a newer sample
+         if (ObjectUtils.isNotNull(sample) && sample.getSequence() == sequence) {
+            samples.add(sample);
+         }
+      }
+
+      return samples;
+   }
+}
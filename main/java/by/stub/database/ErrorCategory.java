@@ -0,0 +1,42 @@
+/*
+HTTP stub server written in Java with embedded Jetty
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.database;
+
+/**
+ * Kinds of failures counted by {@link ErrorAccounting}
+ */
+public enum ErrorCategory {
+
+   TEMPLATE("template"),
+   RECORDING("recording"),
+   BODY_READ("body_read"),
+   SERVER_ERROR("server_error"),
+   YAML_RELOAD("yaml_reload");
+
+   private final String label;
+
+   ErrorCategory(final String label) {
+      this.label = label;
+   }
+
+   public String getLabel() {
+      return label;
+   }
+}
@@ -0,0 +1,54 @@
+/*
+HTTP stub server written in Java with embedded Jetty
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.database;
+
+/**
+ * Immutable sample of a failure counted by {@link ErrorAccounting}
+ */
+public final class ErrorSample {
+
+   private final long sequence;
+   private final long timestampMillis;
+   private final ErrorCategory category;
+   private final String message;
+
+   ErrorSample(final long sequence, final long timestampMillis, final ErrorCategory category, final String message) {
+      this.sequence = sequence;
+      this.timestampMillis = timestampMillis;
+      this.category = category;
+      this.message = message;
+   }
+
+   public long getSequence() {
+      return sequence;
+   }
+
+   public long getTimestampMillis() {
+      return timestampMillis;
+   }
+
+   public ErrorCategory getCategory() {
+      return category;
+   }
+
+   public String getMessage() {
+      return message;
+   }
+}
@@ -0,0 +1,182 @@
+/*
+A Java-based HTTP stub server
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.database;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations, in whatever unit the owner records: milliseconds of stub latency, microseconds of request
+ * handling and so on, values are reported in the same unit as recorded. Values below 32 are counted
+ * exactly, larger values in logarithmic buckets of 16 sub-buckets each, so reported percentiles are within about 6%
+ * of the recorded values.
+ * <p>
+ * Recording is lock free, threads recording different values rarely touch the same counter. Count and percentiles
+ * are computed from one copy of the bucket counts, so they agree with each other, though values recorded
+ * while the copy is taken may or may not be included.
+ */
+public final class LatencyHistogram {
+
+   private static final int SUB_BUCKET_BITS = 4;
+   private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+   // Over an hour in microseconds, longer durations are counted as the maximum
+   private static final int MAX_VALUE_BITS = 32;
+   private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+   private static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+   private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_COUNT);
+   private final AtomicLong max = new AtomicLong();
+   private final LongAdder total = new LongAdder();
+
+   public void record(final long duration) {
+      final long value = Math.min(Math.max(duration, 0), MAX_VALUE);
+      bucketCounts.incrementAndGet(bucketIndex(value));
+      total.add(value);
+
+      long currentMax = max.get();
+      while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+         currentMax = max.get();
+      }
+   }
+
+   public long getCount() {
+      return sum(copyBucketCounts());
+   }
+
+   public long getMax() {
+      return max.get();
+   }
+
+   /**
+    * @return sum of the recorded values
+    */
+   public long getSum() {
+      return total.sum();
+   }
+
+   /**
+    * @param upperBounds ascending upper bounds, ie.: of Prometheus histogram buckets
+    * @return number of values at or below each of the upper bounds, within bucket precision,
+    * followed by the number of all values, all taken from the same bucket counts
+    */
+   public long[] getCumulativeCounts(final long... upperBounds) {
+      final long[] counts = copyBucketCounts();
+      final long[] cumulativeCounts = new long[upperBounds.length + 1];
+      long seen = 0;
+      int bucketIdx = 0;
+      for (int boundIdx = 0; boundIdx < upperBounds.length; boundIdx++) {
+         while (bucketIdx < BUCKET_COUNT && highestEquivalentValue(bucketIdx) <= upperBounds[boundIdx]) {
+            seen += counts[bucketIdx++];
+         }
+         cumulativeCounts[boundIdx] = seen;
+      }
+      cumulativeCounts[upperBounds.length] = sum(counts);
+
+      return cumulativeCounts;
+   }
+
+   /**
+    * @param quantile quantile between 0 and 1, ie.: 0.99 for 99th percentile
+    * @return highest value equivalent to the value at the given quantile, or zero if nothing was recorded
+    */
+   public long getValueAtQuantile(final double quantile) {
+      final long[] counts = copyBucketCounts();
+      return valueAtQuantile(counts, sum(counts), quantile);
+   }
+
+   /**
+    * @param quantiles quantiles between 0 and 1, ie.: 0.99 for 99th percentile
+    * @return values at the given quantiles, all taken from the same bucket counts
+    */
+   public long[] getValuesAtQuantiles(final double... quantiles) {
+      final long[] counts = copyBucketCounts();
+      final long recordedCount = sum(counts);
+      final long[] values = new long[quantiles.length];
+      for (int idx = 0; idx < quantiles.length; idx++) {
+         values[idx] = valueAtQuantile(counts, recordedCount, quantiles[idx]);
+      }
+
+      return values;
+   }
+
+   private long valueAtQuantile(final long[] counts, final long recordedCount, final double quantile) {
+      if (recordedCount == 0) {
+         return 0;
+      }
+
+      final long rank = Math.max(1, (long) Math.ceil(quantile * recordedCount));
+      long seen = 0;
+      for (int idx = 0; idx < BUCKET_COUNT; idx++) {
+         seen += counts[idx];
+         if (seen >= rank) {
+            return Math.min(highestEquivalentValue(idx), max.get());
+         }
+      }
+
+      return max.get();
+   }
+
+   private long[] copyBucketCounts() {
+      final long[] counts = new long[BUCKET_COUNT];
+      for (int idx = 0; idx < BUCKET_COUNT; idx++) {
+         counts[idx] = bucketCounts.get(idx);
+      }
+
+      return counts;
+   }
+
+   private static long sum(final long[] counts) {
+      long total = 0;
+      for (final long count : counts) {
+         total += count;
+      }
+
+      return total;
+   }
+
+   static int bucketIndex(final long value) {
+      if (value < 2 * SUB_BUCKET_COUNT) {
+         return (int) value;
+      }
+
+      final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+      return (shift + 1) * SUB_BUCKET_COUNT + (int) ((value >>> shift) - SUB_BUCKET_COUNT);
+   }
+
+   static long highestEquivalentValue(final int bucketIndex) {
+      if (bucketIndex < 2 * SUB_BUCKET_COUNT) {
+         return bucketIndex;
+      }
+
+      final int shift = bucketIndex / SUB_BUCKET_COUNT - 1;
+      final long subBucket = bucketIndex % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+      return ((subBucket + 1) << shift) - 1;
+   }
+
+   @Override
+   public String toString() {
+      final long[] counts = copyBucketCounts();
+      final long recordedCount = sum(counts);
+      return String.format("count=%s, p50=%s, p90=%s, p99=%s, p999=%s, max=%s",
+         recordedCount, valueAtQuantile(counts, recordedCount, 0.5), valueAtQuantile(counts, recordedCount, 0.9),
+         valueAtQuantile(counts, recordedCount, 0.99), valueAtQuantile(counts, recordedCount, 0.999), getMax());
+   }
+}
@@ -0,0 +1,108 @@
+/*
+A Java-based HTTP stub server
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.database;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compressed prefix tree, which answers the question: values of which stored keys are prefixes of the given text.
+ * Not thread safe for writes, once built it can be shared between readers.
+ */
+final class RadixTree<V> {
+
+   private final Node<V> root;
+
+   RadixTree() {
+      this.root = new Node<V>("");
+   }
+
+   void put(final String key, final V value) {
+      Node<V> node = root;
+      int position = 0;
+
+      while (position < key.length()) {
+         final char edge = key.charAt(position);
+         final Node<V> child = node.children.get(edge);
+
+         if (child == null) {
+            final Node<V> leaf = new Node<V>(key.substring(position));
+            node.children.put(edge, leaf);
+            node = leaf;
+            break;
+         }
+
+         final int commonLength = commonPrefixLength(child.label, key, position);
+         if (commonLength < child.label.length()) {
+            final Node<V> split = new Node<V>(child.label.substring(0, commonLength));
+            child.label = child.label.substring(commonLength);
+            split.children.put(child.label.charAt(0), child);
+            node.children.put(edge, split);
+            node = split;
+         } else {
+            node = child;
+         }
+         position += commonLength;
+      }
+
+      node.values.add(value);
+   }
+
+   void collectValuesOfPrefixes(final String text, final List<V> collector) {
+      Node<V> node = root;
+      int position = 0;
+
+      collector.addAll(node.values);
+      while (position < text.length()) {
+         final Node<V> child = node.children.get(text.charAt(position));
+         if (child == null || !text.startsWith(child.label, position)) {
+            return;
+         }
+         collector.addAll(child.values);
+         position += child.label.length();
+         node = child;
+      }
+   }
+
+   private static int commonPrefixLength(final String label, final String key, final int keyOffset) {
+      final int maxLength = Math.min(label.length(), key.length() - keyOffset);
+      int length = 0;
+      while (length < maxLength && label.charAt(length) == key.charAt(keyOffset + length)) {
+         length++;
+      }
+
+      return length;
+   }
+
+   private static final class Node<V> {
+
+      private String label;
+      private final List<V> values;
+      private final Map<Character, Node<V>> children;
+
+      private Node(final String label) {
+         this.label = label;
+         this.values = new ArrayList<V>(1);
+         this.children = new HashMap<Character, Node<V>>();
+      }
+   }
+}
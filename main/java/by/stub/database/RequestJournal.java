@@ -0,0 +1,375 @@
+/*
+HTTP stub server written in Java with embedded Jetty
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.database;
+
+import by.stub.utils.ObjectUtils;
+import by.stub.utils.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Journal of requests served by the stubs portal, kept in a fixed number of fixed size binary records
+ * outside of heap. Once the journal is full, the newest record overwrites the oldest one.
+ * <p>
+ * Writers claim records by sequence number and never wait for readers. A writer only waits for another one,
+ * which still writes the same record after the whole journal was written over meanwhile. Every record is
+ * guarded by a version, which is negated while the record is written: readers copy the record and drop it
+ * if its version changed meanwhile, so queries never lock out the writers.
+ * <p>
+ * The records can be kept in a memory mapped file, in which case the journal survives restarts. Mapped records carry
+ * a checksum, so records which were not written completely before the process stopped are dropped on recovery.
+ */
+public final class RequestJournal {
+
+   public static final int DEFAULT_CAPACITY = 32768;
+   public static final int UNMATCHED_STUB_ID = -1;
+   // Request headers worth journaling, other headers are not recorded
+   static final String[] JOURNALED_HEADERS = {"content-type", "accept", "user-agent", "x-request-id", "x-correlation-id"};
+
+   static final int RECORD_BYTES = 512;
+   private static final int FILE_MAGIC = 0x534A524E;
+   // Bumped whenever the record layout changes, so files written with another layout are started afresh
+   private static final int FILE_LAYOUT_VERSION = 2;
+   static final int FILE_HEADER_BYTES = 64;
+   private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+   private static final long FNV_PRIME = 0x100000001b3L;
+
+   private static final int SEQUENCE_OFFSET = 0;
+   private static final int RECEIVED_OFFSET = 8;
+   private static final int DURATION_OFFSET = 16;
+   private static final int BODY_HASH_OFFSET = 24;
+   private static final int STUB_ID_OFFSET = 32;
+   private static final int STATUS_OFFSET = 36;
+   private static final int METHOD_OFFSET = 40;
+   private static final int METHOD_MAX_BYTES = 14;
+   private static final int URL_OFFSET = 56;
+   private static final int URL_MAX_BYTES = 254;
+   private static final int HEADERS_OFFSET = 312;
+   private static final int CHECKSUM_OFFSET = RECORD_BYTES - 4;
+   private static final int HEADERS_MAX_BYTES = CHECKSUM_OFFSET - HEADERS_OFFSET - 2;
+
+   private final ByteBuffer records;
+   private final int capacity;
+   private final File file;
+   // Negated sequence number while the record is written, zero before it is first written, otherwise the sequence number it holds
+   private final AtomicLongArray versions;
+   private final AtomicLong lastSequence;
+
+   private RequestJournal(final ByteBuffer records, final int capacity, final File file) {
+      this.records = records;
+      this.capacity = capacity;
+      this.file = file;
+      this.versions = new AtomicLongArray(capacity);
+      this.lastSequence = new AtomicLong(0);
+   }
+
+   /**
+    * @param capacity number of journaled requests, after which the oldest requests are overwritten
+    * @return journal kept in memory allocated outside of heap
+    */
+   public static RequestJournal inMemory(final int capacity) {
+      return new RequestJournal(ByteBuffer.allocateDirect(capacity * RECORD_BYTES), capacity, null);
+   }
+
+   /**
+    * Maps the given file, creating it if needed. Requests journaled in the file before are kept, unless the file
+    * was written with a different capacity, in which case it is started afresh
+    *
+    * @param capacity number of journaled requests, after which the oldest requests are overwritten
+    * @return journal kept in the memory mapped file
+    */
+   public static RequestJournal mappedTo(final File file, final int capacity) throws IOException {
+      final long fileBytes = FILE_HEADER_BYTES + (long) capacity * RECORD_BYTES;
+      final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+      try {
+         final FileChannel channel = randomAccessFile.getChannel();
+         final boolean isJournalFile = channel.size() == fileBytes;
+         final ByteBuffer mappedFile = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileBytes);
+         final boolean isCompatible = isJournalFile
+            && mappedFile.getInt(0) == FILE_MAGIC
+            && mappedFile.getInt(4) == RECORD_BYTES
+            && mappedFile.getInt(8) == capacity
+            && mappedFile.getInt(12) == FILE_LAYOUT_VERSION;
+
+         mappedFile.position(FILE_HEADER_BYTES);
+         final RequestJournal journal = new RequestJournal(mappedFile.slice(), capacity, file);
+         if (isCompatible) {
+            journal.recover();
+         } else {
+            journal.clear();
+            mappedFile.putInt(0, FILE_MAGIC);
+            mappedFile.putInt(4, RECORD_BYTES);
+            mappedFile.putInt(8, capacity);
+            mappedFile.putInt(12, FILE_LAYOUT_VERSION);
+         }
+
+         return journal;
+      } finally {
+         // The mapping stays valid after the file is closed
+         randomAccessFile.close();
+      }
+   }
+
+   /**
+    * Records one served request. Method, URL and header values longer than their fields are truncated
+    *
+    * @param stubId         index of the matched stub, or {@link #UNMATCHED_STUB_ID}
+    * @param bodyHash       hash of the request body, see {@link #hashBody(String)}
+    * @param receivedMillis time the request was received at
+    * @param durationMicros time taken to respond to the request
+    */
+   public void record(final String method,
+                      final String url,
+                      final Map<String, String> headers,
+                      final long bodyHash,
+                      final int stubId,
+                      final int status,
+                      final long receivedMillis,
+                      final long durationMicros) {
+      final long sequence = lastSequence.incrementAndGet();
+      final int slot = slotOf(sequence);
+      final int offset = slot * RECORD_BYTES;
+
+      if (!claimSlot(slot, sequence)) {
+         return;
+      }
+      records.putLong(offset + SEQUENCE_OFFSET, sequence);
+      records.putLong(offset + RECEIVED_OFFSET, receivedMillis);
+      records.putLong(offset + DURATION_OFFSET, durationMicros);
+      records.putLong(offset + BODY_HASH_OFFSET, bodyHash);
+      records.putInt(offset + STUB_ID_OFFSET, stubId);
+      records.putInt(offset + STATUS_OFFSET, status);
+      putString(offset + METHOD_OFFSET, method, METHOD_MAX_BYTES);
+      putString(offset + URL_OFFSET, url, URL_MAX_BYTES);
+      putString(offset + HEADERS_OFFSET, journaledHeaders(headers), HEADERS_MAX_BYTES);
+      if (ObjectUtils.isNotNull(file)) {
+         records.putInt(offset + CHECKSUM_OFFSET, checksumOf(offset));
+      }
+      versions.set(slot, sequence);
+   }
+
+   /**
+    * Marks the slot as written by the given sequence, so that two writers never write the same record at once
+    *
+    * @return false if a writer of a later sequence already claimed the slot, which overwrites this record anyway
+    */
+   private boolean claimSlot(final int slot, final long sequence) {
+      while (true) {
+         final long version = versions.get(slot);
+         if (Math.abs(version) > sequence) {
+            return false;
+         } else if (version < 0) {
+            // Writer of an earlier sequence was lapped by the whole journal, it is about to finish the record
+            Thread.yield();
+         } else if (versions.compareAndSet(slot, version, -sequence)) {
+            // Unlike a plain volatile write, the swap also keeps the record writes that follow from moving ahead of it
+            return true;
+         }
+      }
+   }
+
+   /**
+    * Scans the journal from the newest request to the oldest one
+    *
+    * @param stubId     index of the matched stub, {@link #UNMATCHED_STUB_ID} for unmatched requests, or null for any
+    * @param fromMillis earliest time of received requests, inclusive
+    * @param toMillis   latest time of received requests, inclusive
+    * @param urlPattern pattern found in URLs of requests, or null for any
+    * @param limit      maximum number of returned requests
+    * @return matching requests, newest first
+    */
+   public List<RequestJournalEntry> query(final Integer stubId,
+                                          final long fromMillis,
+                                          final long toMillis,
+                                          final Pattern urlPattern,
+                                          final int limit) {
+      final List<RequestJournalEntry> entries = new ArrayList<RequestJournalEntry>();
+      final long newestSequence = lastSequence.get();
+      final long oldestSequence = Math.max(1, newestSequence - capacity + 1);
+
+      for (long sequence = newestSequence; sequence >= oldestSequence && entries.size() < limit; sequence--) {
+         final RequestJournalEntry entry = read(sequence);
+         if (ObjectUtils.isNull(entry)) {
+            continue;
+         }
+         if (ObjectUtils.isNotNull(stubId) && entry.getStubId() != stubId) {
+            continue;
+         }
+         if (entry.getReceivedMillis() < fromMillis || entry.getReceivedMillis() > toMillis) {
+            continue;
+         }
+         if (ObjectUtils.isNotNull(urlPattern) && !urlPattern.matcher(entry.getUrl()).find()) {
+            continue;
+         }
+         entries.add(entry);
+      }
+
+      return entries;
+   }
+
+   /**
+    * @return number of requests recorded since the journal was created, including overwritten ones
+    */
+   public long getRecorded() {
+      return lastSequence.get();
+   }
+
+   public int getCapacity() {
+      return capacity;
+   }
+
+   /**
+    * @return file the journal is mapped to, or null if it is kept in memory only
+    */
+   public File getFile() {
+      return file;
+   }
+
+   /**
+    * @return 64-bit FNV-1a hash of the body characters, or zero if there is no body
+    */
+   public static long hashBody(final String body) {
+      if (!StringUtils.isSet(body)) {
+         return 0;
+      }
+      long hash = FNV_OFFSET_BASIS;
+      for (int idx = 0; idx < body.length(); idx++) {
+         final char character = body.charAt(idx);
+         hash = (hash ^ (character & 0xff)) * FNV_PRIME;
+         hash = (hash ^ (character >>> 8)) * FNV_PRIME;
+      }
+
+      return hash;
+   }
+
+   /**
+    * @return copy of the request recorded with the given sequence number, or null if it was overwritten or is being written
+    */
+   private RequestJournalEntry read(final long sequence) {
+      final int slot = slotOf(sequence);
+      if (versions.get(slot) != sequence) {
+         return null;
+      }
+      final int offset = slot * RECORD_BYTES;
+      final RequestJournalEntry entry = new RequestJournalEntry(
+         records.getLong(offset + SEQUENCE_OFFSET),
+         records.getLong(offset + RECEIVED_OFFSET),
+         records.getLong(offset + DURATION_OFFSET),
+         records.getLong(offset + BODY_HASH_OFFSET),
+         records.getInt(offset + STUB_ID_OFFSET),
+         records.getInt(offset + STATUS_OFFSET),
+         getString(offset + METHOD_OFFSET),
+         getString(offset + URL_OFFSET),
+         getString(offset + HEADERS_OFFSET));
+
+      // A writer started overwriting the record while it was copied. Unlike a plain volatile read, the read-modify-write
+      // keeps the copying reads above from moving past the check
+      if (versions.getAndAdd(slot, 0) != sequence || entry.getSequence() != sequence) {
+         return null;
+      }
+
+      return entry;
+   }
+
+   private void recover() {
+      long newestSequence = 0;
+      for (int slot = 0; slot < capacity; slot++) {
+         final int offset = slot * RECORD_BYTES;
+         final long sequence = records.getLong(offset + SEQUENCE_OFFSET);
+         if (sequence > 0 && slotOf(sequence) == slot && records.getInt(offset + CHECKSUM_OFFSET) == checksumOf(offset)) {
+            versions.set(slot, sequence);
+            newestSequence = Math.max(newestSequence, sequence);
+         }
+      }
+      lastSequence.set(newestSequence);
+   }
+
+   private void clear() {
+      for (int slot = 0; slot < capacity; slot++) {
+         records.putLong(slot * RECORD_BYTES + SEQUENCE_OFFSET, 0);
+      }
+   }
+
+   /**
+    * @return CRC-32 of the record at the given offset, without its checksum field
+    */
+   private int checksumOf(final int offset) {
+      final ByteBuffer record = records.duplicate();
+      record.limit(offset + CHECKSUM_OFFSET);
+      record.position(offset);
+      final CRC32 crc = new CRC32();
+      crc.update(record);
+
+      return (int) crc.getValue();
+   }
+
+   private int slotOf(final long sequence) {
+      return (int) ((sequence - 1) % capacity);
+   }
+
+   private static String journaledHeaders(final Map<String, String> headers) {
+      final StringBuilder builder = new StringBuilder();
+      for (final String name : JOURNALED_HEADERS) {
+         final String value = headers.get(name);
+         if (ObjectUtils.isNotNull(value)) {
+            builder.append(name).append(": ").append(value).append('\n');
+         }
+      }
+
+      return builder.toString();
+   }
+
+   /**
+    * Writes the string length in two bytes followed by its UTF-8 bytes, truncated to whole characters
+    */
+   private void putString(final int offset, final String value, final int maxBytes) {
+      final byte[] bytes = StringUtils.isSet(value) ? value.getBytes(StringUtils.charsetUTF8()) : new byte[]{};
+      int length = Math.min(bytes.length, maxBytes);
+      // Do not cut a multi-byte character in half
+      while (length < bytes.length && length > 0 && (bytes[length] & 0xc0) == 0x80) {
+         length--;
+      }
+      records.putShort(offset, (short) length);
+      for (int idx = 0; idx < length; idx++) {
+         records.put(offset + 2 + idx, bytes[idx]);
+      }
+   }
+
+   private String getString(final int offset) {
+      final int length = records.getShort(offset) & 0xffff;
+      final byte[] bytes = new byte[length];
+      for (int idx = 0; idx < length; idx++) {
+         bytes[idx] = records.get(offset + 2 + idx);
+      }
+
+      return new String(bytes, StringUtils.charsetUTF8());
+   }
+}
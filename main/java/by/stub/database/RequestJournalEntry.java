@@ -0,0 +1,109 @@
+/*
+HTTP stub server written in Java with embedded Jetty
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.database;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Copy of one request recorded in the {@link RequestJournal}
+ */
+public final class RequestJournalEntry {
+
+   private final long sequence;
+   private final long receivedMillis;
+   private final long durationMicros;
+   private final long bodyHash;
+   private final int stubId;
+   private final int status;
+   private final String method;
+   private final String url;
+   private final String headerLines;
+
+   RequestJournalEntry(final long sequence,
+                       final long receivedMillis,
+                       final long durationMicros,
+                       final long bodyHash,
+                       final int stubId,
+                       final int status,
+                       final String method,
+                       final String url,
+                       final String headerLines) {
+      this.sequence = sequence;
+      this.receivedMillis = receivedMillis;
+      this.durationMicros = durationMicros;
+      this.bodyHash = bodyHash;
+      this.stubId = stubId;
+      this.status = status;
+      this.method = method;
+      this.url = url;
+      this.headerLines = headerLines;
+   }
+
+   public long getSequence() {
+      return sequence;
+   }
+
+   public long getReceivedMillis() {
+      return receivedMillis;
+   }
+
+   public long getDurationMicros() {
+      return durationMicros;
+   }
+
+   public long getBodyHash() {
+      return bodyHash;
+   }
+
+   /**
+    * @return index of the matched stub, or {@link RequestJournal#UNMATCHED_STUB_ID}
+    */
+   public int getStubId() {
+      return stubId;
+   }
+
+   public int getStatus() {
+      return status;
+   }
+
+   public String getMethod() {
+      return method;
+   }
+
+   public String getUrl() {
+      return url;
+   }
+
+   /**
+    * @return journaled request headers in the order they were recorded
+    */
+   public Map<String, String> getHeaders() {
+      final Map<String, String> headers = new LinkedHashMap<String, String>();
+      for (final String headerLine : headerLines.split("\n")) {
+         final int separator = headerLine.indexOf(": ");
+         if (separator > 0) {
+            headers.put(headerLine.substring(0, separator), headerLine.substring(separator + 2));
+         }
+      }
+
+      return headers;
+   }
+}
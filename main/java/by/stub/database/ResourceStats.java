@@ -0,0 +1,62 @@
+/*
+HTTP stub server written in Java with embedded Jetty
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.database;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hits of one stub, with histograms of time taken to match requests to stubs and to handle matched requests,
+ * in microseconds. Stats of the same stub are updated by many threads at once, so hits are counted in striped cells.
+ */
+public final class ResourceStats {
+
+   private final LongAdder hits = new LongAdder();
+   private final LatencyHistogram matchingMicros = new LatencyHistogram();
+   private final LatencyHistogram handlingMicros = new LatencyHistogram();
+
+   void recordHit(final long matchingNanos) {
+      hits.increment();
+      matchingMicros.record(TimeUnit.NANOSECONDS.toMicros(matchingNanos));
+   }
+
+   void recordHandling(final long handlingNanos) {
+      handlingMicros.record(TimeUnit.NANOSECONDS.toMicros(handlingNanos));
+   }
+
+   public long getHits() {
+      return hits.sum();
+   }
+
+   /**
+    * @return histogram of time in microseconds taken to find the stub matching a request
+    */
+   public LatencyHistogram getMatchingMicros() {
+      return matchingMicros;
+   }
+
+   /**
+    * @return histogram of time in microseconds from receiving a matched request to sending the response,
+    * including stubbed latency
+    */
+   public LatencyHistogram getHandlingMicros() {
+      return handlingMicros;
+   }
+}
@@ -0,0 +1,203 @@
+/*
+A Java-based HTTP stub server
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.database;
+
+import by.stub.utils.ObjectUtils;
+import by.stub.yaml.stubs.StubHttpLifecycle;
+import by.stub.yaml.stubs.StubMatchResult;
+import by.stub.yaml.stubs.StubRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded cache of match results, keyed by fingerprint of the incoming request. The fingerprint
+ * consists only of what stubs are compared on: method, URL, query, values of the headers named by
+ * at least one stub and, if at least one stub has post body, the incoming post body.
+ * <p>
+ * Misses are cached too, so repeated requests that match no stub are not compared again.
+ * The cache belongs to a single snapshot of the stubbed data, and is discarded together with it.
+ * <p>
+ * Lookups never lock, a hit only marks the cached result as referenced, unless it is marked already. Results are
+ * evicted in clock order, skipping those referenced since the clock hand last passed them (second chance).
+ * Only caching of new results is serialized, which follows a full match of the request anyway.
+ */
+final class StubMatchCache {
+
+   private final int capacity;
+   private final String[] fingerprintHeaderNames;
+   private final boolean isPostBodyFingerprinted;
+   private final ConcurrentHashMap<Fingerprint, CachedResult> cachedResults;
+   // Clock of cached results in order they were cached, grows up to capacity. Guarded by itself
+   private final List<CachedResult> clock;
+   private int clockHand;
+
+   StubMatchCache(final List<StubHttpLifecycle> stubHttpLifecycles, final int capacity) {
+      final TreeSet<String> headerNames = new TreeSet<String>();
+      boolean hasStubbedPostBody = false;
+      for (final StubHttpLifecycle stubHttpLifecycle : stubHttpLifecycles) {
+         final StubRequest stubRequest = stubHttpLifecycle.getRequest();
+         headerNames.addAll(stubRequest.getHeaders().keySet());
+         hasStubbedPostBody |= stubRequest.hasPostBody();
+      }
+      // Authorization header is checked after request was matched, it does not affect the match
+      headerNames.remove(StubRequest.AUTH_HEADER);
+
+      this.capacity = capacity;
+      this.fingerprintHeaderNames = headerNames.toArray(new String[headerNames.size()]);
+      this.isPostBodyFingerprinted = hasStubbedPostBody;
+      this.cachedResults = new ConcurrentHashMap<Fingerprint, CachedResult>();
+      this.clock = new ArrayList<CachedResult>();
+      this.clockHand = 0;
+   }
+
+   Fingerprint fingerprint(final StubRequest assertingRequest) {
+      final Map<String, String> assertingHeaders = assertingRequest.getHeaders();
+      final String[] headerValues = new String[fingerprintHeaderNames.length];
+      for (int idx = 0; idx < fingerprintHeaderNames.length; idx++) {
+         headerValues[idx] = assertingHeaders.get(fingerprintHeaderNames[idx]);
+      }
+      final String post = isPostBodyFingerprinted ? assertingRequest.getPost() : null;
+
+      return new Fingerprint(assertingRequest.getMethodMask(), assertingRequest.getCustomMethods(), assertingRequest.getRawUrl(), assertingRequest.getQuery(), headerValues, post);
+   }
+
+   /**
+    * @return cached result, which must not be modified, or null if request with the given fingerprint was not matched yet
+    */
+   StubMatchResult get(final Fingerprint fingerprint) {
+      final CachedResult cachedResult = cachedResults.get(fingerprint);
+      if (ObjectUtils.isNull(cachedResult)) {
+         return null;
+      }
+      // Hot results are read over and over, writing the flag only once keeps them from contending
+      if (!cachedResult.isReferenced) {
+         cachedResult.isReferenced = true;
+      }
+
+      return cachedResult.matchResult;
+   }
+
+   /**
+    * @param matchResult result to cache, it is copied because the incoming request keeps its own result
+    */
+   void put(final Fingerprint fingerprint, final StubMatchResult matchResult) {
+      final StubMatchResult copiedResult = new StubMatchResult();
+      copiedResult.copyFrom(matchResult);
+      final CachedResult cachedResult = new CachedResult(fingerprint, copiedResult);
+
+      synchronized (clock) {
+         // Another thread may have matched the same request meanwhile
+         if (cachedResults.containsKey(fingerprint)) {
+            return;
+         }
+         if (clock.size() < capacity) {
+            clock.add(cachedResult);
+            cachedResults.put(fingerprint, cachedResult);
+            return;
+         }
+
+         CachedResult evictedResult = clock.get(clockHand);
+         while (evictedResult.isReferenced) {
+            evictedResult.isReferenced = false;
+            clockHand = (clockHand + 1) % capacity;
+            evictedResult = clock.get(clockHand);
+         }
+         cachedResults.remove(evictedResult.fingerprint);
+         clock.set(clockHand, cachedResult);
+         cachedResults.put(fingerprint, cachedResult);
+         clockHand = (clockHand + 1) % capacity;
+      }
+   }
+
+   int size() {
+      return cachedResults.size();
+   }
+
+   private static final class CachedResult {
+
+      private final Fingerprint fingerprint;
+      private final StubMatchResult matchResult;
+      private volatile boolean isReferenced;
+
+      private CachedResult(final Fingerprint fingerprint, final StubMatchResult matchResult) {
+         this.fingerprint = fingerprint;
+         this.matchResult = matchResult;
+      }
+   }
+
+   static final class Fingerprint {
+
+      private final int methodMask;
+      private final Set<String> customMethods;
+      private final String url;
+      private final Map<String, String> query;
+      private final String[] headerValues;
+      private final String post;
+      private final int hashCode;
+
+      private Fingerprint(final int methodMask, final Set<String> customMethods, final String url, final Map<String, String> query, final String[] headerValues, final String post) {
+         this.methodMask = methodMask;
+         this.customMethods = customMethods;
+         this.url = url;
+         // Copied, since the key outlives the incoming request
+         this.query = new HashMap<String, String>(query);
+         this.headerValues = headerValues;
+         this.post = post;
+
+         int result = methodMask;
+         result = 31 * result + customMethods.hashCode();
+         result = 31 * result + (url != null ? url.hashCode() : 0);
+         result = 31 * result + this.query.hashCode();
+         result = 31 * result + Arrays.hashCode(headerValues);
+         result = 31 * result + (post != null ? post.hashCode() : 0);
+         this.hashCode = result;
+      }
+
+      @Override
+      public boolean equals(final Object o) {
+         if (this == o) {
+            return true;
+         } else if (!(o instanceof Fingerprint)) {
+            return false;
+         }
+
+         final Fingerprint that = (Fingerprint) o;
+         return hashCode == that.hashCode
+            && methodMask == that.methodMask
+            && customMethods.equals(that.customMethods)
+            && (url != null ? url.equals(that.url) : that.url == null)
+            && query.equals(that.query)
+            && Arrays.equals(headerValues, that.headerValues)
+            && (post != null ? post.equals(that.post) : that.post == null);
+      }
+
+      @Override
+      public int hashCode() {
+         return hashCode;
+      }
+   }
+}
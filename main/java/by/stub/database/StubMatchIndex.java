@@ -0,0 +1,219 @@
+/*
+A Java-based HTTP stub server
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.database;
+
+import by.stub.utils.ObjectUtils;
+import by.stub.utils.RegexUtils;
+import by.stub.utils.StringUtils;
+import by.stub.yaml.stubs.StubHttpLifecycle;
+import by.stub.yaml.stubs.StubHttpMethod;
+import by.stub.yaml.stubs.StubRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Load time index of stubbed requests, which narrows down the stubs that an incoming request
+ * has to be compared to. Stubs are bucketed by HTTP method, then stubs with literal URL are looked up
+ * by exact URL and stubs with regex URL by literal URL prefix. Stubs without a literal URL prefix
+ * are always treated as candidates.
+ * <p>
+ * Optionally, regex URLs are instead combined into one {@link UrlAutomaton} per HTTP method, so that stubs
+ * with regex URL become candidates only when their URL regex fully matches. Regexes which the automaton
+ * cannot express are still looked up by literal URL prefix.
+ * <p>
+ * The index is immutable once built, it must be rebuilt whenever stubbed data changes.
+ */
+final class StubMatchIndex {
+
+   // Stubs that do not specify HTTP method match any method
+   private final UrlBucket anyMethodUrlBucket;
+   // Indexed by the position of the method bit in the method mask
+   private final UrlBucket[] standardMethodUrlBuckets;
+   private final Map<String, UrlBucket> customMethodUrlBuckets;
+
+   StubMatchIndex(final List<StubHttpLifecycle> stubHttpLifecycles) {
+      this(stubHttpLifecycles, false);
+   }
+
+   /**
+    * @param isUrlAutomatonEnabled whether regex URLs are matched by a combined automaton
+    */
+   StubMatchIndex(final List<StubHttpLifecycle> stubHttpLifecycles, final boolean isUrlAutomatonEnabled) {
+      this.anyMethodUrlBucket = new UrlBucket();
+      this.standardMethodUrlBuckets = new UrlBucket[StubHttpMethod.values().length];
+      this.customMethodUrlBuckets = new HashMap<String, UrlBucket>();
+
+      for (int listIndex = 0; listIndex < stubHttpLifecycles.size(); listIndex++) {
+         final StubRequest stubRequest = stubHttpLifecycles.get(listIndex).getRequest();
+         final String stubbedUrl = stubRequest.getRawUrl();
+         final boolean isExactUrl = isExactUrl(stubbedUrl);
+         final String urlKey = isExactUrl ? stubbedUrl : extractUrlPrefix(stubbedUrl);
+         final UrlRegexParser.Node urlRegex = (isUrlAutomatonEnabled && !isExactUrl && StringUtils.isSet(stubbedUrl)) ? UrlRegexParser.parse(stubbedUrl) : null;
+
+         final int methodMask = stubRequest.getMethodMask();
+         final Set<String> customMethods = stubRequest.getCustomMethods();
+         if (methodMask == 0 && customMethods.isEmpty()) {
+            anyMethodUrlBucket.add(urlKey, isExactUrl, urlRegex, listIndex);
+         }
+         for (int remainingMask = methodMask; remainingMask != 0; remainingMask &= remainingMask - 1) {
+            getOrCreateStandardMethodUrlBucket(Integer.numberOfTrailingZeros(remainingMask)).add(urlKey, isExactUrl, urlRegex, listIndex);
+         }
+         for (final String customMethod : customMethods) {
+            getOrCreateCustomMethodUrlBucket(customMethod).add(urlKey, isExactUrl, urlRegex, listIndex);
+         }
+      }
+   }
+
+   /**
+    * @param assertingRequest incoming request
+    * @return indexes of stubs that may match the given request, in their original order
+    */
+   List<Integer> findCandidates(final StubRequest assertingRequest) {
+      final String url = StringUtils.isSet(assertingRequest.getRawUrl()) ? assertingRequest.getRawUrl() : "";
+      final List<Integer> candidates = new ArrayList<Integer>();
+
+      anyMethodUrlBucket.collect(url, candidates);
+      for (int remainingMask = assertingRequest.getMethodMask(); remainingMask != 0; remainingMask &= remainingMask - 1) {
+         collectCandidates(standardMethodUrlBuckets[Integer.numberOfTrailingZeros(remainingMask)], url, candidates);
+      }
+      for (final String customMethod : assertingRequest.getCustomMethods()) {
+         collectCandidates(customMethodUrlBuckets.get(customMethod), url, candidates);
+      }
+
+      // Candidates come from different buckets, the first stubbed match must still win
+      Collections.sort(candidates);
+      removeSortedDuplicates(candidates);
+
+      return candidates;
+   }
+
+   private static void collectCandidates(final UrlBucket urlBucket, final String url, final List<Integer> candidates) {
+      if (ObjectUtils.isNotNull(urlBucket)) {
+         urlBucket.collect(url, candidates);
+      }
+   }
+
+   private UrlBucket getOrCreateStandardMethodUrlBucket(final int methodBitIndex) {
+      if (ObjectUtils.isNull(standardMethodUrlBuckets[methodBitIndex])) {
+         standardMethodUrlBuckets[methodBitIndex] = new UrlBucket();
+      }
+
+      return standardMethodUrlBuckets[methodBitIndex];
+   }
+
+   private UrlBucket getOrCreateCustomMethodUrlBucket(final String customMethod) {
+      UrlBucket urlBucket = customMethodUrlBuckets.get(customMethod);
+      if (ObjectUtils.isNull(urlBucket)) {
+         urlBucket = new UrlBucket();
+         customMethodUrlBuckets.put(customMethod, urlBucket);
+      }
+
+      return urlBucket;
+   }
+
+   /**
+    * Mirrors the order of checks in StubRequest when URLs are matched
+    *
+    * @return true, if only the URL equal to the stubbed one can match
+    */
+   private static boolean isExactUrl(final String stubbedUrl) {
+      if (!StringUtils.isSet(stubbedUrl)) {
+         return false;
+      } else if (StringUtils.isWithinSquareBrackets(stubbedUrl)) {
+         return true;
+      } else if (RegexUtils.isLiteral(stubbedUrl)) {
+         return true;
+      }
+
+      return ObjectUtils.isNull(RegexUtils.compilePattern(stubbedUrl));
+   }
+
+   /**
+    * @return literal text which any matching URL must start with, empty string when any URL can match
+    */
+   private static String extractUrlPrefix(final String stubbedUrl) {
+      if (!StringUtils.isSet(stubbedUrl)) {
+         return "";
+      }
+
+      return RegexUtils.extractLiteralPrefix(stubbedUrl);
+   }
+
+   private static void removeSortedDuplicates(final List<Integer> sorted) {
+      for (int idx = sorted.size() - 1; idx > 0; idx--) {
+         if (sorted.get(idx).equals(sorted.get(idx - 1))) {
+            sorted.remove(idx);
+         }
+      }
+   }
+
+   private static final class UrlBucket {
+
+      private final Map<String, List<Integer>> exactUrls;
+      private final RadixTree<Integer> urlPrefixes;
+      private final List<Integer> anyUrl;
+      private final UrlAutomaton urlRegexes;
+
+      private UrlBucket() {
+         this.exactUrls = new HashMap<String, List<Integer>>();
+         this.urlPrefixes = new RadixTree<Integer>();
+         this.anyUrl = new ArrayList<Integer>();
+         this.urlRegexes = new UrlAutomaton();
+      }
+
+      /**
+       * @param urlRegex parsed URL regex to match by automaton, or null
+       */
+      private void add(final String urlKey, final boolean isExactUrl, final UrlRegexParser.Node urlRegex, final int listIndex) {
+         if (ObjectUtils.isNotNull(urlRegex)) {
+            urlRegexes.add(urlRegex, listIndex);
+         } else if (isExactUrl) {
+            List<Integer> exactUrlIndexes = exactUrls.get(urlKey);
+            if (ObjectUtils.isNull(exactUrlIndexes)) {
+               exactUrlIndexes = new ArrayList<Integer>(1);
+               exactUrls.put(urlKey, exactUrlIndexes);
+            }
+            exactUrlIndexes.add(listIndex);
+         } else if (urlKey.isEmpty()) {
+            anyUrl.add(listIndex);
+         } else {
+            urlPrefixes.put(urlKey, listIndex);
+         }
+      }
+
+      private void collect(final String url, final List<Integer> candidates) {
+         candidates.addAll(anyUrl);
+
+         final List<Integer> exactUrlIndexes = exactUrls.get(url);
+         if (ObjectUtils.isNotNull(exactUrlIndexes)) {
+            candidates.addAll(exactUrlIndexes);
+         }
+         urlPrefixes.collectValuesOfPrefixes(url, candidates);
+         if (!urlRegexes.isEmpty()) {
+            urlRegexes.collectMatches(url, candidates);
+         }
+      }
+   }
+}
@@ -0,0 +1,109 @@
+/*
+HTTP stub server written in Java with embedded Jetty
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.database;
+
+import by.stub.exception.Stubby4JException;
+import by.stub.utils.ObjectUtils;
+import by.stub.utils.ReflectionUtils;
+import by.stub.yaml.YamlProperties;
+import by.stub.yaml.stubs.StubHttpLifecycle;
+import by.stub.yaml.stubs.StubResponse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Properties of a stub request and its responses, as listed on the status page. Views are computed once,
+ * when the stubbed data is loaded or changed, instead of reflecting over the stub on every page load.
+ * <p>
+ * Linked properties may hold whole files, their content is loaded on demand through the admin portal,
+ * so views only keep a marker that they are set, without reading the content
+ */
+public final class StubPropertyView {
+
+   public static final List<String> LINKED_PROPERTIES = Collections.unmodifiableList(Arrays.asList(YamlProperties.FILE, YamlProperties.BODY, YamlProperties.POST));
+   private static final String LINKED_PROPERTY_MARKER = "linked";
+
+   private final StubHttpLifecycle stubHttpLifecycle;
+   private final int resourceIndex;
+   private final Map<String, String> requestProperties;
+   private final List<Map<String, String>> responseProperties;
+
+   private StubPropertyView(final StubHttpLifecycle stubHttpLifecycle,
+                            final int resourceIndex,
+                            final Map<String, String> requestProperties,
+                            final List<Map<String, String>> responseProperties) {
+      this.stubHttpLifecycle = stubHttpLifecycle;
+      this.resourceIndex = resourceIndex;
+      this.requestProperties = requestProperties;
+      this.responseProperties = responseProperties;
+   }
+
+   static StubPropertyView of(final StubHttpLifecycle stubHttpLifecycle, final int resourceIndex) {
+      final List<StubResponse> allResponses = stubHttpLifecycle.getAllResponses();
+      final List<Map<String, String>> responseProperties = new ArrayList<Map<String, String>>(allResponses.size());
+      for (final StubResponse stubResponse : allResponses) {
+         responseProperties.add(propertiesOf(stubResponse));
+      }
+
+      return new StubPropertyView(stubHttpLifecycle, resourceIndex, propertiesOf(stubHttpLifecycle.getRequest()), Collections.unmodifiableList(responseProperties));
+   }
+
+   private static Map<String, String> propertiesOf(final Object stubObject) {
+      if (ObjectUtils.isNull(stubObject)) {
+         return Collections.emptyMap();
+      }
+
+      final Map<String, String> properties;
+      try {
+         properties = ReflectionUtils.getProperties(stubObject, LINKED_PROPERTIES, LINKED_PROPERTY_MARKER);
+      } catch (final Exception ex) {
+         throw new Stubby4JException(String.format("Could not read properties of %s: %s", stubObject.getClass().getSimpleName(), ex.toString()));
+      }
+
+      return Collections.unmodifiableMap(new HashMap<String, String>(properties));
+   }
+
+   /**
+    * @return the stub, which holds live state not kept in the view, ie.: next sequenced response
+    */
+   public StubHttpLifecycle getStubHttpLifecycle() {
+      return stubHttpLifecycle;
+   }
+
+   public int getResourceIndex() {
+      return resourceIndex;
+   }
+
+   public Map<String, String> getRequestProperties() {
+      return requestProperties;
+   }
+
+   /**
+    * @return properties of every response, in the order responses are sequenced
+    */
+   public List<Map<String, String>> getResponseProperties() {
+      return responseProperties;
+   }
+}
@@ -21,45 +21,70 @@ package by.stub.database;
 
 import by.stub.cli.ANSITerminal;
 import by.stub.client.StubbyResponse;
-import by.stub.handlers.UnusedStubsHandler;
 import by.stub.http.StubbyHttpTransport;
 import by.stub.utils.ObjectUtils;
-import by.stub.utils.ReflectionUtils;
 import by.stub.yaml.YamlParser;
-import by.stub.yaml.YamlProperties;
 import by.stub.yaml.stubs.NotFoundStubResponse;
 import by.stub.yaml.stubs.RedirectStubResponse;
 import by.stub.yaml.stubs.StubHttpLifecycle;
+import by.stub.yaml.stubs.StubMatchResult;
 import by.stub.yaml.stubs.StubRequest;
 import by.stub.yaml.stubs.StubResponse;
 import by.stub.yaml.stubs.UnauthorizedStubResponse;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import static by.stub.utils.FileUtils.BR;
 
 public class StubbedDataManager {
 
    private final File dataYaml;
-   private final List<StubHttpLifecycle> stubHttpLifecycles;
    private StubbyHttpTransport stubbyHttpTransport;
-   private final ConcurrentHashMap<String, AtomicLong> resourceStats;
+   private final int matchCacheSize;
+   private final boolean isUrlAutomatonEnabled;
+   private final LongAdder matchCacheHits;
+   private final LongAdder matchCacheMisses;
+   private final LongAdder unmatchedRequests;
+   private final LongAdder unauthorizedRequests;
+   private final LongAdder redirectedRequests;
+   private final LatencyHistogram reloadMillis;
+   // Readers only ever dereference the current snapshot, writers are serialized and publish a modified copy
+   private volatile StubbedDataSnapshot snapshot;
 
    public StubbedDataManager(final File dataYaml, final List<StubHttpLifecycle> stubHttpLifecycles) {
+      this(dataYaml, stubHttpLifecycles, 0, false);
+   }
+
+   public StubbedDataManager(final File dataYaml, final List<StubHttpLifecycle> stubHttpLifecycles, final int matchCacheSize) {
+      this(dataYaml, stubHttpLifecycles, matchCacheSize, false);
+   }
+
+   /**
+    * @param matchCacheSize        maximum number of cached match results, match results are not cached if zero
+    * @param isUrlAutomatonEnabled whether stubbed regex URLs are matched by one combined automaton, instead of one by one
+    */
+   public StubbedDataManager(final File dataYaml, final List<StubHttpLifecycle> stubHttpLifecycles, final int matchCacheSize, final boolean isUrlAutomatonEnabled) {
       this.dataYaml = dataYaml;
-      this.stubHttpLifecycles = Collections.synchronizedList(stubHttpLifecycles);
       this.stubbyHttpTransport = new StubbyHttpTransport();
-      this.resourceStats = new ConcurrentHashMap<String, AtomicLong>();
+      this.matchCacheSize = matchCacheSize;
+      this.isUrlAutomatonEnabled = isUrlAutomatonEnabled;
+      this.matchCacheHits = new LongAdder();
+      this.matchCacheMisses = new LongAdder();
+      this.unmatchedRequests = new LongAdder();
+      this.unauthorizedRequests = new LongAdder();
+      this.redirectedRequests = new LongAdder();
+      this.reloadMillis = new LatencyHistogram();
+      this.snapshot = new StubbedDataSnapshot(new ArrayList<StubHttpLifecycle>(stubHttpLifecycles), matchCacheSize, isUrlAutomatonEnabled, null);
    }
 
    public StubResponse findStubResponseFor(final StubRequest assertingRequest) {
@@ -72,111 +97,269 @@ public class StubbedDataManager {
 
    private StubResponse identifyStubResponseType(final StubHttpLifecycle assertingLifecycle) {
 
-      final StubHttpLifecycle matchedLifecycle = getMatchedStubHttpLifecycle(assertingLifecycle);
-      if (ObjectUtils.isNull(matchedLifecycle)) {
+      // Stats and usage are recorded in the same snapshot the request was matched against
+      final StubbedDataSnapshot currentSnapshot = snapshot;
+      final StubMatchResult matchResult = matchStubHttpLifecycle(assertingLifecycle, currentSnapshot);
+      if (!matchResult.isMatched()) {
+         unmatchedRequests.increment();
          return new NotFoundStubResponse();
       }
+      final StubHttpLifecycle matchedLifecycle = matchResult.getMatchedLifecycle();
 
-      UnusedStubsHandler.userStubRequests.add(matchedLifecycle.getRequest());
+      currentSnapshot.markUsed(matchedLifecycle.getResourceIndex());
 
-      final String resourceId = matchedLifecycle.getResourceId();
-      resourceStats.putIfAbsent(resourceId, new AtomicLong(0));
-      resourceStats.get(resourceId).incrementAndGet();
+      final ResourceStats matchedResourceStats = currentSnapshot.getOrCreateResourceStats(matchedLifecycle.getResourceIndex());
+      if (ObjectUtils.isNotNull(matchedResourceStats)) {
+         matchedResourceStats.recordHit(matchResult.getMatchingNanos());
+      }
 
       final StubResponse stubResponse = matchedLifecycle.getResponse(true);
       if (matchedLifecycle.isRestricted() && matchedLifecycle.hasNotAuthorized(assertingLifecycle)) {
+         unauthorizedRequests.increment();
          return new UnauthorizedStubResponse();
       }
 
       if (stubResponse.hasHeaderLocation()) {
+         redirectedRequests.increment();
          return RedirectStubResponse.newRedirectStubResponse(stubResponse);
       }
 
       if (stubResponse.isRecordingRequired()) {
-         final String recordingSource = stubResponse.getBody();
-         try {
-            final StubbyResponse stubbyResponse = stubbyHttpTransport.fetchRecordableHTTPResponse(matchedLifecycle.getRequest(), recordingSource);
-            ReflectionUtils.injectObjectFields(stubResponse, YamlProperties.BODY, stubbyResponse.getContent());
-         } catch (Exception e) {
-            ANSITerminal.error(String.format("Could not record from %s: %s", recordingSource, e.toString()));
-         }
+         return recordStubResponse(matchedLifecycle, stubResponse);
       }
       return stubResponse;
    }
 
-   private synchronized StubHttpLifecycle getMatchedStubHttpLifecycle(final StubHttpLifecycle assertingLifecycle) {
-      final int listIndex = stubHttpLifecycles.indexOf(assertingLifecycle);
-      if (listIndex < 0) {
-         return StubHttpLifecycle.NULL;
+   /**
+    * Published responses are never modified, so the content recorded from the source is kept in a response of its own
+    *
+    * @return response with the recorded content, or the stubbed response if the source could not be recorded
+    */
+   private StubResponse recordStubResponse(final StubHttpLifecycle matchedLifecycle, final StubResponse stubResponse) {
+      final StubResponse recordedResponse = stubResponse.getRecordedResponse();
+      if (ObjectUtils.isNotNull(recordedResponse)) {
+         return recordedResponse;
       }
-      final StubHttpLifecycle foundStubHttpLifecycle = stubHttpLifecycles.get(listIndex);
-      foundStubHttpLifecycle.setResourceId(listIndex);
 
-      return foundStubHttpLifecycle;
+      final String recordingSource = stubResponse.getBody();
+      try {
+         final StubbyResponse stubbyResponse = stubbyHttpTransport.fetchRecordableHTTPResponse(matchedLifecycle.getRequest(), recordingSource);
+         return stubResponse.recordWith(stubbyResponse.getContent());
+      } catch (Exception e) {
+         final String recordingError = String.format("Could not record from %s: %s", recordingSource, e.toString());
+         ErrorAccounting.record(ErrorCategory.RECORDING, recordingError);
+         ANSITerminal.error(recordingError);
+      }
+      return stubResponse;
    }
 
-   public synchronized StubHttpLifecycle getMatchedStubHttpLifecycle(final int index) {
+   private StubMatchResult matchStubHttpLifecycle(final StubHttpLifecycle assertingLifecycle, final StubbedDataSnapshot currentSnapshot) {
+      final long matchingStart = System.nanoTime();
+      final StubRequest assertingRequest = assertingLifecycle.getRequest();
+      final StubMatchResult matchResult = new StubMatchResult();
+      assertingRequest.setMatchResult(matchResult);
+
+      // Resource IDs are assigned when snapshot is published, so matched stub is not modified here
+      final StubMatchCache matchCache = currentSnapshot.getStubMatchCache();
+      final StubMatchCache.Fingerprint fingerprint = ObjectUtils.isNotNull(matchCache) ? matchCache.fingerprint(assertingRequest) : null;
+      final StubMatchResult cachedResult = ObjectUtils.isNotNull(matchCache) ? matchCache.get(fingerprint) : null;
+
+      if (ObjectUtils.isNotNull(cachedResult)) {
+         matchCacheHits.increment();
+         matchResult.copyFrom(cachedResult);
+      } else {
+         final List<StubHttpLifecycle> stubHttpLifecycles = currentSnapshot.getStubHttpLifecycles();
+         for (final int listIndex : currentSnapshot.getStubMatchIndex().findCandidates(assertingRequest)) {
+            final StubHttpLifecycle foundStubHttpLifecycle = stubHttpLifecycles.get(listIndex);
+            if (foundStubHttpLifecycle.getRequest().matches(assertingRequest, matchResult)) {
+               matchResult.setMatchedLifecycle(foundStubHttpLifecycle);
+               break;
+            }
+         }
 
-      if (!isStubHttpLifecycleExistsByIndex(index)) {
+         if (ObjectUtils.isNotNull(matchCache)) {
+            matchCacheMisses.increment();
+            matchCache.put(fingerprint, matchResult);
+         }
+      }
+      matchResult.setMatchingNanos(System.nanoTime() - matchingStart);
+
+      return matchResult;
+   }
+
+   public StubHttpLifecycle getMatchedStubHttpLifecycle(final int index) {
+      final List<StubHttpLifecycle> stubHttpLifecycles = snapshot.getStubHttpLifecycles();
+      if (stubHttpLifecycles.size() - 1 < index) {
          return StubHttpLifecycle.NULL;
       }
       return stubHttpLifecycles.get(index);
    }
 
+   // Every published snapshot has its own empty match cache, so cached results never outlive stubbed data they came from
    public synchronized boolean resetStubHttpLifecycles(final List<StubHttpLifecycle> stubHttpLifecycles) {
-      this.stubHttpLifecycles.clear();
-      final boolean added = this.stubHttpLifecycles.addAll(stubHttpLifecycles);
-      if (added) {
-         updateResourceIDHeaders();
-      }
-      return added;
+      snapshot = new StubbedDataSnapshot(new ArrayList<StubHttpLifecycle>(stubHttpLifecycles), matchCacheSize, isUrlAutomatonEnabled, snapshot);
+
+      return !stubHttpLifecycles.isEmpty();
    }
 
    public synchronized void refreshStubbedData(final YamlParser yamlParser) throws Exception {
+      final long reloadStart = System.nanoTime();
       final List<StubHttpLifecycle> stubHttpLifecycles = yamlParser.parse(this.dataYaml.getParent(), dataYaml);
       resetStubHttpLifecycles(stubHttpLifecycles);
+      recordReload(reloadStart);
    }
 
    public synchronized void refreshStubbedData(final YamlParser yamlParser, final String post) throws Exception {
+      final long reloadStart = System.nanoTime();
       final List<StubHttpLifecycle> stubHttpLifecycles = yamlParser.parse(this.dataYaml.getParent(), post);
       resetStubHttpLifecycles(stubHttpLifecycles);
+      recordReload(reloadStart);
    }
 
    public synchronized String refreshStubbedData(final YamlParser yamlParser, final String put, final int stubIndexToUpdate) throws Exception {
+      final long reloadStart = System.nanoTime();
       final List<StubHttpLifecycle> stubHttpLifecycles = yamlParser.parse(this.dataYaml.getParent(), put);
       final StubHttpLifecycle newStubHttpLifecycle = stubHttpLifecycles.get(0);
       updateStubHttpLifecycleByIndex(stubIndexToUpdate, newStubHttpLifecycle);
+      recordReload(reloadStart);
 
       return newStubHttpLifecycle.getRequest().getUrl();
    }
 
+   private void recordReload(final long reloadStart) {
+      reloadMillis.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - reloadStart));
+   }
+
    // Just a shallow copy that protects collection from modification, the points themselves are not copied
    public List<StubHttpLifecycle> getStubHttpLifecycles() {
-      return new LinkedList<StubHttpLifecycle>(stubHttpLifecycles);
+      return new LinkedList<StubHttpLifecycle>(snapshot.getStubHttpLifecycles());
    }
 
-   // Just a shallow copy that protects collection from modification, the points themselves are not copied
-   public ConcurrentHashMap<String, AtomicLong> getResourceStats() {
-      return new ConcurrentHashMap<String, AtomicLong>(resourceStats);
+   /**
+    * @return property views of the current stubs by their index, computed when the stubs were loaded
+    */
+   public List<StubPropertyView> getStubPropertyViews() {
+      return snapshot.getStubPropertyViews();
+   }
+
+   /**
+    * @return view of the current snapshot of the stubbed data, unaffected by later changes to the stubbed data
+    */
+   public StubbedDataView getStubbedDataView() {
+      return new StubbedDataView(snapshot);
+   }
+
+   /**
+    * @return current stubs split by whether any request matched them since the stubbed data was last changed
+    */
+   public StubUsage getStubUsage() {
+      final StubbedDataSnapshot currentSnapshot = snapshot;
+      final List<StubHttpLifecycle> stubHttpLifecycles = currentSnapshot.getStubHttpLifecycles();
+      final List<StubHttpLifecycle> usedStubHttpLifecycles = new ArrayList<StubHttpLifecycle>();
+      final List<StubHttpLifecycle> unusedStubHttpLifecycles = new ArrayList<StubHttpLifecycle>();
+      for (int index = 0; index < stubHttpLifecycles.size(); index++) {
+         if (currentSnapshot.isUsed(index)) {
+            usedStubHttpLifecycles.add(stubHttpLifecycles.get(index));
+         } else {
+            unusedStubHttpLifecycles.add(stubHttpLifecycles.get(index));
+         }
+      }
+
+      return new StubUsage(usedStubHttpLifecycles, unusedStubHttpLifecycles);
+   }
+
+   /**
+    * @param resourceIndex index of the stub which handled the request
+    * @param handlingNanos time from receiving the request to sending the response
+    */
+   public void recordHandling(final int resourceIndex, final long handlingNanos) {
+      final ResourceStats resourceStats = snapshot.getOrCreateResourceStats(resourceIndex);
+      if (ObjectUtils.isNotNull(resourceStats)) {
+         resourceStats.recordHandling(handlingNanos);
+      }
+   }
+
+   /**
+    * @return stats of stubs hit at least once, by stub index in ascending order
+    */
+   public Map<Integer, ResourceStats> getResourceStats() {
+      return getResourceStats(0, Integer.MAX_VALUE);
+   }
+
+   /**
+    * @param fromIndex index of the first stub, inclusive
+    * @param toIndex   index of the last stub, exclusive
+    * @return stats of stubs in the given index range hit at least once, by stub index in ascending order
+    */
+   public Map<Integer, ResourceStats> getResourceStats(final int fromIndex, final int toIndex) {
+      return getStubbedDataView().getResourceStats(fromIndex, toIndex);
    }
 
    public String getResourceStatsAsCsv() {
-      final String csvNoHeader = resourceStats.toString().replaceAll("\\{|\\}", "").replaceAll(", ", BR).replaceAll("=", ",");
-      return String.format("resourceId,hits%s%s", BR, csvNoHeader);
+      final StringBuilder builder = new StringBuilder("resourceId,hits,matchingP50Micros,matchingP99Micros,handlingP50Micros,handlingP99Micros");
+      for (final Map.Entry<Integer, ResourceStats> entry : getResourceStats().entrySet()) {
+         final long[] matchingMicros = entry.getValue().getMatchingMicros().getValuesAtQuantiles(0.5, 0.99);
+         final long[] handlingMicros = entry.getValue().getHandlingMicros().getValuesAtQuantiles(0.5, 0.99);
+         builder.append(BR).append(entry.getKey()).append(',').append(entry.getValue().getHits())
+            .append(',').append(matchingMicros[0]).append(',').append(matchingMicros[1])
+            .append(',').append(handlingMicros[0]).append(',').append(handlingMicros[1]);
+      }
+
+      return builder.toString();
+   }
+
+   /**
+    * @return number of requests no stub matched
+    */
+   public long getUnmatchedRequests() {
+      return unmatchedRequests.sum();
+   }
+
+   /**
+    * @return number of requests to restricted stubs, which were not authorized
+    */
+   public long getUnauthorizedRequests() {
+      return unauthorizedRequests.sum();
    }
 
-   public synchronized String getOnlyStubRequestUrl() {
-      return stubHttpLifecycles.get(0).getRequest().getUrl();
+   /**
+    * @return number of requests redirected by stubs with location header
+    */
+   public long getRedirectedRequests() {
+      return redirectedRequests.sum();
+   }
+
+   /**
+    * @return histogram of time in milliseconds taken to parse and publish stubbed data, when it is reloaded or changed
+    */
+   public LatencyHistogram getReloadMillis() {
+      return reloadMillis;
+   }
+
+   public boolean isMatchCacheEnabled() {
+      return matchCacheSize > 0;
+   }
+
+   public long getMatchCacheHits() {
+      return matchCacheHits.sum();
+   }
+
+   public long getMatchCacheMisses() {
+      return matchCacheMisses.sum();
+   }
+
+   public String getOnlyStubRequestUrl() {
+      return snapshot.getStubHttpLifecycles().get(0).getRequest().getUrl();
    }
 
    public File getDataYaml() {
       return dataYaml;
    }
 
-   public synchronized Map<File, Long> getExternalFiles() {
+   public Map<File, Long> getExternalFiles() {
       final Set<String> escrow = new HashSet<String>();
       final Map<File, Long> externalFiles = new HashMap<File, Long>();
-      for (StubHttpLifecycle cycle : stubHttpLifecycles) {
+      for (StubHttpLifecycle cycle : snapshot.getStubHttpLifecycles()) {
          storeExternalFileInCache(escrow, externalFiles, cycle.getRequest().getRawFile());
          storeExternalFileInCache(escrow, externalFiles, cycle.getResponse(false).getRawFile());
       }
@@ -199,39 +382,34 @@ public class StubbedDataManager {
       }
    }
 
-   public synchronized String getMarshalledYaml() {
+   public String getMarshalledYaml() {
       final StringBuilder builder = new StringBuilder();
-      for (final StubHttpLifecycle cycle : stubHttpLifecycles) {
+      for (final StubHttpLifecycle cycle : snapshot.getStubHttpLifecycles()) {
          builder.append(cycle.getHttpLifeCycleAsYaml()).append(BR + BR);
       }
 
       return builder.toString();
    }
 
-   public synchronized String getMarshalledYamlByIndex(final int httpLifecycleIndex) {
-      return stubHttpLifecycles.get(httpLifecycleIndex).getHttpLifeCycleAsYaml();
+   public String getMarshalledYamlByIndex(final int httpLifecycleIndex) {
+      return snapshot.getStubHttpLifecycles().get(httpLifecycleIndex).getHttpLifeCycleAsYaml();
    }
 
    public synchronized void updateStubHttpLifecycleByIndex(final int httpLifecycleIndex, final StubHttpLifecycle newStubHttpLifecycle) {
-      deleteStubHttpLifecycleByIndex(httpLifecycleIndex);
-      stubHttpLifecycles.add(httpLifecycleIndex, newStubHttpLifecycle);
-      updateResourceIDHeaders();
+      final ArrayList<StubHttpLifecycle> stubHttpLifecycles = snapshot.copyStubHttpLifecycles();
+      stubHttpLifecycles.set(httpLifecycleIndex, newStubHttpLifecycle);
+      snapshot = new StubbedDataSnapshot(stubHttpLifecycles, matchCacheSize, isUrlAutomatonEnabled, snapshot);
    }
 
-   public synchronized boolean isStubHttpLifecycleExistsByIndex(final int httpLifecycleIndex) {
-      return stubHttpLifecycles.size() - 1 >= httpLifecycleIndex;
+   public boolean isStubHttpLifecycleExistsByIndex(final int httpLifecycleIndex) {
+      return snapshot.getStubHttpLifecycles().size() - 1 >= httpLifecycleIndex;
    }
 
    public synchronized StubHttpLifecycle deleteStubHttpLifecycleByIndex(final int httpLifecycleIndex) {
+      final ArrayList<StubHttpLifecycle> stubHttpLifecycles = snapshot.copyStubHttpLifecycles();
       final StubHttpLifecycle removedLifecycle = stubHttpLifecycles.remove(httpLifecycleIndex);
-      updateResourceIDHeaders();
+      snapshot = new StubbedDataSnapshot(stubHttpLifecycles, matchCacheSize, isUrlAutomatonEnabled, snapshot);
 
       return removedLifecycle;
    }
-
-   private void updateResourceIDHeaders() {
-      for (int index = 0; index < stubHttpLifecycles.size(); index++) {
-         stubHttpLifecycles.get(index).setResourceId(index);
-      }
-   }
 }
\ No newline at end of file
@@ -0,0 +1,169 @@
+/*
+A Java-based HTTP stub server
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.database;
+
+import by.stub.utils.ObjectUtils;
+import by.stub.yaml.stubs.StubHttpLifecycle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Immutable view of the stubbed data, together with its match index. Changes to the stubbed data
+ * are applied to a copy, which is then published as a new snapshot, so readers never need to lock.
+ */
+final class StubbedDataSnapshot {
+
+   private final List<StubHttpLifecycle> stubHttpLifecycles;
+   private final StubMatchIndex stubMatchIndex;
+   private final StubMatchCache stubMatchCache;
+   // Created on the first hit of each stub, stubs never hit do not pay for their histograms
+   private final AtomicReferenceArray<ResourceStats> resourceStats;
+   private final List<StubPropertyView> stubPropertyViews;
+   // Stubs matched by any request, kept for the same stubs at the same indexes, so only reloaded stubs start unused
+   private final ConcurrentBitSet usedStubs;
+
+   /**
+    * @param stubHttpLifecycles list owned by the snapshot from now on, it must not be modified by the caller
+    * @param matchCacheSize     maximum number of cached match results, match results are not cached if zero
+    * @param isUrlAutomatonEnabled whether regex URLs are matched by a combined automaton
+    * @param previousSnapshot   snapshot replaced by this one, or null if there is none. Its stats are kept for stubs
+    *                           at the same indexes, its property views and usage for the same stubs at the same indexes
+    */
+   StubbedDataSnapshot(final ArrayList<StubHttpLifecycle> stubHttpLifecycles,
+                       final int matchCacheSize,
+                       final boolean isUrlAutomatonEnabled,
+                       final StubbedDataSnapshot previousSnapshot) {
+      for (int index = 0; index < stubHttpLifecycles.size(); index++) {
+         // Stubs shifted to another index are copied, the previous snapshot may still be serving them
+         stubHttpLifecycles.set(index, stubHttpLifecycles.get(index).withResourceIndex(index));
+      }
+      this.stubHttpLifecycles = Collections.unmodifiableList(stubHttpLifecycles);
+      this.stubMatchIndex = new StubMatchIndex(this.stubHttpLifecycles, isUrlAutomatonEnabled);
+      this.stubMatchCache = matchCacheSize > 0 ? new StubMatchCache(this.stubHttpLifecycles, matchCacheSize) : null;
+      this.resourceStats = new AtomicReferenceArray<ResourceStats>(stubHttpLifecycles.size());
+      if (ObjectUtils.isNotNull(previousSnapshot)) {
+         // Stubs first hit through the previous snapshot while this one is being published may lose that hit
+         for (int index = 0; index < resourceStats.length() && index < previousSnapshot.resourceStats.length(); index++) {
+            resourceStats.set(index, previousSnapshot.resourceStats.get(index));
+         }
+      }
+      this.stubPropertyViews = buildStubPropertyViews(previousSnapshot);
+      this.usedStubs = buildUsedStubs(previousSnapshot);
+   }
+
+   // Stubs matched through the previous snapshot while this one is being published may be left unmarked
+   private ConcurrentBitSet buildUsedStubs(final StubbedDataSnapshot previousSnapshot) {
+      final ConcurrentBitSet used = new ConcurrentBitSet(stubHttpLifecycles.size());
+      if (ObjectUtils.isNull(previousSnapshot)) {
+         return used;
+      }
+      final List<StubHttpLifecycle> previousStubHttpLifecycles = previousSnapshot.stubHttpLifecycles;
+      for (int index = 0; index < stubHttpLifecycles.size() && index < previousStubHttpLifecycles.size(); index++) {
+         if (previousStubHttpLifecycles.get(index) == stubHttpLifecycles.get(index) && previousSnapshot.isUsed(index)) {
+            used.set(index);
+         }
+      }
+
+      return used;
+   }
+
+   // Views depend on the stub index too, through the resource ID header of its responses
+   private List<StubPropertyView> buildStubPropertyViews(final StubbedDataSnapshot previousSnapshot) {
+      final List<StubPropertyView> previousViews = ObjectUtils.isNull(previousSnapshot) ? Collections.<StubPropertyView>emptyList() : previousSnapshot.stubPropertyViews;
+      final List<StubPropertyView> views = new ArrayList<StubPropertyView>(stubHttpLifecycles.size());
+      for (int index = 0; index < stubHttpLifecycles.size(); index++) {
+         final StubHttpLifecycle stubHttpLifecycle = stubHttpLifecycles.get(index);
+         if (index < previousViews.size() && previousViews.get(index).getStubHttpLifecycle() == stubHttpLifecycle) {
+            views.add(previousViews.get(index));
+         } else {
+            views.add(StubPropertyView.of(stubHttpLifecycle, index));
+         }
+      }
+
+      return Collections.unmodifiableList(views);
+   }
+
+   List<StubHttpLifecycle> getStubHttpLifecycles() {
+      return stubHttpLifecycles;
+   }
+
+   StubMatchIndex getStubMatchIndex() {
+      return stubMatchIndex;
+   }
+
+   /**
+    * @return match cache of this snapshot, or null if match results are not cached
+    */
+   StubMatchCache getStubMatchCache() {
+      return stubMatchCache;
+   }
+
+   /**
+    * @return stats of the stub at the given index, or null if there is no such stub or it was never hit
+    */
+   ResourceStats getResourceStats(final int index) {
+      return index >= 0 && index < resourceStats.length() ? resourceStats.get(index) : null;
+   }
+
+   /**
+    * @return stats of the stub at the given index, created if the stub is hit for the first time,
+    * or null if there is no such stub
+    */
+   ResourceStats getOrCreateResourceStats(final int index) {
+      if (index < 0 || index >= resourceStats.length()) {
+         return null;
+      }
+      final ResourceStats existingStats = resourceStats.get(index);
+      if (ObjectUtils.isNotNull(existingStats)) {
+         return existingStats;
+      }
+      // Threads racing on the first hit create their own stats, whichever is stored first is kept
+      resourceStats.compareAndSet(index, null, new ResourceStats());
+      return resourceStats.get(index);
+   }
+
+   int getResourceCount() {
+      return resourceStats.length();
+   }
+
+   /**
+    * @return property views of all stubs by their index
+    */
+   List<StubPropertyView> getStubPropertyViews() {
+      return stubPropertyViews;
+   }
+
+   void markUsed(final int index) {
+      if (index >= 0 && index < usedStubs.size()) {
+         usedStubs.set(index);
+      }
+   }
+
+   boolean isUsed(final int index) {
+      return usedStubs.get(index);
+   }
+
+   ArrayList<StubHttpLifecycle> copyStubHttpLifecycles() {
+      return new ArrayList<StubHttpLifecycle>(stubHttpLifecycles);
+   }
+}
@@ -0,0 +1,63 @@
+/*
+HTTP stub server written in Java with embedded Jetty
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.database;
+
+import by.stub.utils.ObjectUtils;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only view of one snapshot of the stubbed data, so that stubs and their stats read from it stay consistent
+ * with each other while the stubbed data is being changed
+ */
+public final class StubbedDataView {
+
+   private final StubbedDataSnapshot snapshot;
+
+   StubbedDataView(final StubbedDataSnapshot snapshot) {
+      this.snapshot = snapshot;
+   }
+
+   /**
+    * @return property views of the stubs by their index, computed when the stubs were loaded
+    */
+   public List<StubPropertyView> getStubPropertyViews() {
+      return snapshot.getStubPropertyViews();
+   }
+
+   /**
+    * @param fromIndex index of the first stub, inclusive
+    * @param toIndex   index of the last stub, exclusive
+    * @return stats of stubs in the given index range hit at least once, by stub index in ascending order
+    */
+   public Map<Integer, ResourceStats> getResourceStats(final int fromIndex, final int toIndex) {
+      final Map<Integer, ResourceStats> hitResourceStats = new LinkedHashMap<Integer, ResourceStats>();
+      for (int index = Math.max(fromIndex, 0); index < Math.min(toIndex, snapshot.getResourceCount()); index++) {
+         final ResourceStats resourceStats = snapshot.getResourceStats(index);
+         if (ObjectUtils.isNotNull(resourceStats) && resourceStats.getHits() > 0) {
+            hitResourceStats.put(index, resourceStats);
+         }
+      }
+
+      return hitResourceStats;
+   }
+}
@@ -0,0 +1,316 @@
+/*
+A Java-based HTTP stub server
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.database;
+
+import by.stub.utils.ObjectUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single automaton combined from many URL regexes, which tells in one pass over the URL which of the
+ * regexes fully match it. Regexes are compiled into one nondeterministic automaton, which is then
+ * determinized lazily: deterministic states are built only when the URLs being matched reach them,
+ * and are reused by all following URLs.
+ * <p>
+ * Not thread safe for writes, once built it can be shared between readers. Lazily built states
+ * are published through concurrent map and immutable objects, so readers never lock.
+ */
+final class UrlAutomaton {
+
+   // Memory used by lazily built deterministic states is bounded, after that transitions are computed on every URL
+   private static final long MAX_CACHED_STATE_ENTRIES = 4 * 1024 * 1024;
+   private static final int ASCII_SIZE = 128;
+
+   private static final int CODE_POINT_SET = 0;
+   private static final int SPLIT = 1;
+   private static final int ACCEPT = 2;
+
+   private int[] kinds;
+   private int[] nexts;
+   private int[] alternativeNexts;
+   private int[] acceptedValues;
+   private UrlRegexParser.CodePointSet[] codePointSets;
+   private int statesCount;
+   private int[] startStates;
+   private int startStatesCount;
+
+   private final ConcurrentHashMap<StateKey, DeterministicState> deterministicStates;
+   private final AtomicLong cachedStateEntries;
+   private volatile DeterministicState startState;
+
+   UrlAutomaton() {
+      this.kinds = new int[64];
+      this.nexts = new int[64];
+      this.alternativeNexts = new int[64];
+      this.acceptedValues = new int[64];
+      this.codePointSets = new UrlRegexParser.CodePointSet[64];
+      this.startStates = new int[16];
+      this.deterministicStates = new ConcurrentHashMap<StateKey, DeterministicState>();
+      this.cachedStateEntries = new AtomicLong(0);
+   }
+
+   /**
+    * @param regex parsed URL regex
+    * @param value value to report when the regex fully matches URL
+    */
+   void add(final UrlRegexParser.Node regex, final int value) {
+      final int acceptState = newState(ACCEPT, -1, -1, null);
+      acceptedValues[acceptState] = value;
+
+      if (startStatesCount == startStates.length) {
+         startStates = Arrays.copyOf(startStates, startStatesCount * 2);
+      }
+      startStates[startStatesCount++] = compile(regex, acceptState);
+   }
+
+   boolean isEmpty() {
+      return startStatesCount == 0;
+   }
+
+   /**
+    * @param url     URL to match
+    * @param matches values of the regexes fully matching the given URL are added to it, in ascending order
+    */
+   void collectMatches(final String url, final List<Integer> matches) {
+      DeterministicState state = getStartState();
+      for (int idx = 0; idx < url.length() && !state.isDead(); ) {
+         final int codePoint = url.codePointAt(idx);
+         idx += Character.charCount(codePoint);
+         state = transition(state, codePoint);
+      }
+
+      for (final int value : state.acceptedValues) {
+         matches.add(value);
+      }
+   }
+
+   private int compile(final UrlRegexParser.Node node, final int next) {
+      if (node instanceof UrlRegexParser.CharacterSet) {
+         return newState(CODE_POINT_SET, next, -1, ((UrlRegexParser.CharacterSet) node).getCodePoints());
+      } else if (node instanceof UrlRegexParser.Concatenation) {
+         final List<UrlRegexParser.Node> nodes = ((UrlRegexParser.Concatenation) node).getNodes();
+         int start = next;
+         for (int idx = nodes.size() - 1; idx >= 0; idx--) {
+            start = compile(nodes.get(idx), start);
+         }
+         return start;
+      } else if (node instanceof UrlRegexParser.Alternation) {
+         final List<UrlRegexParser.Node> alternatives = ((UrlRegexParser.Alternation) node).getAlternatives();
+         int start = compile(alternatives.get(alternatives.size() - 1), next);
+         for (int idx = alternatives.size() - 2; idx >= 0; idx--) {
+            start = newState(SPLIT, compile(alternatives.get(idx), next), start, null);
+         }
+         return start;
+      }
+
+      final UrlRegexParser.Repetition repetition = (UrlRegexParser.Repetition) node;
+      int start = next;
+      if (repetition.getMax() == UrlRegexParser.UNBOUNDED) {
+         final int loop = newState(SPLIT, -1, next, null);
+         // Compiling may grow the state arrays, so the array must not be dereferenced before it
+         final int loopBody = compile(repetition.getNode(), loop);
+         nexts[loop] = loopBody;
+         start = loop;
+      } else {
+         for (int count = repetition.getMin(); count < repetition.getMax(); count++) {
+            start = newState(SPLIT, compile(repetition.getNode(), start), start, null);
+         }
+      }
+      for (int count = 0; count < repetition.getMin(); count++) {
+         start = compile(repetition.getNode(), start);
+      }
+
+      return start;
+   }
+
+   private int newState(final int kind, final int next, final int alternativeNext, final UrlRegexParser.CodePointSet codePointSet) {
+      if (statesCount == kinds.length) {
+         final int newCapacity = statesCount * 2;
+         kinds = Arrays.copyOf(kinds, newCapacity);
+         nexts = Arrays.copyOf(nexts, newCapacity);
+         alternativeNexts = Arrays.copyOf(alternativeNexts, newCapacity);
+         acceptedValues = Arrays.copyOf(acceptedValues, newCapacity);
+         codePointSets = Arrays.copyOf(codePointSets, newCapacity);
+      }
+
+      kinds[statesCount] = kind;
+      nexts[statesCount] = next;
+      alternativeNexts[statesCount] = alternativeNext;
+      codePointSets[statesCount] = codePointSet;
+
+      return statesCount++;
+   }
+
+   private DeterministicState getStartState() {
+      DeterministicState state = startState;
+      if (ObjectUtils.isNull(state)) {
+         state = intern(closure(Arrays.copyOf(startStates, startStatesCount), startStatesCount));
+         startState = state;
+      }
+
+      return state;
+   }
+
+   private DeterministicState transition(final DeterministicState state, final int codePoint) {
+      if (codePoint < ASCII_SIZE) {
+         final DeterministicState cachedTransition = state.asciiTransitions[codePoint];
+         if (ObjectUtils.isNotNull(cachedTransition)) {
+            return cachedTransition;
+         }
+      }
+
+      final int[] targets = new int[state.states.length];
+      int targetsCount = 0;
+      for (final int nondeterministicState : state.states) {
+         if (kinds[nondeterministicState] == CODE_POINT_SET && codePointSets[nondeterministicState].contains(codePoint)) {
+            targets[targetsCount++] = nexts[nondeterministicState];
+         }
+      }
+
+      final DeterministicState nextState = intern(closure(targets, targetsCount));
+      if (codePoint < ASCII_SIZE && nextState.isCached) {
+         // Racing threads compute equal transitions, so whichever write wins is correct
+         state.asciiTransitions[codePoint] = nextState;
+      }
+
+      return nextState;
+   }
+
+   /**
+    * @return sorted states, which consume a code point or accept, reachable from the given states without consuming anything
+    */
+   private int[] closure(final int[] states, final int statesToVisit) {
+      final long[] visited = new long[(statesCount >> 6) + 1];
+      int[] stack = Arrays.copyOf(states, Math.max(statesToVisit, 16));
+      int stackSize = statesToVisit;
+      int[] reached = new int[Math.max(statesToVisit, 16)];
+      int reachedCount = 0;
+
+      while (stackSize > 0) {
+         final int state = stack[--stackSize];
+         if ((visited[state >> 6] & (1L << state)) != 0) {
+            continue;
+         }
+         visited[state >> 6] |= 1L << state;
+
+         if (kinds[state] == SPLIT) {
+            if (stackSize + 2 > stack.length) {
+               stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[stackSize++] = alternativeNexts[state];
+            stack[stackSize++] = nexts[state];
+         } else {
+            if (reachedCount == reached.length) {
+               reached = Arrays.copyOf(reached, reachedCount * 2);
+            }
+            reached[reachedCount++] = state;
+         }
+      }
+
+      final int[] closure = Arrays.copyOf(reached, reachedCount);
+      Arrays.sort(closure);
+
+      return closure;
+   }
+
+   private DeterministicState intern(final int[] states) {
+      final StateKey stateKey = new StateKey(states);
+      final DeterministicState cachedState = deterministicStates.get(stateKey);
+      if (ObjectUtils.isNotNull(cachedState)) {
+         return cachedState;
+      }
+
+      if (cachedStateEntries.get() >= MAX_CACHED_STATE_ENTRIES) {
+         return new DeterministicState(states, collectAcceptedValues(states), false);
+      }
+
+      final DeterministicState newState = new DeterministicState(states, collectAcceptedValues(states), true);
+      final DeterministicState racingState = deterministicStates.putIfAbsent(stateKey, newState);
+      if (ObjectUtils.isNotNull(racingState)) {
+         return racingState;
+      }
+      cachedStateEntries.addAndGet(states.length + ASCII_SIZE);
+
+      return newState;
+   }
+
+   private int[] collectAcceptedValues(final int[] states) {
+      int count = 0;
+      for (final int state : states) {
+         if (kinds[state] == ACCEPT) {
+            count++;
+         }
+      }
+
+      final int[] values = new int[count];
+      count = 0;
+      for (final int state : states) {
+         if (kinds[state] == ACCEPT) {
+            values[count++] = acceptedValues[state];
+         }
+      }
+      Arrays.sort(values);
+
+      return values;
+   }
+
+   private static final class DeterministicState {
+
+      private final int[] states;
+      private final int[] acceptedValues;
+      private final boolean isCached;
+      private final DeterministicState[] asciiTransitions;
+
+      private DeterministicState(final int[] states, final int[] acceptedValues, final boolean isCached) {
+         this.states = states;
+         this.acceptedValues = acceptedValues;
+         this.isCached = isCached;
+         this.asciiTransitions = new DeterministicState[ASCII_SIZE];
+      }
+
+      private boolean isDead() {
+         return states.length == 0;
+      }
+   }
+
+   private static final class StateKey {
+
+      private final int[] states;
+      private final int hashCode;
+
+      private StateKey(final int[] states) {
+         this.states = states;
+         this.hashCode = Arrays.hashCode(states);
+      }
+
+      @Override
+      public boolean equals(final Object o) {
+         return o instanceof StateKey && Arrays.equals(states, ((StateKey) o).states);
+      }
+
+      @Override
+      public int hashCode() {
+         return hashCode;
+      }
+   }
+}
@@ -0,0 +1,588 @@
+/*
+A Java-based HTTP stub server
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Parses the regular subset of {@link java.util.regex.Pattern} syntax, which can be matched by an automaton:
+ * literals, escapes, character classes, '.', groups, alternation and greedy or lazy quantifiers.
+ * <p>
+ * Leading '^' and trailing '$' of top level alternatives are accepted, since URL is always matched as a whole.
+ * Anything else, ie.: backreferences, lookarounds, boundaries, possessive quantifiers, inline flags or nested
+ * character classes, makes the whole regex unsupported, so that it is matched by {@link java.util.regex.Pattern} instead.
+ */
+final class UrlRegexParser {
+
+   static final int UNBOUNDED = -1;
+
+   // Bigger counted repetitions are not worth expanding into automaton states
+   private static final int MAX_COUNTED_REPETITION = 64;
+   // Counted repetitions copy their sub-regex once per count, so nested ones multiply automaton states.
+   // Regexes expanding beyond this are not worth the automaton memory either
+   private static final long MAX_EXPANDED_STATES = 10000;
+
+   private static final int[] DIGITS = {'0', '9'};
+   private static final int[] WORD_CHARACTERS = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+   private static final int[] WHITESPACES = {'\t', '\r', ' ', ' '};
+   // Without DOTALL flag, '.' does not match line terminators
+   private static final int[] LINE_TERMINATORS = {'\n', '\n', '\r', '\r', 0x85, 0x85, 0x2028, 0x2029};
+
+   private final String regex;
+   private final int end;
+   private int position;
+   private int groupDepth;
+
+   private UrlRegexParser(final String regex) {
+      this.regex = regex;
+      this.end = regex.length();
+   }
+
+   /**
+    * @param regex stubbed URL regex
+    * @return parsed regex, or null if the regex is not supported
+    */
+   static Node parse(final String regex) {
+      try {
+         final UrlRegexParser parser = new UrlRegexParser(regex);
+         final Node node = parser.parseAlternation();
+         if (parser.position != parser.end) {
+            return null;
+         }
+
+         return node;
+      } catch (final UnsupportedRegexException e) {
+         return null;
+      }
+   }
+
+   private Node parseAlternation() {
+      final List<Node> alternatives = new ArrayList<Node>();
+      alternatives.add(parseConcatenation());
+      while (position < end && regex.charAt(position) == '|') {
+         position++;
+         alternatives.add(parseConcatenation());
+      }
+
+      return alternatives.size() == 1 ? alternatives.get(0) : limitExpansion(new Alternation(alternatives));
+   }
+
+   private Node parseConcatenation() {
+      final List<Node> nodes = new ArrayList<Node>();
+      while (position < end && regex.charAt(position) != '|' && regex.charAt(position) != ')') {
+         // Whole URL is matched, so anchors at the start and the end of top level alternatives always hold
+         if (groupDepth == 0 && regex.charAt(position) == '^' && nodes.isEmpty()) {
+            position++;
+         } else if (groupDepth == 0 && regex.charAt(position) == '$' && (position + 1 == end || regex.charAt(position + 1) == '|')) {
+            position++;
+         } else {
+            nodes.add(parseQuantified(parseAtom()));
+         }
+      }
+
+      return nodes.size() == 1 ? nodes.get(0) : limitExpansion(new Concatenation(nodes));
+   }
+
+   private Node parseAtom() {
+      final int codePoint = regex.codePointAt(position);
+      position += Character.charCount(codePoint);
+
+      switch (codePoint) {
+         case '(':
+            if (position < end && regex.charAt(position) == '?') {
+               if (position + 1 < end && regex.charAt(position + 1) == ':') {
+                  position += 2;
+               } else {
+                  throw new UnsupportedRegexException();
+               }
+            }
+            groupDepth++;
+            final Node group = parseAlternation();
+            groupDepth--;
+            expect(')');
+            return group;
+         case '[':
+            return new CharacterSet(parseCharacterClass());
+         case '.':
+            return new CharacterSet(CodePointSet.negated(LINE_TERMINATORS));
+         case '\\':
+            return new CharacterSet(parseEscape());
+         case '^':
+         case '$':
+         case ')':
+         case '*':
+         case '+':
+         case '?':
+         case '{':
+            throw new UnsupportedRegexException();
+         default:
+            return new CharacterSet(CodePointSet.of(codePoint));
+      }
+   }
+
+   private Node parseQuantified(final Node node) {
+      if (position >= end) {
+         return node;
+      }
+
+      final int min;
+      final int max;
+      switch (regex.charAt(position)) {
+         case '*':
+            min = 0;
+            max = UNBOUNDED;
+            position++;
+            break;
+         case '+':
+            min = 1;
+            max = UNBOUNDED;
+            position++;
+            break;
+         case '?':
+            min = 0;
+            max = 1;
+            position++;
+            break;
+         case '{':
+            position++;
+            min = parseNumber();
+            if (position < end && regex.charAt(position) == ',') {
+               position++;
+               max = (position < end && regex.charAt(position) == '}') ? UNBOUNDED : parseNumber();
+            } else {
+               max = min;
+            }
+            expect('}');
+            if (max != UNBOUNDED && max < min) {
+               throw new UnsupportedRegexException();
+            }
+            break;
+         default:
+            return node;
+      }
+
+      // Lazy quantifier matches the same URLs as the greedy one, possessive quantifier does not
+      if (position < end && regex.charAt(position) == '?') {
+         position++;
+      }
+      if (position < end && "*+?{".indexOf(regex.charAt(position)) >= 0) {
+         throw new UnsupportedRegexException();
+      }
+
+      return limitExpansion(new Repetition(node, min, max));
+   }
+
+   private static Node limitExpansion(final Node node) {
+      if (node.getExpandedStates() > MAX_EXPANDED_STATES) {
+         throw new UnsupportedRegexException();
+      }
+
+      return node;
+   }
+
+   private int parseNumber() {
+      final int start = position;
+      while (position < end && isAsciiDigit(regex.charAt(position)) && position - start < 3) {
+         position++;
+      }
+      if (position == start || (position < end && isAsciiDigit(regex.charAt(position)))) {
+         throw new UnsupportedRegexException();
+      }
+
+      final int number = Integer.parseInt(regex.substring(start, position));
+      if (number > MAX_COUNTED_REPETITION) {
+         throw new UnsupportedRegexException();
+      }
+
+      return number;
+   }
+
+   private static boolean isAsciiDigit(final char character) {
+      return character >= '0' && character <= '9';
+   }
+
+   private CodePointSet parseCharacterClass() {
+      final boolean isNegated = position < end && regex.charAt(position) == '^';
+      if (isNegated) {
+         position++;
+      }
+
+      final List<int[]> ranges = new ArrayList<int[]>();
+      boolean isFirst = true;
+      while (true) {
+         if (position >= end) {
+            throw new UnsupportedRegexException();
+         }
+
+         final int codePoint = regex.codePointAt(position);
+         if (codePoint == ']' && !isFirst) {
+            position++;
+            break;
+         } else if (codePoint == '[' || codePoint == ']' || regex.startsWith("&&", position)) {
+            throw new UnsupportedRegexException();
+         }
+         isFirst = false;
+
+         final CodePointSet rangeStart = parseCharacterClassMember();
+         final boolean isRange = position + 1 < end && regex.charAt(position) == '-' && regex.charAt(position + 1) != ']';
+         if (!isRange) {
+            ranges.add(rangeStart.getRanges());
+            continue;
+         }
+
+         position++;
+         final CodePointSet rangeEnd = parseCharacterClassMember();
+         if (!rangeStart.isSingleCodePoint() || !rangeEnd.isSingleCodePoint() || rangeEnd.getFirstCodePoint() < rangeStart.getFirstCodePoint()) {
+            throw new UnsupportedRegexException();
+         }
+         ranges.add(new int[]{rangeStart.getFirstCodePoint(), rangeEnd.getFirstCodePoint()});
+      }
+
+      return isNegated ? CodePointSet.negated(CodePointSet.merge(ranges)) : CodePointSet.of(CodePointSet.merge(ranges));
+   }
+
+   private CodePointSet parseCharacterClassMember() {
+      final int codePoint = regex.codePointAt(position);
+      position += Character.charCount(codePoint);
+      if (codePoint == '\\') {
+         return parseEscape();
+      } else if (codePoint == '[') {
+         throw new UnsupportedRegexException();
+      }
+
+      return CodePointSet.of(codePoint);
+   }
+
+   private CodePointSet parseEscape() {
+      if (position >= end) {
+         throw new UnsupportedRegexException();
+      }
+
+      final int codePoint = regex.codePointAt(position);
+      position += Character.charCount(codePoint);
+      switch (codePoint) {
+         case 'd':
+            return CodePointSet.of(DIGITS);
+         case 'D':
+            return CodePointSet.negated(DIGITS);
+         case 'w':
+            return CodePointSet.of(WORD_CHARACTERS);
+         case 'W':
+            return CodePointSet.negated(WORD_CHARACTERS);
+         case 's':
+            return CodePointSet.of(WHITESPACES);
+         case 'S':
+            return CodePointSet.negated(WHITESPACES);
+         case 't':
+            return CodePointSet.of('\t');
+         case 'n':
+            return CodePointSet.of('\n');
+         case 'r':
+            return CodePointSet.of('\r');
+         case 'f':
+            return CodePointSet.of('\f');
+         case 'a':
+            return CodePointSet.of('\u0007');
+         case 'e':
+            return CodePointSet.of('\u001B');
+         case 'x':
+            return CodePointSet.of(parseHex(2));
+         case 'u':
+            return CodePointSet.of(parseHex(4));
+         default:
+            // Backslash before a non-alphabetic character always quotes it, other escapes are not supported
+            if (Character.isLetterOrDigit(codePoint)) {
+               throw new UnsupportedRegexException();
+            }
+            return CodePointSet.of(codePoint);
+      }
+   }
+
+   private int parseHex(final int digits) {
+      if (position + digits > end) {
+         throw new UnsupportedRegexException();
+      }
+
+      int value = 0;
+      for (int idx = 0; idx < digits; idx++) {
+         final int digit = Character.digit(regex.charAt(position++), 16);
+         if (digit < 0) {
+            throw new UnsupportedRegexException();
+         }
+         value = value * 16 + digit;
+      }
+
+      // Surrogate escapes may combine into a single code point, not worth handling
+      if (Character.isSurrogate((char) value)) {
+         throw new UnsupportedRegexException();
+      }
+
+      return value;
+   }
+
+   private void expect(final char expected) {
+      if (position >= end || regex.charAt(position) != expected) {
+         throw new UnsupportedRegexException();
+      }
+      position++;
+   }
+
+   abstract static class Node {
+
+      /**
+       * @return number of automaton states the node compiles into, with counted repetitions expanded
+       */
+      abstract long getExpandedStates();
+   }
+
+   static final class CharacterSet extends Node {
+
+      private final CodePointSet codePoints;
+
+      private CharacterSet(final CodePointSet codePoints) {
+         this.codePoints = codePoints;
+      }
+
+      CodePointSet getCodePoints() {
+         return codePoints;
+      }
+
+      @Override
+      long getExpandedStates() {
+         return 1;
+      }
+   }
+
+   static final class Concatenation extends Node {
+
+      private final List<Node> nodes;
+
+      private Concatenation(final List<Node> nodes) {
+         this.nodes = Collections.unmodifiableList(nodes);
+      }
+
+      List<Node> getNodes() {
+         return nodes;
+      }
+
+      @Override
+      long getExpandedStates() {
+         long expandedStates = 0;
+         for (final Node node : nodes) {
+            expandedStates += node.getExpandedStates();
+         }
+         return expandedStates;
+      }
+   }
+
+   static final class Alternation extends Node {
+
+      private final List<Node> alternatives;
+
+      private Alternation(final List<Node> alternatives) {
+         this.alternatives = Collections.unmodifiableList(alternatives);
+      }
+
+      List<Node> getAlternatives() {
+         return alternatives;
+      }
+
+      @Override
+      long getExpandedStates() {
+         // Each alternative but the last is entered through a split state
+         long expandedStates = alternatives.size() - 1;
+         for (final Node alternative : alternatives) {
+            expandedStates += alternative.getExpandedStates();
+         }
+         return expandedStates;
+      }
+   }
+
+   static final class Repetition extends Node {
+
+      private final Node node;
+      private final int min;
+      private final int max;
+
+      private Repetition(final Node node, final int min, final int max) {
+         this.node = node;
+         this.min = min;
+         this.max = max;
+      }
+
+      Node getNode() {
+         return node;
+      }
+
+      int getMin() {
+         return min;
+      }
+
+      /**
+       * @return maximum number of repetitions, or {@link #UNBOUNDED}
+       */
+      int getMax() {
+         return max;
+      }
+
+      @Override
+      long getExpandedStates() {
+         final long nodeStates = node.getExpandedStates();
+         // Mandatory copies, then either a looping split state and one copy, or an optional copy behind a split state per count
+         final long optionalStates = (max == UNBOUNDED) ? 1 + nodeStates : (max - min) * (1 + nodeStates);
+         return min * nodeStates + optionalStates;
+      }
+   }
+
+   /**
+    * Set of Unicode code points, kept as sorted inclusive ranges. Membership of ASCII code points is
+    * looked up in a bit mask, since URLs are mostly ASCII.
+    */
+   static final class CodePointSet {
+
+      private final int[] ranges;
+      private final long asciiLow;
+      private final long asciiHigh;
+
+      private CodePointSet(final int[] ranges) {
+         this.ranges = ranges;
+
+         long low = 0;
+         long high = 0;
+         for (int codePoint = 0; codePoint < 128; codePoint++) {
+            if (containsSlow(codePoint)) {
+               if (codePoint < 64) {
+                  low |= 1L << codePoint;
+               } else {
+                  high |= 1L << (codePoint - 64);
+               }
+            }
+         }
+         this.asciiLow = low;
+         this.asciiHigh = high;
+      }
+
+      static CodePointSet of(final int codePoint) {
+         return new CodePointSet(new int[]{codePoint, codePoint});
+      }
+
+      static CodePointSet of(final int[] ranges) {
+         return new CodePointSet(ranges);
+      }
+
+      static CodePointSet negated(final int[] ranges) {
+         final int[] negated = new int[ranges.length + 2];
+         int count = 0;
+         int nextStart = 0;
+         for (int idx = 0; idx < ranges.length; idx += 2) {
+            if (ranges[idx] > nextStart) {
+               negated[count++] = nextStart;
+               negated[count++] = ranges[idx] - 1;
+            }
+            nextStart = ranges[idx + 1] + 1;
+         }
+         if (nextStart <= Character.MAX_CODE_POINT) {
+            negated[count++] = nextStart;
+            negated[count++] = Character.MAX_CODE_POINT;
+         }
+
+         return new CodePointSet(Arrays.copyOf(negated, count));
+      }
+
+      static CodePointSet negated(final CodePointSet codePointSet) {
+         return negated(codePointSet.ranges);
+      }
+
+      /**
+       * @return sorted, non overlapping ranges covering all of the given ranges
+       */
+      static int[] merge(final List<int[]> rangesList) {
+         final List<int[]> pairs = new ArrayList<int[]>();
+         for (final int[] ranges : rangesList) {
+            for (int idx = 0; idx < ranges.length; idx += 2) {
+               pairs.add(new int[]{ranges[idx], ranges[idx + 1]});
+            }
+         }
+         Collections.sort(pairs, new Comparator<int[]>() {
+            @Override
+            public int compare(final int[] first, final int[] second) {
+               return Integer.compare(first[0], second[0]);
+            }
+         });
+
+         final int[] merged = new int[pairs.size() * 2];
+         int count = 0;
+         for (final int[] pair : pairs) {
+            if (count > 0 && pair[0] <= merged[count - 1] + 1) {
+               merged[count - 1] = Math.max(merged[count - 1], pair[1]);
+            } else {
+               merged[count++] = pair[0];
+               merged[count++] = pair[1];
+            }
+         }
+
+         return Arrays.copyOf(merged, count);
+      }
+
+      boolean contains(final int codePoint) {
+         if (codePoint < 64) {
+            return (asciiLow & (1L << codePoint)) != 0;
+         } else if (codePoint < 128) {
+            return (asciiHigh & (1L << (codePoint - 64))) != 0;
+         }
+
+         return containsSlow(codePoint);
+      }
+
+      private boolean containsSlow(final int codePoint) {
+         for (int idx = 0; idx < ranges.length && ranges[idx] <= codePoint; idx += 2) {
+            if (codePoint <= ranges[idx + 1]) {
+               return true;
+            }
+         }
+
+         return false;
+      }
+
+      int[] getRanges() {
+         return ranges;
+      }
+
+      boolean isSingleCodePoint() {
+         return ranges.length == 2 && ranges[0] == ranges[1];
+      }
+
+      int getFirstCodePoint() {
+         return ranges[0];
+      }
+   }
+
+   @SuppressWarnings("serial")
+   private static final class UnsupportedRegexException extends RuntimeException {
+
+      private UnsupportedRegexException() {
+         super(null, null, false, false);
+      }
+   }
+}
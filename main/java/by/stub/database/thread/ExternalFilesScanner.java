@@ -1,6 +1,8 @@
 package by.stub.database.thread;
 
 import by.stub.cli.ANSITerminal;
+import by.stub.database.ErrorAccounting;
+import by.stub.database.ErrorCategory;
 import by.stub.database.StubbedDataManager;
 import by.stub.yaml.YamlParser;
 
@@ -63,6 +65,7 @@ public final class ExternalFilesScanner implements Runnable {
                   stubbedDataManager.getDataYaml(),
                   BR));
             } catch (final Exception ex) {
+               ErrorAccounting.record(ErrorCategory.YAML_RELOAD, ex);
                ANSITerminal.error("Could not refresh YAML configuration: " + ex.toString());
                ANSITerminal.warn(String.format("YAML refresh aborted, previously loaded stubs remain untouched"));
             }
@@ -1,6 +1,8 @@
 package by.stub.database.thread;
 
 import by.stub.cli.ANSITerminal;
+import by.stub.database.ErrorAccounting;
+import by.stub.database.ErrorCategory;
 import by.stub.database.StubbedDataManager;
 import by.stub.yaml.YamlParser;
 
@@ -50,6 +52,7 @@ public final class MainYamlScanner implements Runnable {
                   dataYaml.getAbsolutePath(),
                   BR));
             } catch (final Exception ex) {
+               ErrorAccounting.record(ErrorCategory.YAML_RELOAD, ex);
                ANSITerminal.error("Could not refresh YAML file: " + ex.toString());
                ANSITerminal.warn(String.format("YAML refresh aborted, in-memory stubs remain untouched"));
             }
@@ -19,6 +19,8 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 
 package by.stub.handlers;
 
+import by.stub.database.ErrorAccounting;
+import by.stub.database.ErrorCategory;
 import by.stub.database.StubbedDataManager;
 import by.stub.handlers.strategy.admin.AdminResponseHandlingStrategy;
 import by.stub.handlers.strategy.admin.AdminResponseHandlingStrategyFactory;
@@ -26,6 +28,7 @@ import by.stub.javax.servlet.http.HttpServletResponseWithGetStatus;
 import by.stub.utils.ConsoleUtils;
 import by.stub.utils.HandlerUtils;
 import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.server.Request;
@@ -35,7 +38,6 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.Date;
 
 public class AdminPortalHandler extends AbstractHandler {
 
@@ -59,7 +61,7 @@ public class AdminPortalHandler extends AbstractHandler {
       wrapper.setContentType(MimeTypes.Type.TEXT_HTML_UTF_8.asString());
       wrapper.setStatus(HttpStatus.OK_200);
       wrapper.setHeader(HttpHeader.SERVER.asString(), HandlerUtils.constructHeaderServerName());
-      wrapper.setHeader(HttpHeader.DATE.asString(), new Date().toString());
+      wrapper.setHeader(HttpHeader.DATE.asString(), HandlerUtils.currentHeaderDate());
       wrapper.setHeader(HttpHeader.CACHE_CONTROL.asString(), "no-cache, no-store, must-revalidate"); // HTTP 1.1.
       wrapper.setHeader(HttpHeader.PRAGMA.asString(), "no-cache"); // HTTP 1.0.
       wrapper.setDateHeader(HttpHeader.EXPIRES.asString(), 0);
@@ -68,6 +70,10 @@ public class AdminPortalHandler extends AbstractHandler {
       try {
          strategyStubResponse.handle(request, wrapper, stubbedDataManager);
       } catch (final Exception ex) {
+         // Only POST and PUT load stubbed data, other methods fail no further than writing the response
+         if (HttpMethod.POST.is(request.getMethod()) || HttpMethod.PUT.is(request.getMethod())) {
+            ErrorAccounting.record(ErrorCategory.YAML_RELOAD, ex);
+         }
          HandlerUtils.configureErrorResponse(response, HttpStatus.INTERNAL_SERVER_ERROR_500, "Problem handling request in Admin handler: " + ex.toString());
       }
 
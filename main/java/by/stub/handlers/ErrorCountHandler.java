@@ -1,41 +1,63 @@
 package by.stub.handlers;
 
-import by.stub.cli.ANSITerminal;
+import by.stub.database.ErrorAccounting;
+import by.stub.database.ErrorCategory;
+import by.stub.database.ErrorSample;
 import by.stub.javax.servlet.http.HttpServletResponseWithGetStatus;
 import by.stub.utils.ConsoleUtils;
 import by.stub.utils.HandlerUtils;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpStatus;
-import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.json.JSONObject;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.List;
 
+/**
+ * Lists error counts by category and samples of the most recent errors, newest first, as JSON
+ */
 public class ErrorCountHandler extends AbstractHandler {
-    public static int errorCount;
 
-    @Override
-    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
-        final HttpServletResponseWithGetStatus wrapper = new HttpServletResponseWithGetStatus(response);
-        ConsoleUtils.logIncomingRequest(request);
-
-        baseRequest.setHandled(true);
-        wrapper.setContentType(MimeTypes.Type.TEXT_PLAIN_UTF_8.asString());
-        wrapper.setStatus(HttpStatus.OK_200);
-        wrapper.setHeader(HttpHeader.SERVER.asString(), HandlerUtils.constructHeaderServerName());
-
-        try {
-            final String successMessage = String.valueOf(errorCount);
-            wrapper.getWriter().println(successMessage);
-            ANSITerminal.ok(successMessage);
-        } catch (final Exception ex) {
-            HandlerUtils.configureErrorResponse(wrapper, HttpStatus.INTERNAL_SERVER_ERROR_500, ex.toString());
-        }
-
-
-    }
+   @Override
+   public void handle(final String target, final Request baseRequest, final HttpServletRequest request, final HttpServletResponse response) throws IOException, ServletException {
+      ConsoleUtils.logIncomingRequest(request);
+
+      baseRequest.setHandled(true);
+
+      final HttpServletResponseWithGetStatus wrapper = new HttpServletResponseWithGetStatus(response);
+      HandlerUtils.setResponseMainHeaders(wrapper);
+      wrapper.setHeader(HttpHeader.CONTENT_TYPE.asString(), "application/json; charset=UTF-8");
+      wrapper.setStatus(HttpStatus.OK_200);
+      wrapper.getWriter().println(toJson(ErrorAccounting.getRecentErrors()));
+      ConsoleUtils.logOutgoingResponse(request.getRequestURI(), wrapper);
+   }
+
+   static String toJson(final List<ErrorSample> recentErrors) {
+      final StringBuilder builder = new StringBuilder();
+      builder.append("{\"total\":").append(ErrorAccounting.getTotal())
+         .append(",\"counts\":{");
+      final ErrorCategory[] categories = ErrorCategory.values();
+      for (int idx = 0; idx < categories.length; idx++) {
+         builder.append(idx == 0 ? "" : ",")
+            .append(JSONObject.quote(categories[idx].getLabel())).append(':').append(ErrorAccounting.getCount(categories[idx]));
+      }
+      builder.append("},\"capacity\":").append(ErrorAccounting.SAMPLE_CAPACITY)
+         .append(",\"recent\":[");
+      for (int idx = 0; idx < recentErrors.size(); idx++) {
+         final ErrorSample sample = recentErrors.get(idx);
+         builder.append(idx == 0 ? "{" : ",{")
+            .append("\"sequence\":").append(sample.getSequence())
+            .append(",\"timestamp\":").append(sample.getTimestampMillis())
+            .append(",\"category\":").append(JSONObject.quote(sample.getCategory().getLabel()))
+            .append(",\"message\":").append(JSONObject.quote(sample.getMessage()))
+            .append('}');
+      }
+
+      return builder.append("]}").toString();
+   }
 }
@@ -0,0 +1,207 @@
+/*
+HTTP stub server written in Java with embedded Jetty
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.handlers;
+
+import by.stub.database.ErrorAccounting;
+import by.stub.database.ErrorCategory;
+import by.stub.database.LatencyHistogram;
+import by.stub.database.ResourceStats;
+import by.stub.database.StubbedDataManager;
+import by.stub.server.MonitoredThreadPool;
+import by.stub.utils.HandlerUtils;
+import by.stub.utils.ObjectUtils;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+
+/**
+ * Exports stubby counters in Prometheus text exposition format, writing every sample straight from the counters
+ * to the response. Times are exported in seconds, as Prometheus expects
+ */
+public class MetricsHandler extends AbstractHandler {
+
+   static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+   private static final long[] MICROS_BUCKET_BOUNDS = {50, 100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000, 1000000, 2500000, 5000000, 10000000};
+   private static final String[] MICROS_BUCKET_LABELS = {"0.00005", "0.0001", "0.00025", "0.0005", "0.001", "0.0025", "0.005", "0.01", "0.025", "0.05", "0.1", "0.25", "0.5", "1", "2.5", "5", "10"};
+   private static final long[] MILLIS_BUCKET_BOUNDS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+   private static final String[] MILLIS_BUCKET_LABELS = {"0.01", "0.025", "0.05", "0.1", "0.25", "0.5", "1", "2.5", "5", "10", "30"};
+
+   private final StubbedDataManager stubbedDataManager;
+   private final MonitoredThreadPool threadPool;
+
+   public MetricsHandler(final StubbedDataManager stubbedDataManager, final MonitoredThreadPool threadPool) {
+      this.stubbedDataManager = stubbedDataManager;
+      this.threadPool = threadPool;
+   }
+
+   @Override
+   public void handle(final String target, final Request baseRequest, final HttpServletRequest request, final HttpServletResponse response) throws IOException, ServletException {
+      baseRequest.setHandled(true);
+
+      HandlerUtils.setResponseMainHeaders(response);
+      response.setHeader(HttpHeader.CONTENT_TYPE.asString(), CONTENT_TYPE);
+      response.setStatus(HttpStatus.OK_200);
+
+      final PrintWriter writer = response.getWriter();
+      writeStubMetrics(writer, stubbedDataManager.getResourceStats());
+      writeRequestMetrics(writer);
+      writeReloadMetrics(writer, stubbedDataManager.getReloadMillis());
+      writeErrorMetrics(writer);
+      writeThreadPoolMetrics(writer);
+      writer.flush();
+   }
+
+   private void writeStubMetrics(final PrintWriter writer, final Map<Integer, ResourceStats> resourceStats) {
+      writeHeader(writer, "stubby_stub_hits_total", "counter", "Requests matched to the stub, by stub index.");
+      for (final Map.Entry<Integer, ResourceStats> entry : resourceStats.entrySet()) {
+         writer.write("stubby_stub_hits_total{stub=\"");
+         writer.print(entry.getKey().intValue());
+         writer.write("\"} ");
+         writer.print(entry.getValue().getHits());
+         writer.write('\n');
+      }
+
+      writeHeader(writer, "stubby_stub_matching_seconds", "histogram", "Time taken to match requests to the stub.");
+      for (final Map.Entry<Integer, ResourceStats> entry : resourceStats.entrySet()) {
+         writeMicrosHistogram(writer, "stubby_stub_matching_seconds", entry.getKey(), entry.getValue().getMatchingMicros());
+      }
+
+      writeHeader(writer, "stubby_stub_handling_seconds", "histogram", "Time from receiving requests matched to the stub to sending responses, including stubbed latency.");
+      for (final Map.Entry<Integer, ResourceStats> entry : resourceStats.entrySet()) {
+         writeMicrosHistogram(writer, "stubby_stub_handling_seconds", entry.getKey(), entry.getValue().getHandlingMicros());
+      }
+   }
+
+   private void writeRequestMetrics(final PrintWriter writer) {
+      writeSample(writer, "stubby_unmatched_requests_total", "counter", "Requests no stub matched, answered with 404.", stubbedDataManager.getUnmatchedRequests());
+      writeSample(writer, "stubby_unauthorized_requests_total", "counter", "Requests to restricted stubs without valid authorization, answered with 401.", stubbedDataManager.getUnauthorizedRequests());
+      writeSample(writer, "stubby_redirected_requests_total", "counter", "Requests redirected by stubs with location header.", stubbedDataManager.getRedirectedRequests());
+   }
+
+   private void writeReloadMetrics(final PrintWriter writer, final LatencyHistogram reloadMillis) {
+      writeHeader(writer, "stubby_reload_seconds", "histogram", "Time taken to parse and publish stubbed data, when it is reloaded or changed.");
+      writeHistogram(writer, "stubby_reload_seconds", null, reloadMillis.getCumulativeCounts(MILLIS_BUCKET_BOUNDS), MILLIS_BUCKET_LABELS, reloadMillis.getSum(), 1000);
+   }
+
+   private static void writeErrorMetrics(final PrintWriter writer) {
+      writeHeader(writer, "stubby_errors_total", "counter", "Failures of stubby, by category.");
+      for (final ErrorCategory category : ErrorCategory.values()) {
+         writer.write("stubby_errors_total{category=\"");
+         writer.write(category.getLabel());
+         writer.write("\"} ");
+         writer.print(ErrorAccounting.getCount(category));
+         writer.write('\n');
+      }
+   }
+
+   private void writeThreadPoolMetrics(final PrintWriter writer) {
+      writeSample(writer, "stubby_jetty_threads", "gauge", "Threads of the Jetty thread pool.", threadPool.getThreads());
+      writeSample(writer, "stubby_jetty_idle_threads", "gauge", "Idle threads of the Jetty thread pool.", threadPool.getIdleThreads());
+      writeSample(writer, "stubby_jetty_max_threads", "gauge", "Maximum threads of the Jetty thread pool.", threadPool.getMaxThreads());
+      writeSample(writer, "stubby_jetty_queued_jobs", "gauge", "Jobs waiting for a thread of the Jetty thread pool.", threadPool.getQueueSize());
+   }
+
+   private static void writeMicrosHistogram(final PrintWriter writer, final String name, final int stubIndex, final LatencyHistogram histogram) {
+      writeHistogram(writer, name, stubIndex, histogram.getCumulativeCounts(MICROS_BUCKET_BOUNDS), MICROS_BUCKET_LABELS, histogram.getSum(), 1000000);
+   }
+
+   /**
+    * @param stubIndex      value of the stub label, or null if the histogram is not labeled
+    * @param unitsPerSecond number of recorded units in a second
+    */
+   private static void writeHistogram(final PrintWriter writer,
+                                      final String name,
+                                      final Integer stubIndex,
+                                      final long[] cumulativeCounts,
+                                      final String[] bucketLabels,
+                                      final long sum,
+                                      final double unitsPerSecond) {
+      for (int idx = 0; idx <= bucketLabels.length; idx++) {
+         writer.write(name);
+         writer.write("_bucket{");
+         writeStubLabel(writer, stubIndex, ",");
+         writer.write("le=\"");
+         writer.write(idx < bucketLabels.length ? bucketLabels[idx] : "+Inf");
+         writer.write("\"} ");
+         writer.print(cumulativeCounts[idx]);
+         writer.write('\n');
+      }
+
+      writer.write(name);
+      writer.write("_sum");
+      writeLabels(writer, stubIndex);
+      writer.print(sum / unitsPerSecond);
+      writer.write('\n');
+
+      writer.write(name);
+      writer.write("_count");
+      writeLabels(writer, stubIndex);
+      writer.print(cumulativeCounts[bucketLabels.length]);
+      writer.write('\n');
+   }
+
+   private static void writeLabels(final PrintWriter writer, final Integer stubIndex) {
+      if (ObjectUtils.isNull(stubIndex)) {
+         writer.write(' ');
+         return;
+      }
+      writer.write('{');
+      writeStubLabel(writer, stubIndex, "");
+      writer.write("} ");
+   }
+
+   private static void writeStubLabel(final PrintWriter writer, final Integer stubIndex, final String separator) {
+      if (ObjectUtils.isNull(stubIndex)) {
+         return;
+      }
+      writer.write("stub=\"");
+      writer.print(stubIndex.intValue());
+      writer.write('"');
+      writer.write(separator);
+   }
+
+   private static void writeSample(final PrintWriter writer, final String name, final String type, final String help, final long value) {
+      writeHeader(writer, name, type, help);
+      writer.write(name);
+      writer.write(' ');
+      writer.print(value);
+      writer.write('\n');
+   }
+
+   private static void writeHeader(final PrintWriter writer, final String name, final String type, final String help) {
+      writer.write("# HELP ");
+      writer.write(name);
+      writer.write(' ');
+      writer.write(help);
+      writer.write("\n# TYPE ");
+      writer.write(name);
+      writer.write(' ');
+      writer.write(type);
+      writer.write('\n');
+   }
+}
@@ -0,0 +1,134 @@
+/*
+HTTP stub server written in Java with embedded Jetty
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.handlers;
+
+import by.stub.database.RequestJournal;
+import by.stub.database.RequestJournalEntry;
+import by.stub.javax.servlet.http.HttpServletResponseWithGetStatus;
+import by.stub.utils.ConsoleUtils;
+import by.stub.utils.HandlerUtils;
+import by.stub.utils.ObjectUtils;
+import by.stub.utils.StringUtils;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.json.JSONObject;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Lists journaled requests as JSON, newest first. Optional query parameters narrow the list down:
+ * stubId (index of the matched stub, -1 for unmatched requests), from and to (received time in epoch milliseconds,
+ * inclusive), url (regex found in request URLs) and limit (maximum number of listed requests, 100 by default)
+ */
+public class RequestJournalHandler extends AbstractHandler {
+
+   static final int DEFAULT_LIMIT = 100;
+   private final RequestJournal requestJournal;
+
+   /**
+    * @param requestJournal journal of the stubs portal, or null if requests are not journaled
+    */
+   public RequestJournalHandler(final RequestJournal requestJournal) {
+      this.requestJournal = requestJournal;
+   }
+
+   @Override
+   public void handle(final String target, final Request baseRequest, final HttpServletRequest request, final HttpServletResponse response) throws IOException, ServletException {
+      ConsoleUtils.logIncomingRequest(request);
+
+      baseRequest.setHandled(true);
+
+      final HttpServletResponseWithGetStatus wrapper = new HttpServletResponseWithGetStatus(response);
+      HandlerUtils.setResponseMainHeaders(wrapper);
+
+      if (ObjectUtils.isNull(requestJournal)) {
+         HandlerUtils.configureErrorResponse(wrapper, HttpStatus.NOT_FOUND_404, "Request journal is not enabled, see --journal command-line switch");
+         ConsoleUtils.logOutgoingResponse(request.getRequestURI(), wrapper);
+         return;
+      }
+
+      final List<RequestJournalEntry> entries;
+      try {
+         final String stubId = request.getParameter("stubId");
+         final String url = request.getParameter("url");
+         entries = requestJournal.query(
+            StringUtils.isSet(stubId) ? Integer.valueOf(stubId) : null,
+            parseLong(request.getParameter("from"), Long.MIN_VALUE),
+            parseLong(request.getParameter("to"), Long.MAX_VALUE),
+            StringUtils.isSet(url) ? Pattern.compile(url) : null,
+            (int) Math.max(0, parseLong(request.getParameter("limit"), DEFAULT_LIMIT)));
+      } catch (final NumberFormatException ex) {
+         HandlerUtils.configureErrorResponse(wrapper, HttpStatus.BAD_REQUEST_400, ex.toString());
+         ConsoleUtils.logOutgoingResponse(request.getRequestURI(), wrapper);
+         return;
+      } catch (final PatternSyntaxException ex) {
+         HandlerUtils.configureErrorResponse(wrapper, HttpStatus.BAD_REQUEST_400, ex.getDescription());
+         ConsoleUtils.logOutgoingResponse(request.getRequestURI(), wrapper);
+         return;
+      }
+
+      wrapper.setHeader(HttpHeader.CONTENT_TYPE.asString(), "application/json; charset=UTF-8");
+      wrapper.setStatus(HttpStatus.OK_200);
+      wrapper.getWriter().println(toJson(requestJournal, entries));
+      ConsoleUtils.logOutgoingResponse(request.getRequestURI(), wrapper);
+   }
+
+   static String toJson(final RequestJournal requestJournal, final List<RequestJournalEntry> entries) {
+      final StringBuilder builder = new StringBuilder();
+      builder.append("{\"recorded\":").append(requestJournal.getRecorded())
+         .append(",\"capacity\":").append(requestJournal.getCapacity())
+         .append(",\"requests\":[");
+      for (int idx = 0; idx < entries.size(); idx++) {
+         final RequestJournalEntry entry = entries.get(idx);
+         builder.append(idx == 0 ? "{" : ",{")
+            .append("\"sequence\":").append(entry.getSequence())
+            .append(",\"received\":").append(entry.getReceivedMillis())
+            .append(",\"durationMicros\":").append(entry.getDurationMicros())
+            .append(",\"method\":").append(JSONObject.quote(entry.getMethod()))
+            .append(",\"url\":").append(JSONObject.quote(entry.getUrl()))
+            .append(",\"status\":").append(entry.getStatus())
+            .append(",\"stubId\":").append(entry.getStubId())
+            .append(",\"bodyHash\":\"").append(String.format("%016x", entry.getBodyHash())).append('"')
+            .append(",\"headers\":{");
+         boolean isFirstHeader = true;
+         for (final Map.Entry<String, String> header : entry.getHeaders().entrySet()) {
+            builder.append(isFirstHeader ? "" : ",")
+               .append(JSONObject.quote(header.getKey())).append(':').append(JSONObject.quote(header.getValue()));
+            isFirstHeader = false;
+         }
+         builder.append("}}");
+      }
+
+      return builder.append("]}").toString();
+   }
+
+   private static long parseLong(final String value, final long defaultValue) {
+      return StringUtils.isSet(value) ? Long.parseLong(value) : defaultValue;
+   }
+}
@@ -20,14 +20,17 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package by.stub.handlers;
 
 import by.stub.cli.CommandLineInterpreter;
+import by.stub.database.LatencyHistogram;
+import by.stub.database.ResourceStats;
+import by.stub.database.StubPropertyView;
 import by.stub.database.StubbedDataManager;
+import by.stub.database.StubbedDataView;
 import by.stub.javax.servlet.http.HttpServletResponseWithGetStatus;
 import by.stub.server.JettyContext;
 import by.stub.utils.ConsoleUtils;
 import by.stub.utils.HandlerUtils;
 import by.stub.utils.JarUtils;
 import by.stub.utils.ObjectUtils;
-import by.stub.utils.ReflectionUtils;
 import by.stub.utils.StringUtils;
 import by.stub.yaml.YamlProperties;
 import by.stub.yaml.stubs.StubHttpLifecycle;
@@ -44,11 +47,10 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 import java.lang.management.RuntimeMXBean;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -57,13 +59,20 @@ public final class StatusPageHandler extends AbstractHandler {
 
    private static final RuntimeMXBean RUNTIME_MX_BEAN = ManagementFactory.getRuntimeMXBean();
    private static final MemoryMXBean MEMORY_MX_BEAN = ManagementFactory.getMemoryMXBean();
-   private static final List<String> FIELDS_FOR_AJAX_LINKS = Collections.unmodifiableList(Arrays.asList(YamlProperties.FILE, YamlProperties.BODY, YamlProperties.POST));
+   private static final String LATENCY_HISTOGRAM_PROPERTY = "latencyhistogram";
+   private static final int DEFAULT_PAGE_SIZE = 100;
+   private static final int MAX_PAGE_SIZE = 1000;
 
    private static final String TEMPLATE_LOADED_FILE_METADATA_PAIR = "<span style='color: #8B0000'>%s</span>=<span style='color: green'>%s</span>";
    private static final String TEMPLATE_AJAX_TO_RESOURCE_HYPERLINK = "<strong><a class='ajax-resource' href='/ajax/resource/%s/%s/%s'>[view]</a></strong>";
    private static final String TEMPLATE_AJAX_TO_STATS_HYPERLINK = "<strong><a class='ajax-stats' href='/ajax/stats'>[view]</a></strong>";
    private static final String TEMPLATE_HTML_TABLE_ROW = "<tr><td width='250px' valign='top' align='left'>%s</td><td align='left'>%s</td></tr>";
    private static final String TEMPLATE_HTML_TABLE = HandlerUtils.getHtmlResourceByName("_table");
+   private static final String TEMPLATE_PAGE_HYPERLINK = "<strong><a href='/status?page=%s&amp;size=%s'>%s</a></strong>";
+   private static final String TEMPLATE_STATUS_PAGE = HandlerUtils.getHtmlResourceByName("status");
+   // Status page template is split around its body, which is written in between
+   private static final String STATUS_PAGE_HEAD = TEMPLATE_STATUS_PAGE.substring(0, TEMPLATE_STATUS_PAGE.lastIndexOf("%s"));
+   private static final String STATUS_PAGE_TAIL = TEMPLATE_STATUS_PAGE.substring(TEMPLATE_STATUS_PAGE.lastIndexOf("%s") + 2);
    private static final String NEXT_IN_THE_QUEUE = " NEXT IN THE QUEUE";
 
    private final StubbedDataManager stubbedDataManager;
@@ -86,7 +95,10 @@ public final class StatusPageHandler extends AbstractHandler {
       wrapper.setHeader(HttpHeader.SERVER.asString(), HandlerUtils.constructHeaderServerName());
 
       try {
-         wrapper.getWriter().println(buildStatusPageHtml());
+         // Page is written as it is built, once the response buffer fills up it is sent to the client
+         writeStatusPageHtml(wrapper.getWriter(),
+            parsePageParameter(request.getParameter("page"), 1, Integer.MAX_VALUE),
+            parsePageParameter(request.getParameter("size"), DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE));
       } catch (final Exception ex) {
          HandlerUtils.configureErrorResponse(wrapper, HttpStatus.INTERNAL_SERVER_ERROR_500, ex.toString());
       }
@@ -94,48 +106,75 @@ public final class StatusPageHandler extends AbstractHandler {
       ConsoleUtils.logOutgoingResponse(request.getRequestURI(), wrapper);
    }
 
-   private String buildStatusPageHtml() throws Exception {
-      final StringBuilder builder = new StringBuilder();
+   private void writeStatusPageHtml(final PrintWriter writer, final int page, final int pageSize) throws Exception {
+      // Views and stubs on the page all come from the same snapshot of the stubbed data
+      final StubbedDataView stubbedDataView = stubbedDataManager.getStubbedDataView();
+      final List<StubPropertyView> stubPropertyViews = stubbedDataView.getStubPropertyViews();
+      final int pageCount = Math.max(1, (stubPropertyViews.size() + pageSize - 1) / pageSize);
+      final int currentPage = Math.min(page, pageCount);
+      final int fromIndex = (currentPage - 1) * pageSize;
+      final int toIndex = Math.min(fromIndex + pageSize, stubPropertyViews.size());
 
-      builder.append(buildJvmParametersHtmlTable());
-      builder.append(buildJettyParametersHtmlTable());
-      builder.append(buildStubbyParametersHtmlTable());
-      builder.append(buildEndpointStatsHtmlTable());
-
-      final List<StubHttpLifecycle> stubHttpLifecycles = stubbedDataManager.getStubHttpLifecycles();
-      for (int cycleIndex = 0; cycleIndex < stubHttpLifecycles.size(); cycleIndex++) {
-         final StubHttpLifecycle stubHttpLifecycle = stubHttpLifecycles.get(cycleIndex);
-         builder.append(buildStubRequestHtmlTable(stubHttpLifecycle));
-         builder.append(buildStubResponseHtmlTable(stubHttpLifecycle));
-         builder.append("<br /><br />");
+      final long timestamp = System.currentTimeMillis();
+      writer.write(String.format(STATUS_PAGE_HEAD, timestamp, timestamp));
+      writer.write(buildJvmParametersHtmlTable());
+      writer.write(buildJettyParametersHtmlTable());
+      writer.write(buildStubbyParametersHtmlTable(stubPropertyViews.size()));
+      writer.write(buildEndpointStatsHtmlTable(stubbedDataView, fromIndex, toIndex));
+
+      final String pager = buildPagerHtml(fromIndex, toIndex, stubPropertyViews.size(), currentPage, pageCount, pageSize);
+      writer.write(pager);
+      for (int cycleIndex = fromIndex; cycleIndex < toIndex; cycleIndex++) {
+         final StubPropertyView stubPropertyView = stubPropertyViews.get(cycleIndex);
+         writer.write(buildStubRequestHtmlTable(stubPropertyView));
+         writer.write(buildStubResponseHtmlTable(stubPropertyView));
+         writer.write("<br /><br />");
       }
+      writer.write(pager);
+      writer.write(STATUS_PAGE_TAIL);
+      writer.flush();
+   }
 
-      final long timestamp = System.currentTimeMillis();
-      return HandlerUtils.populateHtmlTemplate("status", timestamp, timestamp, builder.toString());
+   private String buildPagerHtml(final int fromIndex, final int toIndex, final int stubCount, final int currentPage, final int pageCount, final int pageSize) {
+      final StringBuilder builder = new StringBuilder("<div style='margin: 10px 0 10px 0'>");
+      if (currentPage > 1) {
+         builder.append(String.format(TEMPLATE_PAGE_HYPERLINK, 1, pageSize, "&laquo; first")).append("&nbsp;");
+         builder.append(String.format(TEMPLATE_PAGE_HYPERLINK, currentPage - 1, pageSize, "&lsaquo; previous")).append("&nbsp;");
+      }
+      builder.append(String.format("stubs %s - %s of %s, page %s of %s", stubCount == 0 ? 0 : fromIndex + 1, toIndex, stubCount, currentPage, pageCount));
+      if (currentPage < pageCount) {
+         builder.append("&nbsp;").append(String.format(TEMPLATE_PAGE_HYPERLINK, currentPage + 1, pageSize, "next &rsaquo;"));
+         builder.append("&nbsp;").append(String.format(TEMPLATE_PAGE_HYPERLINK, pageCount, pageSize, "last &raquo;"));
+      }
+
+      return builder.append("</div>").toString();
    }
 
-   private String buildStubRequestHtmlTable(final StubHttpLifecycle stubHttpLifecycle) throws Exception {
-      final String resourceId = stubHttpLifecycle.getResourceId();
+   private String buildStubRequestHtmlTable(final StubPropertyView stubPropertyView) throws Exception {
+      final String resourceId = String.valueOf(stubPropertyView.getResourceIndex());
       final String ajaxLinkToRequestAsYaml = String.format(TEMPLATE_AJAX_TO_RESOURCE_HYPERLINK, resourceId, YamlProperties.HTTPLIFECYCLE, "requestAsYaml");
-      final StringBuilder requestTableBuilder = buildStubHtmlTableBody(resourceId, YamlProperties.REQUEST, ReflectionUtils.getProperties(stubHttpLifecycle.getRequest()));
+      final StringBuilder requestTableBuilder = buildStubHtmlTableBody(resourceId, YamlProperties.REQUEST, stubPropertyView.getRequestProperties(), null);
       requestTableBuilder.append(interpolateHtmlTableRowTemplate("RAW YAML", ajaxLinkToRequestAsYaml));
 
       return String.format(TEMPLATE_HTML_TABLE, YamlProperties.REQUEST, requestTableBuilder.toString());
    }
 
-   private String buildStubResponseHtmlTable(final StubHttpLifecycle stubHttpLifecycle) throws Exception {
-      final String resourceId = stubHttpLifecycle.getResourceId();
+   private String buildStubResponseHtmlTable(final StubPropertyView stubPropertyView) throws Exception {
+      final String resourceId = String.valueOf(stubPropertyView.getResourceIndex());
+      final StubHttpLifecycle stubHttpLifecycle = stubPropertyView.getStubHttpLifecycle();
       final StringBuilder responseTableBuilder = new StringBuilder();
       final List<StubResponse> allResponses = stubHttpLifecycle.getAllResponses();
-      for (int sequenceId = 0; sequenceId < allResponses.size(); sequenceId++) {
+      final List<Map<String, String>> allResponseProperties = stubPropertyView.getResponseProperties();
+      final int responseCount = Math.min(allResponses.size(), allResponseProperties.size());
+      for (int sequenceId = 0; sequenceId < responseCount; sequenceId++) {
 
-         final boolean isResponsesSequenced =  allResponses.size() == 1 ? false : true;
+         final boolean isResponsesSequenced =  responseCount == 1 ? false : true;
          final int nextSequencedResponseId = stubHttpLifecycle.getNextSequencedResponseId();
          final String nextResponseLabel = (isResponsesSequenced && nextSequencedResponseId == sequenceId ? NEXT_IN_THE_QUEUE : "");
          final String responseTableTitle = (isResponsesSequenced ? String.format("%s/%s%s", YamlProperties.RESPONSE, sequenceId, nextResponseLabel) : YamlProperties.RESPONSE);
-         final StubResponse stubResponse = allResponses.get(sequenceId);
-         final Map<String, String> stubResponseProperties = ReflectionUtils.getProperties(stubResponse);
-         final StringBuilder sequencedResponseBuilder = buildStubHtmlTableBody(resourceId, responseTableTitle, stubResponseProperties);
+         // Realized latency keeps changing, so it is the only property not taken from the view
+         final LatencyHistogram latencyHistogram = allResponses.get(sequenceId).getLatencyHistogram();
+         final StringBuilder sequencedResponseBuilder = buildStubHtmlTableBody(resourceId, responseTableTitle, allResponseProperties.get(sequenceId), latencyHistogram);
          final String ajaxLinkToResponseAsYaml = String.format(TEMPLATE_AJAX_TO_RESOURCE_HYPERLINK, resourceId, YamlProperties.HTTPLIFECYCLE, "responseAsYaml");
          sequencedResponseBuilder.append(interpolateHtmlTableRowTemplate("RAW YAML", ajaxLinkToResponseAsYaml));
 
@@ -145,6 +184,17 @@ public final class StatusPageHandler extends AbstractHandler {
       return responseTableBuilder.toString();
    }
 
+   static int parsePageParameter(final String value, final int defaultValue, final int maxValue) {
+      if (!StringUtils.isSet(value)) {
+         return defaultValue;
+      }
+      try {
+         return Math.min(Math.max(1, Integer.parseInt(value.trim())), maxValue);
+      } catch (final NumberFormatException ex) {
+         return defaultValue;
+      }
+   }
+
    private String buildJvmParametersHtmlTable() throws Exception {
 
       final StringBuilder builder = new StringBuilder();
@@ -172,7 +222,7 @@ public final class StatusPageHandler extends AbstractHandler {
       return String.format(TEMPLATE_HTML_TABLE, "jetty parameters", builder.toString());
    }
 
-   private String buildStubbyParametersHtmlTable() throws Exception {
+   private String buildStubbyParametersHtmlTable(final int stubCount) throws Exception {
 
       final StringBuilder builder = new StringBuilder();
       builder.append(interpolateHtmlTableRowTemplate("VERSION", JarUtils.readManifestImplementationVersion()));
@@ -180,12 +230,13 @@ public final class StatusPageHandler extends AbstractHandler {
       builder.append(interpolateHtmlTableRowTemplate("LOCAL BUILT DATE", JarUtils.readManifestBuiltDate()));
       builder.append(interpolateHtmlTableRowTemplate("UPTIME", HandlerUtils.calculateStubbyUpTime(RUNTIME_MX_BEAN.getUptime())));
       builder.append(interpolateHtmlTableRowTemplate("INPUT ARGS", CommandLineInterpreter.PROVIDED_OPTIONS));
-      builder.append(interpolateHtmlTableRowTemplate("STUBBED ENDPOINTS", stubbedDataManager.getStubHttpLifecycles().size()));
+      builder.append(interpolateHtmlTableRowTemplate("STUBBED ENDPOINTS", stubCount));
       builder.append(interpolateHtmlTableRowTemplate("LOADED YAML", buildLoadedFileMetadata(stubbedDataManager.getDataYaml())));
 
-      if (!stubbedDataManager.getExternalFiles().isEmpty()) {
+      final Map<File, Long> externalFiles = stubbedDataManager.getExternalFiles();
+      if (!externalFiles.isEmpty()) {
          final StringBuilder externalFilesMetadata = new StringBuilder();
-         for (Map.Entry<File, Long> entry : stubbedDataManager.getExternalFiles().entrySet()) {
+         for (Map.Entry<File, Long> entry : externalFiles.entrySet()) {
             final File externalFile = entry.getKey();
             externalFilesMetadata.append(buildLoadedFileMetadata(externalFile));
          }
@@ -195,18 +246,46 @@ public final class StatusPageHandler extends AbstractHandler {
       return String.format(TEMPLATE_HTML_TABLE, "stubby4j parameters", builder.toString());
    }
 
-   private String buildEndpointStatsHtmlTable() throws Exception {
+   private String buildEndpointStatsHtmlTable(final StubbedDataView stubbedDataView, final int fromIndex, final int toIndex) throws Exception {
 
       final StringBuilder builder = new StringBuilder();
-      if (stubbedDataManager.getResourceStats().isEmpty()) {
-         builder.append(interpolateHtmlTableRowTemplate("ENDPOINT HITS", "No requests were made to stubby yet"));
+      builder.append(interpolateHtmlTableRowTemplate("ENDPOINT HITS", TEMPLATE_AJAX_TO_STATS_HYPERLINK));
+      // Times of all stubs are served by /metrics and /ajax/stats, the page only computes percentiles of its own stubs
+      final Map<Integer, ResourceStats> pageResourceStats = stubbedDataView.getResourceStats(fromIndex, toIndex);
+      if (pageResourceStats.isEmpty()) {
+         builder.append(interpolateHtmlTableRowTemplate("ENDPOINT TIMES", "No requests were made to stubs on this page yet"));
       } else {
-         builder.append(interpolateHtmlTableRowTemplate("ENDPOINT HITS", TEMPLATE_AJAX_TO_STATS_HYPERLINK));
+         builder.append(interpolateHtmlTableRowTemplate("ENDPOINT TIMES", buildEndpointTimes(pageResourceStats)));
       }
+      builder.append(interpolateHtmlTableRowTemplate("MATCH CACHE", buildMatchCacheStats()));
 
       return String.format(TEMPLATE_HTML_TABLE, "stubby stats", builder.toString());
    }
 
+   private String buildEndpointTimes(final Map<Integer, ResourceStats> resourceStats) {
+      final StringBuilder builder = new StringBuilder();
+      for (final Map.Entry<Integer, ResourceStats> entry : resourceStats.entrySet()) {
+         final long[] matchingMicros = entry.getValue().getMatchingMicros().getValuesAtQuantiles(0.5, 0.99);
+         final long[] handlingMicros = entry.getValue().getHandlingMicros().getValuesAtQuantiles(0.5, 0.99);
+         builder.append(String.format("resource %s: matched in p50=%sus, p99=%sus, handled in p50=%sus, p99=%sus<br />",
+            entry.getKey(), matchingMicros[0], matchingMicros[1], handlingMicros[0], handlingMicros[1]));
+      }
+
+      return builder.toString();
+   }
+
+   private String buildMatchCacheStats() {
+      if (!stubbedDataManager.isMatchCacheEnabled()) {
+         return "Disabled";
+      }
+
+      final long hits = stubbedDataManager.getMatchCacheHits();
+      final long lookups = hits + stubbedDataManager.getMatchCacheMisses();
+      final double hitRatio = lookups == 0 ? 0 : (double) hits * 100 / lookups;
+
+      return String.format("%s hits of %s lookups, hit ratio %.2f%%", hits, lookups, hitRatio);
+   }
+
    private String buildLoadedFileMetadata(final File file) throws IOException {
       final StringBuilder builder = new StringBuilder();
       builder.append(String.format(TEMPLATE_LOADED_FILE_METADATA_PAIR, "parentDir", determineParentDir(file))).append("<br />");
@@ -221,12 +300,18 @@ public final class StatusPageHandler extends AbstractHandler {
       return (ObjectUtils.isNull(file.getParentFile()) ? file.getCanonicalPath().replaceAll(file.getName(), "") : file.getParentFile().getCanonicalPath() + "/");
    }
 
-   private StringBuilder buildStubHtmlTableBody(final String resourceId, final String stubTypeName, final Map<String, String> stubObjectProperties) throws Exception {
+   /**
+    * @param latencyHistogram realized latency of the response, or null if the properties are not of a response with latency
+    */
+   private StringBuilder buildStubHtmlTableBody(final String resourceId,
+                                                final String stubTypeName,
+                                                final Map<String, String> stubObjectProperties,
+                                                final LatencyHistogram latencyHistogram) throws Exception {
       final StringBuilder builder = new StringBuilder();
 
       for (final Map.Entry<String, String> keyValue : stubObjectProperties.entrySet()) {
-         final String value = keyValue.getValue();
          final String key = keyValue.getKey();
+         final String value = key.equals(LATENCY_HISTOGRAM_PROPERTY) && ObjectUtils.isNotNull(latencyHistogram) ? latencyHistogram.toString() : keyValue.getValue();
 
          if (!StringUtils.isSet(value)) {
             continue;
@@ -239,7 +324,7 @@ public final class StatusPageHandler extends AbstractHandler {
 
    private String buildHtmlTableSingleRow(final String resourceId, final String stubTypeName, final String fieldName, final String value) {
 
-      if (FIELDS_FOR_AJAX_LINKS.contains(fieldName)) {
+      if (StubPropertyView.LINKED_PROPERTIES.contains(fieldName)) {
          final String cleansedStubTypeName = stubTypeName.replaceAll(NEXT_IN_THE_QUEUE, "");   //Only when there are sequenced responses
          final String ajaxHyperlink = String.format(TEMPLATE_AJAX_TO_RESOURCE_HYPERLINK, resourceId, cleansedStubTypeName, fieldName);
          return interpolateHtmlTableRowTemplate(StringUtils.toUpper(fieldName), ajaxHyperlink);
@@ -20,6 +20,8 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package by.stub.handlers;
 
 import by.stub.cli.ANSITerminal;
+import by.stub.database.ErrorAccounting;
+import by.stub.database.ErrorCategory;
 import by.stub.database.StubbedDataManager;
 import by.stub.javax.servlet.http.HttpServletResponseWithGetStatus;
 import by.stub.server.JettyContext;
@@ -67,6 +69,7 @@ public final class StubDataRefreshActionHandler extends AbstractHandler {
          wrapper.getWriter().println(successMessage);
          ANSITerminal.ok(successMessage);
       } catch (final Exception ex) {
+         ErrorAccounting.record(ErrorCategory.YAML_RELOAD, ex);
          HandlerUtils.configureErrorResponse(wrapper, HttpStatus.INTERNAL_SERVER_ERROR_500, ex.toString());
       }
 
@@ -19,29 +19,54 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 
 package by.stub.handlers;
 
+import by.stub.cli.ANSITerminal;
+import by.stub.database.ErrorAccounting;
+import by.stub.database.ErrorCategory;
+import by.stub.database.LatencyHistogram;
+import by.stub.database.RequestJournal;
 import by.stub.database.StubbedDataManager;
 import by.stub.handlers.strategy.stubs.StubResponseHandlingStrategy;
 import by.stub.handlers.strategy.stubs.StubsResponseHandlingStrategyFactory;
 import by.stub.javax.servlet.http.HttpServletResponseWithGetStatus;
 import by.stub.utils.ConsoleUtils;
 import by.stub.utils.HandlerUtils;
+import by.stub.utils.ObjectUtils;
+import by.stub.yaml.stubs.StubLatency;
 import by.stub.yaml.stubs.StubRequest;
 import by.stub.yaml.stubs.StubResponse;
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.thread.Scheduler;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 public class StubsPortalHandler extends AbstractHandler {
 
    private final StubbedDataManager stubbedDataManager;
+   private final Scheduler latencyScheduler;
+   private final RequestJournal requestJournal;
 
-   public StubsPortalHandler(final StubbedDataManager stubbedDataManager) {
+   /**
+    * @param latencyScheduler shared scheduler, which resumes responses of stubs with latency once it elapsed
+    */
+   public StubsPortalHandler(final StubbedDataManager stubbedDataManager, final Scheduler latencyScheduler) {
+      this(stubbedDataManager, latencyScheduler, null);
+   }
+
+   /**
+    * @param latencyScheduler shared scheduler, which resumes responses of stubs with latency once it elapsed
+    * @param requestJournal   journal recording served requests, or null if requests are not journaled
+    */
+   public StubsPortalHandler(final StubbedDataManager stubbedDataManager, final Scheduler latencyScheduler, final RequestJournal requestJournal) {
       this.stubbedDataManager = stubbedDataManager;
+      this.latencyScheduler = latencyScheduler;
+      this.requestJournal = requestJournal;
    }
 
    @Override
@@ -49,6 +74,8 @@ public class StubsPortalHandler extends AbstractHandler {
                       final Request baseRequest,
                       final HttpServletRequest request,
                       final HttpServletResponse response) throws IOException, ServletException {
+      final long receivedMillis = System.currentTimeMillis();
+      final long receivedNanos = System.nanoTime();
       ConsoleUtils.logIncomingRequest(request);
 
       baseRequest.setHandled(true);
@@ -56,13 +83,136 @@ public class StubsPortalHandler extends AbstractHandler {
       final StubRequest assertionStubRequest = StubRequest.createFromHttpServletRequest(request);
       final StubResponse foundStubResponse = stubbedDataManager.findStubResponseFor(assertionStubRequest);
       final StubResponseHandlingStrategy strategyStubResponse = StubsResponseHandlingStrategyFactory.getStrategy(foundStubResponse);
+      // Body is hashed before responding, which may discard its unread remainder
+      final ReceivedRequest receivedRequest = new ReceivedRequest(request.getMethod(), assertionStubRequest, foundStubResponse, receivedMillis, receivedNanos, ObjectUtils.isNotNull(requestJournal));
+
+      final StubLatency stubLatency = foundStubResponse.getStubLatency();
+      if (ObjectUtils.isNull(stubLatency)) {
+         respond(response, assertionStubRequest, strategyStubResponse, receivedRequest);
+         return;
+      }
+
+      final long latency;
+      try {
+         latency = stubLatency.sampleMillis();
+      } catch (final NumberFormatException ex) {
+         ErrorAccounting.record(ErrorCategory.SERVER_ERROR, ex);
+         HandlerUtils.configureErrorResponse(response, HttpStatus.INTERNAL_SERVER_ERROR_500, ex.toString());
+         assertionStubRequest.discardUnreadPost();
+         completed(receivedRequest, HttpStatus.INTERNAL_SERVER_ERROR_500);
+         return;
+      }
+
+      final LatencyHistogram latencyHistogram = foundStubResponse.getLatencyHistogram();
+      if (latency <= 0) {
+         latencyHistogram.record(0);
+         respond(response, assertionStubRequest, strategyStubResponse, receivedRequest);
+         return;
+      }
+
+      // Request is suspended while latency elapses, so it holds no thread
+      final long suspendedNanos = System.nanoTime();
+      final AsyncContext asyncContext = request.startAsync();
+      asyncContext.setTimeout(0);
+      try {
+         scheduleResponse(response, assertionStubRequest, strategyStubResponse, receivedRequest, asyncContext, latencyHistogram, suspendedNanos, latency);
+      } catch (final RuntimeException ex) {
+         // Nothing resumes the suspended request if the scheduler rejected it, so it is failed right here
+         ErrorAccounting.record(ErrorCategory.SERVER_ERROR, ex);
+         try {
+            HandlerUtils.configureErrorResponse(response, HttpStatus.INTERNAL_SERVER_ERROR_500, ex.toString());
+         } finally {
+            assertionStubRequest.discardUnreadPost();
+            completed(receivedRequest, HttpStatus.INTERNAL_SERVER_ERROR_500);
+            asyncContext.complete();
+         }
+      }
+   }
+
+   private void scheduleResponse(final HttpServletResponse response,
+                                 final StubRequest assertionStubRequest,
+                                 final StubResponseHandlingStrategy strategyStubResponse,
+                                 final ReceivedRequest receivedRequest,
+                                 final AsyncContext asyncContext,
+                                 final LatencyHistogram latencyHistogram,
+                                 final long suspendedNanos,
+                                 final long latency) {
+      latencyScheduler.schedule(new Runnable() {
+         @Override
+         public void run() {
+            asyncContext.start(new Runnable() {
+               @Override
+               public void run() {
+                  // Realized latency includes scheduling and dispatch delays, as seen by the client
+                  latencyHistogram.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - suspendedNanos));
+                  try {
+                     respond(response, assertionStubRequest, strategyStubResponse, receivedRequest);
+                  } catch (final IOException ex) {
+                     ANSITerminal.error(String.format("Could not respond after latency to %s: %s", assertionStubRequest.getUrl(), ex.toString()));
+                  } finally {
+                     asyncContext.complete();
+                  }
+               }
+            });
+         }
+      }, latency, TimeUnit.MILLISECONDS);
+   }
+
+   private void respond(final HttpServletResponse response,
+                        final StubRequest assertionStubRequest,
+                        final StubResponseHandlingStrategy strategyStubResponse,
+                        final ReceivedRequest receivedRequest) throws IOException {
       final HttpServletResponseWithGetStatus wrapper = new HttpServletResponseWithGetStatus(response);
 
       try {
          strategyStubResponse.handle(wrapper, assertionStubRequest);
       } catch (final Exception ex) {
-         HandlerUtils.configureErrorResponse(response, HttpStatus.INTERNAL_SERVER_ERROR_500, ex.toString());
+         ErrorAccounting.record(ErrorCategory.SERVER_ERROR, ex);
+         HandlerUtils.configureErrorResponse(wrapper, HttpStatus.INTERNAL_SERVER_ERROR_500, ex.toString());
+      } finally {
+         assertionStubRequest.discardUnreadPost();
       }
       ConsoleUtils.logOutgoingResponse(assertionStubRequest.getUrl(), wrapper);
+      completed(receivedRequest, wrapper.getStatus());
+   }
+
+   private void completed(final ReceivedRequest receivedRequest, final int status) {
+      final long handlingNanos = System.nanoTime() - receivedRequest.receivedNanos;
+      if (receivedRequest.stubId != RequestJournal.UNMATCHED_STUB_ID) {
+         stubbedDataManager.recordHandling(receivedRequest.stubId, handlingNanos);
+      }
+      if (ObjectUtils.isNull(requestJournal)) {
+         return;
+      }
+      final StubRequest request = receivedRequest.request;
+      requestJournal.record(receivedRequest.method, request.getUrl(), request.getHeaders(), receivedRequest.bodyHash,
+         receivedRequest.stubId, status, receivedRequest.receivedMillis, TimeUnit.NANOSECONDS.toMicros(handlingNanos));
+   }
+
+   /**
+    * Details of the incoming request known before responding, recorded once the response is sent
+    */
+   private static final class ReceivedRequest {
+
+      private final String method;
+      private final StubRequest request;
+      private final int stubId;
+      private final long bodyHash;
+      private final long receivedMillis;
+      private final long receivedNanos;
+
+      private ReceivedRequest(final String method,
+                              final StubRequest request,
+                              final StubResponse foundStubResponse,
+                              final long receivedMillis,
+                              final long receivedNanos,
+                              final boolean isJournaled) {
+         this.method = method;
+         this.request = request;
+         this.stubId = foundStubResponse.getResourceId();
+         this.bodyHash = isJournaled ? RequestJournal.hashBody(request.getPostBody()) : 0;
+         this.receivedMillis = receivedMillis;
+         this.receivedNanos = receivedNanos;
+      }
    }
-}
\ No newline at end of file
+}
@@ -1,12 +1,13 @@
 package by.stub.handlers;
 
 import by.stub.cli.ANSITerminal;
+import by.stub.database.StubUsage;
 import by.stub.database.StubbedDataManager;
 import by.stub.javax.servlet.http.HttpServletResponseWithGetStatus;
 import by.stub.utils.ConsoleUtils;
 import by.stub.utils.HandlerUtils;
+import by.stub.utils.ObjectUtils;
 import by.stub.yaml.stubs.StubHttpLifecycle;
-import by.stub.yaml.stubs.StubRequest;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.MimeTypes;
@@ -16,78 +17,96 @@ import org.eclipse.jetty.server.handler.AbstractHandler;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 public class UnusedStubsHandler extends AbstractHandler {
-    public static ArrayList<StubRequest> userStubRequests = new ArrayList<>();
-    private List<StubHttpLifecycle> stubLifeCycles;
-
-    public UnusedStubsHandler( StubbedDataManager stubbedDataManager) {
-        this.stubLifeCycles = stubbedDataManager.getStubHttpLifecycles();
-    }
-
-    @Override
-    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
-        final HttpServletResponseWithGetStatus wrapper = new HttpServletResponseWithGetStatus(response);
-        ConsoleUtils.logIncomingRequest(request);
-        String unusedStubs = getUnusedStubs();
-
-        baseRequest.setHandled(true);
-        wrapper.setContentType(MimeTypes.Type.TEXT_PLAIN.asString());
-        wrapper.setStatus(HttpStatus.OK_200);
-        wrapper.setHeader(HttpHeader.SERVER.asString(), HandlerUtils.constructHeaderServerName());
-
-        try {
-            final String successMessage = String.valueOf(unusedStubs);
-            wrapper.getWriter().println(successMessage);
-            ANSITerminal.ok(successMessage);
-        } catch (final Exception ex) {
-            HandlerUtils.configureErrorResponse(wrapper, HttpStatus.INTERNAL_SERVER_ERROR_500, ex.toString());
-        }
-    }
-
-    private String getUnusedStubs() {
-
-        List<StubHttpLifecycle> unUsedCycles = stubLifeCycles.stream().filter(cycle -> !userStubRequests.contains(cycle.getRequest())).collect(Collectors.toList());
-        List<StubHttpLifecycle> usedCycles = stubLifeCycles.stream().filter(cycle -> userStubRequests.contains(cycle.getRequest())).collect(Collectors.toList());
-
-        List<String> unUsedRequestJsons = getRequestFiles(unUsedCycles);
-        List<String> unUsedResponseJsons = getResponseFiles(unUsedCycles);
-
-        List<String> usedRequestJsons = getRequestFiles(usedCycles);
-        List<String> usedResponseJsons = getResponseFiles(usedCycles);
-
-        unUsedRequestJsons = unUsedRequestJsons.stream().filter((unUsedRequestJson) -> !usedRequestJsons.contains(unUsedRequestJson)).collect(Collectors.toList());
-        unUsedResponseJsons = unUsedResponseJsons.stream().filter((unUsedResponseJson) -> !usedResponseJsons.contains(unUsedResponseJson)).collect(Collectors.toList());
-
-        String stubsUnUsed = unUsedCycles.stream().map((unUsedCycle) -> unUsedCycle.getHttpLifeCycleAsYaml()).collect(Collectors.joining("\n"));
-        String requestJsonUnUsed = unUsedRequestJsons.stream().reduce("", (start, unUsedRequestJson) -> start + "\n" + unUsedRequestJson);
-        String responseJsonUnUsed = unUsedResponseJsons.stream().reduce("", (start, unUsedResponseJson) -> start + "\n" + unUsedResponseJson);
-        String requestJsonUsed = usedRequestJsons.stream().reduce("", (start, unUsedRequestJson) -> start + "\n" + unUsedRequestJson);
-        String responseJsonUsed = usedResponseJsons.stream().reduce("", (start, unUsedResponseJson) -> start + "\n" + unUsedResponseJson);
-
-        String unUsed = stubsUnUsed
-                + "\n" + "UsedJson:"
-                + requestJsonUsed
-                + responseJsonUsed
-                + "\n" + "UnUsedJson:"
-                + responseJsonUnUsed
-                + requestJsonUnUsed;
-
-        return unUsed;
-
-    }
-
-    private List<String> getResponseFiles(List<StubHttpLifecycle> unUsedCycles) {
-        unUsedCycles = unUsedCycles.stream().filter((unUsedCycle) -> unUsedCycle.getResponse(false).getRawFile() != null).collect(Collectors.toList());
-        return unUsedCycles.stream().map((unUsedCycle) -> unUsedCycle.getResponse(false).getRawFile().getAbsolutePath()).collect(Collectors.toList()).stream().distinct().collect(Collectors.toList());
-    }
-
-    private List<String> getRequestFiles(List<StubHttpLifecycle> unUsedCycles) {
-        unUsedCycles = unUsedCycles.stream().filter((unUsedCycle) -> unUsedCycle.getRequest().getRawFile() != null).collect(Collectors.toList());
-        return unUsedCycles.stream().map((unUsedCycle) -> unUsedCycle.getRequest().getRawFile().getAbsolutePath()).collect(Collectors.toList()).stream().distinct().collect(Collectors.toList());
-    }
+
+   private final StubbedDataManager stubbedDataManager;
+
+   public UnusedStubsHandler(final StubbedDataManager stubbedDataManager) {
+      this.stubbedDataManager = stubbedDataManager;
+   }
+
+   @Override
+   public void handle(final String target, final Request baseRequest, final HttpServletRequest request, final HttpServletResponse response) throws IOException, ServletException {
+      final HttpServletResponseWithGetStatus wrapper = new HttpServletResponseWithGetStatus(response);
+      ConsoleUtils.logIncomingRequest(request);
+      // Usage is taken from the stubs being served now, not the ones loaded when the server started
+      final String unusedStubs = getUnusedStubs(stubbedDataManager.getStubUsage());
+
+      baseRequest.setHandled(true);
+      wrapper.setContentType(MimeTypes.Type.TEXT_PLAIN.asString());
+      wrapper.setStatus(HttpStatus.OK_200);
+      wrapper.setHeader(HttpHeader.SERVER.asString(), HandlerUtils.constructHeaderServerName());
+
+      try {
+         wrapper.getWriter().println(unusedStubs);
+         ANSITerminal.ok(unusedStubs);
+      } catch (final Exception ex) {
+         HandlerUtils.configureErrorResponse(wrapper, HttpStatus.INTERNAL_SERVER_ERROR_500, ex.toString());
+      }
+   }
+
+   private String getUnusedStubs(final StubUsage stubUsage) {
+      final List<StubHttpLifecycle> usedCycles = stubUsage.getUsedStubHttpLifecycles();
+      final List<StubHttpLifecycle> unusedCycles = stubUsage.getUnusedStubHttpLifecycles();
+
+      final Set<String> usedRequestFiles = getRequestFiles(usedCycles);
+      final Set<String> usedResponseFiles = getResponseFiles(usedCycles);
+      final Set<String> unusedRequestFiles = getRequestFiles(unusedCycles);
+      final Set<String> unusedResponseFiles = getResponseFiles(unusedCycles);
+      unusedRequestFiles.removeAll(usedRequestFiles);
+      unusedResponseFiles.removeAll(usedResponseFiles);
+
+      final StringBuilder builder = new StringBuilder();
+      for (int idx = 0; idx < unusedCycles.size(); idx++) {
+         if (idx > 0) {
+            builder.append("\n");
+         }
+         builder.append(unusedCycles.get(idx).getHttpLifeCycleAsYaml());
+      }
+
+      builder.append("\nUsedJson:");
+      appendFiles(builder, usedRequestFiles);
+      appendFiles(builder, usedResponseFiles);
+      builder.append("\nUnUsedJson:");
+      appendFiles(builder, unusedResponseFiles);
+      appendFiles(builder, unusedRequestFiles);
+
+      return builder.toString();
+   }
+
+   private static void appendFiles(final StringBuilder builder, final Set<String> files) {
+      for (final String file : files) {
+         builder.append("\n").append(file);
+      }
+   }
+
+   private static Set<String> getResponseFiles(final List<StubHttpLifecycle> cycles) {
+      final Set<String> files = new LinkedHashSet<String>();
+      for (final StubHttpLifecycle cycle : cycles) {
+         final File rawFile = cycle.getResponse(false).getRawFile();
+         if (ObjectUtils.isNotNull(rawFile)) {
+            files.add(rawFile.getAbsolutePath());
+         }
+      }
+
+      return files;
+   }
+
+   private static Set<String> getRequestFiles(final List<StubHttpLifecycle> cycles) {
+      final Set<String> files = new LinkedHashSet<String>();
+      for (final StubHttpLifecycle cycle : cycles) {
+         final File rawFile = cycle.getRequest().getRawFile();
+         if (ObjectUtils.isNotNull(rawFile)) {
+            files.add(rawFile.getAbsolutePath());
+         }
+      }
+
+      return files;
+   }
 }
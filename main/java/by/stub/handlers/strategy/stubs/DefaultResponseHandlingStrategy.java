@@ -20,19 +20,51 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package by.stub.handlers.strategy.stubs;
 
 import by.stub.cli.ANSITerminal;
+import by.stub.cli.AsyncConsole;
+import by.stub.database.ErrorAccounting;
+import by.stub.database.ErrorCategory;
 import by.stub.javax.servlet.http.HttpServletResponseWithGetStatus;
 import by.stub.utils.HandlerUtils;
+import by.stub.utils.ObjectUtils;
 import by.stub.utils.StringUtils;
+import by.stub.yaml.stubs.StubContentEncoding;
+import by.stub.yaml.stubs.StubHttpMethod;
 import by.stub.yaml.stubs.StubRequest;
 import by.stub.yaml.stubs.StubResponse;
+import by.stub.yaml.stubs.StubResponseTemplate;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.HttpOutput;
 
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
 
 public final class DefaultResponseHandlingStrategy implements StubResponseHandlingStrategy {
 
+   private static final int RETRIEVAL_METHODS_MASK = StubHttpMethod.GET.getBit() | StubHttpMethod.HEAD.getBit();
+   private static final String ACCEPT_ENCODING_HEADER = StringUtils.toLower(HttpHeader.ACCEPT_ENCODING.asString());
+   private static final String RANGE_HEADER = StringUtils.toLower(HttpHeader.RANGE.asString());
+   private static final int INITIAL_RENDER_BUFFER_BYTES = 8 * 1024;
+   // Bigger buffers, grown by large rendered bodies, are not kept around for the next response
+   private static final int MAX_POOLED_RENDER_BUFFER_BYTES = 256 * 1024;
+   private static final ThreadLocal<ByteArrayOutputStream> RENDER_BUFFERS = new ThreadLocal<ByteArrayOutputStream>() {
+      @Override
+      protected ByteArrayOutputStream initialValue() {
+         return new ByteArrayOutputStream(INITIAL_RENDER_BUFFER_BYTES);
+      }
+   };
+
    private final StubResponse foundStubResponse;
 
    public DefaultResponseHandlingStrategy(final StubResponse foundStubResponse) {
@@ -42,31 +74,229 @@ public final class DefaultResponseHandlingStrategy implements StubResponseHandli
    @Override
    public void handle(final HttpServletResponseWithGetStatus response, final StubRequest assertionStubRequest) throws Exception {
       HandlerUtils.setResponseMainHeaders(response);
-      setStubResponseHeaders(foundStubResponse, response);
+      response.setCharacterEncoding(StringUtils.UTF_8);
+      foundStubResponse.setHeadersTo(response);
+
+      final int statusCode = foundStubResponse.getStatusCode();
+      if (statusCode == HttpStatus.OK_200
+         && ObjectUtils.isNotNull(foundStubResponse.getEntityTag())
+         && (assertionStubRequest.getMethodMask() & RETRIEVAL_METHODS_MASK) != 0) {
+         handleEntityRequest(response, assertionStubRequest.getHeaders());
+         return;
+      }
+
+      response.setStatus(statusCode);
+
+      final OutputStream streamOut = response.getOutputStream();
+      final ByteBuffer mappedFile = foundStubResponse.getMappedFile();
+      if (ObjectUtils.isNotNull(mappedFile)) {
+         if (!ANSITerminal.isMute()) {
+            AsyncConsole.incoming(String.format("%s bytes from file %s", mappedFile.remaining(), foundStubResponse.getRawFile().getName()));
+         }
+         if (writeMappedFile(streamOut, mappedFile)) {
+            return;
+         }
+      } else if (foundStubResponse.isStreamedFile()) {
+         final long entityLength = foundStubResponse.getEntityLength();
+         logServedBytes(entityLength);
+         writeStreamedFile(streamOut, foundStubResponse.getRawFile(), 0, entityLength);
+      } else {
+         final DeflaterOutputStream compressingOut = compressPerRequest(response, streamOut, assertionStubRequest.getHeaders());
+         final OutputStream bodyOut = ObjectUtils.isNull(compressingOut) ? streamOut : compressingOut;
+         if (foundStubResponse.isContainsTemplateTokens()) {
+            writeTemplate(bodyOut, assertionStubRequest);
+         } else {
+            final byte[] responseBody = foundStubResponse.getResponseBodyAsBytes();
+            AsyncConsole.incoming(responseBody);
+            final StubContentEncoding contentEncoding = negotiateContentEncoding(response, assertionStubRequest.getHeaders());
+            bodyOut.write(ObjectUtils.isNull(contentEncoding) ? responseBody : encodedBody(response, contentEncoding));
+         }
+         if (ObjectUtils.isNotNull(compressingOut)) {
+            compressingOut.finish();
+         }
+      }
+      streamOut.flush();
+      streamOut.close();
+   }
+
+   private void writeTemplate(final OutputStream streamOut, final StubRequest assertionStubRequest) throws IOException {
+      final StubResponseTemplate template = foundStubResponse.getTemplate();
+      try {
+         if (ANSITerminal.isMute()) {
+            template.writeTo(streamOut, assertionStubRequest.getMatchResult());
+            return;
+         }
 
-      if (StringUtils.isSet(foundStubResponse.getLatency())) {
-         final long latency = Long.parseLong(foundStubResponse.getLatency());
-         TimeUnit.MILLISECONDS.sleep(latency);
+         // Rendered once into a pooled buffer, which is both logged and sent to the client
+         final ByteArrayOutputStream renderBuffer = RENDER_BUFFERS.get();
+         renderBuffer.reset();
+         try {
+            template.writeTo(renderBuffer, assertionStubRequest.getMatchResult());
+            AsyncConsole.incoming(renderBuffer.toByteArray());
+            renderBuffer.writeTo(streamOut);
+         } finally {
+            if (renderBuffer.size() > MAX_POOLED_RENDER_BUFFER_BYTES) {
+               RENDER_BUFFERS.remove();
+            }
+         }
+      } catch (final RuntimeException ex) {
+         // Failures writing to the client are not template failures, so only runtime exceptions are counted
+         ErrorAccounting.record(ErrorCategory.TEMPLATE, ex);
+         throw ex;
       }
-      response.setStatus(Integer.parseInt(foundStubResponse.getStatus()));
+   }
 
-      byte[] responseBody = foundStubResponse.getResponseBodyAsBytes();
-      if (foundStubResponse.isContainsTemplateTokens()) {
-         final String replacedTemplate = StringUtils.replaceTokens(responseBody, assertionStubRequest.getRegexGroups());
-         responseBody = StringUtils.getBytesUtf8(replacedTemplate);
+   /**
+    * @return stream compressing the body with the coding accepted by the client, or null if the body is not compressed while sent
+    */
+   private DeflaterOutputStream compressPerRequest(final HttpServletResponse response, final OutputStream streamOut, final Map<String, String> requestHeaders) throws IOException {
+      if (!foundStubResponse.isCompressedPerRequest()) {
+         return null;
+      }
+      response.setHeader(HttpHeader.VARY.asString(), HttpHeader.ACCEPT_ENCODING.asString());
+      final StubContentEncoding contentEncoding = StubContentEncoding.negotiate(requestHeaders.get(ACCEPT_ENCODING_HEADER));
+      if (ObjectUtils.isNull(contentEncoding)) {
+         return null;
+      }
+      response.setHeader(HttpHeader.CONTENT_ENCODING.asString(), contentEncoding.getName());
+      // Stubbed length, if any, is the length of the body as is
+      response.setHeader(HttpHeader.CONTENT_LENGTH.asString(), null);
+
+      return contentEncoding.wrap(streamOut);
+   }
+
+   /**
+    * @return coding of the precompressed body accepted by the client, or null if the body is sent as is
+    */
+   private StubContentEncoding negotiateContentEncoding(final HttpServletResponse response, final Map<String, String> requestHeaders) {
+      if (!foundStubResponse.isCompressible()) {
+         return null;
+      }
+      response.setHeader(HttpHeader.VARY.asString(), HttpHeader.ACCEPT_ENCODING.asString());
+
+      return StubContentEncoding.negotiate(requestHeaders.get(ACCEPT_ENCODING_HEADER));
+   }
+
+   private byte[] encodedBody(final HttpServletResponse response, final StubContentEncoding contentEncoding) {
+      final byte[] encodedBody = foundStubResponse.getEncodedBody(contentEncoding);
+      response.setHeader(HttpHeader.CONTENT_ENCODING.asString(), contentEncoding.getName());
+      response.setHeader(HttpHeader.CONTENT_LENGTH.asString(), String.valueOf(encodedBody.length));
+
+      return encodedBody;
+   }
+
+   /**
+    * Serves the response file to GET and HEAD requests: not modified, partially or whole
+    */
+   private void handleEntityRequest(final HttpServletResponseWithGetStatus response, final Map<String, String> requestHeaders) throws IOException {
+      final String rangeHeader = requestHeaders.get(RANGE_HEADER);
+      // Ranges count bytes of the file as is, so they are never served precompressed
+      final StubContentEncoding contentEncoding = ObjectUtils.isNull(rangeHeader) ? negotiateContentEncoding(response, requestHeaders) : null;
+      final String entityTag = ObjectUtils.isNull(contentEncoding)
+         ? foundStubResponse.getEntityTag() : contentEncoding.tagVariant(foundStubResponse.getEntityTag());
+      final long lastModified = foundStubResponse.getLastModified();
+      response.setHeader(HttpHeader.ETAG.asString(), entityTag);
+      response.setDateHeader(HttpHeader.LAST_MODIFIED.asString(), lastModified);
+      response.setHeader(HttpHeader.ACCEPT_RANGES.asString(), "bytes");
+
+      if (HandlerUtils.isNotModified(requestHeaders, entityTag, lastModified)) {
+         response.setStatus(HttpStatus.NOT_MODIFIED_304);
+         logServedBytes(0);
+         return;
+      }
+
+      final long entityLength = foundStubResponse.getEntityLength();
+      final long[] byteRange = HandlerUtils.isRangeApplicable(requestHeaders, entityTag, lastModified)
+         ? HandlerUtils.parseByteRange(rangeHeader, entityLength) : null;
+      if (byteRange == HandlerUtils.UNSATISFIABLE_BYTE_RANGE) {
+         response.setHeader(HttpHeader.CONTENT_RANGE.asString(), String.format("bytes */%s", entityLength));
+         response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE_416);
+         logServedBytes(0);
+         return;
       }
 
       final OutputStream streamOut = response.getOutputStream();
-      ANSITerminal.incoming(new String(responseBody));
-      streamOut.write(responseBody);
+      if (ObjectUtils.isNotNull(contentEncoding)) {
+         response.setStatus(HttpStatus.OK_200);
+         final byte[] encodedBody = encodedBody(response, contentEncoding);
+         logServedBytes(encodedBody.length);
+         streamOut.write(encodedBody);
+         streamOut.flush();
+         streamOut.close();
+         return;
+      }
+
+      long first = 0;
+      long length = entityLength;
+      if (ObjectUtils.isNull(byteRange)) {
+         response.setStatus(HttpStatus.OK_200);
+      } else {
+         first = byteRange[0];
+         length = byteRange[1] - byteRange[0] + 1;
+         response.setHeader(HttpHeader.CONTENT_RANGE.asString(), String.format("bytes %s-%s/%s", byteRange[0], byteRange[1], entityLength));
+         response.setHeader(HttpHeader.CONTENT_LENGTH.asString(), String.valueOf(length));
+         response.setStatus(HttpStatus.PARTIAL_CONTENT_206);
+      }
+      logServedBytes(length);
+
+      final ByteBuffer mappedFile = foundStubResponse.getMappedFile();
+      if (ObjectUtils.isNotNull(mappedFile)) {
+         // Mappings and heap arrays never exceed FileUtils.MAX_MAPPED_FILE_BYTES, larger files are streamed below
+         mappedFile.position(Math.toIntExact(first));
+         mappedFile.limit(Math.toIntExact(first + length));
+         if (writeMappedFile(streamOut, mappedFile)) {
+            return;
+         }
+      } else if (foundStubResponse.isStreamedFile()) {
+         writeStreamedFile(streamOut, foundStubResponse.getRawFile(), first, length);
+      } else {
+         streamOut.write(foundStubResponse.getResponseBodyAsBytes(), Math.toIntExact(first), Math.toIntExact(length));
+      }
       streamOut.flush();
       streamOut.close();
    }
 
-   private void setStubResponseHeaders(final StubResponse stubResponse, final HttpServletResponse response) {
-      response.setCharacterEncoding(StringUtils.UTF_8);
-      for (Map.Entry<String, String> entry : stubResponse.getHeaders().entrySet()) {
-         response.setHeader(entry.getKey(), entry.getValue());
+   private void logServedBytes(final long length) {
+      if (!ANSITerminal.isMute()) {
+         AsyncConsole.incoming(String.format("%s bytes from file %s", length, foundStubResponse.getRawFile().getName()));
+      }
+   }
+
+   /**
+    * @return true if Jetty has written the mapped file to the connection without copying it, and completed the response
+    */
+   private static boolean writeMappedFile(final OutputStream streamOut, final ByteBuffer mappedFile) throws IOException {
+      if (streamOut instanceof HttpOutput) {
+         ((HttpOutput) streamOut).sendContent(mappedFile);
+         return true;
+      }
+      final WritableByteChannel channelOut = Channels.newChannel(streamOut);
+      while (mappedFile.hasRemaining()) {
+         channelOut.write(mappedFile);
+      }
+
+      return false;
+   }
+
+   /**
+    * Copies the given part of the file from disk in chunks, so files of any size are served without loading them
+    */
+   private static void writeStreamedFile(final OutputStream streamOut, final File file, final long first, final long length) throws IOException {
+      final FileInputStream fileIn = new FileInputStream(file);
+      try {
+         final FileChannel fileChannel = fileIn.getChannel();
+         final WritableByteChannel channelOut = Channels.newChannel(streamOut);
+         final long end = first + length;
+         long position = first;
+         while (position < end) {
+            final long transferred = fileChannel.transferTo(position, end - position, channelOut);
+            if (transferred <= 0 && position >= fileChannel.size()) {
+               throw new EOFException(String.format("Response file %s was truncated to %s bytes", file.getName(), fileChannel.size()));
+            }
+            position += transferred;
+         }
+      } finally {
+         fileIn.close();
       }
    }
 }
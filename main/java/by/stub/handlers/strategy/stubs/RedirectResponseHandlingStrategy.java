@@ -21,13 +21,10 @@ package by.stub.handlers.strategy.stubs;
 
 import by.stub.javax.servlet.http.HttpServletResponseWithGetStatus;
 import by.stub.utils.HandlerUtils;
-import by.stub.utils.StringUtils;
 import by.stub.yaml.stubs.StubRequest;
 import by.stub.yaml.stubs.StubResponse;
 import org.eclipse.jetty.http.HttpHeader;
 
-import java.util.concurrent.TimeUnit;
-
 public class RedirectResponseHandlingStrategy implements StubResponseHandlingStrategy {
 
    private final StubResponse foundStubResponse;
@@ -40,12 +37,7 @@ public class RedirectResponseHandlingStrategy implements StubResponseHandlingStr
    public void handle(final HttpServletResponseWithGetStatus response, final StubRequest assertionStubRequest) throws Exception {
       HandlerUtils.setResponseMainHeaders(response);
 
-      if (StringUtils.isSet(foundStubResponse.getLatency())) {
-         final long latency = Long.parseLong(foundStubResponse.getLatency());
-         TimeUnit.MILLISECONDS.sleep(latency);
-      }
-
-      response.setStatus(Integer.parseInt(foundStubResponse.getStatus()));
+      response.setStatus(foundStubResponse.getStatusCode());
       response.setHeader(HttpHeader.LOCATION.asString(), foundStubResponse.getHeaders().get("location"));
       response.setHeader(HttpHeader.CONNECTION.asString(), "close");
    }
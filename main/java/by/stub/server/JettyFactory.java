@@ -21,6 +21,7 @@ package by.stub.server;
 
 import by.stub.cli.ANSITerminal;
 import by.stub.cli.CommandLineInterpreter;
+import by.stub.database.RequestJournal;
 import by.stub.database.StubbedDataManager;
 import by.stub.exception.Stubby4JException;
 import by.stub.handlers.*;
@@ -32,7 +33,9 @@ import org.eclipse.jetty.server.handler.*;
 import org.eclipse.jetty.servlets.gzip.GzipHandler;
 import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.Scheduler;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.*;
@@ -52,6 +55,8 @@ public final class JettyFactory {
    static final String STUBS_CONNECTOR_NAME = "stubsClientConnector";
    static final String SSL_CONNECTOR_NAME = "stubsSslConnector";
    private static final String ROOT_PATH_INFO = "/";
+   private static final long LATENCY_TICK_MILLIS = 10;
+   private static final int LATENCY_WHEEL_SLOTS = 512;
    private final Map<String, String> commandLineArgs;
    private final StubbedDataManager stubbedDataManager;
    private String currentHost;
@@ -66,14 +71,33 @@ public final class JettyFactory {
 
    public Server construct() throws IOException {
 
-      final Server server = new Server();
+      final MonitoredThreadPool threadPool = new MonitoredThreadPool("stubby-server");
+      final Server server = new Server(threadPool);
       server.setConnectors(buildConnectors(server));
-      server.setHandler(constructHandlers());
+
+      // Started and stopped together with the server
+      final Scheduler latencyScheduler = new TimerWheelScheduler("stubby-latency-scheduler", LATENCY_TICK_MILLIS, LATENCY_WHEEL_SLOTS);
+      server.addBean(latencyScheduler);
+      server.setHandler(constructHandlers(latencyScheduler, constructRequestJournal(), threadPool));
 
       return server;
    }
 
-   private HandlerCollection constructHandlers() {
+   private RequestJournal constructRequestJournal() throws IOException {
+      if (!commandLineArgs.containsKey(CommandLineInterpreter.OPTION_JOURNAL)) {
+         return null;
+      }
+      final String journalValue = commandLineArgs.get(CommandLineInterpreter.OPTION_JOURNAL);
+      if (ObjectUtils.isNull(journalValue)) {
+         return RequestJournal.inMemory(RequestJournal.DEFAULT_CAPACITY);
+      }
+      final RequestJournal requestJournal = RequestJournal.mappedTo(new File(journalValue), RequestJournal.DEFAULT_CAPACITY);
+      ANSITerminal.status(String.format("Request journal kept in %s", requestJournal.getFile().getAbsolutePath()));
+
+      return requestJournal;
+   }
+
+   private HandlerCollection constructHandlers(final Scheduler latencyScheduler, final RequestJournal requestJournal, final MonitoredThreadPool threadPool) {
 
       final JettyContext jettyContext = new JettyContext(currentHost, currentStubsPort, currentStubsSslPort, currentAdminPort);
       final HandlerCollection handlers = new HandlerCollection();
@@ -81,16 +105,18 @@ public final class JettyFactory {
          {
             constructHandler(STUBS_CONNECTOR_NAME, ROOT_PATH_INFO, gzipHandler(staticResourceHandler("ui/html/", "default404.html"))),
             constructHandler(STUBS_CONNECTOR_NAME, ROOT_PATH_INFO, gzipHandler(staticResourceHandler("ui/images/", "favicon.ico"))),
-            constructHandler(STUBS_CONNECTOR_NAME, ROOT_PATH_INFO, gzipHandler(new StubsPortalHandler(stubbedDataManager))),
+            constructHandler(STUBS_CONNECTOR_NAME, ROOT_PATH_INFO, new StubsPortalHandler(stubbedDataManager, latencyScheduler, requestJournal)),
 
             constructHandler(SSL_CONNECTOR_NAME, ROOT_PATH_INFO, gzipHandler(staticResourceHandler("ui/html/", "default404.html"))),
             constructHandler(SSL_CONNECTOR_NAME, ROOT_PATH_INFO, gzipHandler(staticResourceHandler("ui/images/", "favicon.ico"))),
-            constructHandler(SSL_CONNECTOR_NAME, ROOT_PATH_INFO, gzipHandler(new StubsPortalHandler(stubbedDataManager))),
+            constructHandler(SSL_CONNECTOR_NAME, ROOT_PATH_INFO, new StubsPortalHandler(stubbedDataManager, latencyScheduler, requestJournal)),
 
             constructHandler(ADMIN_CONNECTOR_NAME, "/status", gzipHandler(new StatusPageHandler(jettyContext, stubbedDataManager))),
             constructHandler(ADMIN_CONNECTOR_NAME, "/refresh", new StubDataRefreshActionHandler(jettyContext, stubbedDataManager)),
             constructHandler(ADMIN_CONNECTOR_NAME, "/errors", new ErrorCountHandler()),
             constructHandler(ADMIN_CONNECTOR_NAME, "/unused", new UnusedStubsHandler(stubbedDataManager)),
+            constructHandler(ADMIN_CONNECTOR_NAME, "/journal", gzipHandler(new RequestJournalHandler(requestJournal))),
+            constructHandler(ADMIN_CONNECTOR_NAME, "/metrics", gzipHandler(new MetricsHandler(stubbedDataManager, threadPool))),
             constructHandler(ADMIN_CONNECTOR_NAME, "/js/highlight", gzipHandler(staticResourceHandler("ui/js/highlight/"))),
             constructHandler(ADMIN_CONNECTOR_NAME, "/js/minified", gzipHandler(staticResourceHandler("ui/js/minified/"))),
             constructHandler(ADMIN_CONNECTOR_NAME, "/js/d3", gzipHandler(staticResourceHandler("ui/js/d3/"))),
@@ -45,12 +45,27 @@ public class StubbyManagerFactory {
 
       Log.setLog(new EmptyLogger());
 
+      // Applies to response files loaded from now on, including reloads
+      long fileMappingThreshold = Long.MAX_VALUE;
+      if (commandLineArgs.containsKey(CommandLineInterpreter.OPTION_MAP_FILES)) {
+         final String mapFilesValue = commandLineArgs.get(CommandLineInterpreter.OPTION_MAP_FILES);
+         fileMappingThreshold = ObjectUtils.isNotNull(mapFilesValue) ? Long.parseLong(mapFilesValue) : 1024 * 1024;
+      }
+      FileUtils.setFileMappingThreshold(fileMappingThreshold);
+
       final File dataYamlFile = new File(dataYamlFilename);
       final List<StubHttpLifecycle> httpLifecycles = new YamlParser().parse(dataYamlFile.getParent(), FileUtils.constructReader(dataYamlFile));
 
       System.out.println();
 
-      final StubbedDataManager stubbedDataManager = new StubbedDataManager(dataYamlFile, httpLifecycles);
+      int matchCacheSize = 0;
+      if (commandLineArgs.containsKey(CommandLineInterpreter.OPTION_MATCH_CACHE)) {
+         final String matchCacheValue = commandLineArgs.get(CommandLineInterpreter.OPTION_MATCH_CACHE);
+         matchCacheSize = ObjectUtils.isNotNull(matchCacheValue) ? Integer.parseInt(matchCacheValue) : 1000;
+      }
+
+      final boolean isUrlAutomatonEnabled = commandLineArgs.containsKey(CommandLineInterpreter.OPTION_URL_AUTOMATON);
+      final StubbedDataManager stubbedDataManager = new StubbedDataManager(dataYamlFile, httpLifecycles, matchCacheSize, isUrlAutomatonEnabled);
       final JettyFactory jettyFactory = new JettyFactory(commandLineArgs, stubbedDataManager);
       final Server server = jettyFactory.construct();
 
@@ -0,0 +1,269 @@
+/*
+A Java-based HTTP stub server
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.server;
+
+import by.stub.cli.ANSITerminal;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel for many short tasks with coarse deadlines, like resuming responses of stubs with latency.
+ * Scheduling and cancelling are constant time regardless of the number of pending tasks, unlike a priority queue.
+ * <p>
+ * A single ticker thread expires the slots of the ticks that passed, and runs the tasks that are due in them,
+ * so tasks fire up to one tick late and must only hand the work over to another thread. Tasks further away
+ * than one revolution of the wheel stay in their slot until the tick of their deadline comes around.
+ * Between ticks the ticker thread parks until the nearest deadline, or until a task with an earlier deadline
+ * is submitted, so an idle scheduler does not wake up at all.
+ * Tasks are handed over to the ticker thread through a lock free queue, only the ticker thread touches the wheel.
+ * Pending tasks are run when the scheduler stops, so that nothing waiting on them is left hanging.
+ */
+public final class TimerWheelScheduler extends AbstractLifeCycle implements Scheduler {
+
+   private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+   private final String name;
+   private final long tickNanos;
+   private final int slotMask;
+   private final List<List<WheelTask>> slots;
+   private final Queue<WheelTask> submittedTasks = new ConcurrentLinkedQueue<WheelTask>();
+
+   private volatile Thread tickerThread;
+   private volatile long startNanos;
+   // Time the ticker thread parked until, submitters wake it up only for tasks due before then
+   private volatile long parkedUntilNanos = Long.MIN_VALUE;
+
+   /**
+    * @param tickMillis precision of the scheduler, tasks fire at most this much later than requested
+    * @param slotCount  number of slots in the wheel, rounded up to a power of two
+    */
+   public TimerWheelScheduler(final String name, final long tickMillis, final int slotCount) {
+      if (tickMillis <= 0 || slotCount <= 0) {
+         throw new IllegalArgumentException(String.format("Tick and slot count must be positive: %s, %s", tickMillis, slotCount));
+      }
+
+      final int roundedSlotCount = Integer.highestOneBit(slotCount) == slotCount ? slotCount : Integer.highestOneBit(slotCount) << 1;
+      this.name = name;
+      this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+      this.slotMask = roundedSlotCount - 1;
+      this.slots = new ArrayList<List<WheelTask>>(roundedSlotCount);
+      for (int idx = 0; idx < roundedSlotCount; idx++) {
+         slots.add(new ArrayList<WheelTask>());
+      }
+   }
+
+   @Override
+   protected void doStart() throws Exception {
+      startNanos = System.nanoTime();
+      tickerThread = new Thread(new Runnable() {
+         @Override
+         public void run() {
+            advanceWheel();
+         }
+      }, name);
+      tickerThread.setDaemon(true);
+      tickerThread.start();
+      super.doStart();
+   }
+
+   @Override
+   protected void doStop() throws Exception {
+      final Thread thread = tickerThread;
+      tickerThread = null;
+      if (thread != null) {
+         LockSupport.unpark(thread);
+         thread.join();
+      }
+      // Tasks are run ahead of their deadlines, e.g. suspended requests are answered instead of never completing
+      for (final List<WheelTask> slot : slots) {
+         for (final WheelTask wheelTask : slot) {
+            wheelTask.expire();
+         }
+         slot.clear();
+      }
+      expireSubmittedTasks();
+      super.doStop();
+   }
+
+   @Override
+   public Task schedule(final Runnable task, final long delay, final TimeUnit units) {
+      final Thread thread = tickerThread;
+      if (thread == null) {
+         throw new RejectedExecutionException(String.format("Scheduler %s is not running", name));
+      }
+
+      final WheelTask wheelTask = new WheelTask(task, System.nanoTime() + units.toNanos(Math.max(delay, 0)));
+      submittedTasks.add(wheelTask);
+      if (wheelTask.deadlineNanos < parkedUntilNanos) {
+         LockSupport.unpark(thread);
+      }
+      // Stopped while the task was submitted, it is not left in the queue for a ticker that is gone
+      if (tickerThread == null) {
+         expireSubmittedTasks();
+      }
+
+      return wheelTask;
+   }
+
+   private void expireSubmittedTasks() {
+      WheelTask wheelTask;
+      while ((wheelTask = submittedTasks.poll()) != null) {
+         wheelTask.expire();
+      }
+   }
+
+   private void advanceWheel() {
+      final Thread currentThread = Thread.currentThread();
+      long expiredTick = -1;
+
+      while (tickerThread == currentThread) {
+         final long currentTick = (System.nanoTime() - startNanos) / tickNanos;
+         placeSubmittedTasks(currentTick);
+         // Slots of all ticks passed while parked, every slot at most once when parked for more than a revolution
+         for (long tick = Math.max(expiredTick + 1, currentTick - slotMask); tick <= currentTick; tick++) {
+            expireSlot(slots.get((int) (tick & slotMask)), currentTick);
+         }
+         expiredTick = currentTick;
+
+         final long nextDeadlineTick = findNextDeadlineTick(currentTick);
+         parkedUntilNanos = nextDeadlineTick == NO_DEADLINE ? Long.MAX_VALUE : startNanos + nextDeadlineTick * tickNanos;
+         // Tasks submitted before the park time was published would not wake the ticker up
+         if (submittedTasks.isEmpty()) {
+            if (nextDeadlineTick == NO_DEADLINE) {
+               LockSupport.park(this);
+            } else {
+               LockSupport.parkNanos(this, parkedUntilNanos - System.nanoTime());
+            }
+         }
+         parkedUntilNanos = Long.MIN_VALUE;
+      }
+   }
+
+   private void placeSubmittedTasks(final long currentTick) {
+      WheelTask wheelTask;
+      while ((wheelTask = submittedTasks.poll()) != null) {
+         if (wheelTask.isDone()) {
+            continue;
+         }
+         // First tick that is not before the deadline, tasks that are already due go into the current slot
+         wheelTask.deadlineTick = Math.max(currentTick, (wheelTask.deadlineNanos - startNanos + tickNanos - 1) / tickNanos);
+         slots.get((int) (wheelTask.deadlineTick & slotMask)).add(wheelTask);
+      }
+   }
+
+   private void expireSlot(final List<WheelTask> slot, final long currentTick) {
+      int idx = 0;
+      while (idx < slot.size()) {
+         final WheelTask wheelTask = slot.get(idx);
+         if (!wheelTask.isDone() && wheelTask.deadlineTick > currentTick) {
+            idx++;
+            continue;
+         }
+
+         removeTask(slot, idx);
+         wheelTask.expire();
+      }
+   }
+
+   /**
+    * Looks through the slots of the next revolution of the wheel, dropping cancelled tasks on the way
+    *
+    * @return tick of the nearest deadline of the pending tasks, or {@link #NO_DEADLINE} when there are none
+    */
+   private long findNextDeadlineTick(final long currentTick) {
+      long nextDeadlineTick = NO_DEADLINE;
+      for (long tick = currentTick + 1; tick <= currentTick + slots.size(); tick++) {
+         final List<WheelTask> slot = slots.get((int) (tick & slotMask));
+         int idx = 0;
+         while (idx < slot.size()) {
+            final WheelTask wheelTask = slot.get(idx);
+            if (wheelTask.isDone()) {
+               removeTask(slot, idx);
+               continue;
+            }
+            nextDeadlineTick = Math.min(nextDeadlineTick, wheelTask.deadlineTick);
+            idx++;
+         }
+         // Deadlines in later slots or later revolutions are only further away
+         if (nextDeadlineTick <= tick) {
+            return nextDeadlineTick;
+         }
+      }
+
+      return nextDeadlineTick;
+   }
+
+   // Removed by moving the last task into its place, order within a slot does not matter
+   private static void removeTask(final List<WheelTask> slot, final int idx) {
+      final WheelTask lastTask = slot.remove(slot.size() - 1);
+      if (idx < slot.size()) {
+         slot.set(idx, lastTask);
+      }
+   }
+
+   @Override
+   public String toString() {
+      return String.format("%s@%x{%s}", TimerWheelScheduler.class.getSimpleName(), hashCode(), name);
+   }
+
+   private static final class WheelTask implements Task {
+
+      private final Runnable task;
+      private final long deadlineNanos;
+      private final AtomicBoolean done = new AtomicBoolean();
+      // Only accessed by the ticker thread
+      private long deadlineTick;
+
+      private WheelTask(final Runnable task, final long deadlineNanos) {
+         this.task = task;
+         this.deadlineNanos = deadlineNanos;
+      }
+
+      private boolean isDone() {
+         return done.get();
+      }
+
+      private void expire() {
+         if (!done.compareAndSet(false, true)) {
+            return;
+         }
+
+         try {
+            task.run();
+         } catch (final Throwable ex) {
+            ANSITerminal.error(String.format("Scheduled task failed: %s", ex.toString()));
+         }
+      }
+
+      @Override
+      public boolean cancel() {
+         return done.compareAndSet(false, true);
+      }
+   }
+}
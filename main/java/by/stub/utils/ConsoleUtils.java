@@ -20,8 +20,8 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package by.stub.utils;
 
 import by.stub.cli.ANSITerminal;
+import by.stub.cli.AsyncConsole;
 import by.stub.javax.servlet.http.HttpServletResponseWithGetStatus;
-import org.eclipse.jetty.http.HttpStatus;
 
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
@@ -43,49 +43,18 @@ public final class ConsoleUtils {
    }
 
    public static void logIncomingRequestError(final HttpServletRequest request, final String source, final String error) {
-
-      final String logMessage = String.format("[%s] -> %s [%s]%s: %s",
-         getTime(),
-         request.getMethod(),
-         source,
-         request.getRequestURI(),
-         error
-      );
-      ANSITerminal.error(logMessage);
+      AsyncConsole.incomingRequestError(request.getMethod(), source, request.getRequestURI(), error);
    }
 
    public static void logIncomingRequest(final HttpServletRequest request) {
-
-      final String logMessage = String.format("[%s] -> %s [%s]",
-         getTime(),
-         request.getMethod(),
-         request.getRequestURI()
-      );
-      ANSITerminal.incoming(logMessage);
+      AsyncConsole.incomingRequest(request.getMethod(), request.getRequestURI());
    }
 
+   /**
+    * Response status is logged in colour, by its class: errors in red, redirects in yellow, success in green
+    */
    public static void logOutgoingResponse(final String url, final HttpServletResponseWithGetStatus wrapper) {
-
-      final int status = wrapper.getStatus();
-
-      final String logMessage = String.format("[%s] <- %s [%s] %s",
-         getTime(),
-         status,
-         url,
-         HttpStatus.getMessage(status)
-      );
-
-      if (status >= HttpStatus.BAD_REQUEST_400) {
-         ANSITerminal.error(logMessage);
-      } else if (status >= HttpStatus.MULTIPLE_CHOICES_300) {
-         ANSITerminal.warn(logMessage);
-      } else if (status >= HttpStatus.OK_200) {
-         ANSITerminal.ok(logMessage);
-      } else if (status >= HttpStatus.CONTINUE_100) {
-         ANSITerminal.info(logMessage);
-      } else {
-         ANSITerminal.log(logMessage);
-      }
+      AsyncConsole.outgoingResponse(wrapper.getStatus(), url);
    }
 
    public static void logUnmarshalledStubRequest(final List<String> methods, final String url) {
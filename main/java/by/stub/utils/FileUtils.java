@@ -23,6 +23,12 @@ import by.stub.annotations.CoberturaIgnore;
 import by.stub.repackaged.org.apache.commons.io.IOUtils;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
@@ -70,6 +76,12 @@ public final class FileUtils {
       out.close();
    }
 
+   // Files at least this big are memory-mapped instead of loaded into heap, if they can be served as they are on disk
+   // A single mapping is indexed by int, larger files are streamed from disk instead
+   public static final long MAX_MAPPED_FILE_BYTES = Integer.MAX_VALUE;
+   private static volatile long fileMappingThresholdBytes = Long.MAX_VALUE;
+   private static final int UTF8_CHECK_BUFFER_CHARS = 8 * 1024;
+
    private FileUtils() {
 
    }
@@ -124,13 +136,6 @@ public final class FileUtils {
       return FileUtils.ASCII_TYPES.contains(StringUtils.extractFilenameExtension(file.getName()));
    }
 
-   public static boolean isTemplateFile(final File file) throws IOException {
-      if (FileUtils.isAsciiFile(file)) {
-         return FileUtils.asciiFileToString(file).contains(StringUtils.TEMPLATE_TOKEN_LEFT);
-      }
-      return false;
-   }
-
    public static byte[] fileToBytes(final File file) throws IOException {
       if (FileUtils.isAsciiFile(file)) {
          return FileUtils.asciiFileToUtf8Bytes(file);
@@ -139,6 +144,115 @@ public final class FileUtils {
    }
 
 
+   /**
+    * @param thresholdBytes size from which response files are memory-mapped, Long.MAX_VALUE disables mapping
+    */
+   public static void setFileMappingThreshold(final long thresholdBytes) {
+      fileMappingThresholdBytes = thresholdBytes;
+   }
+
+   public static boolean isFileMappingRequired(final File file) {
+      return file.length() >= fileMappingThresholdBytes;
+   }
+
+   /**
+    * @return true if the file fits neither into a single mapping nor into a heap array, so it can only be streamed
+    */
+   public static boolean isFileStreamingRequired(final File file) {
+      return file.length() > MAX_MAPPED_FILE_BYTES;
+   }
+
+   /**
+    * Maps the file into memory outside of heap. Text files are trimmed like when they are loaded, and mapped only
+    * if the rest of the loaded content would be the same as on disk.
+    *
+    * @return read-only mapped content of the file, or null if it must be loaded with {@link #fileToBytes(File)}
+    */
+   public static ByteBuffer mapFile(final File file) throws IOException {
+      final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+      final ByteBuffer mappedFile;
+      try {
+         // Mapping stays valid after the channel is closed
+         mappedFile = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+      } finally {
+         randomAccessFile.close();
+      }
+
+      if (!FileUtils.isAsciiFile(file)) {
+         return mappedFile;
+      }
+
+      return trimToServedAsIs(mappedFile);
+   }
+
+   /**
+    * @return text file content without leading and trailing whitespace, like {@link String#trim()} would do,
+    * or null if line separators, template tokens or malformed UTF-8 would make the loaded content differ
+    */
+   private static ByteBuffer trimToServedAsIs(final ByteBuffer textFile) {
+      // Bytes up to space are single byte characters in UTF-8, they never occur within a multi-byte character
+      int start = 0;
+      int end = textFile.limit();
+      while (start < end && isTrimmedByte(textFile.get(start))) {
+         start++;
+      }
+      while (end > start && isTrimmedByte(textFile.get(end - 1))) {
+         end--;
+      }
+      if (start == end) {
+         return null;
+      }
+
+      for (int idx = start; idx < end; idx++) {
+         final byte current = textFile.get(idx);
+         final boolean isLineSeparatorChanged = current == '\r' || (current == '\n' && !BR.equals(LINE_SEPARATOR_UNIX));
+         final boolean isTemplateToken = current == '<' && idx + 1 < end && textFile.get(idx + 1) == '%';
+         if (isLineSeparatorChanged || isTemplateToken) {
+            return null;
+         }
+      }
+
+      final ByteBuffer trimmed = textFile.duplicate();
+      trimmed.position(start);
+      trimmed.limit(end);
+      final ByteBuffer served = trimmed.slice();
+
+      return isValidUtf8(served) ? served : null;
+   }
+
+   private static boolean isValidUtf8(final ByteBuffer content) {
+      // Malformed UTF-8 would be replaced when loading the file as text
+      final CharsetDecoder utf8Decoder = StringUtils.charsetUTF8().newDecoder()
+         .onMalformedInput(CodingErrorAction.REPORT)
+         .onUnmappableCharacter(CodingErrorAction.REPORT);
+      final ByteBuffer input = content.duplicate();
+      final CharBuffer output = CharBuffer.allocate(UTF8_CHECK_BUFFER_CHARS);
+      while (true) {
+         final CoderResult result = utf8Decoder.decode(input, output, true);
+         if (result.isError()) {
+            return false;
+         }
+         output.clear();
+         if (result.isUnderflow()) {
+            return !utf8Decoder.flush(output).isError();
+         }
+      }
+   }
+
+   private static boolean isTrimmedByte(final byte value) {
+      return value >= 0 && value <= ' ';
+   }
+
+   /**
+    * @return copy of the mapped file content in heap
+    */
+   public static byte[] mappedFileToBytes(final ByteBuffer mappedFile) {
+      final byte[] bytes = new byte[mappedFile.limit()];
+      mappedFile.duplicate().get(bytes);
+
+      return bytes;
+   }
+
    @CoberturaIgnore
    public static byte[] binaryFileToBytes(final String dataYamlConfigParentDir, final String relativePath) throws IOException {
       final File contentFile = new File(dataYamlConfigParentDir, relativePath);
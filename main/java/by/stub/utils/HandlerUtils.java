@@ -21,6 +21,7 @@ package by.stub.utils;
 
 import by.stub.annotations.CoberturaIgnore;
 import by.stub.exception.Stubby4JException;
+import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.MimeTypes;
 
@@ -28,9 +29,15 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.InputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -40,6 +47,35 @@ import java.util.concurrent.TimeUnit;
 @SuppressWarnings("serial")
 public final class HandlerUtils {
 
+   private static final Set<String> HTTP_METHODS_CONTAINING_BODY = new HashSet<String>(Arrays.asList("post", "put"));
+   private static final int INITIAL_BODY_BUFFER_BYTES = 8 * 1024;
+   // Bigger buffers, allocated for large uploads, are not kept around for the next request
+   private static final int MAX_POOLED_BODY_BUFFER_BYTES = 256 * 1024;
+   private static final ThreadLocal<byte[]> BODY_BUFFERS = new ThreadLocal<byte[]>() {
+      @Override
+      protected byte[] initialValue() {
+         return new byte[INITIAL_BODY_BUFFER_BYTES];
+      }
+   };
+
+   private static final String HEADER_SERVER_NAME = buildHeaderServerName();
+   private static final String HEADER_EXPIRES_IN_PAST = HttpFields.formatDate(0);
+   private static volatile HeaderDate headerDate = new HeaderDate(-1);
+
+   /**
+    * Returned by {@link #parseByteRange(String, long)} when none of the requested bytes exist
+    */
+   public static final long[] UNSATISFIABLE_BYTE_RANGE = new long[0];
+   private static final String BYTES_UNIT = "bytes=";
+   private static final ThreadLocal<SimpleDateFormat> HTTP_DATE_FORMATS = new ThreadLocal<SimpleDateFormat>() {
+      @Override
+      protected SimpleDateFormat initialValue() {
+         final SimpleDateFormat httpDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+         httpDateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+         return httpDateFormat;
+      }
+   };
+
    private HandlerUtils() {
 
    }
@@ -59,8 +95,27 @@ public final class HandlerUtils {
       return StringUtils.inputStreamToString(inputStream);
    }
 
-   @CoberturaIgnore
    public static String constructHeaderServerName() {
+      return HEADER_SERVER_NAME;
+   }
+
+   /**
+    * @return value of the Date header, formatted at most once per second
+    */
+   public static String currentHeaderDate() {
+      final long currentSecond = System.currentTimeMillis() / 1000;
+      HeaderDate current = headerDate;
+      if (current.second != currentSecond) {
+         // Threads racing at the turn of a second format the same value, whichever is stored last wins
+         current = new HeaderDate(currentSecond);
+         headerDate = current;
+      }
+
+      return current.value;
+   }
+
+   @CoberturaIgnore
+   private static String buildHeaderServerName() {
       final Package pkg = HandlerUtils.class.getPackage();
       final String implementationVersion = StringUtils.isSet(pkg.getImplementationVersion()) ?
          pkg.getImplementationVersion() : "x.x.xx";
@@ -69,12 +124,12 @@ public final class HandlerUtils {
    }
 
    public static void setResponseMainHeaders(final HttpServletResponse response) {
-      response.setHeader(HttpHeader.SERVER.asString(), HandlerUtils.constructHeaderServerName());
-      response.setHeader(HttpHeader.DATE.asString(), new Date().toString());
+      response.setHeader(HttpHeader.SERVER.asString(), HEADER_SERVER_NAME);
+      response.setHeader(HttpHeader.DATE.asString(), currentHeaderDate());
       response.setHeader(HttpHeader.CONTENT_TYPE.asString(), MimeTypes.Type.TEXT_HTML_UTF_8.asString());
       response.setHeader(HttpHeader.CACHE_CONTROL.asString(), "no-cache, no-store, must-revalidate"); // HTTP 1.1.
       response.setHeader(HttpHeader.PRAGMA.asString(), "no-cache"); // HTTP 1.0.
-      response.setDateHeader(HttpHeader.EXPIRES.asString(), 0);
+      response.setHeader(HttpHeader.EXPIRES.asString(), HEADER_EXPIRES_IN_PAST);
    }
 
    public static String linkifyRequestUrl(final String scheme, final Object uri, final String host, final int port) {
@@ -89,19 +144,39 @@ public final class HandlerUtils {
       return builder.toString();
    }
 
-   public static String extractPostRequestBody(final HttpServletRequest request, final String source) throws IOException {
-      final Set<String> httpMethodsContainingBody = new HashSet<String>() {{
-         add("post");
-         add("put");
-      }};
+   public static boolean isRequestWithBody(final HttpServletRequest request) {
+      return HTTP_METHODS_CONTAINING_BODY.contains(StringUtils.toLower(request.getMethod()));
+   }
 
-      if (!httpMethodsContainingBody.contains(request.getMethod().toLowerCase())) {
+   public static String extractPostRequestBody(final HttpServletRequest request, final String source) throws IOException {
+      if (!isRequestWithBody(request)) {
          return null;
       }
 
       try {
-         final String requestContent = StringUtils.inputStreamToString(request.getInputStream());
-         return requestContent.replaceAll("\\\\/", "/"); //https://code.google.com/p/snakeyaml/issues/detail?id=93
+         final InputStream inputStream = request.getInputStream();
+         if (ObjectUtils.isNull(inputStream)) {
+            return null;
+         }
+
+         byte[] buffer = BODY_BUFFERS.get();
+         int length = 0;
+         int read;
+         while ((read = inputStream.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+            if (length == buffer.length) {
+               buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+         }
+         if (buffer.length <= MAX_POOLED_BODY_BUFFER_BYTES) {
+            BODY_BUFFERS.set(buffer);
+         }
+
+         final String requestContent = new String(buffer, 0, length, StringUtils.charsetUTF8()).trim();
+         if (requestContent.isEmpty()) {
+            return null;
+         }
+         return requestContent.replace("\\/", "/"); //https://code.google.com/p/snakeyaml/issues/detail?id=93
       } catch (final Exception ex) {
          final String err = String.format("Error when extracting POST body: %s, returning null..", ex.toString());
          ConsoleUtils.logIncomingRequestError(request, source, err);
@@ -109,6 +184,148 @@ public final class HandlerUtils {
       }
    }
 
+   /**
+    * Reads and throws away request body in chunks, without holding the whole body in memory
+    */
+   public static void discardRequestBody(final HttpServletRequest request) {
+      if (!isRequestWithBody(request)) {
+         return;
+      }
+
+      try {
+         final InputStream inputStream = request.getInputStream();
+         if (ObjectUtils.isNull(inputStream)) {
+            return;
+         }
+
+         final byte[] buffer = BODY_BUFFERS.get();
+         while (inputStream.read(buffer, 0, buffer.length) != -1) {
+            // Nothing to do with the content
+         }
+      } catch (final IOException ex) {
+         // Client went away, there is nothing left to discard
+      }
+   }
+
+   /**
+    * @param requestHeaders lower cased headers of the incoming GET or HEAD request
+    * @param entityTag      strong or weak entity tag of the response file
+    * @param lastModified   last modification time of the response file, in whole seconds
+    * @return true if the client already has the response file, as told by If-None-Match or If-Modified-Since
+    */
+   public static boolean isNotModified(final Map<String, String> requestHeaders, final String entityTag, final long lastModified) {
+      final String ifNoneMatch = requestHeaders.get(StringUtils.toLower(HttpHeader.IF_NONE_MATCH.asString()));
+      if (ObjectUtils.isNotNull(ifNoneMatch)) {
+         // If-Modified-Since is ignored when If-None-Match is present
+         return isEntityTagListed(ifNoneMatch, entityTag);
+      }
+      final long ifModifiedSince = parseHttpDate(requestHeaders.get(StringUtils.toLower(HttpHeader.IF_MODIFIED_SINCE.asString())));
+
+      return ifModifiedSince >= 0 && lastModified <= ifModifiedSince;
+   }
+
+   /**
+    * @return true if the requested range should be served, that is If-Range is missing or still matches the response file
+    */
+   public static boolean isRangeApplicable(final Map<String, String> requestHeaders, final String entityTag, final long lastModified) {
+      final String ifRange = requestHeaders.get(StringUtils.toLower(HttpHeader.IF_RANGE.asString()));
+      if (ObjectUtils.isNull(ifRange)) {
+         return true;
+      } else if (isWeakEntityTag(entityTag)) {
+         // Weak tag does not prove the file is byte for byte the same, neither does its modification time
+         return false;
+      }
+      final String trimmedIfRange = ifRange.trim();
+      if (trimmedIfRange.startsWith("\"") || trimmedIfRange.startsWith("W/")) {
+         // Only strong comparison is allowed for ranges
+         return trimmedIfRange.equals(entityTag);
+      }
+
+      return parseHttpDate(trimmedIfRange) == lastModified;
+   }
+
+   /**
+    * Parses a single byte range, ie.: 'bytes=0-499', 'bytes=500-' or 'bytes=-500'
+    *
+    * @return first and last requested byte positions, {@link #UNSATISFIABLE_BYTE_RANGE} if the range starts after
+    * the last byte, or null if the header is missing, malformed or asks for several ranges, so the whole file is served
+    */
+   public static long[] parseByteRange(final String rangeHeader, final long entityLength) {
+      if (ObjectUtils.isNull(rangeHeader)) {
+         return null;
+      }
+      final String range = rangeHeader.trim();
+      if (!range.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length()) || range.indexOf(',') != -1) {
+         return null;
+      }
+      final int dashIdx = range.indexOf('-', BYTES_UNIT.length());
+      if (dashIdx == -1) {
+         return null;
+      }
+
+      try {
+         final String first = range.substring(BYTES_UNIT.length(), dashIdx).trim();
+         final String last = range.substring(dashIdx + 1).trim();
+         if (first.isEmpty()) {
+            final long suffixLength = Long.parseLong(last);
+            if (suffixLength < 0) {
+               return null;
+            }
+            if (suffixLength == 0 || entityLength == 0) {
+               return UNSATISFIABLE_BYTE_RANGE;
+            }
+            return new long[]{Math.max(0, entityLength - suffixLength), entityLength - 1};
+         }
+
+         final long firstPosition = Long.parseLong(first);
+         final long lastPosition = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+         if (firstPosition < 0 || lastPosition < firstPosition) {
+            return null;
+         }
+         if (firstPosition >= entityLength) {
+            return UNSATISFIABLE_BYTE_RANGE;
+         }
+         return new long[]{firstPosition, Math.min(lastPosition, entityLength - 1)};
+      } catch (final NumberFormatException ex) {
+         return null;
+      }
+   }
+
+   /**
+    * @return milliseconds of the given HTTP date, or -1 if the date is missing or malformed
+    */
+   public static long parseHttpDate(final String httpDate) {
+      if (!StringUtils.isSet(httpDate)) {
+         return -1;
+      }
+      try {
+         return HTTP_DATE_FORMATS.get().parse(httpDate.trim()).getTime();
+      } catch (final ParseException ex) {
+         return -1;
+      }
+   }
+
+   private static boolean isEntityTagListed(final String entityTagList, final String entityTag) {
+      final String[] listedEntityTags = entityTagList.split(",");
+      for (final String listedEntityTag : listedEntityTags) {
+         final String trimmedEntityTag = listedEntityTag.trim();
+         // Weak comparison, tags marked as weak match too
+         if (trimmedEntityTag.equals("*") || opaqueEntityTag(trimmedEntityTag).equals(opaqueEntityTag(entityTag))) {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   private static boolean isWeakEntityTag(final String entityTag) {
+      return entityTag.startsWith("W/");
+   }
+
+   private static String opaqueEntityTag(final String entityTag) {
+      return isWeakEntityTag(entityTag) ? entityTag.substring(2) : entityTag;
+   }
+
    public static String calculateStubbyUpTime(final long timestamp) {
       final long days = TimeUnit.MILLISECONDS.toDays(timestamp);
       final long hours = TimeUnit.MILLISECONDS.toHours(timestamp) - TimeUnit.DAYS.toHours(TimeUnit.MILLISECONDS.toDays(timestamp));
@@ -122,4 +339,15 @@ public final class HandlerUtils {
    private static String pluralize(final long timeUnit) {
       return timeUnit == 1 ? "" : "s";
    }
+
+   private static final class HeaderDate {
+
+      private final long second;
+      private final String value;
+
+      private HeaderDate(final long second) {
+         this.second = second;
+         this.value = new Date(second * 1000).toString();
+      }
+   }
 }
\ No newline at end of file
@@ -0,0 +1,124 @@
+/*
+HTTP stub server written in Java with embedded Jetty
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.utils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+
+/**
+ * Parses JSON bodies into trees once, so that they can be compared many times without re-parsing.
+ * Comparison follows the rules of non extensible JSONCompare mode: objects must have the same keys
+ * with matching values, arrays must have matching elements in any order, numbers are compared by value.
+ */
+public final class JsonUtils {
+
+   private JsonUtils() {
+
+   }
+
+   /**
+    * @param json text to parse
+    * @return parsed {@link JSONObject} or {@link JSONArray}, or null if the given text is not a JSON object or array
+    */
+   public static Object parseJsonTree(final String json) {
+      if (!StringUtils.isSet(json)) {
+         return null;
+      }
+
+      final String trimmedJson = json.trim();
+      try {
+         if (trimmedJson.startsWith("{")) {
+            return new JSONObject(trimmedJson);
+         } else if (trimmedJson.startsWith("[")) {
+            return new JSONArray(trimmedJson);
+         }
+      } catch (final JSONException e) {
+         return null;
+      }
+
+      return null;
+   }
+
+   /**
+    * @param expected parsed stubbed JSON
+    * @param actual   parsed incoming JSON
+    * @return true, if both trees hold the same data
+    */
+   public static boolean jsonTreesMatch(final Object expected, final Object actual) {
+      if (expected instanceof Number && actual instanceof Number) {
+         return ((Number) expected).doubleValue() == ((Number) actual).doubleValue();
+      } else if (ObjectUtils.isNull(expected) || ObjectUtils.isNull(actual)) {
+         return expected == actual;
+      } else if (!expected.getClass().isAssignableFrom(actual.getClass())) {
+         return false;
+      } else if (expected instanceof JSONObject) {
+         return jsonObjectsMatch((JSONObject) expected, (JSONObject) actual);
+      } else if (expected instanceof JSONArray) {
+         return jsonArraysMatch((JSONArray) expected, (JSONArray) actual);
+      }
+
+      return expected.equals(actual);
+   }
+
+   private static boolean jsonObjectsMatch(final JSONObject expected, final JSONObject actual) {
+      if (expected.length() != actual.length()) {
+         return false;
+      }
+
+      final Iterator<?> keys = expected.keys();
+      while (keys.hasNext()) {
+         final String key = (String) keys.next();
+         if (!actual.has(key) || !jsonTreesMatch(expected.opt(key), actual.opt(key))) {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   private static boolean jsonArraysMatch(final JSONArray expected, final JSONArray actual) {
+      if (expected.length() != actual.length()) {
+         return false;
+      }
+
+      // Elements may come in any order, matching is an equivalence so the first unmatched equal element can be taken
+      final boolean[] matchedActualElements = new boolean[actual.length()];
+      for (int expectedIdx = 0; expectedIdx < expected.length(); expectedIdx++) {
+         final Object expectedElement = expected.opt(expectedIdx);
+         boolean isElementMatched = false;
+         for (int actualIdx = 0; actualIdx < actual.length(); actualIdx++) {
+            if (!matchedActualElements[actualIdx] && jsonTreesMatch(expectedElement, actual.opt(actualIdx))) {
+               matchedActualElements[actualIdx] = true;
+               isElementMatched = true;
+               break;
+            }
+         }
+
+         if (!isElementMatched) {
+            return false;
+         }
+      }
+
+      return true;
+   }
+}
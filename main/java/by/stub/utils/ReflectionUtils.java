@@ -26,6 +26,7 @@ import java.lang.reflect.Method;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -39,13 +40,23 @@ import java.util.Map;
 public final class ReflectionUtils {
 
    private static List<String> skipableProperties =
-      Collections.unmodifiableList(Arrays.asList("STUBBY_RESOURCE_ID_HEADER", "AUTH_HEADER", "REGEX_START", "REGEX_END", "regexGroups", "responseSequenceCounter", "fileBytes"));
+      Collections.unmodifiableList(Arrays.asList("STUBBY_RESOURCE_ID_HEADER", "AUTH_HEADER", "REGEX_START", "REGEX_END", "matchResult", "methodMask", "customMethods", "responseSequenceCounter", "fileBytes", "template", "stubLatency", "statusCode", "mappedFile", "entityTag", "lastModified", "compressible", "compressedPerRequest", "encodedBodies", "recordedResponse", "resourceId"));
 
    private ReflectionUtils() {
 
    }
 
    public static Map<String, String> getProperties(final Object object) throws IllegalAccessException, InvocationTargetException, UnsupportedEncodingException {
+      return getProperties(object, Collections.<String>emptyList(), null);
+   }
+
+   /**
+    * Same as {@link #getProperties(Object)}, except that the marked properties are not read through their getters,
+    * which may load or copy whole files. Marked properties which are set get the given marker as their value
+    */
+   public static Map<String, String> getProperties(final Object object,
+                                                   final Collection<String> markedProperties,
+                                                   final String marker) throws IllegalAccessException, InvocationTargetException, UnsupportedEncodingException {
       final Map<String, String> properties = new HashMap<String, String>();
 
       for (final Field field : object.getClass().getDeclaredFields()) {
@@ -63,11 +74,20 @@ public final class ReflectionUtils {
             continue;
          }
 
+         final String propertyName = StringUtils.toLower(field.getName());
+         if (markedProperties.contains(propertyName)) {
+            final Object fieldObject = field.get(object);
+            if (ObjectUtils.isNotNull(fieldObject) && (!(fieldObject instanceof String) || StringUtils.isSet((String) fieldObject))) {
+               properties.put(propertyName, marker);
+            }
+            continue;
+         }
+
          final Object fieldObject = ReflectionUtils.getPropertyValue(object, field.getName());
          final String value = StringUtils.objectToString(fieldObject);
 
          if (!value.equals(StringUtils.NOT_PROVIDED) && !value.equals("{}")) {
-            properties.put(StringUtils.toLower(field.getName()), value);
+            properties.put(propertyName, value);
          }
       }
 
@@ -0,0 +1,131 @@
+/*
+HTTP stub server written in Java with embedded Jetty
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.utils;
+
+import by.stub.annotations.VisibleForTesting;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Holds a bounded, shared cache of compiled stubbed regex patterns, so that the
+ * same stubbed value is compiled once and not on every request comparison.
+ */
+public final class RegexUtils {
+
+   @VisibleForTesting
+   static final int MAX_CACHED_PATTERNS = 16384;
+
+   // ConcurrentHashMap does not accept null values, invalid regex values are cached using this marker
+   private static final Pattern NOT_A_REGEX = Pattern.compile("");
+   private static final ConcurrentHashMap<String, Pattern> PATTERN_CACHE = new ConcurrentHashMap<String, Pattern>();
+   private static final String REGEX_META_CHARACTERS = "\\.[]{}()*+?^$|";
+   private static final String REGEX_QUANTIFIERS = "*+?{";
+
+   private RegexUtils() {
+
+   }
+
+   /**
+    * Compiles given regex using {@link Pattern#MULTILINE} flag, or returns previously compiled instance.
+    *
+    * @param regex regex to compile
+    * @return compiled pattern or null, if the given value is not a valid regex
+    */
+   public static Pattern compilePattern(final String regex) {
+      final Pattern cachedPattern = PATTERN_CACHE.get(regex);
+      if (ObjectUtils.isNotNull(cachedPattern)) {
+         return cachedPattern == NOT_A_REGEX ? null : cachedPattern;
+      }
+
+      Pattern compiledPattern;
+      try {
+         // Pattern.MULTILINE changes the behavior of '^' and '$' characters,
+         // it does not mean that newline feeds and carriage return will be matched by default
+         // You need to make sure that you regex pattern covers both \r (carriage return) and \n (linefeed).
+         // It is achievable by using symbol '\s+' which covers both \r (carriage return) and \n (linefeed).
+         compiledPattern = Pattern.compile(regex, Pattern.MULTILINE);
+      } catch (final PatternSyntaxException e) {
+         compiledPattern = NOT_A_REGEX;
+      }
+
+      // Stubbed values are the only ones compiled, so the limit is there to protect
+      // from stale patterns piling up after many live reloads of the stubbed data
+      if (PATTERN_CACHE.size() >= MAX_CACHED_PATTERNS) {
+         PATTERN_CACHE.clear();
+      }
+      PATTERN_CACHE.putIfAbsent(regex, compiledPattern);
+
+      return compiledPattern == NOT_A_REGEX ? null : compiledPattern;
+   }
+
+   /**
+    * Checks whether given regex has no regex meta characters, ie.: '/resource/item/1'.
+    * Such regex fully matches only the text equal to it, so it can be compared without regex matching
+    *
+    * @param regex regex to check
+    * @return true, if the given regex is a plain literal text
+    */
+   public static boolean isLiteral(final String regex) {
+      for (int idx = 0; idx < regex.length(); idx++) {
+         if (REGEX_META_CHARACTERS.indexOf(regex.charAt(idx)) >= 0) {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   /**
+    * Extracts the literal text that any value fully matching the given regex must start with,
+    * ie.: for '^/resource/([0-9]+)$' the literal prefix is '/resource/'
+    *
+    * @param regex regex to extract literal prefix from
+    * @return literal prefix or empty string, if the regex does not start with a literal text
+    */
+   public static String extractLiteralPrefix(final String regex) {
+      // Alternation may split the regex anywhere, not worth parsing groups to find out where
+      if (regex.indexOf('|') >= 0) {
+         return "";
+      }
+
+      final int startIndex = regex.startsWith("^") ? 1 : 0;
+      final StringBuilder literalPrefix = new StringBuilder(regex.length());
+      for (int idx = startIndex; idx < regex.length(); idx++) {
+         final char character = regex.charAt(idx);
+         if (REGEX_META_CHARACTERS.indexOf(character) >= 0) {
+            // Quantifier applies to the preceding character, which therefore may not be there
+            if (REGEX_QUANTIFIERS.indexOf(character) >= 0 && literalPrefix.length() > 0) {
+               literalPrefix.setLength(literalPrefix.length() - 1);
+            }
+            break;
+         }
+         literalPrefix.append(character);
+      }
+
+      return literalPrefix.toString();
+   }
+
+   @VisibleForTesting
+   static int getCachedPatternsCount() {
+      return PATTERN_CACHE.size();
+   }
+}
@@ -96,15 +96,6 @@ public final class StringUtils {
       return String.format("%s.%s", propertyName, capturingGroupIdx);
    }
 
-   public static String replaceTokens(final byte[] stringBytes, Map<String, String> tokensAndValues) {
-      String template = StringUtils.newStringUtf8(stringBytes);
-      for (Map.Entry<String, String> entry : tokensAndValues.entrySet()) {
-         final String regexifiedKey = String.format("%s\\s{0,}%s\\s{0,}%s", StringUtils.TEMPLATE_TOKEN_LEFT, entry.getKey(), StringUtils.TEMPLATE_TOKEN_RIGHT);
-         template = template.replaceAll(regexifiedKey, entry.getValue());
-      }
-      return template;
-   }
-
    public static String escapeHtmlEntities(final String toBeEscaped) {
       return toBeEscaped.replaceAll("<", "&lt;").replaceAll(">", "&gt;");
    }
@@ -42,6 +42,9 @@ final class StubRequestBuilder implements StubBuilder<StubRequest> {
    @Override
    public StubRequest build() throws Exception {
       ReflectionUtils.injectObjectFields(this, fieldNameAndValues);
-      return new StubRequest(url, post, file, method, headers, query);
+      final StubRequest stubRequest = new StubRequest(url, post, file, method, headers, query);
+      stubRequest.prepareForMatching();
+
+      return stubRequest;
    }
 }
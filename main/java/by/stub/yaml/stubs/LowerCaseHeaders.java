@@ -0,0 +1,73 @@
+/*
+HTTP stub server written in Java with embedded Jetty
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.yaml.stubs;
+
+import by.stub.utils.StringUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Header names are case insensitive, so they are lower cased once when put into this map,
+ * instead of re-normalizing the whole map every time headers are read
+ */
+@SuppressWarnings("serial")
+final class LowerCaseHeaders extends LinkedHashMap<String, String> {
+
+   LowerCaseHeaders() {
+      super();
+   }
+
+   LowerCaseHeaders(final Map<String, String> headers) {
+      super(headers.size());
+      putAll(headers);
+   }
+
+   @Override
+   public String put(final String name, final String value) {
+      return super.put(StringUtils.toLower(name), value);
+   }
+
+   @Override
+   public void putAll(final Map<? extends String, ? extends String> headers) {
+      for (final Map.Entry<? extends String, ? extends String> entry : headers.entrySet()) {
+         put(entry.getKey(), entry.getValue());
+      }
+   }
+
+   @Override
+   public String get(final Object name) {
+      return super.get(toLowerName(name));
+   }
+
+   @Override
+   public boolean containsKey(final Object name) {
+      return super.containsKey(toLowerName(name));
+   }
+
+   @Override
+   public String remove(final Object name) {
+      return super.remove(toLowerName(name));
+   }
+
+   private static Object toLowerName(final Object name) {
+      return name instanceof String ? StringUtils.toLower((String) name) : name;
+   }
+}
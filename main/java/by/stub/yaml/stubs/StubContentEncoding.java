@@ -0,0 +1,200 @@
+/*
+A Java-based HTTP stub server
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.yaml.stubs;
+
+import by.stub.utils.ObjectUtils;
+import by.stub.utils.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content codings of compressed response bodies, in the order of preference when a client accepts several
+ */
+public enum StubContentEncoding {
+
+   GZIP("gzip") {
+      @Override
+      public DeflaterOutputStream wrap(final OutputStream outputStream) throws IOException {
+         return new GZIPOutputStream(outputStream);
+      }
+   },
+   DEFLATE("deflate") {
+      @Override
+      public DeflaterOutputStream wrap(final OutputStream outputStream) throws IOException {
+         // zlib format, as expected by HTTP clients from 'deflate' coding
+         return new DeflaterOutputStream(outputStream);
+      }
+   };
+
+   // Compressing these again wastes CPU for no gain in size
+   private static final Set<String> COMPRESSED_MIME_TYPES = Collections.unmodifiableSet(
+      new HashSet<String>(Arrays.asList(
+         "image/gif",
+         "image/jpeg",
+         "image/jpg",
+         "image/png",
+         "image/webp",
+         "application/gzip",
+         "application/x-gzip",
+         "application/zip",
+         "application/x-compress",
+         "application/x-bzip2",
+         "application/x-7z-compressed",
+         "application/x-rar-compressed",
+         "application/pdf",
+         "application/octet-stream",
+         "font/woff",
+         "font/woff2",
+         "application/font-woff"
+      ))
+   );
+   private static final String[] COMPRESSED_MIME_TYPE_PREFIXES = {"audio/", "video/"};
+
+   private final String name;
+
+   StubContentEncoding(final String name) {
+      this.name = name;
+   }
+
+   /**
+    * @return coding name used in Accept-Encoding and Content-Encoding headers
+    */
+   public String getName() {
+      return name;
+   }
+
+   /**
+    * Tags each precompressed variant apart from the file as is, as required for strong entity tags
+    */
+   public String tagVariant(final String entityTag) {
+      return String.format("%s-%s\"", entityTag.substring(0, entityTag.length() - 1), name);
+   }
+
+   public byte[] encode(final byte[] content) throws IOException {
+      final ByteArrayOutputStream encodedContent = new ByteArrayOutputStream(Math.max(32, content.length / 4));
+      final OutputStream encodingStream = wrap(encodedContent);
+      encodingStream.write(content);
+      encodingStream.close();
+
+      return encodedContent.toByteArray();
+   }
+
+   /**
+    * @return stream compressing what is written to the given stream, finish it to write the end of the compressed content
+    */
+   public abstract DeflaterOutputStream wrap(final OutputStream outputStream) throws IOException;
+
+   /**
+    * @param contentType stubbed Content-Type header, may have parameters, ie.: 'text/plain; charset=UTF-8'
+    * @return false if the content is compressed already
+    */
+   public static boolean isCompressibleContentType(final String contentType) {
+      if (!StringUtils.isSet(contentType)) {
+         return true;
+      }
+      final int paramsIdx = contentType.indexOf(';');
+      final String mimeType = StringUtils.toLower((paramsIdx == -1 ? contentType : contentType.substring(0, paramsIdx)).trim());
+      if (COMPRESSED_MIME_TYPES.contains(mimeType)) {
+         return false;
+      }
+      for (final String prefix : COMPRESSED_MIME_TYPE_PREFIXES) {
+         if (mimeType.startsWith(prefix)) {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   /**
+    * @param acceptEncoding Accept-Encoding header of the incoming request, ie.: 'gzip, deflate;q=0.5'
+    * @return the most preferred coding accepted by the client, or null if the body should be sent as is
+    */
+   public static StubContentEncoding negotiate(final String acceptEncoding) {
+      if (!StringUtils.isSet(acceptEncoding)) {
+         return null;
+      }
+      final float[] qualities = new float[values().length];
+      Arrays.fill(qualities, -1);
+      float wildcardQuality = -1;
+
+      for (final String codingRange : acceptEncoding.split(",")) {
+         final String[] nameAndParams = codingRange.split(";");
+         final String codingName = StringUtils.toLower(nameAndParams[0].trim());
+         final float quality = parseQuality(nameAndParams);
+         if (codingName.equals("*")) {
+            wildcardQuality = quality;
+            continue;
+         }
+         final StubContentEncoding contentEncoding = fromName(codingName);
+         if (ObjectUtils.isNotNull(contentEncoding)) {
+            qualities[contentEncoding.ordinal()] = quality;
+         }
+      }
+
+      StubContentEncoding preferred = null;
+      float preferredQuality = 0;
+      for (final StubContentEncoding contentEncoding : values()) {
+         final float quality = qualities[contentEncoding.ordinal()] >= 0 ? qualities[contentEncoding.ordinal()] : wildcardQuality;
+         if (quality > preferredQuality) {
+            preferred = contentEncoding;
+            preferredQuality = quality;
+         }
+      }
+
+      return preferred;
+   }
+
+   private static StubContentEncoding fromName(final String lowerCaseName) {
+      if (lowerCaseName.equals("x-gzip")) {
+         return GZIP;
+      }
+      for (final StubContentEncoding contentEncoding : values()) {
+         if (contentEncoding.name.equals(lowerCaseName)) {
+            return contentEncoding;
+         }
+      }
+
+      return null;
+   }
+
+   private static float parseQuality(final String[] nameAndParams) {
+      for (int idx = 1; idx < nameAndParams.length; idx++) {
+         final String param = nameAndParams[idx].trim();
+         if (param.startsWith("q=") || param.startsWith("Q=")) {
+            try {
+               return Float.parseFloat(param.substring(2).trim());
+            } catch (final NumberFormatException ex) {
+               return 0;
+            }
+         }
+      }
+
+      return 1;
+   }
+}
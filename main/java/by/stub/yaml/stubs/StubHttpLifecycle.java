@@ -34,7 +34,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 @SuppressWarnings("unchecked")
 public class StubHttpLifecycle {
 
-   private final AtomicInteger responseSequencedIdCounter = new AtomicInteger(0);
+   private final AtomicInteger responseSequencedIdCounter;
 
    public static final StubHttpLifecycle NULL = null;
    private String httpLifeCycleAsYaml;
@@ -42,12 +42,26 @@ public class StubHttpLifecycle {
    private Object response;
    private String requestAsYaml;
    private String responseAsYaml;
-    private boolean isUsed;
+   private int resourceIndex = -1;
 
     public StubHttpLifecycle() {
+      responseSequencedIdCounter = new AtomicInteger(0);
       response = StubResponse.newStubResponse();
    }
 
+   /**
+    * Copies the stub for the given index, responses are copied too while the response sequence is shared
+    */
+   private StubHttpLifecycle(final StubHttpLifecycle stubbed, final int listIndex) {
+      this.responseSequencedIdCounter = stubbed.responseSequencedIdCounter;
+      this.httpLifeCycleAsYaml = stubbed.httpLifeCycleAsYaml;
+      this.request = stubbed.request;
+      this.response = stubbed.response;
+      this.requestAsYaml = stubbed.requestAsYaml;
+      this.responseAsYaml = stubbed.responseAsYaml;
+      setResourceId(listIndex);
+   }
+
    public void setRequest(final StubRequest request) {
       this.request = request;
    }
@@ -144,10 +158,44 @@ public class StubHttpLifecycle {
       this.responseAsYaml = responseAsYaml;
    }
 
+   /**
+    * @return index of this stub in the stubbed data, or -1 if it was not assigned one
+    */
+   public int getResourceIndex() {
+      return resourceIndex;
+   }
+
+   /**
+    * Gives this stub and its responses the given index, only while the stub is not published yet, see {@link #withResourceIndex(int)}
+    */
    public void setResourceId(final int listIndex) {
-      for (final StubResponse response : getAllResponses()) {
-         response.addResourceIDHeader(listIndex);
+      this.resourceIndex = listIndex;
+      if (response instanceof StubResponse) {
+         response = ((StubResponse) response).withResourceId(listIndex);
+         return;
+      }
+
+      final List<StubResponse> indexedResponses = new LinkedList<StubResponse>();
+      for (final StubResponse sequencedResponse : getAllResponses()) {
+         indexedResponses.add(sequencedResponse.withResourceId(listIndex));
+      }
+      response = indexedResponses;
+   }
+
+   /**
+    * @return this stub if it already has the given index or was never given one, otherwise its copy with the given index.
+    * Stubs given an index may be served by a published snapshot, so they are never modified
+    */
+   public StubHttpLifecycle withResourceIndex(final int listIndex) {
+      if (resourceIndex == listIndex) {
+         return this;
       }
+      if (resourceIndex == -1) {
+         setResourceId(listIndex);
+         return this;
+      }
+
+      return new StubHttpLifecycle(this, listIndex);
    }
 
    public String getAjaxResponseContent(final StubTypes stubType, final String propertyName) throws Exception {
@@ -0,0 +1,58 @@
+/*
+A Java-based HTTP stub server
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.yaml.stubs;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Standard HTTP methods. Each method owns one bit of the method mask of a request, so methods
+ * of a stubbed and an incoming request are matched by a single AND of their masks.
+ */
+public enum StubHttpMethod {
+
+   GET, HEAD, POST, PUT, DELETE, OPTIONS, TRACE, CONNECT, PATCH;
+
+   private static final Map<String, StubHttpMethod> BY_NAME = new HashMap<String, StubHttpMethod>();
+
+   static {
+      for (final StubHttpMethod method : values()) {
+         BY_NAME.put(method.name(), method);
+      }
+   }
+
+   private final int bit;
+
+   StubHttpMethod() {
+      this.bit = 1 << ordinal();
+   }
+
+   public int getBit() {
+      return bit;
+   }
+
+   /**
+    * @param upperCaseName upper cased method name, ie.: 'GET'
+    * @return standard method with the given name, or null if it is a custom method
+    */
+   public static StubHttpMethod fromUpperCaseName(final String upperCaseName) {
+      return BY_NAME.get(upperCaseName);
+   }
+}
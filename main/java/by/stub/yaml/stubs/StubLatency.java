@@ -0,0 +1,201 @@
+/*
+A Java-based HTTP stub server
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.yaml.stubs;
+
+import by.stub.utils.StringUtils;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Response latency of a stub, parsed once when stubs are loaded. Latency is either fixed or sampled per request
+ * from a distribution, all values are in milliseconds:
+ * <ul>
+ * <li>'1000' - fixed latency</li>
+ * <li>'uniform(100, 500)' - uniformly distributed between min and max</li>
+ * <li>'normal(200, 50)' - normally distributed with mean and standard deviation, negative samples become zero</li>
+ * <li>'lognormal(200, 0.5)' - log-normally distributed with median and sigma of the underlying normal distribution</li>
+ * <li>'p50=100, p99=800, p999=2000' - percentile table, interpolated linearly between the given percentiles.
+ * Below the lowest given percentile its value is used, above the highest one its value is used</li>
+ * </ul>
+ * Percentile names are 'p' followed by percent digits with implied decimal point after the second digit,
+ * ie.: 'p5' is 5%, 'p99' is 99%, 'p999' is 99.9% and 'p100' is 100%.
+ * <p>
+ * Latency that cannot be parsed fails the requests to the stub, not loading of the stubs.
+ * Immutable, samples come from the random number generator of the calling thread.
+ */
+public final class StubLatency {
+
+   private static final Pattern DISTRIBUTION_PATTERN = Pattern.compile("^(uniform|normal|lognormal)\\s*\\(\\s*([^,\\s]+)\\s*,\\s*([^,\\s]+)\\s*\\)$");
+   private static final Pattern PERCENTILE_PATTERN = Pattern.compile("^p(\\d+)\\s*=\\s*(\\S+)$");
+
+   private static final int FIXED = 0;
+   private static final int UNIFORM = 1;
+   private static final int NORMAL = 2;
+   private static final int LOGNORMAL = 3;
+   private static final int PERCENTILES = 4;
+   private static final int INVALID = 5;
+
+   private final int kind;
+   private final double first;
+   private final double second;
+   // Quantiles in ascending order, each with its latency, only for percentile tables
+   private final double[] quantiles;
+   private final double[] quantileMillis;
+   private final String invalidReason;
+
+   private StubLatency(final int kind, final double first, final double second, final double[] quantiles, final double[] quantileMillis, final String invalidReason) {
+      this.kind = kind;
+      this.first = first;
+      this.second = second;
+      this.quantiles = quantiles;
+      this.quantileMillis = quantileMillis;
+      this.invalidReason = invalidReason;
+   }
+
+   /**
+    * @param latency latency as stubbed in YAML
+    * @return parsed latency, or null if latency was not stubbed
+    */
+   public static StubLatency parse(final String latency) {
+      if (!StringUtils.isSet(latency)) {
+         return null;
+      }
+
+      final String trimmed = latency.trim();
+      try {
+         final Matcher distributionMatcher = DISTRIBUTION_PATTERN.matcher(StringUtils.toLower(trimmed));
+         if (distributionMatcher.matches()) {
+            return parseDistribution(distributionMatcher.group(1), parseMillis(distributionMatcher.group(2)), Double.parseDouble(distributionMatcher.group(3)));
+         } else if (StringUtils.toLower(trimmed).startsWith("p")) {
+            return parsePercentiles(StringUtils.toLower(trimmed));
+         }
+
+         return new StubLatency(FIXED, Long.parseLong(trimmed), 0, null, null, null);
+      } catch (final NumberFormatException ex) {
+         return new StubLatency(INVALID, 0, 0, null, null, ex.toString());
+      }
+   }
+
+   /**
+    * @return latency to apply to the next response, in milliseconds
+    * @throws NumberFormatException if the stubbed latency could not be parsed
+    */
+   public long sampleMillis() {
+      switch (kind) {
+         case FIXED:
+            return (long) first;
+         case UNIFORM:
+            return Math.round(first + ThreadLocalRandom.current().nextDouble() * (second - first));
+         case NORMAL:
+            return Math.max(0, Math.round(first + ThreadLocalRandom.current().nextGaussian() * second));
+         case LOGNORMAL:
+            return Math.round(first * Math.exp(ThreadLocalRandom.current().nextGaussian() * second));
+         case PERCENTILES:
+            return samplePercentiles(ThreadLocalRandom.current().nextDouble());
+         default:
+            throw new NumberFormatException(invalidReason);
+      }
+   }
+
+   private long samplePercentiles(final double quantile) {
+      if (quantile <= quantiles[0]) {
+         return Math.round(quantileMillis[0]);
+      }
+
+      for (int idx = 1; idx < quantiles.length; idx++) {
+         if (quantile <= quantiles[idx]) {
+            final double fraction = (quantile - quantiles[idx - 1]) / (quantiles[idx] - quantiles[idx - 1]);
+            return Math.round(quantileMillis[idx - 1] + fraction * (quantileMillis[idx] - quantileMillis[idx - 1]));
+         }
+      }
+
+      return Math.round(quantileMillis[quantileMillis.length - 1]);
+   }
+
+   private static StubLatency parseDistribution(final String name, final double first, final double second) {
+      if (second < 0) {
+         throw new NumberFormatException(String.format("Second parameter of %s latency must not be negative: %s", name, second));
+      }
+
+      if (name.equals("uniform")) {
+         if (second < first) {
+            throw new NumberFormatException(String.format("Max of uniform latency is less than min: %s < %s", second, first));
+         }
+         return new StubLatency(UNIFORM, first, second, null, null, null);
+      } else if (name.equals("normal")) {
+         return new StubLatency(NORMAL, first, second, null, null, null);
+      }
+
+      return new StubLatency(LOGNORMAL, first, second, null, null, null);
+   }
+
+   private static StubLatency parsePercentiles(final String table) {
+      final String[] entries = table.split(",");
+      final double[][] points = new double[entries.length][];
+      for (int idx = 0; idx < entries.length; idx++) {
+         final Matcher percentileMatcher = PERCENTILE_PATTERN.matcher(entries[idx].trim());
+         if (!percentileMatcher.matches()) {
+            throw new NumberFormatException(String.format("Invalid latency percentile: '%s'", entries[idx].trim()));
+         }
+         points[idx] = new double[]{toQuantile(percentileMatcher.group(1)), parseMillis(percentileMatcher.group(2))};
+      }
+
+      Arrays.sort(points, new Comparator<double[]>() {
+         @Override
+         public int compare(final double[] left, final double[] right) {
+            return Double.compare(left[0], right[0]);
+         }
+      });
+      final double[] quantiles = new double[points.length];
+      final double[] quantileMillis = new double[points.length];
+      for (int idx = 0; idx < points.length; idx++) {
+         if (idx > 0 && (points[idx][0] == points[idx - 1][0] || points[idx][1] < points[idx - 1][1])) {
+            throw new NumberFormatException(String.format("Latency percentiles must be distinct and not decreasing: '%s'", table));
+         }
+         quantiles[idx] = points[idx][0];
+         quantileMillis[idx] = points[idx][1];
+      }
+
+      return new StubLatency(PERCENTILES, 0, 0, quantiles, quantileMillis, null);
+   }
+
+   private static double toQuantile(final String percentDigits) {
+      if (percentDigits.equals("100")) {
+         return 1;
+      } else if (percentDigits.length() <= 2) {
+         return Integer.parseInt(percentDigits) / 100.0;
+      }
+
+      return Double.parseDouble(percentDigits.substring(0, 2) + "." + percentDigits.substring(2)) / 100.0;
+   }
+
+   private static double parseMillis(final String millis) {
+      final double parsed = Double.parseDouble(millis);
+      if (parsed < 0 || Double.isNaN(parsed) || Double.isInfinite(parsed)) {
+         throw new NumberFormatException(String.format("Latency must be a non-negative number of milliseconds: %s", millis));
+      }
+
+      return parsed;
+   }
+}
@@ -0,0 +1,163 @@
+/*
+HTTP stub server written in Java with embedded Jetty
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.yaml.stubs;
+
+import by.stub.utils.ObjectUtils;
+import by.stub.utils.StringUtils;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Outcome of matching an incoming request against the stubbed requests. There is one instance per incoming
+ * request, regex groups captured while comparing to a stub are discarded before comparing to the next one.
+ * <p>
+ * Captured groups are kept in flat arrays of property name, property key and group index, template token
+ * names like 'url.1' or 'query.type.0' are only built when a response template asks for them.
+ * <p>
+ * Not thread safe, it belongs to the thread handling the incoming request.
+ */
+public final class StubMatchResult {
+
+   private static final int INITIAL_GROUPS_CAPACITY = 8;
+
+   private String[] propertyNames;
+   private String[] propertyKeys;
+   private int[] groupIndexes;
+   private String[] groupValues;
+   private int groupsCount;
+   private StubHttpLifecycle matchedLifecycle;
+   private long matchingNanos;
+
+   public StubMatchResult() {
+      this.propertyNames = new String[INITIAL_GROUPS_CAPACITY];
+      this.propertyKeys = new String[INITIAL_GROUPS_CAPACITY];
+      this.groupIndexes = new int[INITIAL_GROUPS_CAPACITY];
+      this.groupValues = new String[INITIAL_GROUPS_CAPACITY];
+   }
+
+   void addRegexGroup(final String propertyName, final int groupIndex, final String groupValue) {
+      addRegexGroup(propertyName, null, groupIndex, groupValue);
+   }
+
+   /**
+    * @param propertyKey key of the map entry within the property, ie.: query param name, or null
+    */
+   void addRegexGroup(final String propertyName, final String propertyKey, final int groupIndex, final String groupValue) {
+      if (groupsCount == groupValues.length) {
+         final int newCapacity = groupValues.length * 2;
+         propertyNames = Arrays.copyOf(propertyNames, newCapacity);
+         propertyKeys = Arrays.copyOf(propertyKeys, newCapacity);
+         groupIndexes = Arrays.copyOf(groupIndexes, newCapacity);
+         groupValues = Arrays.copyOf(groupValues, newCapacity);
+      }
+
+      propertyNames[groupsCount] = propertyName;
+      propertyKeys[groupsCount] = propertyKey;
+      groupIndexes[groupsCount] = groupIndex;
+      groupValues[groupsCount] = groupValue;
+      groupsCount++;
+   }
+
+   void clearRegexGroups() {
+      Arrays.fill(propertyNames, 0, groupsCount, null);
+      Arrays.fill(propertyKeys, 0, groupsCount, null);
+      Arrays.fill(groupValues, 0, groupsCount, null);
+      groupsCount = 0;
+   }
+
+   /**
+    * Replaces this result with a copy of the given one, ie.: when match result was cached
+    */
+   public void copyFrom(final StubMatchResult source) {
+      clearRegexGroups();
+      for (int idx = 0; idx < source.groupsCount; idx++) {
+         addRegexGroup(source.propertyNames[idx], source.propertyKeys[idx], source.groupIndexes[idx], source.groupValues[idx]);
+      }
+      this.matchedLifecycle = source.matchedLifecycle;
+   }
+
+   public int getRegexGroupsCount() {
+      return groupsCount;
+   }
+
+   /**
+    * @return captured regex groups keyed by template token name, ie.: 'url.1'
+    */
+   public Map<String, String> getRegexGroups() {
+      final Map<String, String> regexGroups = new TreeMap<String, String>();
+      for (int idx = 0; idx < groupsCount; idx++) {
+         final String tokenName = ObjectUtils.isNull(propertyKeys[idx]) ? propertyNames[idx] : String.format("%s.%s", propertyNames[idx], propertyKeys[idx]);
+         regexGroups.put(StringUtils.buildToken(tokenName, groupIndexes[idx]), groupValues[idx]);
+      }
+
+      return regexGroups;
+   }
+
+   /**
+    * Finds captured group without building token names, unlike {@link #getRegexGroups()}
+    *
+    * @param tokenName  property name and, for map properties, key of the entry, ie.: 'url' or 'query.type'
+    * @param groupIndex index of the captured group
+    * @return value of the captured group, or null if no such group was captured
+    */
+   String findRegexGroup(final String tokenName, final int groupIndex) {
+      // Searched from the end, the last captured value wins like in the map of regex groups
+      for (int idx = groupsCount - 1; idx >= 0; idx--) {
+         if (groupIndexes[idx] == groupIndex && isTokenName(tokenName, propertyNames[idx], propertyKeys[idx])) {
+            return groupValues[idx];
+         }
+      }
+
+      return null;
+   }
+
+   private static boolean isTokenName(final String tokenName, final String propertyName, final String propertyKey) {
+      if (ObjectUtils.isNull(propertyKey)) {
+         return tokenName.equals(propertyName);
+      }
+
+      return tokenName.length() == propertyName.length() + 1 + propertyKey.length()
+         && tokenName.startsWith(propertyName)
+         && tokenName.charAt(propertyName.length()) == '.'
+         && tokenName.endsWith(propertyKey);
+   }
+
+   public StubHttpLifecycle getMatchedLifecycle() {
+      return matchedLifecycle;
+   }
+
+   public void setMatchedLifecycle(final StubHttpLifecycle matchedLifecycle) {
+      this.matchedLifecycle = matchedLifecycle;
+   }
+
+   public boolean isMatched() {
+      return ObjectUtils.isNotNull(matchedLifecycle);
+   }
+
+   public long getMatchingNanos() {
+      return matchingNanos;
+   }
+
+   public void setMatchingNanos(final long matchingNanos) {
+      this.matchingNanos = matchingNanos;
+   }
+}
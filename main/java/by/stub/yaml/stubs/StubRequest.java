@@ -21,17 +21,17 @@ package by.stub.yaml.stubs;
 
 import by.stub.annotations.CoberturaIgnore;
 import by.stub.annotations.VisibleForTesting;
-import by.stub.cli.ANSITerminal;
+import by.stub.cli.AsyncConsole;
+import by.stub.database.ErrorAccounting;
+import by.stub.database.ErrorCategory;
 import by.stub.utils.CollectionUtils;
 import by.stub.utils.FileUtils;
 import by.stub.utils.HandlerUtils;
+import by.stub.utils.JsonUtils;
 import by.stub.utils.ObjectUtils;
+import by.stub.utils.RegexUtils;
 import by.stub.utils.StringUtils;
 import by.stub.yaml.YamlProperties;
-import org.json.JSONException;
-import org.skyscreamer.jsonassert.JSONCompare;
-import org.skyscreamer.jsonassert.JSONCompareMode;
-import org.skyscreamer.jsonassert.comparator.JSONComparator;
 
 
 import javax.servlet.http.HttpServletRequest;
@@ -40,7 +40,6 @@ import java.io.IOException;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
 
 /**
  * @author Alexander Zagniotov
@@ -49,15 +48,25 @@ import java.util.regex.PatternSyntaxException;
 public class StubRequest {
 
    public static final String AUTH_HEADER = "authorization";
+   private static final Object NOT_PARSED_JSON_TREE = new Object();
 
    private final String url;
-   private final String post;
+   private String post;
+   // Incoming request, which post body has not been read yet. It is read only when a stub needs to compare it
+   private HttpServletRequest unreadPostSource;
    private final File file;
    private final byte[] fileBytes;
    private final List<String> method;
+   // Methods resolved once for matching: standard methods as bits of a mask, custom verbs as interned upper cased names
+   private int methodMask;
+   private Set<String> customMethods;
    private final Map<String, String> headers;
    private final Map<String, String> query;
-   private final Map<String, String> regexGroups;
+   // Set on incoming request once it was matched to the stubs, stubbed requests never have it
+   private StubMatchResult matchResult;
+   // Body and its JSON tree are derived from final fields, they are computed once and then reused by every comparison
+   private volatile String cachedPostBody;
+   private volatile Object cachedPostBodyJsonTree;
 
    public StubRequest(final String url,
                       final String post,
@@ -70,9 +79,13 @@ public class StubRequest {
       this.file = file;
       this.fileBytes = ObjectUtils.isNull(file) ? new byte[]{} : getFileBytes();
       this.method = ObjectUtils.isNull(method) ? new ArrayList<String>() : method;
-      this.headers = ObjectUtils.isNull(headers) ? new LinkedHashMap<String, String>() : headers;
+      this.customMethods = Collections.emptySet();
+      for (final String stubbedMethod : this.method) {
+         resolveMethod(stubbedMethod);
+      }
+      this.headers = ObjectUtils.isNull(headers) ? new LowerCaseHeaders() : new LowerCaseHeaders(headers);
       this.query = ObjectUtils.isNull(query) ? new LinkedHashMap<String, String>() : query;
-      this.regexGroups = new TreeMap<String, String>();
+      this.cachedPostBodyJsonTree = NOT_PARSED_JSON_TREE;
    }
 
    public final ArrayList<String> getMethod() {
@@ -88,9 +101,37 @@ public class StubRequest {
    public void addMethod(final String newMethod) {
       if (StringUtils.isSet(newMethod)) {
          method.add(newMethod);
+         resolveMethod(newMethod);
+      }
+   }
+
+   private void resolveMethod(final String newMethod) {
+      final String upperCaseMethod = StringUtils.toUpper(newMethod);
+      final StubHttpMethod standardMethod = StubHttpMethod.fromUpperCaseName(upperCaseMethod);
+      if (ObjectUtils.isNotNull(standardMethod)) {
+         methodMask |= standardMethod.getBit();
+      } else if (!customMethods.contains(upperCaseMethod)) {
+         // Copied on write, so the set can be shared once the request was built
+         final Set<String> newCustomMethods = new HashSet<String>(customMethods);
+         newCustomMethods.add(upperCaseMethod.intern());
+         customMethods = Collections.unmodifiableSet(newCustomMethods);
       }
    }
 
+   /**
+    * @return bits of standard HTTP methods of this request, see {@link StubHttpMethod#getBit()}
+    */
+   public int getMethodMask() {
+      return methodMask;
+   }
+
+   /**
+    * @return upper cased methods of this request, which are not standard HTTP methods
+    */
+   public Set<String> getCustomMethods() {
+      return customMethods;
+   }
+
    public String getUrl() {
       if (getQuery().isEmpty()) {
          return url;
@@ -101,6 +142,10 @@ public class StubRequest {
       return String.format("%s?%s", url, queryString);
    }
 
+   public String getRawUrl() {
+      return url;
+   }
+
    private byte[] getFileBytes() {
       try {
          return FileUtils.fileToBytes(file);
@@ -110,26 +155,71 @@ public class StubRequest {
    }
 
    public String getPostBody() {
-      if (fileBytes.length == 0) {
-         return FileUtils.enforceSystemLineSeparator(post);
+      String postBody = cachedPostBody;
+      if (ObjectUtils.isNull(postBody)) {
+         if (fileBytes.length == 0) {
+            postBody = FileUtils.enforceSystemLineSeparator(getPost());
+         } else {
+            final String utf8FileContent = StringUtils.newStringUtf8(fileBytes);
+            postBody = FileUtils.enforceSystemLineSeparator(utf8FileContent);
+         }
+         cachedPostBody = postBody;
+      }
+
+      return postBody;
+   }
+
+   /**
+    * @return post body parsed as JSON object or array, or null if post body is not JSON
+    */
+   private Object getPostBodyJsonTree() {
+      Object postBodyJsonTree = cachedPostBodyJsonTree;
+      if (postBodyJsonTree == NOT_PARSED_JSON_TREE) {
+         postBodyJsonTree = JsonUtils.parseJsonTree(getPostBody());
+         cachedPostBodyJsonTree = postBodyJsonTree;
       }
-      final String utf8FileContent = StringUtils.newStringUtf8(fileBytes);
-      return FileUtils.enforceSystemLineSeparator(utf8FileContent);
+
+      return postBodyJsonTree;
    }
 
    //Used by reflection when populating stubby admin page with stubbed information
    public String getPost() {
+      if (ObjectUtils.isNotNull(unreadPostSource)) {
+         final HttpServletRequest postSource = unreadPostSource;
+         unreadPostSource = null;
+         post = extractPost(postSource);
+      }
       return post;
    }
 
-   public final Map<String, String> getHeaders() {
-      final Map<String, String> headersCopy = new LinkedHashMap<String, String>(headers);
-      final Set<Map.Entry<String, String>> entrySet = headersCopy.entrySet();
-      this.headers.clear();
-      for (final Map.Entry<String, String> entry : entrySet) {
-         this.headers.put(StringUtils.toLower(entry.getKey()), entry.getValue());
+   /**
+    * Streams and discards post body of the incoming request, if none of the stubs needed it
+    */
+   public void discardUnreadPost() {
+      if (ObjectUtils.isNotNull(unreadPostSource)) {
+         final HttpServletRequest postSource = unreadPostSource;
+         unreadPostSource = null;
+         HandlerUtils.discardRequestBody(postSource);
+      }
+   }
+
+   private static String extractPost(final HttpServletRequest request) {
+      try {
+         final String post = HandlerUtils.extractPostRequestBody(request, "stubs");
+         if (ObjectUtils.isNotNull(post)) {
+            AsyncConsole.incoming(post);
+         }
+         return post;
+      } catch (final IOException ex) {
+         ErrorAccounting.record(ErrorCategory.BODY_READ, ex);
+         return null;
       }
+   }
 
+   /**
+    * @return headers keyed by lower cased header name, names of headers put into the returned map are lower cased too
+    */
+   public final Map<String, String> getHeaders() {
       return headers;
    }
 
@@ -141,9 +231,19 @@ public class StubRequest {
       return fileBytes;
    }
 
-   // Just a shallow copy that protects collection from modification, the points themselves are not copied
    public Map<String, String> getRegexGroups() {
-      return new TreeMap<String, String>(regexGroups);
+      return ObjectUtils.isNull(matchResult) ? new TreeMap<String, String>() : matchResult.getRegexGroups();
+   }
+
+   /**
+    * @return result of matching this incoming request to the stubs, or null if it was not matched yet
+    */
+   public StubMatchResult getMatchResult() {
+      return matchResult;
+   }
+
+   public void setMatchResult(final StubMatchResult matchResult) {
+      this.matchResult = matchResult;
    }
 
    public File getRawFile() {
@@ -167,15 +267,21 @@ public class StubRequest {
    }
 
    public static StubRequest newStubRequest(final String url, final String post) {
-       if (post!=null){
-           ANSITerminal.incoming(post);
-       }
+      if (ObjectUtils.isNotNull(post)) {
+         AsyncConsole.incoming(post);
+      }
       return new StubRequest(url, post, null, null, null, null);
    }
 
+   /**
+    * Post body of the incoming request is read lazily, the first time it is needed. Incoming request
+    * belongs to the thread handling it, so lazy reading does not need synchronization
+    */
    public static StubRequest createFromHttpServletRequest(final HttpServletRequest request) throws IOException {
-      final StubRequest assertionRequest = StubRequest.newStubRequest(request.getPathInfo(),
-         HandlerUtils.extractPostRequestBody(request, "stubs"));
+      final StubRequest assertionRequest = StubRequest.newStubRequest(request.getPathInfo(), null);
+      if (HandlerUtils.isRequestWithBody(request)) {
+         assertionRequest.unreadPostSource = request;
+      }
       assertionRequest.addMethod(request.getMethod());
 
       final Enumeration<String> headerNamesEnumeration = request.getHeaderNames();
@@ -191,94 +297,104 @@ public class StubRequest {
       return assertionRequest;
    }
 
+   /**
+    * Compares incoming request to this stubbed request, without modifying either of them
+    *
+    * @param assertingRequest incoming request
+    * @param matchResult      regex groups captured by a successful match are added to it, may be null when groups are not needed
+    * @return true if incoming request matches this stubbed request
+    */
+   public boolean matches(final StubRequest assertingRequest, final StubMatchResult matchResult) {
+      if (ObjectUtils.isNotNull(matchResult)) {
+         // Groups captured before a partial match failed must not leak into comparison with the next stub
+         matchResult.clearRegexGroups();
+      }
+      final boolean isMatch = urlsMatch(this.url, assertingRequest.url, matchResult)
+         && methodsMatch(this, assertingRequest)
+         && postBodiesMatch(this, assertingRequest, matchResult)
+         && headersMatch(this.getHeaders(), assertingRequest.getHeaders(), matchResult)
+         && queriesMatch(this.getQuery(), assertingRequest.getQuery(), matchResult);
+      if (!isMatch && ObjectUtils.isNotNull(matchResult)) {
+         matchResult.clearRegexGroups();
+      }
+
+      return isMatch;
+   }
+
    @Override
    public boolean equals(final Object o) {
       if (this == o) {
          return true;
       } else if (o instanceof StubRequest) {
-         final StubRequest dataStoreRequest = (StubRequest) o;
-
-         return urlsMatch(dataStoreRequest.url, this.url)
-            && arraysIntersect(dataStoreRequest.getMethod(), this.getMethod())
-            && postBodiesMatch(dataStoreRequest.getPostBody(), this.getPostBody())
-            && headersMatch(dataStoreRequest.getHeaders(), this.getHeaders())
-            && queriesMatch(dataStoreRequest.getQuery(), this.getQuery());
+         return ((StubRequest) o).matches(this, null);
       }
 
       return false;
    }
 
-   private boolean urlsMatch(final String dataStoreUrl, final String thisAssertingUrl) {
-      return stringsMatch(dataStoreUrl, thisAssertingUrl, YamlProperties.URL);
+   private boolean urlsMatch(final String dataStoreUrl, final String thisAssertingUrl, final StubMatchResult matchResult) {
+      return stringsMatch(dataStoreUrl, thisAssertingUrl, YamlProperties.URL, null, matchResult);
    }
 
-   private boolean postBodiesMatch(final String dataStorePostBody, final String thisAssertingPostBody) {
-       try {
-           return JSONCompare.compareJSON(dataStorePostBody,thisAssertingPostBody, JSONCompareMode.NON_EXTENSIBLE).passed();
-       } catch (JSONException e) {
-           return stringsMatch(dataStorePostBody, thisAssertingPostBody, YamlProperties.POST);
-       }
+   private boolean postBodiesMatch(final StubRequest dataStoreRequest, final StubRequest thisAssertingRequest, final StubMatchResult matchResult) {
+      // Incoming post body is not even read, if the stub does not care about it
+      final String dataStorePostBody = dataStoreRequest.getPostBody();
+      if (!StringUtils.isSet(dataStorePostBody)) {
+         return true;
+      }
+
+      final Object dataStoreJsonTree = dataStoreRequest.getPostBodyJsonTree();
+      if (ObjectUtils.isNotNull(dataStoreJsonTree)) {
+         final Object assertingJsonTree = thisAssertingRequest.getPostBodyJsonTree();
+         if (ObjectUtils.isNotNull(assertingJsonTree)) {
+            return JsonUtils.jsonTreesMatch(dataStoreJsonTree, assertingJsonTree);
+         }
+      }
+
+      return stringsMatch(dataStorePostBody, thisAssertingRequest.getPostBody(), YamlProperties.POST, null, matchResult);
    }
 
-   private boolean queriesMatch(final Map<String, String> dataStoreQuery, final Map<String, String> thisAssertingQuery) {
-      return mapsMatchExact(dataStoreQuery, thisAssertingQuery, YamlProperties.QUERY);
+   private boolean queriesMatch(final Map<String, String> dataStoreQuery, final Map<String, String> thisAssertingQuery, final StubMatchResult matchResult) {
+      return mapsMatchExact(dataStoreQuery, thisAssertingQuery, YamlProperties.QUERY, matchResult);
    }
 
     boolean mapsMatchExact(final Map<String, String> dataStoreMap, final Map<String, String> thisAssertingMap, final String mapName) {
+        return mapsMatchExact(dataStoreMap, thisAssertingMap, mapName, null);
+    }
+
+    private boolean mapsMatchExact(final Map<String, String> dataStoreMap, final Map<String, String> thisAssertingMap, final String mapName, final StubMatchResult matchResult) {
         if (dataStoreMap.isEmpty()) {
             return true;
-        } else if (thisAssertingMap.isEmpty()) {
+        } else if (thisAssertingMap.size() != dataStoreMap.size()) {
+            // Every stubbed param must be present and no other param is allowed, so both must have the same size
             return false;
         }
 
-        final Map<String, String> dataStoreMapCopy = new HashMap<String, String>(dataStoreMap);
-        final Map<String, String> assertingMapCopy = new HashMap<String, String>(thisAssertingMap);
-
-        for (Map.Entry<String, String> dataStoreParam : dataStoreMapCopy.entrySet()) {
-            final boolean containsRequiredParam = assertingMapCopy.containsKey(dataStoreParam.getKey());
-            if (!containsRequiredParam) {
-                return false;
-            } else {
-                final String assertedQueryValue = assertingMapCopy.get(dataStoreParam.getKey());
-                final String templateTokenName = String.format("%s.%s", mapName, dataStoreParam.getKey());
-                if (!stringsMatch(dataStoreParam.getValue(), assertedQueryValue, templateTokenName)) {
-                    return false;
-                }
-            }
-            assertingMapCopy.remove(dataStoreParam.getKey());
-        }
-
-        return assertingMapCopy.isEmpty();
+        return mapsMatch(dataStoreMap, thisAssertingMap, mapName, null, matchResult);
     }
 
-    private boolean headersMatch(final Map<String, String> dataStoreHeaders, final Map<String, String> thisAssertingHeaders) {
-      final Map<String, String> dataStoreHeadersCopy = new HashMap<String, String>(dataStoreHeaders);
-      dataStoreHeadersCopy.remove(StubRequest.AUTH_HEADER); //Auth header dealt with in StubbedDataManager after request was matched
-
-      return mapsMatch(dataStoreHeadersCopy, thisAssertingHeaders, YamlProperties.HEADERS);
+    private boolean headersMatch(final Map<String, String> dataStoreHeaders, final Map<String, String> thisAssertingHeaders, final StubMatchResult matchResult) {
+      //Auth header dealt with in StubbedDataManager after request was matched
+      return mapsMatch(dataStoreHeaders, thisAssertingHeaders, YamlProperties.HEADERS, StubRequest.AUTH_HEADER, matchResult);
    }
 
    @VisibleForTesting
    boolean mapsMatch(final Map<String, String> dataStoreMap, final Map<String, String> thisAssertingMap, final String mapName) {
-      if (dataStoreMap.isEmpty()) {
-         return true;
-      } else if (thisAssertingMap.isEmpty()) {
-         return false;
-      }
+      return mapsMatch(dataStoreMap, thisAssertingMap, mapName, null, null);
+   }
 
-      final Map<String, String> dataStoreMapCopy = new HashMap<String, String>(dataStoreMap);
-      final Map<String, String> assertingMapCopy = new HashMap<String, String>(thisAssertingMap);
+   private boolean mapsMatch(final Map<String, String> dataStoreMap, final Map<String, String> thisAssertingMap, final String mapName, final String skippedKey, final StubMatchResult matchResult) {
+      for (final Map.Entry<String, String> dataStoreParam : dataStoreMap.entrySet()) {
+         final String dataStoreKey = dataStoreParam.getKey();
+         if (dataStoreKey.equals(skippedKey)) {
+            continue;
+         }
 
-      for (Map.Entry<String, String> dataStoreParam : dataStoreMapCopy.entrySet()) {
-         final boolean containsRequiredParam = assertingMapCopy.containsKey(dataStoreParam.getKey());
-         if (!containsRequiredParam) {
+         final String assertedValue = thisAssertingMap.get(dataStoreKey);
+         if (ObjectUtils.isNull(assertedValue) && !thisAssertingMap.containsKey(dataStoreKey)) {
+            return false;
+         } else if (!stringsMatch(dataStoreParam.getValue(), assertedValue, mapName, dataStoreKey, matchResult)) {
             return false;
-         } else {
-            final String assertedQueryValue = assertingMapCopy.get(dataStoreParam.getKey());
-            final String templateTokenName = String.format("%s.%s", mapName, dataStoreParam.getKey());
-            if (!stringsMatch(dataStoreParam.getValue(), assertedQueryValue, templateTokenName)) {
-               return false;
-            }
          }
       }
 
@@ -287,6 +403,15 @@ public class StubRequest {
 
    @VisibleForTesting
    boolean stringsMatch(final String dataStoreValue, final String thisAssertingValue, final String templateTokenName) {
+      return stringsMatch(dataStoreValue, thisAssertingValue, templateTokenName, null, null);
+   }
+
+   /**
+    * @param propertyName name of the matched property, ie.: 'url' or 'query'
+    * @param propertyKey  key of the matched map entry, ie.: query param name, or null when property is not a map
+    * @param matchResult  captured regex groups are added to it, or null when they are not needed
+    */
+   private boolean stringsMatch(final String dataStoreValue, final String thisAssertingValue, final String propertyName, final String propertyKey, final StubMatchResult matchResult) {
       final boolean isDataStoreValueSet = StringUtils.isSet(dataStoreValue);
       final boolean isAssertingValueSet = StringUtils.isSet(thisAssertingValue);
 
@@ -297,48 +422,79 @@ public class StubRequest {
       } else if (StringUtils.isWithinSquareBrackets(dataStoreValue)) {
          return dataStoreValue.equals(thisAssertingValue);
       } else {
-         return regexMatch(dataStoreValue, thisAssertingValue, templateTokenName);
+         return regexMatch(dataStoreValue, thisAssertingValue, propertyName, propertyKey, matchResult);
       }
    }
 
-   private boolean regexMatch(final String dataStoreValue, final String thisAssertingValue, final String templateTokenName) {
-      try {
-         // Pattern.MULTILINE changes the behavior of '^' and '$' characters,
-         // it does not mean that newline feeds and carriage return will be matched by default
-         // You need to make sure that you regex pattern covers both \r (carriage return) and \n (linefeed).
-         // It is achievable by using symbol '\s+' which covers both \r (carriage return) and \n (linefeed).
-         final Matcher matcher = Pattern.compile(dataStoreValue, Pattern.MULTILINE).matcher(thisAssertingValue);
-         final boolean isMatch = matcher.matches();
-         if (isMatch) {
-            // group(0) holds the full regex match
-            regexGroups.put(StringUtils.buildToken(templateTokenName, 0), matcher.group(0));
-
-            //Matcher.groupCount() returns the number of explicitly defined capturing groups in the pattern regardless
-            // of whether the capturing groups actually participated in the match. It does not include matcher.group(0)
-            final int groupCount = matcher.groupCount();
-            if (groupCount > 0) {
-               for (int idx = 1; idx <= groupCount; idx++) {
-                  regexGroups.put(StringUtils.buildToken(templateTokenName, idx), matcher.group(idx));
-               }
-            }
+   private boolean regexMatch(final String dataStoreValue, final String thisAssertingValue, final String propertyName, final String propertyKey, final StubMatchResult matchResult) {
+      if (RegexUtils.isLiteral(dataStoreValue)) {
+         final boolean isMatch = dataStoreValue.equals(thisAssertingValue);
+         if (isMatch && ObjectUtils.isNotNull(matchResult)) {
+            // Same as group(0) of the regex match, literal has no capturing groups
+            matchResult.addRegexGroup(propertyName, propertyKey, 0, thisAssertingValue);
          }
          return isMatch;
-      } catch (PatternSyntaxException e) {
+      }
+
+      final Pattern pattern = RegexUtils.compilePattern(dataStoreValue);
+      if (ObjectUtils.isNull(pattern)) {
          return dataStoreValue.equals(thisAssertingValue);
       }
+
+      final Matcher matcher = pattern.matcher(thisAssertingValue);
+      final boolean isMatch = matcher.matches();
+      if (isMatch && ObjectUtils.isNotNull(matchResult)) {
+         // group(0) holds the full regex match
+         matchResult.addRegexGroup(propertyName, propertyKey, 0, matcher.group(0));
+
+         //Matcher.groupCount() returns the number of explicitly defined capturing groups in the pattern regardless
+         // of whether the capturing groups actually participated in the match. It does not include matcher.group(0)
+         final int groupCount = matcher.groupCount();
+         if (groupCount > 0) {
+            for (int idx = 1; idx <= groupCount; idx++) {
+               matchResult.addRegexGroup(propertyName, propertyKey, idx, matcher.group(idx));
+            }
+         }
+      }
+      return isMatch;
    }
 
-   @VisibleForTesting
-   boolean arraysIntersect(final ArrayList<String> dataStoreArray, final ArrayList<String> thisAssertingArray) {
-      if (dataStoreArray.isEmpty()) {
+   /**
+    * Compiles stubbed regex values and parses stubbed JSON post body upfront, so that the first incoming request does not pay for it
+    */
+   public void prepareForMatching() {
+      compileRegexPattern(url);
+      compileRegexPattern(getPostBody());
+      getPostBodyJsonTree();
+      for (final Map.Entry<String, String> entry : headers.entrySet()) {
+         if (!StringUtils.toLower(entry.getKey()).equals(AUTH_HEADER)) {
+            compileRegexPattern(entry.getValue());
+         }
+      }
+      for (final String queryValue : query.values()) {
+         compileRegexPattern(queryValue);
+      }
+   }
+
+   private void compileRegexPattern(final String dataStoreValue) {
+      if (StringUtils.isSet(dataStoreValue) && !StringUtils.isWithinSquareBrackets(dataStoreValue) && !RegexUtils.isLiteral(dataStoreValue)) {
+         RegexUtils.compilePattern(dataStoreValue);
+      }
+   }
+
+   private boolean methodsMatch(final StubRequest dataStoreRequest, final StubRequest thisAssertingRequest) {
+      if (dataStoreRequest.methodMask == 0 && dataStoreRequest.customMethods.isEmpty()) {
          return true;
-      } else if (!thisAssertingArray.isEmpty()) {
-         for (final String entry : thisAssertingArray) {
-            if (dataStoreArray.contains(entry)) {
-               return true;
-            }
+      } else if ((dataStoreRequest.methodMask & thisAssertingRequest.methodMask) != 0) {
+         return true;
+      }
+
+      for (final String customMethod : thisAssertingRequest.customMethods) {
+         if (dataStoreRequest.customMethods.contains(customMethod)) {
+            return true;
          }
       }
+
       return false;
    }
 
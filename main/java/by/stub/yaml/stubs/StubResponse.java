@@ -20,13 +20,20 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package by.stub.yaml.stubs;
 
 import by.stub.annotations.CoberturaIgnore;
+import by.stub.database.LatencyHistogram;
 import by.stub.utils.FileUtils;
 import by.stub.utils.ObjectUtils;
 import by.stub.utils.StringUtils;
 
+import javax.servlet.http.HttpServletResponse;
 import java.io.File;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * @author Alexander Zagniotov
@@ -35,13 +42,39 @@ import java.util.Map;
 public class StubResponse {
 
    public static final String STUBBY_RESOURCE_ID_HEADER = "x-stubby-resource-id";
+   private static final int INVALID_STATUS_CODE = -1;
+   private static final int UNKNOWN_RESOURCE_ID = -1;
+   private static final long UNKNOWN_LAST_MODIFIED = -1;
+   // Smaller bodies do not get noticeably smaller, same as the minimal size compressed by Jetty GzipHandler
+   static final int MIN_COMPRESSIBLE_BYTES = 256;
 
    private final String status;
+   private final int statusCode;
    private final String body;
    private final File file;
    private final byte[] fileBytes;
+   // Large file outside of heap, see FileUtils.setFileMappingThreshold
+   private final ByteBuffer mappedFile;
+   // File too large to be mapped or loaded, served from disk as is, see FileUtils.isFileStreamingRequired
+   private final boolean streamedFile;
    private final String latency;
+   private final StubLatency stubLatency;
+   private final LatencyHistogram latencyHistogram;
    private final Map<String, String> headers;
+   // Stubbed header names and values in turns, built once as responses are never modified after they are published
+   private final String[] headerBlock;
+   private final int resourceId;
+   private final StubResponseTemplate template;
+   // Validators of the response file, used for conditional and range requests
+   private final String entityTag;
+   private final long lastModified;
+   private final boolean compressible;
+   // Rendered templates and bodies without a stubbed content type cannot be precompressed, they are compressed while sent
+   private final boolean compressedPerRequest;
+   // Precompressed bodies by StubContentEncoding ordinal, compressed on first use
+   private final AtomicReferenceArray<byte[]> encodedBodies;
+   // Response with the content recorded from the source in the body, recorded on first use
+   private final AtomicReference<StubResponse> recordedResponse;
 
    public StubResponse(final String status,
                        final String body,
@@ -49,17 +82,69 @@ public class StubResponse {
                        final String latency,
                        final Map<String, String> headers) {
       this.status = ObjectUtils.isNull(status) ? "200" : status;
+      this.statusCode = parseStatusCode(this.status);
       this.body = body;
       this.file = file;
-      this.fileBytes = ObjectUtils.isNull(file) ? new byte[]{} : getFileBytes();
+      this.streamedFile = ObjectUtils.isNotNull(file) && FileUtils.isFileStreamingRequired(file);
+      this.mappedFile = ObjectUtils.isNull(file) || streamedFile ? null : mapFile();
+      this.fileBytes = ObjectUtils.isNull(file) || streamedFile || ObjectUtils.isNotNull(mappedFile) ? new byte[]{} : getFileBytes();
       this.latency = latency;
+      this.stubLatency = StubLatency.parse(latency);
+      this.latencyHistogram = ObjectUtils.isNull(stubLatency) ? null : new LatencyHistogram();
       this.headers = ObjectUtils.isNull(headers) ? new LinkedHashMap<String, String>() : headers;
+      this.headerBlock = buildHeaderBlock(this.headers);
+      this.resourceId = UNKNOWN_RESOURCE_ID;
+      this.template = isTemplatable() ? StubResponseTemplate.parse(getResponseBodyAsBytes()) : null;
+      this.entityTag = isEntityFile() ? buildEntityTag() : null;
+      this.lastModified = ObjectUtils.isNull(entityTag) ? UNKNOWN_LAST_MODIFIED : file.lastModified() / 1000 * 1000;
+      this.compressible = isBodyCompressible();
+      this.compressedPerRequest = isBodyCompressedPerRequest();
+      this.encodedBodies = new AtomicReferenceArray<byte[]>(StubContentEncoding.values().length);
+      this.recordedResponse = new AtomicReference<StubResponse>();
+   }
+
+   /**
+    * Copies the stubbed response for the stub at the given index, sharing everything but its headers
+    */
+   private StubResponse(final StubResponse stubbed, final int resourceId) {
+      this.status = stubbed.status;
+      this.statusCode = stubbed.statusCode;
+      this.body = stubbed.body;
+      this.file = stubbed.file;
+      this.mappedFile = stubbed.mappedFile;
+      this.streamedFile = stubbed.streamedFile;
+      this.fileBytes = stubbed.fileBytes;
+      this.latency = stubbed.latency;
+      this.stubLatency = stubbed.stubLatency;
+      this.latencyHistogram = stubbed.latencyHistogram;
+      this.headers = headersWithResourceId(stubbed.headers, resourceId);
+      this.headerBlock = buildHeaderBlock(this.headers);
+      this.resourceId = resourceId;
+      this.template = stubbed.template;
+      this.entityTag = stubbed.entityTag;
+      this.lastModified = stubbed.lastModified;
+      this.compressible = stubbed.compressible;
+      this.compressedPerRequest = stubbed.compressedPerRequest;
+      this.encodedBodies = stubbed.encodedBodies;
+      // Recorded response carries the resource ID header of its own, so it is recorded again for the new index
+      this.recordedResponse = new AtomicReference<StubResponse>();
    }
 
    public String getStatus() {
       return status;
    }
 
+   /**
+    * @return status code parsed when the stub was loaded
+    * @throws NumberFormatException if the stubbed status is not a number
+    */
+   public int getStatusCode() {
+      if (statusCode == INVALID_STATUS_CODE) {
+         throw new NumberFormatException(String.format("For input string: \"%s\"", status));
+      }
+      return statusCode;
+   }
+
    public String getBody() {
       return (StringUtils.isSet(body) ? body : "");
    }
@@ -73,16 +158,67 @@ public class StubResponse {
       return false;
    }
 
+   /**
+    * @return response with the content recorded from the source in the body, or null if it was not recorded yet
+    */
+   public StubResponse getRecordedResponse() {
+      return recordedResponse.get();
+   }
+
+   /**
+    * Keeps the response built from the content recorded from the source in the body, which is served from then on.
+    * Its template, compression and entity tag are derived from the recorded content like for a stubbed body
+    *
+    * @return the recorded response, threads racing on first use record the same source and whichever is stored first is kept
+    */
+   public StubResponse recordWith(final String recordedContent) {
+      final StubResponse recorded = new StubResponse(status, recordedContent, null, latency, new LinkedHashMap<String, String>(headers));
+      recordedResponse.compareAndSet(null, resourceId == UNKNOWN_RESOURCE_ID ? recorded : recorded.withResourceId(resourceId));
+
+      return recordedResponse.get();
+   }
+
    public Map<String, String> getHeaders() {
       return headers;
    }
 
+   /**
+    * Sets the stubbed headers on the given response, in the order they were stubbed
+    */
+   public void setHeadersTo(final HttpServletResponse response) {
+      final String[] block = headerBlock;
+      for (int idx = 0; idx < block.length; idx += 2) {
+         response.setHeader(block[idx], block[idx + 1]);
+      }
+   }
+
    public String getLatency() {
       return latency;
    }
 
-   //Used by reflection when populating stubby admin page with stubbed information
+   /**
+    * @return latency parsed when the stub was loaded, or null if the response has no latency
+    */
+   public StubLatency getStubLatency() {
+      return stubLatency;
+   }
+
+   /**
+    * @return histogram of latency applied to the served responses, or null if the response has no latency
+    */
+   public LatencyHistogram getLatencyHistogram() {
+      return latencyHistogram;
+   }
+
+   /**
+    * Used by reflection when the admin portal loads the file content on demand, never while serving stubs.
+    *
+    * @return content of the response file in heap. Mapped files are copied on every call, streamed files are empty
+    */
    public byte[] getFile() {
+      if (ObjectUtils.isNotNull(mappedFile)) {
+         return FileUtils.mappedFileToBytes(mappedFile);
+      }
       return fileBytes;
    }
 
@@ -90,28 +226,196 @@ public class StubResponse {
       return file;
    }
 
+   /**
+    * @return response body as a copy in heap. Bodies of mapped files are copied on every call, see {@link #getMappedFile()},
+    * bodies of streamed files are empty, see {@link #isStreamedFile()}
+    */
    public byte[] getResponseBodyAsBytes() {
 
-      if (fileBytes.length == 0) {
+      if (ObjectUtils.isNotNull(mappedFile)) {
+         return FileUtils.mappedFileToBytes(mappedFile);
+      } else if (fileBytes.length == 0) {
          return getBody().getBytes(StringUtils.charsetUTF8());
       }
       return fileBytes;
    }
 
+   /**
+    * @return read-only view of the memory-mapped response file, with its own position, or null if the file is not mapped
+    */
+   public ByteBuffer getMappedFile() {
+      return ObjectUtils.isNull(mappedFile) ? null : mappedFile.duplicate();
+   }
+
+   /**
+    * @return true if the response file is too large to be mapped or loaded, so it is served from {@link #getRawFile()} as is
+    */
+   public boolean isStreamedFile() {
+      return streamedFile;
+   }
+
    public boolean isContainsTemplateTokens() {
-      final boolean isFileTemplate = fileBytes.length == 0 ? false : isTemplateFile();
-      return isFileTemplate || getBody().contains(StringUtils.TEMPLATE_TOKEN_LEFT);
+      return ObjectUtils.isNotNull(template);
+   }
+
+   /**
+    * @return response body template parsed when the stub was loaded, or null if the body has no template tokens
+    */
+   public StubResponseTemplate getTemplate() {
+      return template;
    }
 
    @CoberturaIgnore
-   private boolean isTemplateFile() {
+   private boolean isTemplatable() {
+      // Only text files can be templates, mapped and streamed files have no template tokens
       try {
-         return FileUtils.isTemplateFile(file);
+         return ObjectUtils.isNull(mappedFile) && !streamedFile && (fileBytes.length == 0 || FileUtils.isAsciiFile(file));
       } catch (Exception e) {
          return false;
       }
    }
 
+   /**
+    * @return strong entity tag hashed from the response file content when the stub was loaded, weak entity tag
+    * derived from size and modification time of a streamed file, or null if the response is not served from a file as is
+    */
+   public String getEntityTag() {
+      return entityTag;
+   }
+
+   /**
+    * @return last modification time of the response file in milliseconds, truncated to whole seconds, or -1 if the response has no entity tag
+    */
+   public long getLastModified() {
+      return lastModified;
+   }
+
+   /**
+    * @return length of the response file as served, without copying mapped files
+    */
+   public long getEntityLength() {
+      if (streamedFile) {
+         return file.length();
+      }
+      return ObjectUtils.isNotNull(mappedFile) ? mappedFile.remaining() : fileBytes.length;
+   }
+
+   /**
+    * @return true if the response body is served precompressed to clients accepting it, see {@link #getEncodedBody(StubContentEncoding)}
+    */
+   public boolean isCompressible() {
+      return compressible;
+   }
+
+   /**
+    * @return true if the response body is compressed while sent to clients accepting it, because it cannot be precompressed
+    */
+   public boolean isCompressedPerRequest() {
+      return compressedPerRequest;
+   }
+
+   /**
+    * @return response body compressed with the given coding, compressed once on first use,
+    * or null if the body is not compressible
+    */
+   public byte[] getEncodedBody(final StubContentEncoding contentEncoding) {
+      if (!compressible) {
+         return null;
+      }
+      final byte[] encodedBody = encodedBodies.get(contentEncoding.ordinal());
+      if (ObjectUtils.isNotNull(encodedBody)) {
+         return encodedBody;
+      }
+
+      // Threads racing on first use compress the same body, whichever is stored first is kept
+      encodedBodies.compareAndSet(contentEncoding.ordinal(), null, encodeBody(contentEncoding));
+      return encodedBodies.get(contentEncoding.ordinal());
+   }
+
+   private boolean isBodyCompressible() {
+      // Mapped and streamed files are not copied into heap, rendered templates differ between requests
+      if (ObjectUtils.isNotNull(mappedFile) || streamedFile || ObjectUtils.isNotNull(template)) {
+         return false;
+      }
+      final String contentType = getStubbedContentType();
+      // Without a stubbed content type the body may well be compressed already, so it is not kept compressed twice
+      return ObjectUtils.isNotNull(contentType) && getStaticBodyLength() >= MIN_COMPRESSIBLE_BYTES
+         && StubContentEncoding.isCompressibleContentType(contentType);
+   }
+
+   private boolean isBodyCompressedPerRequest() {
+      if (ObjectUtils.isNotNull(mappedFile) || streamedFile) {
+         return false;
+      }
+      final String contentType = getStubbedContentType();
+      if (ObjectUtils.isNotNull(template)) {
+         // Size of the rendered body is not known upfront
+         return StubContentEncoding.isCompressibleContentType(contentType);
+      }
+
+      return ObjectUtils.isNull(contentType) && getStaticBodyLength() >= MIN_COMPRESSIBLE_BYTES;
+   }
+
+   private int getStaticBodyLength() {
+      return fileBytes.length > 0 ? fileBytes.length : getBody().length();
+   }
+
+   private String getStubbedContentType() {
+      for (final Map.Entry<String, String> header : headers.entrySet()) {
+         if (header.getKey().equalsIgnoreCase("content-type")) {
+            return header.getValue();
+         }
+      }
+
+      return null;
+   }
+
+   @CoberturaIgnore
+   private byte[] encodeBody(final StubContentEncoding contentEncoding) {
+      try {
+         return contentEncoding.encode(getResponseBodyAsBytes());
+      } catch (Exception e) {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   private boolean isEntityFile() {
+      // Rendered templates differ between requests, so they cannot be validated by a single tag
+      return ObjectUtils.isNull(template) && (ObjectUtils.isNotNull(mappedFile) || streamedFile || fileBytes.length > 0);
+   }
+
+   @CoberturaIgnore
+   private String buildEntityTag() {
+      // Hashing a streamed file would read all of it on load, so its tag is derived from its size and modification time.
+      // Such tag does not guarantee the same content, so it is weak
+      if (streamedFile) {
+         return String.format("W/\"%x-%x\"", file.length(), file.lastModified());
+      }
+      try {
+         final MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
+         if (ObjectUtils.isNotNull(mappedFile)) {
+            messageDigest.update(mappedFile.duplicate());
+         } else {
+            messageDigest.update(fileBytes);
+         }
+         return String.format("\"%040x\"", new BigInteger(1, messageDigest.digest()));
+      } catch (Exception e) {
+         return null;
+      }
+   }
+
+   private ByteBuffer mapFile() {
+      if (!FileUtils.isFileMappingRequired(file)) {
+         return null;
+      }
+      // Loading the file into heap instead would fail much later, or not at all until the heap runs out
+      try {
+         return FileUtils.mapFile(file);
+      } catch (Exception e) {
+         throw new IllegalStateException(String.format("Could not map response file %s of %s bytes: %s", file.getAbsolutePath(), file.length(), e.toString()), e);
+      }
+   }
+
    @CoberturaIgnore
    private byte[] getFileBytes() {
       try {
@@ -125,13 +429,50 @@ public class StubResponse {
       return getHeaders().containsKey("location");
    }
 
-   void addResourceIDHeader(final int httplifeCycleIndex) {
-      getHeaders().remove(STUBBY_RESOURCE_ID_HEADER);
+   /**
+    * @return index of the stub this response belongs to, or -1 if the response is not stubbed
+    */
+   public int getResourceId() {
+      return resourceId;
+   }
+
+   /**
+    * @return copy of this response for the stub at the given index, with resource ID header first.
+    * Published responses may be served by other threads, so they are copied instead of modified
+    */
+   StubResponse withResourceId(final int httplifeCycleIndex) {
+      return new StubResponse(this, httplifeCycleIndex);
+   }
+
+   private static Map<String, String> headersWithResourceId(final Map<String, String> headers, final int httplifeCycleIndex) {
       final Map<String, String> shuffledHeaders = new LinkedHashMap<String, String>();
       shuffledHeaders.put(STUBBY_RESOURCE_ID_HEADER, String.valueOf(httplifeCycleIndex));
-      shuffledHeaders.putAll(new LinkedHashMap<String, String>(getHeaders()));
-      getHeaders().clear();
-      getHeaders().putAll(shuffledHeaders);
+      for (final Map.Entry<String, String> header : headers.entrySet()) {
+         if (!header.getKey().equals(STUBBY_RESOURCE_ID_HEADER)) {
+            shuffledHeaders.put(header.getKey(), header.getValue());
+         }
+      }
+
+      return shuffledHeaders;
+   }
+
+   private static String[] buildHeaderBlock(final Map<String, String> headers) {
+      final String[] block = new String[headers.size() * 2];
+      int idx = 0;
+      for (final Map.Entry<String, String> entry : headers.entrySet()) {
+         block[idx++] = entry.getKey();
+         block[idx++] = entry.getValue();
+      }
+
+      return block;
+   }
+
+   private static int parseStatusCode(final String status) {
+      try {
+         return Integer.parseInt(status);
+      } catch (final NumberFormatException ex) {
+         return INVALID_STATUS_CODE;
+      }
    }
 
    public StubResponseTypes getStubResponseType() {
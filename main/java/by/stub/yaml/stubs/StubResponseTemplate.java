@@ -0,0 +1,208 @@
+/*
+A Java-based HTTP stub server
+
+Copyright (C) 2012 Alexander Zagniotov, Isa Goksu and Eric Mrak
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package by.stub.yaml.stubs;
+
+import by.stub.utils.ObjectUtils;
+import by.stub.utils.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Response body with template tokens like '&lt;% url.1 %&gt;', parsed once when stubs are loaded into
+ * literal segments and placeholders. Placeholder token names are split at parse time into name and group
+ * index, so rendering is a single pass that looks up captured regex groups and writes the segments out.
+ * <p>
+ * Placeholders for groups that were not captured are rendered as they were written in the template.
+ * Immutable, can be rendered by many threads at once.
+ */
+public final class StubResponseTemplate {
+
+   private static final byte[] TOKEN_LEFT = StringUtils.getBytesUtf8(StringUtils.TEMPLATE_TOKEN_LEFT);
+   private static final byte[] TOKEN_RIGHT = StringUtils.getBytesUtf8(StringUtils.TEMPLATE_TOKEN_RIGHT);
+
+   private static final int MAX_GROUP_INDEX_DIGITS = 9;
+
+   private final Segment[] segments;
+
+   private StubResponseTemplate(final Segment[] segments) {
+      this.segments = segments;
+   }
+
+   /**
+    * @param templateBytes UTF-8 encoded response body
+    * @return parsed template, or null if the given body has no template tokens
+    */
+   public static StubResponseTemplate parse(final byte[] templateBytes) {
+      final List<Segment> segments = new ArrayList<Segment>();
+      boolean hasPlaceholders = false;
+      int literalStart = 0;
+      int tokenStart = indexOf(templateBytes, TOKEN_LEFT, 0);
+
+      while (tokenStart >= 0) {
+         final int tokenEnd = indexOf(templateBytes, TOKEN_RIGHT, tokenStart + TOKEN_LEFT.length);
+         if (tokenEnd < 0) {
+            break;
+         }
+         // In '<% <% url.1 %>' only the innermost opening belongs to the token
+         final int innermostStart = lastIndexOf(templateBytes, TOKEN_LEFT, tokenStart, tokenEnd);
+         final Segment placeholder = parsePlaceholder(templateBytes, innermostStart, tokenEnd + TOKEN_RIGHT.length);
+
+         if (ObjectUtils.isNotNull(placeholder)) {
+            if (innermostStart > literalStart) {
+               segments.add(new Segment(Arrays.copyOfRange(templateBytes, literalStart, innermostStart)));
+            }
+            segments.add(placeholder);
+            hasPlaceholders = true;
+            literalStart = tokenEnd + TOKEN_RIGHT.length;
+            tokenStart = indexOf(templateBytes, TOKEN_LEFT, literalStart);
+         } else {
+            tokenStart = indexOf(templateBytes, TOKEN_LEFT, innermostStart + TOKEN_LEFT.length);
+         }
+      }
+
+      if (!hasPlaceholders) {
+         return null;
+      }
+      if (literalStart < templateBytes.length) {
+         segments.add(new Segment(Arrays.copyOfRange(templateBytes, literalStart, templateBytes.length)));
+      }
+
+      return new StubResponseTemplate(segments.toArray(new Segment[segments.size()]));
+   }
+
+   /**
+    * @param matchResult result of matching the incoming request, which holds the captured regex groups
+    */
+   public void writeTo(final OutputStream outputStream, final StubMatchResult matchResult) throws IOException {
+      for (final Segment segment : segments) {
+         if (segment.isPlaceholder()) {
+            final String groupValue = matchResult.findRegexGroup(segment.tokenName, segment.groupIndex);
+            if (ObjectUtils.isNotNull(groupValue)) {
+               outputStream.write(StringUtils.getBytesUtf8(groupValue));
+               continue;
+            }
+         }
+         outputStream.write(segment.bytes);
+      }
+   }
+
+   public String render(final StubMatchResult matchResult) {
+      final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      try {
+         writeTo(outputStream, matchResult);
+      } catch (final IOException ex) {
+         // Never thrown by in-memory stream
+         throw new IllegalStateException(ex);
+      }
+
+      return StringUtils.newStringUtf8(outputStream.toByteArray());
+   }
+
+   /**
+    * @return placeholder for token like 'url.1' or 'query.type.0', or null if it is not a valid token
+    */
+   private static Segment parsePlaceholder(final byte[] templateBytes, final int start, final int end) {
+      final String tokenName = StringUtils.newStringUtf8(Arrays.copyOfRange(templateBytes, start + TOKEN_LEFT.length, end - TOKEN_RIGHT.length)).trim();
+      final int lastDot = tokenName.lastIndexOf('.');
+      if (lastDot <= 0 || lastDot == tokenName.length() - 1 || hasWhitespace(tokenName)) {
+         return null;
+      }
+
+      final String groupIndex = tokenName.substring(lastDot + 1);
+      if (groupIndex.length() > MAX_GROUP_INDEX_DIGITS) {
+         return null;
+      }
+      for (int idx = 0; idx < groupIndex.length(); idx++) {
+         if (!Character.isDigit(groupIndex.charAt(idx))) {
+            return null;
+         }
+      }
+
+      return new Segment(Arrays.copyOfRange(templateBytes, start, end), tokenName.substring(0, lastDot), Integer.parseInt(groupIndex));
+   }
+
+   private static boolean hasWhitespace(final String tokenName) {
+      for (int idx = 0; idx < tokenName.length(); idx++) {
+         if (Character.isWhitespace(tokenName.charAt(idx))) {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   private static int indexOf(final byte[] bytes, final byte[] target, final int fromIndex) {
+      for (int idx = fromIndex; idx <= bytes.length - target.length; idx++) {
+         if (regionMatches(bytes, idx, target)) {
+            return idx;
+         }
+      }
+
+      return -1;
+   }
+
+   private static int lastIndexOf(final byte[] bytes, final byte[] target, final int fromIndex, final int toIndex) {
+      for (int idx = toIndex - target.length; idx > fromIndex; idx--) {
+         if (regionMatches(bytes, idx, target)) {
+            return idx;
+         }
+      }
+
+      return fromIndex;
+   }
+
+   private static boolean regionMatches(final byte[] bytes, final int offset, final byte[] target) {
+      for (int idx = 0; idx < target.length; idx++) {
+         if (bytes[offset + idx] != target[idx]) {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   private static final class Segment {
+
+      // Literal text, or the token as written in the template if this is a placeholder
+      private final byte[] bytes;
+      // Token name without the group index, ie.: 'url' or 'query.type'
+      private final String tokenName;
+      private final int groupIndex;
+
+      private Segment(final byte[] bytes) {
+         this(bytes, null, -1);
+      }
+
+      private Segment(final byte[] bytes, final String tokenName, final int groupIndex) {
+         this.bytes = bytes;
+         this.tokenName = tokenName;
+         this.groupIndex = groupIndex;
+      }
+
+      private boolean isPlaceholder() {
+         return ObjectUtils.isNotNull(tokenName);
+      }
+   }
+}
@@ -144,6 +144,42 @@ public class CommandLineIntepreterTest {
       assertThat(isWatch).isTrue();
    }
 
+   @Test
+   public void testIsMatchCacheWhenShortOptionGiven() throws Exception {
+      final CommandLineInterpreter commandLineInterpreter = new CommandLineInterpreter();
+      commandLineInterpreter.parseCommandLine(new String[]{"-c"});
+      final boolean isMatchCache = commandLineInterpreter.getCommandlineParams().containsKey(CommandLineInterpreter.OPTION_MATCH_CACHE);
+
+      assertThat(isMatchCache).isTrue();
+   }
+
+   @Test
+   public void testHasMatchCacheSizeWhenLongOptionGiven() throws Exception {
+      final CommandLineInterpreter commandLineInterpreter = new CommandLineInterpreter();
+      commandLineInterpreter.parseCommandLine(new String[]{"--cache", "500"});
+      final String matchCacheSize = commandLineInterpreter.getCommandlineParams().get(CommandLineInterpreter.OPTION_MATCH_CACHE);
+
+      assertThat(matchCacheSize).isEqualTo("500");
+   }
+
+   @Test
+   public void testIsMapFilesWhenShortOptionGiven() throws Exception {
+      final CommandLineInterpreter commandLineInterpreter = new CommandLineInterpreter();
+      commandLineInterpreter.parseCommandLine(new String[]{"-f"});
+      final boolean isMapFiles = commandLineInterpreter.getCommandlineParams().containsKey(CommandLineInterpreter.OPTION_MAP_FILES);
+
+      assertThat(isMapFiles).isTrue();
+   }
+
+   @Test
+   public void testHasMapFilesThresholdWhenLongOptionGiven() throws Exception {
+      final CommandLineInterpreter commandLineInterpreter = new CommandLineInterpreter();
+      commandLineInterpreter.parseCommandLine(new String[]{"--mapfiles", "65536"});
+      final String mapFilesThreshold = commandLineInterpreter.getCommandlineParams().get(CommandLineInterpreter.OPTION_MAP_FILES);
+
+      assertThat(mapFilesThreshold).isEqualTo("65536");
+   }
+
    @Test
    public void testtHasKeystoreLocationWhenShortOptionGiven() throws Exception {
       final CommandLineInterpreter commandLineInterpreter = new CommandLineInterpreter();
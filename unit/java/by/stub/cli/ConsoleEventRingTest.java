@@ -0,0 +1,89 @@
+package by.stub.cli;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class ConsoleEventRingTest {
+
+   @Test
+   public void shouldRoundCapacityUpToPowerOfTwo() throws Exception {
+      assertThat(new ConsoleEventRing(2).getCapacity()).isEqualTo(2);
+      assertThat(new ConsoleEventRing(5).getCapacity()).isEqualTo(8);
+      assertThat(new ConsoleEventRing(8).getCapacity()).isEqualTo(8);
+   }
+
+   @Test
+   public void shouldPollEventsInOrderTheyWereOffered() throws Exception {
+      final ConsoleEventRing ring = new ConsoleEventRing(4);
+      final ConsoleEvent first = ConsoleEvent.incomingText("first");
+      final ConsoleEvent second = ConsoleEvent.incomingText("second");
+
+      assertThat(ring.isEmpty()).isTrue();
+      assertThat(ring.poll()).isNull();
+      assertThat(ring.offer(first)).isTrue();
+      assertThat(ring.offer(second)).isTrue();
+      assertThat(ring.isEmpty()).isFalse();
+
+      assertThat(ring.poll()).isSameAs(first);
+      assertThat(ring.poll()).isSameAs(second);
+      assertThat(ring.poll()).isNull();
+      assertThat(ring.isEmpty()).isTrue();
+   }
+
+   @Test
+   public void shouldDropAndCountEvents_WhenRingIsFull() throws Exception {
+      final ConsoleEventRing ring = new ConsoleEventRing(2);
+
+      assertThat(ring.offer(ConsoleEvent.incomingText("1"))).isTrue();
+      assertThat(ring.offer(ConsoleEvent.incomingText("2"))).isTrue();
+      assertThat(ring.offer(ConsoleEvent.incomingText("3"))).isFalse();
+      assertThat(ring.offer(ConsoleEvent.incomingText("4"))).isFalse();
+      assertThat(ring.getDropped()).isEqualTo(2);
+      assertThat(ring.getAccepted()).isEqualTo(2);
+
+      ring.poll();
+      assertThat(ring.offer(ConsoleEvent.incomingText("5"))).isTrue();
+   }
+
+   @Test
+   public void shouldNotLoseOrDuplicateEvents_WhenOfferedByManyThreads() throws Exception {
+      final int producers = 4;
+      final int eventsPerProducer = 20000;
+      final ConsoleEventRing ring = new ConsoleEventRing(64);
+      final CountDownLatch produced = new CountDownLatch(producers);
+
+      for (int producerIdx = 0; producerIdx < producers; producerIdx++) {
+         final int producer = producerIdx;
+         new Thread(new Runnable() {
+            @Override
+            public void run() {
+               for (int idx = 0; idx < eventsPerProducer; idx++) {
+                  while (!ring.offer(ConsoleEvent.incomingText(producer + ":" + idx))) {
+                     Thread.yield();
+                  }
+               }
+               produced.countDown();
+            }
+         }).start();
+      }
+
+      final Set<String> polled = new HashSet<String>();
+      while (polled.size() < producers * eventsPerProducer) {
+         final ConsoleEvent event = ring.poll();
+         if (event == null) {
+            Thread.yield();
+            continue;
+         }
+         assertThat(polled.add(event.format(""))).isTrue();
+      }
+      produced.await();
+
+      assertThat(ring.poll()).isNull();
+      assertThat(ring.getAccepted()).isEqualTo(producers * eventsPerProducer);
+   }
+}
@@ -0,0 +1,47 @@
+package by.stub.cli;
+
+import by.stub.utils.StringUtils;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class ConsoleEventTest {
+
+   @Test
+   public void shouldKeepShortBodyAsIs() throws Exception {
+      final byte[] body = StringUtils.getBytesUtf8("{\"short\": true}");
+
+      final String line = ConsoleEvent.incomingBytes(body).format("");
+
+      assertThat(line).contains("{\"short\": true}");
+      assertThat(line).doesNotContain("in total");
+   }
+
+   @Test
+   public void shouldLogPrefixOfLongBody_WithoutSplittingCharacter() throws Exception {
+      final byte[] body = new byte[ConsoleEvent.MAX_LOGGED_LENGTH * 4];
+      Arrays.fill(body, (byte) 'a');
+      // Two-byte character straddles the logged prefix
+      final byte[] letter = StringUtils.getBytesUtf8("é");
+      body[ConsoleEvent.MAX_LOGGED_LENGTH - 1] = letter[0];
+      body[ConsoleEvent.MAX_LOGGED_LENGTH] = letter[1];
+
+      final String line = ConsoleEvent.incomingBytes(body).format("");
+
+      assertThat(line).contains(String.format("... (%s in total)", body.length));
+      assertThat(line).doesNotContain("é");
+      assertThat(line).doesNotContain("�");
+   }
+
+   @Test
+   public void shouldLogPrefixOfLongText() throws Exception {
+      final String text = new String(new char[ConsoleEvent.MAX_LOGGED_LENGTH + 1]).replace('\0', 'a');
+
+      final String line = ConsoleEvent.incomingText(text).format("");
+
+      assertThat(line).doesNotContain(text);
+      assertThat(line).contains(text.substring(0, ConsoleEvent.MAX_LOGGED_LENGTH) + String.format("... (%s in total)", text.length()));
+   }
+}
@@ -0,0 +1,60 @@
+package by.stub.database;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class ConcurrentBitSetTest {
+
+   @Test
+   public void shouldReportOnlyBitsThatWereSet() throws Exception {
+      final ConcurrentBitSet bitSet = new ConcurrentBitSet(130);
+
+      bitSet.set(0);
+      bitSet.set(64);
+      bitSet.set(129);
+      bitSet.set(129);
+
+      assertThat(bitSet.size()).isEqualTo(130);
+      assertThat(bitSet.get(0)).isTrue();
+      assertThat(bitSet.get(1)).isFalse();
+      assertThat(bitSet.get(63)).isFalse();
+      assertThat(bitSet.get(64)).isTrue();
+      assertThat(bitSet.get(128)).isFalse();
+      assertThat(bitSet.get(129)).isTrue();
+   }
+
+   @Test
+   public void shouldKeepAllBits_WhenSetConcurrentlyInSameWord() throws Exception {
+      final ConcurrentBitSet bitSet = new ConcurrentBitSet(64);
+      final CountDownLatch start = new CountDownLatch(1);
+      final Thread[] threads = new Thread[8];
+      for (int threadIdx = 0; threadIdx < threads.length; threadIdx++) {
+         final int offset = threadIdx;
+         threads[threadIdx] = new Thread(new Runnable() {
+            @Override
+            public void run() {
+               try {
+                  start.await();
+               } catch (final InterruptedException ex) {
+                  return;
+               }
+               for (int index = offset; index < 64; index += threads.length) {
+                  bitSet.set(index);
+               }
+            }
+         });
+         threads[threadIdx].start();
+      }
+      start.countDown();
+      for (final Thread thread : threads) {
+         thread.join();
+      }
+
+      for (int index = 0; index < 64; index++) {
+         assertThat(bitSet.get(index)).isTrue();
+      }
+   }
+}
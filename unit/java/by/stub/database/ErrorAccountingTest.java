@@ -0,0 +1,53 @@
+package by.stub.database;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class ErrorAccountingTest {
+
+   @Test
+   public void shouldCountErrorsByCategory() throws Exception {
+      final long templateErrors = ErrorAccounting.getCount(ErrorCategory.TEMPLATE);
+      final long recordingErrors = ErrorAccounting.getCount(ErrorCategory.RECORDING);
+      final long totalErrors = ErrorAccounting.getTotal();
+
+      ErrorAccounting.record(ErrorCategory.TEMPLATE, new IllegalStateException("Broken template"));
+      ErrorAccounting.record(ErrorCategory.TEMPLATE, "Broken template");
+      ErrorAccounting.record(ErrorCategory.RECORDING, "Could not record");
+
+      assertThat(ErrorAccounting.getCount(ErrorCategory.TEMPLATE)).isEqualTo(templateErrors + 2);
+      assertThat(ErrorAccounting.getCount(ErrorCategory.RECORDING)).isEqualTo(recordingErrors + 1);
+      assertThat(ErrorAccounting.getTotal()).isGreaterThanOrEqualTo(totalErrors + 3);
+   }
+
+   @Test
+   public void shouldListRecentErrorsNewestFirst() throws Exception {
+      ErrorAccounting.record(ErrorCategory.BODY_READ, new IOException("Early EOF"));
+      ErrorAccounting.record(ErrorCategory.SERVER_ERROR, "Stub failed");
+
+      final List<ErrorSample> recentErrors = ErrorAccounting.getRecentErrors();
+
+      assertThat(recentErrors.get(0).getCategory()).isEqualTo(ErrorCategory.SERVER_ERROR);
+      assertThat(recentErrors.get(0).getMessage()).isEqualTo("Stub failed");
+      assertThat(recentErrors.get(1).getCategory()).isEqualTo(ErrorCategory.BODY_READ);
+      assertThat(recentErrors.get(1).getMessage()).isEqualTo("java.io.IOException: Early EOF");
+      assertThat(recentErrors.get(0).getSequence()).isEqualTo(recentErrors.get(1).getSequence() + 1);
+   }
+
+   @Test
+   public void shouldKeepOnlyMostRecentSamples_WhenRingWrapsAround() throws Exception {
+      for (int idx = 0; idx < ErrorAccounting.SAMPLE_CAPACITY + 10; idx++) {
+         ErrorAccounting.record(ErrorCategory.YAML_RELOAD, "Reload failed " + idx);
+      }
+
+      final List<ErrorSample> recentErrors = ErrorAccounting.getRecentErrors();
+
+      assertThat(recentErrors).hasSize(ErrorAccounting.SAMPLE_CAPACITY);
+      assertThat(recentErrors.get(0).getMessage()).isEqualTo("Reload failed " + (ErrorAccounting.SAMPLE_CAPACITY + 9));
+      assertThat(recentErrors.get(ErrorAccounting.SAMPLE_CAPACITY - 1).getMessage()).isEqualTo("Reload failed 10");
+   }
+}
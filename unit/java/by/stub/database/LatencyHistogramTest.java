@@ -0,0 +1,91 @@
+package by.stub.database;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class LatencyHistogramTest {
+
+   @Test
+   public void shouldReportZeros_WhenNothingRecorded() throws Exception {
+      final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+      assertThat(latencyHistogram.getCount()).isEqualTo(0);
+      assertThat(latencyHistogram.getValueAtQuantile(0.99)).isEqualTo(0);
+      assertThat(latencyHistogram.toString()).isEqualTo("count=0, p50=0, p90=0, p99=0, p999=0, max=0");
+   }
+
+   @Test
+   public void shouldReportExactPercentiles_WhenValuesAreSmall() throws Exception {
+      final LatencyHistogram latencyHistogram = new LatencyHistogram();
+      for (int millis = 1; millis <= 50; millis++) {
+         latencyHistogram.record(millis);
+      }
+
+      assertThat(latencyHistogram.getCount()).isEqualTo(50);
+      assertThat(latencyHistogram.getValueAtQuantile(0.5)).isEqualTo(25);
+      assertThat(latencyHistogram.getValueAtQuantile(0.9)).isEqualTo(45);
+      assertThat(latencyHistogram.getValueAtQuantile(1)).isEqualTo(50);
+      assertThat(latencyHistogram.getMax()).isEqualTo(50);
+   }
+
+   @Test
+   public void shouldReportPercentilesWithinBucketPrecision_WhenValuesAreLarge() throws Exception {
+      final LatencyHistogram latencyHistogram = new LatencyHistogram();
+      for (int millis = 1; millis <= 10000; millis++) {
+         latencyHistogram.record(millis);
+      }
+
+      assertThat(latencyHistogram.getValueAtQuantile(0.5)).isGreaterThanOrEqualTo(5000).isLessThanOrEqualTo(5150);
+      assertThat(latencyHistogram.getValueAtQuantile(0.99)).isGreaterThanOrEqualTo(9900).isLessThanOrEqualTo(10000);
+      assertThat(latencyHistogram.getValueAtQuantile(0.999)).isLessThanOrEqualTo(10000);
+      assertThat(latencyHistogram.toString()).startsWith("count=10000, p50=").endsWith("max=10000");
+   }
+
+   @Test
+   public void shouldReportSeveralPercentilesFromSameCounts() throws Exception {
+      final LatencyHistogram latencyHistogram = new LatencyHistogram();
+      for (int micros = 1; micros <= 50; micros++) {
+         latencyHistogram.record(micros);
+      }
+
+      final long[] values = latencyHistogram.getValuesAtQuantiles(0.5, 0.9, 1);
+
+      assertThat(values).isEqualTo(new long[]{25, 45, 50});
+   }
+
+   @Test
+   public void shouldReportCumulativeCountsAtBoundsAndSum() throws Exception {
+      final LatencyHistogram latencyHistogram = new LatencyHistogram();
+      for (int micros = 1; micros <= 1000; micros++) {
+         latencyHistogram.record(micros);
+      }
+
+      final long[] cumulativeCounts = latencyHistogram.getCumulativeCounts(50, 100, 500, 2000);
+
+      assertThat(cumulativeCounts).isEqualTo(new long[]{49, 99, 495, 1000, 1000});
+      assertThat(latencyHistogram.getSum()).isEqualTo(500500);
+   }
+
+   @Test
+   public void shouldMapEveryValueToBucketCoveringIt() throws Exception {
+      for (long value = 0; value < 1000000; value += 7) {
+         final int bucketIndex = LatencyHistogram.bucketIndex(value);
+
+         assertThat(LatencyHistogram.highestEquivalentValue(bucketIndex)).isGreaterThanOrEqualTo(value);
+         if (bucketIndex > 0) {
+            assertThat(LatencyHistogram.highestEquivalentValue(bucketIndex - 1)).isLessThan(value);
+         }
+      }
+   }
+
+   @Test
+   public void shouldClampNegativeAndHugeValues() throws Exception {
+      final LatencyHistogram latencyHistogram = new LatencyHistogram();
+      latencyHistogram.record(-5);
+      latencyHistogram.record(Long.MAX_VALUE);
+
+      assertThat(latencyHistogram.getValueAtQuantile(0.5)).isEqualTo(0);
+      assertThat(latencyHistogram.getMax()).isGreaterThan(0);
+   }
+}
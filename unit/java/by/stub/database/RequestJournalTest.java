@@ -0,0 +1,213 @@
+package by.stub.database;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.regex.Pattern;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class RequestJournalTest {
+
+   @Test
+   public void shouldQueryRecordedRequestsNewestFirst() throws Exception {
+      final RequestJournal requestJournal = RequestJournal.inMemory(8);
+      final Map<String, String> headers = new HashMap<String, String>();
+      headers.put("content-type", "application/json");
+      headers.put("authorization", "Basic Ym9iOnNlY3JldA==");
+
+      requestJournal.record("POST", "/invoice?status=active", headers, RequestJournal.hashBody("{\"id\":1}"), 2, 201, 1000L, 350L);
+      requestJournal.record("GET", "/item/1", new HashMap<String, String>(), 0, RequestJournal.UNMATCHED_STUB_ID, 404, 2000L, 40L);
+
+      final List<RequestJournalEntry> entries = requestJournal.query(null, Long.MIN_VALUE, Long.MAX_VALUE, null, 10);
+
+      assertThat(entries).hasSize(2);
+      assertThat(entries.get(0).getUrl()).isEqualTo("/item/1");
+      assertThat(entries.get(0).getStubId()).isEqualTo(RequestJournal.UNMATCHED_STUB_ID);
+
+      final RequestJournalEntry entry = entries.get(1);
+      assertThat(entry.getSequence()).isEqualTo(1);
+      assertThat(entry.getMethod()).isEqualTo("POST");
+      assertThat(entry.getUrl()).isEqualTo("/invoice?status=active");
+      assertThat(entry.getStubId()).isEqualTo(2);
+      assertThat(entry.getStatus()).isEqualTo(201);
+      assertThat(entry.getReceivedMillis()).isEqualTo(1000L);
+      assertThat(entry.getDurationMicros()).isEqualTo(350L);
+      assertThat(entry.getBodyHash()).isEqualTo(RequestJournal.hashBody("{\"id\":1}"));
+      assertThat(entry.getHeaders()).hasSize(1);
+      assertThat(entry.getHeaders().get("content-type")).isEqualTo("application/json");
+   }
+
+   @Test
+   public void shouldFilterRequestsByStubIdTimeAndUrl() throws Exception {
+      final RequestJournal requestJournal = RequestJournal.inMemory(8);
+      requestJournal.record("GET", "/invoice/1", new HashMap<String, String>(), 0, 1, 200, 1000L, 1L);
+      requestJournal.record("GET", "/invoice/2", new HashMap<String, String>(), 0, 1, 200, 2000L, 1L);
+      requestJournal.record("GET", "/item/1", new HashMap<String, String>(), 0, 3, 200, 3000L, 1L);
+
+      assertThat(requestJournal.query(1, Long.MIN_VALUE, Long.MAX_VALUE, null, 10)).hasSize(2);
+      assertThat(requestJournal.query(1, 1500L, Long.MAX_VALUE, null, 10)).hasSize(1);
+      assertThat(requestJournal.query(null, 1000L, 2000L, null, 10)).hasSize(2);
+      assertThat(requestJournal.query(null, Long.MIN_VALUE, Long.MAX_VALUE, Pattern.compile("^/item/\\d+$"), 10)).hasSize(1);
+      assertThat(requestJournal.query(null, Long.MIN_VALUE, Long.MAX_VALUE, null, 1).get(0).getUrl()).isEqualTo("/item/1");
+   }
+
+   @Test
+   public void shouldOverwriteOldestRequestsWhenFull() throws Exception {
+      final RequestJournal requestJournal = RequestJournal.inMemory(4);
+      for (int idx = 1; idx <= 6; idx++) {
+         requestJournal.record("GET", "/item/" + idx, new HashMap<String, String>(), 0, idx, 200, idx, 1L);
+      }
+
+      final List<RequestJournalEntry> entries = requestJournal.query(null, Long.MIN_VALUE, Long.MAX_VALUE, null, 10);
+
+      assertThat(requestJournal.getRecorded()).isEqualTo(6);
+      assertThat(entries).hasSize(4);
+      assertThat(entries.get(0).getUrl()).isEqualTo("/item/6");
+      assertThat(entries.get(3).getUrl()).isEqualTo("/item/3");
+   }
+
+   @Test
+   public void shouldTruncateLongUrlsAtWholeCharacters() throws Exception {
+      final RequestJournal requestJournal = RequestJournal.inMemory(1);
+      final StringBuilder url = new StringBuilder("/");
+      for (int idx = 0; idx < 300; idx++) {
+         url.append('é');
+      }
+      requestJournal.record("GET", url.toString(), new HashMap<String, String>(), 0, 0, 200, 1L, 1L);
+
+      final String journaledUrl = requestJournal.query(null, Long.MIN_VALUE, Long.MAX_VALUE, null, 1).get(0).getUrl();
+
+      assertThat(url.toString()).startsWith(journaledUrl);
+      assertThat(journaledUrl.length()).isEqualTo(127);
+   }
+
+   @Test
+   public void shouldKeepRequestsJournaledInFileAcrossRestarts() throws Exception {
+      final File journalFile = File.createTempFile("stubby", ".journal");
+      journalFile.deleteOnExit();
+
+      final RequestJournal requestJournal = RequestJournal.mappedTo(journalFile, 4);
+      for (int idx = 1; idx <= 5; idx++) {
+         requestJournal.record("GET", "/item/" + idx, new HashMap<String, String>(), 0, idx, 200, idx, 1L);
+      }
+
+      final RequestJournal reopenedJournal = RequestJournal.mappedTo(journalFile, 4);
+      reopenedJournal.record("GET", "/item/6", new HashMap<String, String>(), 0, 6, 200, 6L, 1L);
+      final List<RequestJournalEntry> entries = reopenedJournal.query(null, Long.MIN_VALUE, Long.MAX_VALUE, null, 10);
+
+      assertThat(reopenedJournal.getRecorded()).isEqualTo(6);
+      assertThat(entries).hasSize(4);
+      assertThat(entries.get(0).getUrl()).isEqualTo("/item/6");
+      assertThat(entries.get(3).getUrl()).isEqualTo("/item/3");
+   }
+
+   @Test
+   public void shouldDropRecordsWrittenPartially_WhenRecoveringFile() throws Exception {
+      final File journalFile = File.createTempFile("stubby", ".journal");
+      journalFile.deleteOnExit();
+
+      final RequestJournal requestJournal = RequestJournal.mappedTo(journalFile, 4);
+      requestJournal.record("GET", "/item/1", new HashMap<String, String>(), 0, 1, 200, 1L, 1L);
+      requestJournal.record("GET", "/item/2", new HashMap<String, String>(), 0, 2, 200, 2L, 1L);
+
+      // Second record looks like the process stopped while its URL was written
+      final RandomAccessFile randomAccessFile = new RandomAccessFile(journalFile, "rw");
+      try {
+         randomAccessFile.seek(RequestJournal.FILE_HEADER_BYTES + RequestJournal.RECORD_BYTES + 100);
+         randomAccessFile.write(0x7f);
+      } finally {
+         randomAccessFile.close();
+      }
+
+      final RequestJournal reopenedJournal = RequestJournal.mappedTo(journalFile, 4);
+      final List<RequestJournalEntry> entries = reopenedJournal.query(null, Long.MIN_VALUE, Long.MAX_VALUE, null, 10);
+
+      assertThat(reopenedJournal.getRecorded()).isEqualTo(1);
+      assertThat(entries).hasSize(1);
+      assertThat(entries.get(0).getUrl()).isEqualTo("/item/1");
+   }
+
+   @Test
+   public void shouldStartAfreshWhenFileHasDifferentCapacity() throws Exception {
+      final File journalFile = File.createTempFile("stubby", ".journal");
+      journalFile.deleteOnExit();
+
+      RequestJournal.mappedTo(journalFile, 4).record("GET", "/item/1", new HashMap<String, String>(), 0, 1, 200, 1L, 1L);
+      final RequestJournal reopenedJournal = RequestJournal.mappedTo(journalFile, 8);
+
+      assertThat(reopenedJournal.getRecorded()).isEqualTo(0);
+      assertThat(reopenedJournal.query(null, Long.MIN_VALUE, Long.MAX_VALUE, null, 10)).isEmpty();
+   }
+
+   @Test
+   public void shouldReadOnlyWholeRecordsWhileWritersRecord() throws Exception {
+      final RequestJournal requestJournal = RequestJournal.inMemory(16);
+      final int writers = 4;
+      final int recordsPerWriter = 20000;
+      final CountDownLatch finished = new CountDownLatch(writers);
+      for (int writer = 0; writer < writers; writer++) {
+         final int stubId = writer;
+         new Thread(new Runnable() {
+            @Override
+            public void run() {
+               for (int idx = 0; idx < recordsPerWriter; idx++) {
+                  requestJournal.record("GET", "/stub/" + stubId, new HashMap<String, String>(), 0, stubId, 200, idx, 1L);
+               }
+               finished.countDown();
+            }
+         }).start();
+      }
+
+      while (finished.getCount() > 0) {
+         for (final RequestJournalEntry entry : requestJournal.query(null, Long.MIN_VALUE, Long.MAX_VALUE, null, 16)) {
+            assertThat(entry.getUrl()).isEqualTo("/stub/" + entry.getStubId());
+         }
+      }
+
+      assertThat(requestJournal.getRecorded()).isEqualTo(writers * recordsPerWriter);
+   }
+
+   @Test
+   public void shouldReadOnlyWholeRecords_WhenWritersLapEachOther() throws Exception {
+      final RequestJournal requestJournal = RequestJournal.inMemory(1);
+      final int writers = 8;
+      final int recordsPerWriter = 5000;
+      final CountDownLatch finished = new CountDownLatch(writers);
+      for (int writer = 0; writer < writers; writer++) {
+         final int stubId = writer;
+         new Thread(new Runnable() {
+            @Override
+            public void run() {
+               for (int idx = 0; idx < recordsPerWriter; idx++) {
+                  requestJournal.record("GET", "/stub/" + stubId, new HashMap<String, String>(), stubId, stubId, 200, idx, 1L);
+               }
+               finished.countDown();
+            }
+         }).start();
+      }
+
+      while (finished.getCount() > 0) {
+         for (final RequestJournalEntry entry : requestJournal.query(null, Long.MIN_VALUE, Long.MAX_VALUE, null, 1)) {
+            assertThat(entry.getUrl()).isEqualTo("/stub/" + entry.getStubId());
+            assertThat(entry.getBodyHash()).isEqualTo(entry.getStubId());
+         }
+      }
+
+      assertThat(requestJournal.getRecorded()).isEqualTo(writers * recordsPerWriter);
+      assertThat(requestJournal.query(null, Long.MIN_VALUE, Long.MAX_VALUE, null, 1)).hasSize(1);
+   }
+
+   @Test
+   public void shouldHashOnlyBodiesThatAreSet() throws Exception {
+      assertThat(RequestJournal.hashBody(null)).isEqualTo(0);
+      assertThat(RequestJournal.hashBody("")).isEqualTo(0);
+      assertThat(RequestJournal.hashBody("a")).isEqualTo(RequestJournal.hashBody("a"));
+      assertThat(RequestJournal.hashBody("a")).isNotEqualTo(RequestJournal.hashBody("b"));
+   }
+}
@@ -0,0 +1,55 @@
+package by.stub.database;
+
+import by.stub.builder.stubs.StubRequestBuilder;
+import by.stub.yaml.stubs.StubHttpLifecycle;
+import by.stub.yaml.stubs.StubMatchResult;
+import org.junit.Test;
+
+import java.util.LinkedList;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class StubMatchCacheTest {
+
+   private static final StubRequestBuilder REQUEST_BUILDER = new StubRequestBuilder();
+
+   @Test
+   public void shouldGiveReferencedResultSecondChance_WhenCacheIsFull() throws Exception {
+      final StubMatchCache matchCache = new StubMatchCache(new LinkedList<StubHttpLifecycle>(), 2);
+      final StubMatchCache.Fingerprint first = fingerprint(matchCache, "/item/1");
+      final StubMatchCache.Fingerprint second = fingerprint(matchCache, "/item/2");
+      final StubMatchCache.Fingerprint third = fingerprint(matchCache, "/item/3");
+
+      matchCache.put(first, new StubMatchResult());
+      matchCache.put(second, new StubMatchResult());
+      assertThat(matchCache.get(first)).isNotNull();
+      matchCache.put(third, new StubMatchResult());
+
+      assertThat(matchCache.size()).isEqualTo(2);
+      assertThat(matchCache.get(first)).isNotNull();
+      assertThat(matchCache.get(second)).isNull();
+      assertThat(matchCache.get(third)).isNotNull();
+   }
+
+   @Test
+   public void shouldEvictInClockOrder_WhenNoResultIsReferenced() throws Exception {
+      final StubMatchCache matchCache = new StubMatchCache(new LinkedList<StubHttpLifecycle>(), 2);
+      final StubMatchCache.Fingerprint first = fingerprint(matchCache, "/item/1");
+      final StubMatchCache.Fingerprint second = fingerprint(matchCache, "/item/2");
+      final StubMatchCache.Fingerprint third = fingerprint(matchCache, "/item/3");
+
+      matchCache.put(first, new StubMatchResult());
+      matchCache.put(second, new StubMatchResult());
+      matchCache.put(third, new StubMatchResult());
+      matchCache.put(third, new StubMatchResult());
+
+      assertThat(matchCache.size()).isEqualTo(2);
+      assertThat(matchCache.get(first)).isNull();
+      assertThat(matchCache.get(second)).isNotNull();
+      assertThat(matchCache.get(third)).isNotNull();
+   }
+
+   private static StubMatchCache.Fingerprint fingerprint(final StubMatchCache matchCache, final String url) {
+      return matchCache.fingerprint(REQUEST_BUILDER.withUrl(url).withMethodGet().build());
+   }
+}
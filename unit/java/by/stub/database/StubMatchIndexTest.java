@@ -0,0 +1,184 @@
+package by.stub.database;
+
+import by.stub.builder.stubs.StubRequestBuilder;
+import by.stub.yaml.stubs.StubHttpLifecycle;
+import by.stub.yaml.stubs.StubRequest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class StubMatchIndexTest {
+
+   private static final StubRequestBuilder REQUEST_BUILDER = new StubRequestBuilder();
+
+   @Test
+   public void shouldReturnCandidatesInStubbedOrder_WhenStubsComeFromDifferentBuckets() throws Exception {
+
+      final StubMatchIndex stubMatchIndex = buildStubMatchIndex(
+         REQUEST_BUILDER.withUrl("^/resource/item/([0-9]+)$").withMethodGet().build(),
+         REQUEST_BUILDER.withUrl(".*").build(),
+         REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().build(),
+         REQUEST_BUILDER.withUrl("/resource/.*").withMethodGet().withMethodPost().build());
+
+      final StubRequest assertingRequest = REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().build();
+
+      assertThat(stubMatchIndex.findCandidates(assertingRequest)).containsExactly(0, 1, 2, 3);
+   }
+
+   @Test
+   public void shouldReturnCandidatesOfSubmittedMethodOnly_WhenStubsHaveStandardAndCustomMethods() throws Exception {
+
+      final StubMatchIndex stubMatchIndex = buildStubMatchIndex(
+         REQUEST_BUILDER.withUrl("/resource/item/1").withMethod("purge").build(),
+         REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().build(),
+         REQUEST_BUILDER.withUrl("/resource/item/1").withMethodPost().withMethod("PURGE").build(),
+         REQUEST_BUILDER.withUrl("/resource/item/1").withMethod("PROPFIND").build(),
+         REQUEST_BUILDER.withUrl("/resource/item/1").build());
+
+      final StubRequest purgeRequest = REQUEST_BUILDER.withUrl("/resource/item/1").withMethod("PURGE").build();
+      final StubRequest postRequest = REQUEST_BUILDER.withUrl("/resource/item/1").withMethodPost().build();
+
+      assertThat(stubMatchIndex.findCandidates(purgeRequest)).containsExactly(0, 2, 4);
+      assertThat(stubMatchIndex.findCandidates(postRequest)).containsExactly(2, 4);
+   }
+
+   @Test
+   public void shouldNotReturnCandidates_WhenLiteralUrlPrefixDoesNotMatch() throws Exception {
+
+      final StubMatchIndex stubMatchIndex = buildStubMatchIndex(
+         REQUEST_BUILDER.withUrl("^/resource/item/([0-9]+)$").withMethodGet().build(),
+         REQUEST_BUILDER.withUrl("/another/item/1").withMethodGet().build(),
+         REQUEST_BUILDER.withUrl("/resource/items?").withMethodGet().build());
+
+      final StubRequest assertingRequest = REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().build();
+
+      assertThat(stubMatchIndex.findCandidates(assertingRequest)).containsExactly(0, 2);
+   }
+
+   @Test
+   public void shouldReturnCandidates_WhenLiteralUrlEqualsIncomingUrl() throws Exception {
+
+      final StubMatchIndex stubMatchIndex = buildStubMatchIndex(
+         REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().build(),
+         REQUEST_BUILDER.withUrl("/resource/item/10").withMethodGet().build(),
+         REQUEST_BUILDER.withUrl("[/resource/item/1]").withMethodGet().build(),
+         REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().build());
+
+      final StubRequest assertingRequest = REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().build();
+
+      assertThat(stubMatchIndex.findCandidates(assertingRequest)).containsExactly(0, 3);
+   }
+
+   @Test
+   public void shouldReturnCandidates_WhenInvalidRegexUrlEqualsIncomingUrl() throws Exception {
+
+      final StubMatchIndex stubMatchIndex = buildStubMatchIndex(
+         REQUEST_BUILDER.withUrl("/resource/{{[[").withMethodGet().build(),
+         REQUEST_BUILDER.withUrl("/resource/{{[[/1").withMethodGet().build());
+
+      final StubRequest assertingRequest = REQUEST_BUILDER.withUrl("/resource/{{[[").withMethodGet().build();
+
+      assertThat(stubMatchIndex.findCandidates(assertingRequest)).containsExactly(0);
+   }
+
+   @Test
+   public void shouldNotReturnCandidates_WhenHttpMethodDoesNotMatch() throws Exception {
+
+      final StubMatchIndex stubMatchIndex = buildStubMatchIndex(
+         REQUEST_BUILDER.withUrl("/resource/item/1").withMethodPost().build(),
+         REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().build(),
+         REQUEST_BUILDER.withUrl("/resource/item/1").build());
+
+      final StubRequest assertingRequest = REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().build();
+
+      assertThat(stubMatchIndex.findCandidates(assertingRequest)).containsExactly(1, 2);
+   }
+
+   @Test
+   public void shouldAlwaysReturnCandidate_WhenStubbedUrlHasAlternation() throws Exception {
+
+      final StubMatchIndex stubMatchIndex = buildStubMatchIndex(
+         REQUEST_BUILDER.withUrl("/resource/(item|product)/1").withMethodGet().build(),
+         REQUEST_BUILDER.withUrl("^/item|^/product").withMethodGet().build(),
+         REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().build());
+
+      final StubRequest assertingRequest = REQUEST_BUILDER.withUrl("/product").withMethodGet().build();
+
+      assertThat(stubMatchIndex.findCandidates(assertingRequest)).containsExactly(0, 1);
+   }
+
+   @Test
+   public void shouldReturnCandidateOnce_WhenStubHasDuplicateHttpMethods() throws Exception {
+
+      final StubMatchIndex stubMatchIndex = buildStubMatchIndex(
+         REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().withMethod("get").build());
+
+      final StubRequest assertingRequest = REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().build();
+
+      assertThat(stubMatchIndex.findCandidates(assertingRequest)).containsExactly(0);
+   }
+
+   @Test
+   public void shouldReturnOnlyRegexUrlsMatchingIncomingUrl_WhenUrlAutomatonEnabled() throws Exception {
+
+      final StubMatchIndex stubMatchIndex = buildUrlAutomatonStubMatchIndex(
+         REQUEST_BUILDER.withUrl("/resource/(item|product)/[0-9]+").withMethodGet().build(),
+         REQUEST_BUILDER.withUrl("^/item|^/product").withMethodGet().build(),
+         REQUEST_BUILDER.withUrl("/resource/.*").withMethodGet().build(),
+         REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().build(),
+         REQUEST_BUILDER.withUrl("/resource/product/[a-z]+").build(),
+         REQUEST_BUILDER.withUrl("/resource/(item|product)/[0-9]+").withMethodPost().build());
+
+      final StubRequest assertingRequest = REQUEST_BUILDER.withUrl("/resource/product/1").withMethodGet().build();
+
+      assertThat(stubMatchIndex.findCandidates(assertingRequest)).containsExactly(0, 2);
+   }
+
+   @Test
+   public void shouldReturnCandidatesByUrlPrefix_WhenUrlAutomatonCannotExpressRegex() throws Exception {
+
+      final StubMatchIndex stubMatchIndex = buildUrlAutomatonStubMatchIndex(
+         REQUEST_BUILDER.withUrl("^/resource/(item)/\\1$").withMethodGet().build(),
+         REQUEST_BUILDER.withUrl("^/resource/(?=item).*$").withMethodGet().build(),
+         REQUEST_BUILDER.withUrl("^/another/(?=item).*$").withMethodGet().build());
+
+      final StubRequest assertingRequest = REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().build();
+
+      assertThat(stubMatchIndex.findCandidates(assertingRequest)).containsExactly(0, 1);
+   }
+
+   @Test
+   public void shouldReturnCandidatesByUrlPrefix_WhenRegexExpandsBeyondUrlAutomatonLimit() throws Exception {
+
+      final StubMatchIndex stubMatchIndex = buildUrlAutomatonStubMatchIndex(
+         REQUEST_BUILDER.withUrl("^/resource/(((a{64}){64}){64}){64}$").withMethodGet().build(),
+         REQUEST_BUILDER.withUrl("^/resource/[0-9]+$").withMethodGet().build(),
+         REQUEST_BUILDER.withUrl("^/another/(((a{64}){64}){64}){64}$").withMethodGet().build());
+
+      final StubRequest assertingRequest = REQUEST_BUILDER.withUrl("/resource/aaaa").withMethodGet().build();
+
+      assertThat(stubMatchIndex.findCandidates(assertingRequest)).containsExactly(0);
+   }
+
+   private static StubMatchIndex buildUrlAutomatonStubMatchIndex(final StubRequest... stubRequests) {
+      return new StubMatchIndex(buildStubHttpLifecycles(stubRequests), true);
+   }
+
+   private static StubMatchIndex buildStubMatchIndex(final StubRequest... stubRequests) {
+      return new StubMatchIndex(buildStubHttpLifecycles(stubRequests));
+   }
+
+   private static List<StubHttpLifecycle> buildStubHttpLifecycles(final StubRequest... stubRequests) {
+      final List<StubHttpLifecycle> stubHttpLifecycles = new ArrayList<StubHttpLifecycle>();
+      for (final StubRequest stubRequest : stubRequests) {
+         final StubHttpLifecycle stubHttpLifecycle = new StubHttpLifecycle();
+         stubHttpLifecycle.setRequest(stubRequest);
+         stubHttpLifecycles.add(stubHttpLifecycle);
+      }
+
+      return stubHttpLifecycles;
+   }
+}
@@ -63,6 +63,33 @@ public class StubbedDataManagerTest {
       assertThat(stubbedDataManager.getStubHttpLifecycles().size()).isNotZero();
    }
 
+   @Test
+   public void shouldRecordMatchResultOnIncomingRequest_WhenStubMatched() throws Exception {
+
+      final List<StubHttpLifecycle> originalHttpLifecycles = buildHttpLifeCycles("^/resource/item/([0-9]+)$");
+      stubbedDataManager.resetStubHttpLifecycles(originalHttpLifecycles);
+
+      final StubRequest assertingRequest = REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().withHeaders("content-type", "application/json").build();
+      stubbedDataManager.findStubResponseFor(assertingRequest);
+
+      assertThat(assertingRequest.getMatchResult().isMatched()).isTrue();
+      assertThat(assertingRequest.getMatchResult().getMatchedLifecycle()).isSameAs(originalHttpLifecycles.get(0));
+      assertThat(assertingRequest.getMatchResult().getMatchingNanos()).isGreaterThan(0L);
+      assertThat(assertingRequest.getMatchResult().getRegexGroups().toString()).isEqualTo("{headers.content-type.0=application/json, url.0=/resource/item/1, url.1=1}");
+   }
+
+   @Test
+   public void shouldRecordMatchResultOnIncomingRequest_WhenStubNotMatched() throws Exception {
+
+      stubbedDataManager.resetStubHttpLifecycles(buildHttpLifeCycles("^/resource/item/([0-9]+)$"));
+
+      final StubRequest assertingRequest = REQUEST_BUILDER.withUrl("/resource/item/1").withMethodPost().build();
+      stubbedDataManager.findStubResponseFor(assertingRequest);
+
+      assertThat(assertingRequest.getMatchResult().isMatched()).isFalse();
+      assertThat(assertingRequest.getMatchResult().getRegexGroups()).isEmpty();
+   }
+
    @Test
    public void shouldMatchHttplifecycle_WhenValidIndexGiven() throws Exception {
 
@@ -197,14 +224,31 @@ public class StubbedDataManagerTest {
          final StubResponse actualResponse = stubbedDataManager.findStubResponseFor(originalHttpLifecycles.get(0).getRequest());
 
          assertThat(actualResponse.getBody()).isEqualTo(actualResponseText);
-         assertThat(expectedResponse.getBody()).isEqualTo(actualResponse.getBody());
-         assertThat(expectedResponse.isRecordingRequired()).isFalse();
+         assertThat(actualResponse).isSameAs(expectedResponse.getRecordedResponse());
          assertThat(actualResponse.isRecordingRequired()).isFalse();
+         assertThat(actualResponse.getHeaders().get(StubResponse.STUBBY_RESOURCE_ID_HEADER)).isEqualTo("0");
+         assertThat(expectedResponse.getBody()).isEqualTo(sourceToRecord);
       }
 
       verify(mockStubbyHttpTransport, times(1)).fetchRecordableHTTPResponse(eq(matchedRequest), anyString());
    }
 
+   @Test
+   public void shouldRenderRecordedResponseBody_WhenRecordedContentHasTemplateTokens() throws Exception {
+
+      final List<StubHttpLifecycle> originalHttpLifecycles = buildHttpLifeCycles("/resource/item/1");
+      originalHttpLifecycles.get(0).setResponse(StubResponse.newStubResponse("200", "http://google.com"));
+      stubbedDataManager.resetStubHttpLifecycles(originalHttpLifecycles);
+
+      final StubRequest matchedRequest = stubbedDataManager.getStubHttpLifecycles().get(0).getRequest();
+      when(mockStubbyHttpTransport.fetchRecordableHTTPResponse(eq(matchedRequest), anyString())).thenReturn(new StubbyResponse(200, "id <% url.1 %>"));
+
+      final StubResponse actualResponse = stubbedDataManager.findStubResponseFor(originalHttpLifecycles.get(0).getRequest());
+
+      assertThat(actualResponse.isContainsTemplateTokens()).isTrue();
+      assertThat(stubbedDataManager.getStubHttpLifecycles().get(0).getResponse(false).isContainsTemplateTokens()).isFalse();
+   }
+
    @Test
    public void shouldNotUpdateStubResponseBody_WhenResponseIsNotRecordable() throws Exception {
 
@@ -267,6 +311,252 @@ public class StubbedDataManagerTest {
       assertThat(httpCycleCaptor.getValue()).isEqualTo(originalHttpLifecycles);
    }
 
+   @Test
+   public void shouldRestoreCachedMatchResult_WhenSameRequestMatchedAgain() throws Exception {
+
+      final List<StubHttpLifecycle> originalHttpLifecycles = buildHttpLifeCycles("^/resource/item/([0-9]+)$");
+      final StubbedDataManager cachingStubbedDataManager = new StubbedDataManager(new File("."), originalHttpLifecycles, 10);
+
+      cachingStubbedDataManager.findStubResponseFor(REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().withHeaders("content-type", "application/json").build());
+      final StubRequest assertingRequest = REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().withHeaders("content-type", "application/json").withHeaders("accept", "*/*").build();
+      cachingStubbedDataManager.findStubResponseFor(assertingRequest);
+
+      assertThat(cachingStubbedDataManager.getMatchCacheMisses()).isEqualTo(1L);
+      assertThat(cachingStubbedDataManager.getMatchCacheHits()).isEqualTo(1L);
+      assertThat(assertingRequest.getMatchResult().getMatchedLifecycle()).isSameAs(originalHttpLifecycles.get(0));
+      assertThat(assertingRequest.getMatchResult().getRegexGroups().toString()).isEqualTo("{headers.content-type.0=application/json, url.0=/resource/item/1, url.1=1}");
+   }
+
+   @Test
+   public void shouldNotRestoreCachedMatchResult_WhenStubbedHeaderDiffers() throws Exception {
+
+      final StubbedDataManager cachingStubbedDataManager = new StubbedDataManager(new File("."), buildHttpLifeCycles("^/resource/item/([0-9]+)$"), 10);
+
+      cachingStubbedDataManager.findStubResponseFor(REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().withHeaders("content-type", "application/json").build());
+      final StubRequest assertingRequest = REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().withHeaders("content-type", "text/plain").build();
+      cachingStubbedDataManager.findStubResponseFor(assertingRequest);
+
+      assertThat(cachingStubbedDataManager.getMatchCacheHits()).isZero();
+      assertThat(assertingRequest.getMatchResult().isMatched()).isFalse();
+   }
+
+   @Test
+   public void shouldDiscardCachedMatchResults_WhenStubbedDataChanged() throws Exception {
+
+      final StubbedDataManager cachingStubbedDataManager = new StubbedDataManager(new File("."), buildHttpLifeCycles("/resource/item/1"), 10);
+      cachingStubbedDataManager.findStubResponseFor(REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().withHeaders("content-type", "application/json").build());
+
+      final List<StubHttpLifecycle> newHttpLifecycles = buildHttpLifeCycles("/resource/item/2");
+      cachingStubbedDataManager.updateStubHttpLifecycleByIndex(0, newHttpLifecycles.get(0));
+      final StubRequest assertingRequest = REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().withHeaders("content-type", "application/json").build();
+      cachingStubbedDataManager.findStubResponseFor(assertingRequest);
+
+      assertThat(cachingStubbedDataManager.getMatchCacheHits()).isZero();
+      assertThat(assertingRequest.getMatchResult().isMatched()).isFalse();
+   }
+
+   @Test
+   public void shouldNotCacheMatchResults_WhenMatchCacheDisabled() throws Exception {
+
+      stubbedDataManager.resetStubHttpLifecycles(buildHttpLifeCycles("/resource/item/1"));
+      stubbedDataManager.findStubResponseFor(REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().build());
+
+      assertThat(stubbedDataManager.isMatchCacheEnabled()).isFalse();
+      assertThat(stubbedDataManager.getMatchCacheMisses()).isZero();
+   }
+
+   @Test
+   public void shouldCountHitsAndTimesByStubIndex_WhenStubsMatched() throws Exception {
+
+      final List<StubHttpLifecycle> httpLifecycles = buildHttpLifeCycles("/resource/item/1");
+      httpLifecycles.addAll(buildHttpLifeCycles("/resource/item/2"));
+      stubbedDataManager.resetStubHttpLifecycles(httpLifecycles);
+
+      for (int idx = 0; idx < 3; idx++) {
+         stubbedDataManager.findStubResponseFor(REQUEST_BUILDER.withUrl("/resource/item/2").withMethodGet().withHeaders("content-type", "application/json").build());
+      }
+      stubbedDataManager.recordHandling(1, 2500000L);
+      stubbedDataManager.recordHandling(7, 2500000L);
+
+      assertThat(stubbedDataManager.getResourceStats().keySet()).containsOnly(1);
+      final ResourceStats resourceStats = stubbedDataManager.getResourceStats().get(1);
+      assertThat(resourceStats.getHits()).isEqualTo(3);
+      assertThat(resourceStats.getMatchingMicros().getCount()).isEqualTo(3);
+      assertThat(resourceStats.getHandlingMicros().getMax()).isEqualTo(2500);
+      assertThat(stubbedDataManager.getResourceStatsAsCsv()).startsWith("resourceId,hits,").contains(String.format("%n1,3,"));
+   }
+
+   @Test
+   public void shouldListStatsOfHitStubsInIndexRangeOnly() throws Exception {
+
+      final List<StubHttpLifecycle> httpLifecycles = buildHttpLifeCycles("/resource/item/1");
+      httpLifecycles.addAll(buildHttpLifeCycles("/resource/item/2"));
+      httpLifecycles.addAll(buildHttpLifeCycles("/resource/item/3"));
+      stubbedDataManager.resetStubHttpLifecycles(httpLifecycles);
+
+      stubbedDataManager.findStubResponseFor(REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().withHeaders("content-type", "application/json").build());
+      stubbedDataManager.findStubResponseFor(REQUEST_BUILDER.withUrl("/resource/item/3").withMethodGet().withHeaders("content-type", "application/json").build());
+
+      assertThat(stubbedDataManager.getResourceStats(1, 3).keySet()).containsOnly(2);
+      assertThat(stubbedDataManager.getResourceStats(1, 2)).isEmpty();
+      assertThat(stubbedDataManager.getResourceStats(0, 10).keySet()).containsOnly(0, 2);
+   }
+
+   @Test
+   public void shouldKeepStatsOfStubsAtSameIndex_WhenStubbedDataChanged() throws Exception {
+
+      stubbedDataManager.resetStubHttpLifecycles(buildHttpLifeCycles("/resource/item/1"));
+      stubbedDataManager.findStubResponseFor(REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().withHeaders("content-type", "application/json").build());
+
+      stubbedDataManager.updateStubHttpLifecycleByIndex(0, buildHttpLifeCycles("/resource/item/2").get(0));
+
+      assertThat(stubbedDataManager.getResourceStats().get(0).getHits()).isEqualTo(1);
+
+      stubbedDataManager.deleteStubHttpLifecycleByIndex(0);
+
+      assertThat(stubbedDataManager.getResourceStats()).isEmpty();
+   }
+
+   @Test
+   public void shouldReadViewsAndStatsFromSameSnapshot_WhenStubbedDataChangedAfterViewTaken() throws Exception {
+
+      final List<StubHttpLifecycle> httpLifecycles = buildHttpLifeCycles("/resource/item/1");
+      httpLifecycles.addAll(buildHttpLifeCycles("/resource/item/2"));
+      stubbedDataManager.resetStubHttpLifecycles(httpLifecycles);
+      stubbedDataManager.findStubResponseFor(REQUEST_BUILDER.withUrl("/resource/item/2").withMethodGet().withHeaders("content-type", "application/json").build());
+
+      final StubbedDataView stubbedDataView = stubbedDataManager.getStubbedDataView();
+      stubbedDataManager.deleteStubHttpLifecycleByIndex(0);
+
+      assertThat(stubbedDataView.getStubPropertyViews()).hasSize(2);
+      assertThat(stubbedDataView.getResourceStats(0, 2).keySet()).containsOnly(1);
+      assertThat(stubbedDataManager.getResourceStats(0, 2)).isEmpty();
+   }
+
+   @Test
+   public void shouldCountUnmatchedRequestsAndReloads() throws Exception {
+
+      final StubbedDataManager countingStubbedDataManager = new StubbedDataManager(new File("."), buildHttpLifeCycles("/resource/item/1"));
+      countingStubbedDataManager.findStubResponseFor(REQUEST_BUILDER.withUrl("/resource/item/2").withMethodGet().build());
+      when(mockYamlParser.parse(anyString(), anyString())).thenReturn(buildHttpLifeCycles("/resource/item/2"));
+      countingStubbedDataManager.refreshStubbedData(mockYamlParser, "yaml");
+
+      assertThat(countingStubbedDataManager.getUnmatchedRequests()).isEqualTo(1);
+      assertThat(countingStubbedDataManager.getUnauthorizedRequests()).isZero();
+      assertThat(countingStubbedDataManager.getReloadMillis().getCount()).isEqualTo(1);
+   }
+
+   @Test
+   public void shouldSplitStubsByUsage_WhenSomeStubsMatched() throws Exception {
+
+      final List<StubHttpLifecycle> httpLifecycles = buildHttpLifeCycles("/resource/item/1");
+      httpLifecycles.addAll(buildHttpLifeCycles("/resource/item/2"));
+      stubbedDataManager.resetStubHttpLifecycles(httpLifecycles);
+
+      stubbedDataManager.findStubResponseFor(REQUEST_BUILDER.withUrl("/resource/item/2").withMethodGet().withHeaders("content-type", "application/json").build());
+      stubbedDataManager.findStubResponseFor(REQUEST_BUILDER.withUrl("/resource/item/2").withMethodGet().withHeaders("content-type", "application/json").build());
+
+      final StubUsage stubUsage = stubbedDataManager.getStubUsage();
+      assertThat(stubUsage.getUsedStubHttpLifecycles()).containsExactly(httpLifecycles.get(1));
+      assertThat(stubUsage.getUnusedStubHttpLifecycles()).containsExactly(httpLifecycles.get(0));
+   }
+
+   @Test
+   public void shouldResetStubUsage_WhenStubbedDataChanged() throws Exception {
+
+      stubbedDataManager.resetStubHttpLifecycles(buildHttpLifeCycles("/resource/item/1"));
+      stubbedDataManager.findStubResponseFor(REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().withHeaders("content-type", "application/json").build());
+
+      assertThat(stubbedDataManager.getStubUsage().getUsedStubHttpLifecycles()).hasSize(1);
+
+      stubbedDataManager.updateStubHttpLifecycleByIndex(0, buildHttpLifeCycles("/resource/item/2").get(0));
+
+      assertThat(stubbedDataManager.getStubUsage().getUsedStubHttpLifecycles()).isEmpty();
+      assertThat(stubbedDataManager.getStubUsage().getUnusedStubHttpLifecycles()).hasSize(1);
+   }
+
+   @Test
+   public void shouldKeepStubUsage_WhenOtherStubUpdatedOrDeleted() throws Exception {
+
+      final List<StubHttpLifecycle> httpLifecycles = buildHttpLifeCycles("/resource/item/1");
+      httpLifecycles.addAll(buildHttpLifeCycles("/resource/item/2"));
+      stubbedDataManager.resetStubHttpLifecycles(httpLifecycles);
+      stubbedDataManager.findStubResponseFor(REQUEST_BUILDER.withUrl("/resource/item/1").withMethodGet().withHeaders("content-type", "application/json").build());
+
+      stubbedDataManager.updateStubHttpLifecycleByIndex(1, buildHttpLifeCycles("/resource/item/3").get(0));
+
+      assertThat(stubbedDataManager.getStubUsage().getUsedStubHttpLifecycles()).containsExactly(httpLifecycles.get(0));
+
+      stubbedDataManager.deleteStubHttpLifecycleByIndex(1);
+
+      assertThat(stubbedDataManager.getStubUsage().getUsedStubHttpLifecycles()).containsExactly(httpLifecycles.get(0));
+
+      stubbedDataManager.resetStubHttpLifecycles(buildHttpLifeCycles("/resource/item/1"));
+
+      assertThat(stubbedDataManager.getStubUsage().getUsedStubHttpLifecycles()).isEmpty();
+   }
+
+   @Test
+   public void shouldPrecomputeStubPropertyViews_WhenStubsLoaded() throws Exception {
+
+      final List<StubHttpLifecycle> httpLifecycles = buildHttpLifeCycles("/resource/item/1");
+      httpLifecycles.addAll(buildHttpLifeCycles("/resource/item/2"));
+      stubbedDataManager.resetStubHttpLifecycles(httpLifecycles);
+
+      final List<StubPropertyView> stubPropertyViews = stubbedDataManager.getStubPropertyViews();
+      assertThat(stubPropertyViews).hasSize(2);
+      assertThat(stubPropertyViews.get(1).getStubHttpLifecycle()).isSameAs(httpLifecycles.get(1));
+      assertThat(stubPropertyViews.get(1).getResourceIndex()).isEqualTo(1);
+      assertThat(stubPropertyViews.get(1).getRequestProperties().get("url")).isEqualTo("/resource/item/2");
+      assertThat(stubPropertyViews.get(1).getResponseProperties()).hasSize(1);
+   }
+
+   @Test
+   public void shouldKeepViewsOfUnchangedStubsOnly_WhenStubbedDataChanged() throws Exception {
+
+      final List<StubHttpLifecycle> httpLifecycles = buildHttpLifeCycles("/resource/item/1");
+      httpLifecycles.addAll(buildHttpLifeCycles("/resource/item/2"));
+      httpLifecycles.addAll(buildHttpLifeCycles("/resource/item/3"));
+      stubbedDataManager.resetStubHttpLifecycles(httpLifecycles);
+      final List<StubPropertyView> originalViews = stubbedDataManager.getStubPropertyViews();
+
+      stubbedDataManager.updateStubHttpLifecycleByIndex(1, buildHttpLifeCycles("/resource/item/22").get(0));
+      final List<StubPropertyView> updatedViews = stubbedDataManager.getStubPropertyViews();
+
+      assertThat(updatedViews.get(0)).isSameAs(originalViews.get(0));
+      assertThat(updatedViews.get(1).getRequestProperties().get("url")).isEqualTo("/resource/item/22");
+      assertThat(updatedViews.get(2)).isSameAs(originalViews.get(2));
+
+      stubbedDataManager.deleteStubHttpLifecycleByIndex(0);
+      final List<StubPropertyView> shiftedViews = stubbedDataManager.getStubPropertyViews();
+
+      assertThat(shiftedViews.get(1)).isNotSameAs(originalViews.get(2));
+      assertThat(shiftedViews.get(1).getResourceIndex()).isEqualTo(1);
+   }
+
+   @Test
+   public void shouldCopyShiftedStubsInsteadOfModifyingThem_WhenStubDeleted() throws Exception {
+
+      final List<StubHttpLifecycle> httpLifecycles = buildHttpLifeCycles("/resource/item/1");
+      httpLifecycles.addAll(buildHttpLifeCycles("/resource/item/2"));
+      stubbedDataManager.resetStubHttpLifecycles(httpLifecycles);
+      final StubHttpLifecycle publishedLifecycle = stubbedDataManager.getStubHttpLifecycles().get(1);
+      final StubResponse publishedResponse = publishedLifecycle.getResponse(false);
+
+      stubbedDataManager.deleteStubHttpLifecycleByIndex(0);
+
+      assertThat(publishedLifecycle.getResourceIndex()).isEqualTo(1);
+      assertThat(publishedLifecycle.getResponse(false)).isSameAs(publishedResponse);
+      assertThat(publishedResponse.getResourceId()).isEqualTo(1);
+      assertThat(publishedResponse.getHeaders().get(StubResponse.STUBBY_RESOURCE_ID_HEADER)).isEqualTo("1");
+
+      final StubHttpLifecycle shiftedLifecycle = stubbedDataManager.getStubHttpLifecycles().get(0);
+      assertThat(shiftedLifecycle).isNotSameAs(publishedLifecycle);
+      assertThat(shiftedLifecycle.getRequest()).isSameAs(publishedLifecycle.getRequest());
+      assertThat(shiftedLifecycle.getResourceIndex()).isZero();
+      assertThat(shiftedLifecycle.getResponse(false).getHeaders().get(StubResponse.STUBBY_RESOURCE_ID_HEADER)).isEqualTo("0");
+   }
+
    private List<StubHttpLifecycle> buildHttpLifeCycles(final String url) {
       final StubRequest originalRequest =
          REQUEST_BUILDER
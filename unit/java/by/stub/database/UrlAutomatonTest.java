@@ -0,0 +1,195 @@
+package by.stub.database;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class UrlAutomatonTest {
+
+   private static final String RANDOM_ALPHABET = "/ab1.\n";
+
+   @Test
+   public void shouldMatchSameUrlsAsPattern_WhenRegexesSupported() throws Exception {
+
+      final List<String> regexes = Arrays.asList(
+         "^/resource/item/([0-9]+)$",
+         "/resource/(item|product)/\\d{1,3}",
+         "^/item$|^/product",
+         "/[^/]+/x?",
+         "/(?:ab)*c+?",
+         "/\\w+\\.json",
+         "/.*",
+         "/[a-c-]{2,}",
+         "/\\x41\\u00e9",
+         "/(a|ab)(c|bcd)",
+         "/a{0}b",
+         "/(a*)*",
+         "/\\s*\\S",
+         "/résumé/.+",
+         "/[\\d.]+",
+         "/😀.",
+         "/[\\]\\[]\\$",
+         "()|/");
+
+      final List<String> urls = Arrays.asList(
+         "/resource/item/123", "/resource/item/", "/resource/product/12", "/resource/product/1234", "/item", "/product",
+         "/item/x", "/abc/x", "/abc/", "/abababccc", "/c", "/foo.json", "/foo.jso", "/", "/abc-", "/a", "/Aé", "/abcd",
+         "/b", "/aaaa", "/ \tx", "/résumé/cv", "/1.2.3", "/😀x", "/😀\n", "/][$", "/item\n");
+
+      final UrlAutomaton urlAutomaton = new UrlAutomaton();
+      for (int idx = 0; idx < regexes.size(); idx++) {
+         final UrlRegexParser.Node parsed = UrlRegexParser.parse(regexes.get(idx));
+         assertThat(parsed).as(regexes.get(idx)).isNotNull();
+         urlAutomaton.add(parsed, idx);
+      }
+
+      for (final String url : urls) {
+         assertThat(collectMatches(urlAutomaton, url)).as(url).isEqualTo(matchByPattern(regexes, url));
+      }
+   }
+
+   @Test
+   public void shouldMatchSameUrlsAsPattern_WhenRegexesRandomlyGenerated() throws Exception {
+
+      final Random random = new Random(42);
+      for (int round = 0; round < 50; round++) {
+         final List<String> regexes = new ArrayList<String>();
+         final UrlAutomaton urlAutomaton = new UrlAutomaton();
+         while (regexes.size() < 20) {
+            final String regex = randomRegex(random);
+            final UrlRegexParser.Node parsed = UrlRegexParser.parse(regex);
+            assertThat(parsed).as(regex).isNotNull();
+            urlAutomaton.add(parsed, regexes.size());
+            regexes.add(regex);
+         }
+
+         for (int attempt = 0; attempt < 200; attempt++) {
+            final String url = randomUrl(random);
+            assertThat(collectMatches(urlAutomaton, url)).as(regexes + " on " + url).isEqualTo(matchByPattern(regexes, url));
+         }
+      }
+   }
+
+   @Test
+   public void shouldNotParseRegex_WhenAutomatonCannotExpressIt() throws Exception {
+
+      final List<String> regexes = Arrays.asList(
+         "/(a)\\1", "/(?=a).*", "/(?<name>a)", "/a*+", "/a\\b", "/(?i)a", "/[a[b]]", "/[a&&b]", "/a$/b", "/(^a)",
+         "/\\p{Alpha}", "/a{100}", "/\\Qa\\E", "/a**", "/[]a]", "/a{,2}");
+
+      for (final String regex : regexes) {
+         assertThat(UrlRegexParser.parse(regex)).as(regex).isNull();
+      }
+   }
+
+   @Test
+   public void shouldNotParseRegex_WhenNestedCountedRepetitionsExpandBeyondLimit() throws Exception {
+
+      assertThat(UrlRegexParser.parse("/(((a{64}){64}){64}){64}")).isNull();
+      assertThat(UrlRegexParser.parse("/(a{1,64}|b{1,64}){64}")).isNull();
+
+      final UrlRegexParser.Node parsed = UrlRegexParser.parse("/(a{64}){64}");
+      assertThat(parsed).isNotNull();
+      assertThat(parsed.getExpandedStates()).isEqualTo(1 + 64 * 64);
+   }
+
+   @Test
+   public void shouldMatchUrls_WhenSameDeterministicStatesReused() throws Exception {
+
+      final UrlAutomaton urlAutomaton = new UrlAutomaton();
+      urlAutomaton.add(UrlRegexParser.parse("^/resource/([a-z]+)/item/([0-9]+)$"), 7);
+
+      for (int idx = 0; idx < 3; idx++) {
+         assertThat(collectMatches(urlAutomaton, "/resource/abc/item/" + idx)).containsExactly(7);
+         assertThat(collectMatches(urlAutomaton, "/resource/abc/item/x" + idx)).isEmpty();
+      }
+   }
+
+   private static List<Integer> collectMatches(final UrlAutomaton urlAutomaton, final String url) {
+      final List<Integer> matches = new ArrayList<Integer>();
+      urlAutomaton.collectMatches(url, matches);
+
+      return matches;
+   }
+
+   private static List<Integer> matchByPattern(final List<String> regexes, final String url) {
+      final List<Integer> matches = new ArrayList<Integer>();
+      for (int idx = 0; idx < regexes.size(); idx++) {
+         if (Pattern.compile(regexes.get(idx), Pattern.MULTILINE).matcher(url).matches()) {
+            matches.add(idx);
+         }
+      }
+
+      return matches;
+   }
+
+   private static String randomRegex(final Random random) {
+      final StringBuilder builder = new StringBuilder();
+      final int alternatives = 1 + random.nextInt(2);
+      for (int idx = 0; idx < alternatives; idx++) {
+         if (idx > 0) {
+            builder.append('|');
+         }
+         builder.append(random.nextBoolean() ? "^/" : "/");
+         appendRandomSequence(random, builder, 2);
+         if (random.nextBoolean()) {
+            builder.append('$');
+         }
+      }
+
+      return builder.toString();
+   }
+
+   private static void appendRandomSequence(final Random random, final StringBuilder builder, final int depth) {
+      final int length = 1 + random.nextInt(3);
+      for (int idx = 0; idx < length; idx++) {
+         final int atom = random.nextInt(depth > 0 ? 9 : 7);
+         switch (atom) {
+            case 0:
+               builder.append('.');
+               break;
+            case 1:
+               builder.append("[ab]");
+               break;
+            case 2:
+               builder.append("[^a/]");
+               break;
+            case 3:
+               builder.append("\\d");
+               break;
+            case 4:
+               builder.append("\\.");
+               break;
+            case 5:
+            case 6:
+               builder.append(RANDOM_ALPHABET.charAt(random.nextInt(3)));
+               break;
+            default:
+               builder.append(random.nextBoolean() ? "(" : "(?:");
+               appendRandomSequence(random, builder, depth - 1);
+               builder.append('|');
+               appendRandomSequence(random, builder, depth - 1);
+               builder.append(')');
+         }
+
+         final String[] quantifiers = {"", "", "*", "+", "?", "{2}", "{1,2}", "{0,}", "*?"};
+         builder.append(quantifiers[random.nextInt(quantifiers.length)]);
+      }
+   }
+
+   private static String randomUrl(final Random random) {
+      final StringBuilder builder = new StringBuilder("/");
+      final int length = random.nextInt(6);
+      for (int idx = 0; idx < length; idx++) {
+         builder.append(RANDOM_ALPHABET.charAt(random.nextInt(RANDOM_ALPHABET.length())));
+      }
+
+      return builder.toString();
+   }
+}
@@ -0,0 +1,55 @@
+package by.stub.handlers;
+
+import by.stub.database.ErrorAccounting;
+import by.stub.database.ErrorCategory;
+import by.stub.database.StubbedDataManager;
+import by.stub.yaml.YamlParser;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Request;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AdminPortalHandlerTest {
+
+   @Test
+   public void shouldCountYamlReloadError_WhenPostedStubbedDataCannotBeLoaded() throws Exception {
+      final StubbedDataManager mockStubbedDataManager = Mockito.mock(StubbedDataManager.class);
+      doThrow(new IllegalStateException("Could not parse YAML")).when(mockStubbedDataManager).refreshStubbedData(any(YamlParser.class), anyString());
+
+      final HttpServletRequest mockHttpServletRequest = Mockito.mock(HttpServletRequest.class);
+      final InputStream inputStream = new ByteArrayInputStream("- request: [".getBytes());
+      when(mockHttpServletRequest.getMethod()).thenReturn("POST");
+      when(mockHttpServletRequest.getRequestURI()).thenReturn(AdminPortalHandler.ADMIN_ROOT);
+      when(mockHttpServletRequest.getInputStream()).thenReturn(new ServletInputStream() {
+         @Override
+         public int read() throws IOException {
+            return inputStream.read();
+         }
+      });
+      final HttpServletResponse mockHttpServletResponse = Mockito.mock(HttpServletResponse.class);
+      when(mockHttpServletResponse.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+      final long yamlReloadErrors = ErrorAccounting.getCount(ErrorCategory.YAML_RELOAD);
+
+      new AdminPortalHandler(mockStubbedDataManager).handle(AdminPortalHandler.ADMIN_ROOT, Mockito.mock(Request.class), mockHttpServletRequest, mockHttpServletResponse);
+
+      verify(mockHttpServletResponse, times(1)).setStatus(HttpStatus.INTERNAL_SERVER_ERROR_500);
+      assertThat(ErrorAccounting.getCount(ErrorCategory.YAML_RELOAD)).isEqualTo(yamlReloadErrors + 1);
+   }
+}
@@ -0,0 +1,45 @@
+package by.stub.handlers;
+
+import by.stub.database.ErrorAccounting;
+import by.stub.database.ErrorCategory;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Request;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ErrorCountHandlerTest {
+
+   @Test
+   public void shouldListErrorCountsAndRecentErrorsAsJson() throws Exception {
+      ErrorAccounting.record(ErrorCategory.RECORDING, "Could not record from \"http://localhost\"");
+
+      final HttpServletResponse mockHttpServletResponse = Mockito.mock(HttpServletResponse.class);
+      final StringWriter responseWriter = new StringWriter();
+      when(mockHttpServletResponse.getWriter()).thenReturn(new PrintWriter(responseWriter));
+
+      new ErrorCountHandler().handle("/errors", Mockito.mock(Request.class), Mockito.mock(HttpServletRequest.class), mockHttpServletResponse);
+
+      verify(mockHttpServletResponse, times(1)).setStatus(HttpStatus.OK_200);
+      final JSONObject errors = new JSONObject(responseWriter.toString());
+      assertThat(errors.getLong("total")).isGreaterThanOrEqualTo(1);
+      assertThat(errors.getJSONObject("counts").getLong("recording")).isGreaterThanOrEqualTo(1);
+      assertThat(errors.getJSONObject("counts").has("yaml_reload")).isTrue();
+      assertThat(errors.getInt("capacity")).isEqualTo(ErrorAccounting.SAMPLE_CAPACITY);
+
+      final JSONArray recentErrors = errors.getJSONArray("recent");
+      assertThat(recentErrors.getJSONObject(0).getString("category")).isEqualTo("recording");
+      assertThat(recentErrors.getJSONObject(0).getString("message")).isEqualTo("Could not record from \"http://localhost\"");
+   }
+}
@@ -0,0 +1,100 @@
+package by.stub.handlers;
+
+import by.stub.database.ErrorAccounting;
+import by.stub.database.ErrorCategory;
+import by.stub.database.LatencyHistogram;
+import by.stub.database.ResourceStats;
+import by.stub.database.StubbedDataManager;
+import by.stub.server.MonitoredThreadPool;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Request;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class MetricsHandlerTest {
+
+   private StubbedDataManager mockStubbedDataManager;
+   private MonitoredThreadPool mockThreadPool;
+   private HttpServletResponse mockHttpServletResponse;
+   private StringWriter responseWriter;
+
+   @Before
+   public void beforeEach() throws Exception {
+      mockStubbedDataManager = Mockito.mock(StubbedDataManager.class);
+      mockThreadPool = Mockito.mock(MonitoredThreadPool.class);
+      mockHttpServletResponse = Mockito.mock(HttpServletResponse.class);
+      responseWriter = new StringWriter();
+      when(mockHttpServletResponse.getWriter()).thenReturn(new PrintWriter(responseWriter));
+      when(mockStubbedDataManager.getResourceStats()).thenReturn(new HashMap<Integer, ResourceStats>());
+      when(mockStubbedDataManager.getReloadMillis()).thenReturn(new LatencyHistogram());
+   }
+
+   @Test
+   public void shouldExportCountersAndThreadPoolGauges() throws Exception {
+      when(mockStubbedDataManager.getUnmatchedRequests()).thenReturn(7L);
+      when(mockStubbedDataManager.getUnauthorizedRequests()).thenReturn(2L);
+      when(mockStubbedDataManager.getRedirectedRequests()).thenReturn(1L);
+      when(mockThreadPool.getThreads()).thenReturn(12);
+      when(mockThreadPool.getQueueSize()).thenReturn(3);
+
+      final String metrics = exportMetrics();
+
+      verify(mockHttpServletResponse, times(1)).setStatus(HttpStatus.OK_200);
+      verify(mockHttpServletResponse, times(1)).setHeader("Content-Type", MetricsHandler.CONTENT_TYPE);
+      assertThat(metrics).contains("# TYPE stubby_unmatched_requests_total counter\nstubby_unmatched_requests_total 7\n");
+      assertThat(metrics).contains("\nstubby_unauthorized_requests_total 2\n");
+      assertThat(metrics).contains("\nstubby_redirected_requests_total 1\n");
+      assertThat(metrics).contains("# TYPE stubby_jetty_threads gauge\nstubby_jetty_threads 12\n");
+      assertThat(metrics).contains("\nstubby_jetty_queued_jobs 3\n");
+   }
+
+   @Test
+   public void shouldExportErrorCountsByCategory() throws Exception {
+      ErrorAccounting.record(ErrorCategory.YAML_RELOAD, "Could not parse YAML");
+
+      final String metrics = exportMetrics();
+
+      assertThat(metrics).contains("# TYPE stubby_errors_total counter\nstubby_errors_total{category=\"template\"} ");
+      assertThat(metrics).contains(String.format("\nstubby_errors_total{category=\"yaml_reload\"} %s\n", ErrorAccounting.getCount(ErrorCategory.YAML_RELOAD)));
+   }
+
+   @Test
+   public void shouldExportStubHitsAndCumulativeHistogramBuckets() throws Exception {
+      final ResourceStats resourceStats = new ResourceStats();
+      final Map<Integer, ResourceStats> allResourceStats = new HashMap<Integer, ResourceStats>();
+      allResourceStats.put(4, resourceStats);
+      when(mockStubbedDataManager.getResourceStats()).thenReturn(allResourceStats);
+      final LatencyHistogram reloadMillis = new LatencyHistogram();
+      reloadMillis.record(40);
+      reloadMillis.record(400);
+      when(mockStubbedDataManager.getReloadMillis()).thenReturn(reloadMillis);
+
+      final String metrics = exportMetrics();
+
+      assertThat(metrics).contains("# TYPE stubby_stub_hits_total counter\nstubby_stub_hits_total{stub=\"4\"} 0\n");
+      assertThat(metrics).contains("\nstubby_stub_handling_seconds_bucket{stub=\"4\",le=\"+Inf\"} 0\n");
+      assertThat(metrics).contains("\nstubby_stub_handling_seconds_count{stub=\"4\"} 0\n");
+      assertThat(metrics).contains("\nstubby_reload_seconds_bucket{le=\"0.025\"} 0\n");
+      assertThat(metrics).contains("\nstubby_reload_seconds_bucket{le=\"0.05\"} 1\n");
+      assertThat(metrics).contains("\nstubby_reload_seconds_bucket{le=\"0.5\"} 2\n");
+      assertThat(metrics).contains("\nstubby_reload_seconds_sum 0.44\n");
+      assertThat(metrics).contains("\nstubby_reload_seconds_count 2\n");
+   }
+
+   private String exportMetrics() throws Exception {
+      new MetricsHandler(mockStubbedDataManager, mockThreadPool).handle("/metrics", Mockito.mock(Request.class), Mockito.mock(HttpServletRequest.class), mockHttpServletResponse);
+
+      return responseWriter.toString();
+   }
+}
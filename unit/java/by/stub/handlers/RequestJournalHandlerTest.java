@@ -0,0 +1,76 @@
+package by.stub.handlers;
+
+import by.stub.cli.ANSITerminal;
+import by.stub.database.RequestJournal;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Request;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class RequestJournalHandlerTest {
+
+   private Request mockRequest;
+   private HttpServletRequest mockHttpServletRequest;
+   private HttpServletResponse mockHttpServletResponse;
+   private StringWriter responseWriter;
+
+   @BeforeClass
+   public static void beforeClass() throws Exception {
+      ANSITerminal.muteConsole(true);
+   }
+
+   @Before
+   public void beforeEach() throws Exception {
+      mockRequest = Mockito.mock(Request.class);
+      mockHttpServletRequest = Mockito.mock(HttpServletRequest.class);
+      mockHttpServletResponse = Mockito.mock(HttpServletResponse.class);
+      responseWriter = new StringWriter();
+      when(mockHttpServletRequest.getRequestURI()).thenReturn("/journal");
+      when(mockHttpServletResponse.getWriter()).thenReturn(new PrintWriter(responseWriter));
+   }
+
+   @Test
+   public void shouldListFilteredRequestsAsJson() throws Exception {
+      final RequestJournal requestJournal = RequestJournal.inMemory(4);
+      final Map<String, String> headers = new HashMap<String, String>();
+      headers.put("user-agent", "curl \"7.30\"");
+      requestJournal.record("GET", "/invoice/1", headers, 0, 1, 200, 1000L, 25L);
+      requestJournal.record("GET", "/item/1", new HashMap<String, String>(), 0, 2, 200, 2000L, 25L);
+      when(mockHttpServletRequest.getParameter("url")).thenReturn("^/invoice");
+
+      new RequestJournalHandler(requestJournal).handle("/journal", mockRequest, mockHttpServletRequest, mockHttpServletResponse);
+
+      verify(mockHttpServletResponse, times(1)).setStatus(HttpStatus.OK_200);
+      assertThat(responseWriter.toString().trim()).isEqualTo("{\"recorded\":2,\"capacity\":4,\"requests\":[{" +
+         "\"sequence\":1,\"received\":1000,\"durationMicros\":25,\"method\":\"GET\",\"url\":\"/invoice/1\"," +
+         "\"status\":200,\"stubId\":1,\"bodyHash\":\"0000000000000000\",\"headers\":{\"user-agent\":\"curl \\\"7.30\\\"\"}}]}");
+   }
+
+   @Test
+   public void shouldRespondWithBadRequestWhenFilterIsInvalid() throws Exception {
+      when(mockHttpServletRequest.getParameter("stubId")).thenReturn("first");
+
+      new RequestJournalHandler(RequestJournal.inMemory(4)).handle("/journal", mockRequest, mockHttpServletRequest, mockHttpServletResponse);
+
+      verify(mockHttpServletResponse, times(1)).setStatus(HttpStatus.BAD_REQUEST_400);
+   }
+
+   @Test
+   public void shouldRespondWithNotFoundWhenJournalNotEnabled() throws Exception {
+      new RequestJournalHandler(null).handle("/journal", mockRequest, mockHttpServletRequest, mockHttpServletResponse);
+
+      verify(mockHttpServletResponse, times(1)).setStatus(HttpStatus.NOT_FOUND_404);
+   }
+}
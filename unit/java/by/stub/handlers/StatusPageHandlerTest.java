@@ -0,0 +1,28 @@
+package by.stub.handlers;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class StatusPageHandlerTest {
+
+   @Test
+   public void shouldParsePageParameter_WhenValueIsValid() throws Exception {
+      assertThat(StatusPageHandler.parsePageParameter("3", 1, 100)).isEqualTo(3);
+      assertThat(StatusPageHandler.parsePageParameter(" 7 ", 1, 100)).isEqualTo(7);
+   }
+
+   @Test
+   public void shouldDefaultPageParameter_WhenValueIsMissingOrInvalid() throws Exception {
+      assertThat(StatusPageHandler.parsePageParameter(null, 50, 100)).isEqualTo(50);
+      assertThat(StatusPageHandler.parsePageParameter("", 50, 100)).isEqualTo(50);
+      assertThat(StatusPageHandler.parsePageParameter("two", 50, 100)).isEqualTo(50);
+   }
+
+   @Test
+   public void shouldClampPageParameter_WhenValueIsOutOfRange() throws Exception {
+      assertThat(StatusPageHandler.parsePageParameter("0", 50, 100)).isEqualTo(1);
+      assertThat(StatusPageHandler.parsePageParameter("-4", 50, 100)).isEqualTo(1);
+      assertThat(StatusPageHandler.parsePageParameter("5000", 50, 100)).isEqualTo(100);
+   }
+}
@@ -1,16 +1,24 @@
 package by.stub.handlers;
 
 import by.stub.cli.ANSITerminal;
+import by.stub.database.ErrorAccounting;
+import by.stub.database.ErrorCategory;
+import by.stub.database.LatencyHistogram;
+import by.stub.database.RequestJournal;
+import by.stub.database.RequestJournalEntry;
 import by.stub.database.StubbedDataManager;
 import by.stub.yaml.stubs.*;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.util.thread.Scheduler;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletInputStream;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
@@ -19,7 +27,10 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+import static org.fest.assertions.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
 
 
@@ -36,6 +47,7 @@ public class StubsPortalHandlerTest {
    private HttpServletRequest mockHttpServletRequest = Mockito.mock(HttpServletRequest.class);
    private HttpServletResponse mockHttpServletResponse = Mockito.mock(HttpServletResponse.class);
    private PrintWriter mockPrintWriter = Mockito.mock(PrintWriter.class);
+   private Scheduler mockLatencyScheduler = Mockito.mock(Scheduler.class);
 
    private final String someResultsMessage = "we have results";
 
@@ -50,6 +62,7 @@ public class StubsPortalHandlerTest {
       mockStubbedDataManager = Mockito.mock(StubbedDataManager.class);
       mockHttpServletRequest = Mockito.mock(HttpServletRequest.class);
       mockHttpServletResponse = Mockito.mock(HttpServletResponse.class);
+      mockLatencyScheduler = Mockito.mock(Scheduler.class);
    }
 
    @Test
@@ -64,7 +77,7 @@ public class StubsPortalHandlerTest {
       when(mockStubbedDataManager.findStubResponseFor(Mockito.any(StubRequest.class))).thenReturn(mockStubResponse);
       when(mockStubResponse.getStubResponseType()).thenReturn(StubResponseTypes.NOTFOUND);
 
-      final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubbedDataManager);
+      final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubbedDataManager, mockLatencyScheduler);
       stubsPortalHandler.handle(requestPathInfo, mockRequest, mockHttpServletRequest, mockHttpServletResponse);
 
       verify(mockHttpServletResponse, times(1)).setStatus(HttpStatus.NOT_FOUND_404);
@@ -91,7 +104,7 @@ public class StubsPortalHandlerTest {
          }
       });
 
-      final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubbedDataManager);
+      final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubbedDataManager, mockLatencyScheduler);
       stubsPortalHandler.handle(requestPathInfo, mockRequest, mockHttpServletRequest, mockHttpServletResponse);
 
       verify(mockHttpServletResponse, times(1)).setStatus(HttpStatus.NOT_FOUND_404);
@@ -111,8 +124,9 @@ public class StubsPortalHandlerTest {
 
       when(mockStubResponse.getStubResponseType()).thenReturn(StubResponseTypes.OK_200);
       when(mockStubResponse.getStatus()).thenReturn("200");
+      when(mockStubResponse.getStatusCode()).thenReturn(200);
 
-      final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubbedDataManager);
+      final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubbedDataManager, mockLatencyScheduler);
       stubsPortalHandler.handle(requestPathInfo, mockRequest, mockHttpServletRequest, mockHttpServletResponse);
 
       verify(mockHttpServletResponse, never()).setStatus(HttpStatus.BAD_REQUEST_400);
@@ -131,6 +145,7 @@ public class StubsPortalHandlerTest {
       when(mockStubbedDataManager.findStubResponseFor(Mockito.any(StubRequest.class))).thenReturn(mockStubResponse);
       when(mockStubResponse.getStubResponseType()).thenReturn(StubResponseTypes.OK_200);
       when(mockStubResponse.getStatus()).thenReturn("200");
+      when(mockStubResponse.getStatusCode()).thenReturn(200);
 
       final InputStream inputStream = new ByteArrayInputStream("".getBytes());
       Mockito.when(mockHttpServletRequest.getInputStream()).thenReturn(new ServletInputStream() {
@@ -140,7 +155,7 @@ public class StubsPortalHandlerTest {
          }
       });
 
-      final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubbedDataManager);
+      final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubbedDataManager, mockLatencyScheduler);
       stubsPortalHandler.handle(requestPathInfo, mockRequest, mockHttpServletRequest, mockHttpServletResponse);
 
       verify(mockHttpServletResponse, never()).setStatus(HttpStatus.BAD_REQUEST_400);
@@ -148,6 +163,63 @@ public class StubsPortalHandlerTest {
    }
 
 
+   @Test
+   public void shouldJournalMatchedRequestWhenJournalEnabled() throws Exception {
+
+      final String requestPathInfo = "/path/1";
+
+      final StubResponse mockStubResponse = Mockito.mock(StubResponse.class);
+
+      when(mockHttpServletResponse.getWriter()).thenReturn(mockPrintWriter);
+      when(mockHttpServletRequest.getMethod()).thenReturn(HttpMethod.GET.asString());
+      when(mockHttpServletRequest.getPathInfo()).thenReturn(requestPathInfo);
+      when(mockStubbedDataManager.findStubResponseFor(Mockito.any(StubRequest.class))).thenReturn(mockStubResponse);
+      when(mockStubResponse.getStubResponseType()).thenReturn(StubResponseTypes.OK_200);
+      when(mockStubResponse.getStatus()).thenReturn("200");
+      when(mockStubResponse.getStatusCode()).thenReturn(200);
+      when(mockStubResponse.getResourceId()).thenReturn(3);
+      when(mockStubResponse.getResponseBodyAsBytes()).thenReturn(new byte[]{});
+      when(mockHttpServletResponse.getOutputStream()).thenReturn(Mockito.mock(ServletOutputStream.class));
+
+      final RequestJournal requestJournal = RequestJournal.inMemory(4);
+      final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubbedDataManager, mockLatencyScheduler, requestJournal);
+      stubsPortalHandler.handle(requestPathInfo, mockRequest, mockHttpServletRequest, mockHttpServletResponse);
+
+      final List<RequestJournalEntry> entries = requestJournal.query(null, Long.MIN_VALUE, Long.MAX_VALUE, null, 10);
+      assertThat(entries).hasSize(1);
+      assertThat(entries.get(0).getMethod()).isEqualTo(HttpMethod.GET.asString());
+      assertThat(entries.get(0).getUrl()).isEqualTo(requestPathInfo);
+      assertThat(entries.get(0).getStubId()).isEqualTo(3);
+      assertThat(entries.get(0).getStatus()).isEqualTo(HttpStatus.OK_200);
+   }
+
+   @Test
+   public void shouldJournalUnmatchedRequestWithBodyHash() throws Exception {
+
+      final String requestPathInfo = "/path/1";
+      final String postData = "postData";
+
+      when(mockHttpServletRequest.getMethod()).thenReturn(HttpMethod.POST.asString());
+      when(mockHttpServletRequest.getPathInfo()).thenReturn(requestPathInfo);
+      when(mockStubbedDataManager.findStubResponseFor(Mockito.any(StubRequest.class))).thenReturn(new NotFoundStubResponse());
+      final InputStream inputStream = new ByteArrayInputStream(postData.getBytes());
+      Mockito.when(mockHttpServletRequest.getInputStream()).thenReturn(new ServletInputStream() {
+         @Override
+         public int read() throws IOException {
+            return inputStream.read();
+         }
+      });
+
+      final RequestJournal requestJournal = RequestJournal.inMemory(4);
+      final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubbedDataManager, mockLatencyScheduler, requestJournal);
+      stubsPortalHandler.handle(requestPathInfo, mockRequest, mockHttpServletRequest, mockHttpServletResponse);
+
+      final List<RequestJournalEntry> entries = requestJournal.query(RequestJournal.UNMATCHED_STUB_ID, Long.MIN_VALUE, Long.MAX_VALUE, null, 10);
+      assertThat(entries).hasSize(1);
+      assertThat(entries.get(0).getStatus()).isEqualTo(HttpStatus.NOT_FOUND_404);
+      assertThat(entries.get(0).getBodyHash()).isEqualTo(RequestJournal.hashBody(postData));
+   }
+
    @Test
    public void verifyBehaviourDuringHandleGetRequestWithSomeResults() throws Exception {
 
@@ -161,12 +233,14 @@ public class StubsPortalHandlerTest {
       when(mockStubbedDataManager.findStubResponseFor(Mockito.any(StubRequest.class))).thenReturn(mockStubResponse);
       when(mockStubResponse.getStubResponseType()).thenReturn(StubResponseTypes.OK_200);
       when(mockStubResponse.getStatus()).thenReturn("200");
+      when(mockStubResponse.getStatusCode()).thenReturn(200);
       when(mockStubResponse.getResponseBodyAsBytes()).thenReturn(null);
 
-      final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubbedDataManager);
+      final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubbedDataManager, mockLatencyScheduler);
       stubsPortalHandler.handle(requestPathInfo, mockRequest, mockHttpServletRequest, mockHttpServletResponse);
 
       verify(mockHttpServletResponse, times(1)).setStatus(HttpStatus.OK_200);
+      verify(mockStubbedDataManager, times(1)).recordHandling(eq(0), anyLong());
    }
 
 
@@ -183,9 +257,10 @@ public class StubsPortalHandlerTest {
       when(mockStubbedDataManager.findStubResponseFor(Mockito.any(StubRequest.class))).thenReturn(mockStubResponse);
       when(mockStubResponse.getStubResponseType()).thenReturn(StubResponseTypes.UNAUTHORIZED);
       when(mockStubResponse.getStatus()).thenReturn("200");
+      when(mockStubResponse.getStatusCode()).thenReturn(200);
       when(mockStubResponse.getBody()).thenReturn(someResultsMessage);
 
-      final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubbedDataManager);
+      final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubbedDataManager, mockLatencyScheduler);
       stubsPortalHandler.handle(requestPathInfo, mockRequest, mockHttpServletRequest, mockHttpServletResponse);
 
       verify(mockHttpServletResponse, times(1)).setStatus(HttpStatus.UNAUTHORIZED_401);
@@ -211,8 +286,9 @@ public class StubsPortalHandlerTest {
 
       when(mockStubResponse.getStubResponseType()).thenReturn(StubResponseTypes.UNAUTHORIZED);
       when(mockStubResponse.getStatus()).thenReturn("200");
+      when(mockStubResponse.getStatusCode()).thenReturn(200);
 
-      final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubbedDataManager);
+      final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubbedDataManager, mockLatencyScheduler);
       stubsPortalHandler.handle(requestPathInfo, mockRequest, mockHttpServletRequest, mockHttpServletResponse);
 
       verify(mockHttpServletResponse, times(1)).setStatus(HttpStatus.UNAUTHORIZED_401);
@@ -231,6 +307,7 @@ public class StubsPortalHandlerTest {
       when(mockHttpServletRequest.getMethod()).thenReturn(HttpMethod.POST.asString());
       when(mockHttpServletRequest.getPathInfo()).thenReturn(requestPathInfo);
       when(mockStubResponse.getStatus()).thenReturn("200");
+      when(mockStubResponse.getStatusCode()).thenReturn(200);
       when(mockStubResponse.getStubResponseType()).thenReturn(StubResponseTypes.OK_200);
       when(mockStubResponse.getResponseBodyAsBytes()).thenReturn(null);
       when(mockStubbedDataManager.findStubResponseFor(Mockito.any(StubRequest.class))).thenReturn(mockStubResponse);
@@ -243,7 +320,7 @@ public class StubsPortalHandlerTest {
          }
       });
 
-      final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubbedDataManager);
+      final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubbedDataManager, mockLatencyScheduler);
       stubsPortalHandler.handle(requestPathInfo, mockRequest, mockHttpServletRequest, mockHttpServletResponse);
 
       verify(mockHttpServletResponse, times(1)).setStatus(HttpStatus.OK_200);
@@ -260,8 +337,11 @@ public class StubsPortalHandlerTest {
       when(mockHttpServletResponse.getWriter()).thenReturn(mockPrintWriter);
       when(mockHttpServletRequest.getMethod()).thenReturn(HttpMethod.GET.asString());
       when(mockHttpServletRequest.getPathInfo()).thenReturn(requestPathInfo);
-      when(mockStubResponse.getLatency()).thenReturn("50");
+      when(mockStubResponse.getStubLatency()).thenReturn(StubLatency.parse("50"));
+      final LatencyHistogram latencyHistogram = new LatencyHistogram();
+      when(mockStubResponse.getLatencyHistogram()).thenReturn(latencyHistogram);
       when(mockStubResponse.getStatus()).thenReturn("200");
+      when(mockStubResponse.getStatusCode()).thenReturn(200);
       when(mockStubResponse.getStubResponseType()).thenReturn(StubResponseTypes.OK_200);
       when(mockStubbedDataManager.findStubResponseFor(Mockito.any(StubRequest.class))).thenReturn(mockStubResponse);
       when(mockStubResponse.getResponseBodyAsBytes()).thenReturn(new byte[]{});
@@ -273,11 +353,56 @@ public class StubsPortalHandlerTest {
          }
       });
 
-      final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubbedDataManager);
+      final AsyncContext mockAsyncContext = Mockito.mock(AsyncContext.class);
+      when(mockHttpServletRequest.startAsync()).thenReturn(mockAsyncContext);
+
+      final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubbedDataManager, mockLatencyScheduler);
       stubsPortalHandler.handle(requestPathInfo, mockRequest, mockHttpServletRequest, mockHttpServletResponse);
 
+      // Nothing is written until the latency elapses
+      verify(mockHttpServletResponse, never()).setStatus(HttpStatus.OK_200);
+      final ArgumentCaptor<Runnable> latencyElapsed = ArgumentCaptor.forClass(Runnable.class);
+      verify(mockLatencyScheduler, times(1)).schedule(latencyElapsed.capture(), eq(50L), eq(TimeUnit.MILLISECONDS));
+
+      latencyElapsed.getValue().run();
+      final ArgumentCaptor<Runnable> resumedResponse = ArgumentCaptor.forClass(Runnable.class);
+      verify(mockAsyncContext, times(1)).start(resumedResponse.capture());
+      resumedResponse.getValue().run();
+
       verify(mockHttpServletResponse, never()).setStatus(HttpStatus.INTERNAL_SERVER_ERROR_500);
       verify(mockHttpServletResponse, times(1)).setStatus(HttpStatus.OK_200);
+      verify(mockAsyncContext, times(1)).complete();
+      assertThat(latencyHistogram.getCount()).isEqualTo(1);
+   }
+
+
+   @Test
+   public void shouldFailAndCompleteSuspendedRequest_WhenLatencySchedulerRejectsIt() throws Exception {
+
+      final String requestPathInfo = "/path/1";
+
+      final StubResponse mockStubResponse = Mockito.mock(StubResponse.class);
+
+      when(mockHttpServletRequest.getMethod()).thenReturn(HttpMethod.GET.asString());
+      when(mockHttpServletRequest.getPathInfo()).thenReturn(requestPathInfo);
+      when(mockStubResponse.getStubLatency()).thenReturn(StubLatency.parse("50"));
+      when(mockStubResponse.getLatencyHistogram()).thenReturn(new LatencyHistogram());
+      when(mockStubResponse.getStubResponseType()).thenReturn(StubResponseTypes.OK_200);
+      when(mockStubbedDataManager.findStubResponseFor(Mockito.any(StubRequest.class))).thenReturn(mockStubResponse);
+
+      final AsyncContext mockAsyncContext = Mockito.mock(AsyncContext.class);
+      when(mockHttpServletRequest.startAsync()).thenReturn(mockAsyncContext);
+      when(mockLatencyScheduler.schedule(Mockito.any(Runnable.class), eq(50L), eq(TimeUnit.MILLISECONDS)))
+         .thenThrow(new IllegalStateException("Scheduler is stopped"));
+
+      final long serverErrors = ErrorAccounting.getCount(ErrorCategory.SERVER_ERROR);
+      final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubbedDataManager, mockLatencyScheduler);
+      stubsPortalHandler.handle(requestPathInfo, mockRequest, mockHttpServletRequest, mockHttpServletResponse);
+
+      verify(mockHttpServletResponse, times(1)).setStatus(HttpStatus.INTERNAL_SERVER_ERROR_500);
+      verify(mockHttpServletResponse, never()).setStatus(HttpStatus.OK_200);
+      verify(mockAsyncContext, times(1)).complete();
+      assertThat(ErrorAccounting.getCount(ErrorCategory.SERVER_ERROR)).isEqualTo(serverErrors + 1);
    }
 
 
@@ -290,16 +415,18 @@ public class StubsPortalHandlerTest {
 
       when(mockHttpServletRequest.getMethod()).thenReturn(method);
       when(mockHttpServletRequest.getPathInfo()).thenReturn(requestPathInfo);
-      when(mockStubResponse.getLatency()).thenReturn("43rl4knt3l");
+      when(mockStubResponse.getStubLatency()).thenReturn(StubLatency.parse("43rl4knt3l"));
       when(mockStubResponse.getStubResponseType()).thenReturn(StubResponseTypes.OK_200);
       when(mockStubbedDataManager.findStubResponseFor(Mockito.any(StubRequest.class))).thenReturn(mockStubResponse);
 
-      final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubbedDataManager);
+      final long serverErrors = ErrorAccounting.getCount(ErrorCategory.SERVER_ERROR);
+      final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubbedDataManager, mockLatencyScheduler);
       stubsPortalHandler.handle(requestPathInfo, mockRequest, mockHttpServletRequest, mockHttpServletResponse);
 
       verify(mockHttpServletResponse, times(1)).setStatus(HttpStatus.INTERNAL_SERVER_ERROR_500);
 
       verify(mockHttpServletResponse, never()).setStatus(HttpStatus.OK_200);
       verify(mockPrintWriter, never()).println(someResultsMessage);
+      assertThat(ErrorAccounting.getCount(ErrorCategory.SERVER_ERROR)).isEqualTo(serverErrors + 1);
    }
 }
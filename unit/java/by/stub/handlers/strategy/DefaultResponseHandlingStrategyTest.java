@@ -3,24 +3,36 @@ package by.stub.handlers.strategy;
 import by.stub.handlers.strategy.stubs.DefaultResponseHandlingStrategy;
 import by.stub.handlers.strategy.stubs.StubResponseHandlingStrategy;
 import by.stub.javax.servlet.http.HttpServletResponseWithGetStatus;
+import by.stub.utils.FileUtils;
 import by.stub.utils.HandlerUtils;
 import by.stub.utils.StringUtils;
+import by.stub.yaml.stubs.StubContentEncoding;
+import by.stub.yaml.stubs.StubMatchResult;
 import by.stub.yaml.stubs.StubRequest;
 import by.stub.yaml.stubs.StubResponse;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.server.HttpOutput;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.mockito.Mockito;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -49,7 +61,7 @@ public class DefaultResponseHandlingStrategyTest {
       verify(mockHttpServletResponse, times(1)).setHeader(HttpHeader.CONTENT_TYPE.asString(), MimeTypes.Type.TEXT_HTML_UTF_8.asString());
       verify(mockHttpServletResponse, times(1)).setHeader(HttpHeader.CACHE_CONTROL.asString(), "no-cache, no-store, must-revalidate");
       verify(mockHttpServletResponse, times(1)).setHeader(HttpHeader.PRAGMA.asString(), "no-cache");
-      verify(mockHttpServletResponse, times(1)).setDateHeader(HttpHeader.EXPIRES.asString(), 0);
+      verify(mockHttpServletResponse, times(1)).setHeader(HttpHeader.EXPIRES.asString(), "Thu, 01 Jan 1970 00:00:00 GMT");
    }
 
    @Test
@@ -58,6 +70,7 @@ public class DefaultResponseHandlingStrategyTest {
       final HttpServletResponseWithGetStatus mockHttpServletResponse = Mockito.mock(HttpServletResponseWithGetStatus.class);
 
       when(mockStubResponse.getStatus()).thenReturn("200");
+      when(mockStubResponse.getStatusCode()).thenReturn(200);
       when(mockStubResponse.getResponseBodyAsBytes()).thenReturn(new byte[]{});
       Mockito.when(mockHttpServletResponse.getOutputStream()).thenReturn(new ServletOutputStream() {
 
@@ -79,6 +92,7 @@ public class DefaultResponseHandlingStrategyTest {
       final HttpServletResponseWithGetStatus mockHttpServletResponse = Mockito.mock(HttpServletResponseWithGetStatus.class);
 
       when(mockStubResponse.getStatus()).thenReturn("200");
+      when(mockStubResponse.getStatusCode()).thenReturn(200);
       when(mockStubResponse.getResponseBodyAsBytes()).thenReturn(new byte[]{});
       when(mockStubResponse.getLatency()).thenReturn("100");
 
@@ -98,12 +112,13 @@ public class DefaultResponseHandlingStrategyTest {
    }
 
    @Test
-   public void shouldCheckLatencyDelayWhenHandlingDefaultResponseWithLatency() throws Exception {
+   public void shouldNotBlockWhenHandlingDefaultResponseWithLatency() throws Exception {
 
       final PrintWriter mockPrintWriter = Mockito.mock(PrintWriter.class);
       final HttpServletResponseWithGetStatus mockHttpServletResponse = Mockito.mock(HttpServletResponseWithGetStatus.class);
 
       when(mockStubResponse.getStatus()).thenReturn("200");
+      when(mockStubResponse.getStatusCode()).thenReturn(200);
       when(mockHttpServletResponse.getWriter()).thenReturn(mockPrintWriter);
       when(mockStubResponse.getResponseBodyAsBytes()).thenReturn(someResultsMessage.getBytes(StringUtils.UTF_8));
       when(mockStubResponse.getLatency()).thenReturn("100");
@@ -119,8 +134,321 @@ public class DefaultResponseHandlingStrategyTest {
       defaultResponseStubResponseHandlingStrategy.handle(mockHttpServletResponse, mockAssertionRequest);
       long after = System.currentTimeMillis();
 
-      assertThat(after - before).isGreaterThanOrEqualTo(100);
+      // Latency is applied by the stubs portal before the strategy is invoked, without holding the thread
+      assertThat(after - before).isLessThan(100);
 
       verifyMainHeaders(mockHttpServletResponse);
    }
+
+   @Test
+   public void shouldSendMappedFileWithoutCopying_WhenWritingToJettyOutput() throws Exception {
+
+      final StubResponse mockMappedStubResponse = Mockito.mock(StubResponse.class);
+      final HttpServletResponseWithGetStatus mockHttpServletResponse = Mockito.mock(HttpServletResponseWithGetStatus.class);
+      final HttpOutput mockHttpOutput = Mockito.mock(HttpOutput.class);
+      final ByteBuffer mappedFile = ByteBuffer.allocateDirect(16);
+
+      when(mockMappedStubResponse.getStatusCode()).thenReturn(200);
+      when(mockMappedStubResponse.getMappedFile()).thenReturn(mappedFile);
+      when(mockMappedStubResponse.getRawFile()).thenReturn(new File("large.json"));
+      when(mockHttpServletResponse.getOutputStream()).thenReturn(mockHttpOutput);
+
+      new DefaultResponseHandlingStrategy(mockMappedStubResponse).handle(mockHttpServletResponse, mockAssertionRequest);
+
+      verify(mockHttpOutput, times(1)).sendContent(mappedFile);
+      verify(mockMappedStubResponse, never()).getResponseBodyAsBytes();
+      verify(mockHttpServletResponse, times(1)).setStatus(HttpStatus.OK_200);
+   }
+
+   @Test
+   public void shouldStreamMappedFile_WhenWritingToWrappedOutput() throws Exception {
+
+      final StubResponse mockMappedStubResponse = Mockito.mock(StubResponse.class);
+      final HttpServletResponseWithGetStatus mockHttpServletResponse = Mockito.mock(HttpServletResponseWithGetStatus.class);
+      final byte[] fileContent = StringUtils.getBytesUtf8("{\"mapped\": true}");
+      final ByteBuffer mappedFile = ByteBuffer.allocateDirect(fileContent.length);
+      mappedFile.put(fileContent).flip();
+      final ByteArrayOutputStream writtenContent = new ByteArrayOutputStream();
+
+      when(mockMappedStubResponse.getStatusCode()).thenReturn(200);
+      when(mockMappedStubResponse.getMappedFile()).thenReturn(mappedFile);
+      when(mockMappedStubResponse.getRawFile()).thenReturn(new File("large.json"));
+      when(mockHttpServletResponse.getOutputStream()).thenReturn(new ServletOutputStream() {
+
+         @Override
+         public void write(final int i) throws IOException {
+            writtenContent.write(i);
+         }
+      });
+
+      new DefaultResponseHandlingStrategy(mockMappedStubResponse).handle(mockHttpServletResponse, mockAssertionRequest);
+
+      assertThat(writtenContent.toByteArray()).isEqualTo(fileContent);
+      verify(mockMappedStubResponse, never()).getResponseBodyAsBytes();
+   }
+
+   @Test
+   public void shouldServeRequestedByteRange_WhenFileHasEntityTag() throws Exception {
+
+      final StubResponse mockFileStubResponse = mockFileStubResponse(StringUtils.getBytesUtf8("0123456789"));
+      final HttpServletResponseWithGetStatus mockHttpServletResponse = Mockito.mock(HttpServletResponseWithGetStatus.class);
+      final ByteArrayOutputStream writtenContent = mockOutputStream(mockHttpServletResponse);
+      final Map<String, String> requestHeaders = new HashMap<String, String>();
+      requestHeaders.put("range", "bytes=2-5");
+
+      new DefaultResponseHandlingStrategy(mockFileStubResponse).handle(mockHttpServletResponse, assertionRequest("GET", requestHeaders));
+
+      assertThat(StringUtils.newStringUtf8(writtenContent.toByteArray())).isEqualTo("2345");
+      verify(mockHttpServletResponse, times(1)).setStatus(HttpStatus.PARTIAL_CONTENT_206);
+      verify(mockHttpServletResponse, times(1)).setHeader(HttpHeader.CONTENT_RANGE.asString(), "bytes 2-5/10");
+      verify(mockHttpServletResponse, times(1)).setHeader(HttpHeader.CONTENT_LENGTH.asString(), "4");
+      verify(mockHttpServletResponse, times(1)).setHeader(HttpHeader.ETAG.asString(), "\"abc\"");
+      verify(mockHttpServletResponse, times(1)).setHeader(HttpHeader.ACCEPT_RANGES.asString(), "bytes");
+   }
+
+   @Test
+   public void shouldServeRequestedByteRangeOfMappedFile() throws Exception {
+
+      final StubResponse mockFileStubResponse = mockFileStubResponse(StringUtils.getBytesUtf8("0123456789"));
+      final ByteBuffer mappedFile = ByteBuffer.wrap(StringUtils.getBytesUtf8("0123456789"));
+      when(mockFileStubResponse.getMappedFile()).thenReturn(mappedFile);
+      final HttpServletResponseWithGetStatus mockHttpServletResponse = Mockito.mock(HttpServletResponseWithGetStatus.class);
+      final ByteArrayOutputStream writtenContent = mockOutputStream(mockHttpServletResponse);
+      final Map<String, String> requestHeaders = new HashMap<String, String>();
+      requestHeaders.put("range", "bytes=-3");
+
+      new DefaultResponseHandlingStrategy(mockFileStubResponse).handle(mockHttpServletResponse, assertionRequest("GET", requestHeaders));
+
+      assertThat(StringUtils.newStringUtf8(writtenContent.toByteArray())).isEqualTo("789");
+      verify(mockHttpServletResponse, times(1)).setHeader(HttpHeader.CONTENT_RANGE.asString(), "bytes 7-9/10");
+      verify(mockFileStubResponse, never()).getResponseBodyAsBytes();
+   }
+
+   @Test
+   public void shouldServeRequestedByteRange_WhenRangeStartsPastIntegerRange() throws Exception {
+
+      final File responseFile = File.createTempFile("tmp", ".bin");
+      responseFile.deleteOnExit();
+      final long fileLength = FileUtils.MAX_MAPPED_FILE_BYTES + 1024;
+      final long first = FileUtils.MAX_MAPPED_FILE_BYTES + 10;
+      // Sparse file, only the block with the served bytes is written
+      final RandomAccessFile randomAccessFile = new RandomAccessFile(responseFile, "rw");
+      try {
+         randomAccessFile.setLength(fileLength);
+         randomAccessFile.seek(first);
+         randomAccessFile.write(StringUtils.getBytesUtf8("stubby"));
+      } finally {
+         randomAccessFile.close();
+      }
+
+      try {
+         final StubResponse streamedStubResponse = new StubResponse("200", null, responseFile, null, null);
+         final HttpServletResponseWithGetStatus mockHttpServletResponse = Mockito.mock(HttpServletResponseWithGetStatus.class);
+         final ByteArrayOutputStream writtenContent = mockOutputStream(mockHttpServletResponse);
+         final Map<String, String> requestHeaders = new HashMap<String, String>();
+         requestHeaders.put("range", String.format("bytes=%s-%s", first, first + 5));
+
+         new DefaultResponseHandlingStrategy(streamedStubResponse).handle(mockHttpServletResponse, assertionRequest("GET", requestHeaders));
+
+         assertThat(StringUtils.newStringUtf8(writtenContent.toByteArray())).isEqualTo("stubby");
+         verify(mockHttpServletResponse, times(1)).setStatus(HttpStatus.PARTIAL_CONTENT_206);
+         verify(mockHttpServletResponse, times(1)).setHeader(HttpHeader.CONTENT_RANGE.asString(), String.format("bytes %s-%s/%s", first, first + 5, fileLength));
+         verify(mockHttpServletResponse, times(1)).setHeader(HttpHeader.CONTENT_LENGTH.asString(), "6");
+      } finally {
+         responseFile.delete();
+      }
+   }
+
+   @Test
+   public void shouldRespondNotModified_WhenEntityTagMatches() throws Exception {
+
+      final StubResponse mockFileStubResponse = mockFileStubResponse(StringUtils.getBytesUtf8("0123456789"));
+      final HttpServletResponseWithGetStatus mockHttpServletResponse = Mockito.mock(HttpServletResponseWithGetStatus.class);
+      final Map<String, String> requestHeaders = new HashMap<String, String>();
+      requestHeaders.put("if-none-match", "\"abc\"");
+      requestHeaders.put("range", "bytes=2-5");
+
+      new DefaultResponseHandlingStrategy(mockFileStubResponse).handle(mockHttpServletResponse, assertionRequest("GET", requestHeaders));
+
+      verify(mockHttpServletResponse, times(1)).setStatus(HttpStatus.NOT_MODIFIED_304);
+      verify(mockHttpServletResponse, never()).getOutputStream();
+   }
+
+   @Test
+   public void shouldRespondRangeNotSatisfiable_WhenRangeStartsAfterFileEnd() throws Exception {
+
+      final StubResponse mockFileStubResponse = mockFileStubResponse(StringUtils.getBytesUtf8("0123456789"));
+      final HttpServletResponseWithGetStatus mockHttpServletResponse = Mockito.mock(HttpServletResponseWithGetStatus.class);
+      final Map<String, String> requestHeaders = new HashMap<String, String>();
+      requestHeaders.put("range", "bytes=10-");
+
+      new DefaultResponseHandlingStrategy(mockFileStubResponse).handle(mockHttpServletResponse, assertionRequest("GET", requestHeaders));
+
+      verify(mockHttpServletResponse, times(1)).setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE_416);
+      verify(mockHttpServletResponse, times(1)).setHeader(HttpHeader.CONTENT_RANGE.asString(), "bytes */10");
+      verify(mockHttpServletResponse, never()).getOutputStream();
+   }
+
+   @Test
+   public void shouldServeWholeFile_WhenRangeIsRequestedByPost() throws Exception {
+
+      final StubResponse mockFileStubResponse = mockFileStubResponse(StringUtils.getBytesUtf8("0123456789"));
+      final HttpServletResponseWithGetStatus mockHttpServletResponse = Mockito.mock(HttpServletResponseWithGetStatus.class);
+      final ByteArrayOutputStream writtenContent = mockOutputStream(mockHttpServletResponse);
+      final Map<String, String> requestHeaders = new HashMap<String, String>();
+      requestHeaders.put("range", "bytes=2-5");
+
+      new DefaultResponseHandlingStrategy(mockFileStubResponse).handle(mockHttpServletResponse, assertionRequest("POST", requestHeaders));
+
+      assertThat(StringUtils.newStringUtf8(writtenContent.toByteArray())).isEqualTo("0123456789");
+      verify(mockHttpServletResponse, times(1)).setStatus(HttpStatus.OK_200);
+      verify(mockHttpServletResponse, never()).setHeader(HttpHeader.ETAG.asString(), "\"abc\"");
+   }
+
+   @Test
+   public void shouldServePrecompressedBody_WhenClientAcceptsEncoding() throws Exception {
+
+      final byte[] gzippedBody = {1, 2, 3};
+      final StubResponse mockFileStubResponse = mockFileStubResponse(StringUtils.getBytesUtf8("0123456789"));
+      when(mockFileStubResponse.isCompressible()).thenReturn(true);
+      when(mockFileStubResponse.getEncodedBody(StubContentEncoding.GZIP)).thenReturn(gzippedBody);
+      final HttpServletResponseWithGetStatus mockHttpServletResponse = Mockito.mock(HttpServletResponseWithGetStatus.class);
+      final ByteArrayOutputStream writtenContent = mockOutputStream(mockHttpServletResponse);
+      final Map<String, String> requestHeaders = new HashMap<String, String>();
+      requestHeaders.put("accept-encoding", "gzip, deflate");
+
+      new DefaultResponseHandlingStrategy(mockFileStubResponse).handle(mockHttpServletResponse, assertionRequest("GET", requestHeaders));
+
+      assertThat(writtenContent.toByteArray()).isEqualTo(gzippedBody);
+      verify(mockHttpServletResponse, times(1)).setStatus(HttpStatus.OK_200);
+      verify(mockHttpServletResponse, times(1)).setHeader(HttpHeader.CONTENT_ENCODING.asString(), "gzip");
+      verify(mockHttpServletResponse, times(1)).setHeader(HttpHeader.VARY.asString(), HttpHeader.ACCEPT_ENCODING.asString());
+      verify(mockHttpServletResponse, times(1)).setHeader(HttpHeader.ETAG.asString(), "\"abc-gzip\"");
+   }
+
+   @Test
+   public void shouldServePrecompressedStubbedBody_WhenClientAcceptsEncoding() throws Exception {
+
+      final byte[] deflatedBody = {4, 5, 6};
+      final StubResponse mockBodyStubResponse = Mockito.mock(StubResponse.class);
+      when(mockBodyStubResponse.getStatusCode()).thenReturn(200);
+      when(mockBodyStubResponse.getResponseBodyAsBytes()).thenReturn(StringUtils.getBytesUtf8(someResultsMessage));
+      when(mockBodyStubResponse.isCompressible()).thenReturn(true);
+      when(mockBodyStubResponse.getEncodedBody(StubContentEncoding.DEFLATE)).thenReturn(deflatedBody);
+      final HttpServletResponseWithGetStatus mockHttpServletResponse = Mockito.mock(HttpServletResponseWithGetStatus.class);
+      final ByteArrayOutputStream writtenContent = mockOutputStream(mockHttpServletResponse);
+      final Map<String, String> requestHeaders = new HashMap<String, String>();
+      requestHeaders.put("accept-encoding", "deflate");
+
+      new DefaultResponseHandlingStrategy(mockBodyStubResponse).handle(mockHttpServletResponse, assertionRequest("POST", requestHeaders));
+
+      assertThat(writtenContent.toByteArray()).isEqualTo(deflatedBody);
+      verify(mockHttpServletResponse, times(1)).setHeader(HttpHeader.CONTENT_ENCODING.asString(), "deflate");
+      verify(mockHttpServletResponse, times(1)).setHeader(HttpHeader.CONTENT_LENGTH.asString(), "3");
+   }
+
+   @Test
+   public void shouldServeRangeOfUncompressedFile_WhenClientAcceptsEncoding() throws Exception {
+
+      final StubResponse mockFileStubResponse = mockFileStubResponse(StringUtils.getBytesUtf8("0123456789"));
+      when(mockFileStubResponse.isCompressible()).thenReturn(true);
+      final HttpServletResponseWithGetStatus mockHttpServletResponse = Mockito.mock(HttpServletResponseWithGetStatus.class);
+      final ByteArrayOutputStream writtenContent = mockOutputStream(mockHttpServletResponse);
+      final Map<String, String> requestHeaders = new HashMap<String, String>();
+      requestHeaders.put("accept-encoding", "gzip");
+      requestHeaders.put("range", "bytes=0-1");
+
+      new DefaultResponseHandlingStrategy(mockFileStubResponse).handle(mockHttpServletResponse, assertionRequest("GET", requestHeaders));
+
+      assertThat(StringUtils.newStringUtf8(writtenContent.toByteArray())).isEqualTo("01");
+      verify(mockHttpServletResponse, never()).setHeader(HttpHeader.CONTENT_ENCODING.asString(), "gzip");
+      verify(mockFileStubResponse, never()).getEncodedBody(StubContentEncoding.GZIP);
+   }
+
+   @Test
+   public void shouldCompressRenderedTemplate_WhenClientAcceptsEncoding() throws Exception {
+
+      final Map<String, String> stubbedHeaders = new HashMap<String, String>();
+      stubbedHeaders.put("content-type", "application/json");
+      final StubResponse stubResponse = new StubResponse("200", "{\"id\": \"<% url.1 %>\"}", null, null, stubbedHeaders);
+      final HttpServletResponseWithGetStatus mockHttpServletResponse = Mockito.mock(HttpServletResponseWithGetStatus.class);
+      final ByteArrayOutputStream writtenContent = mockOutputStream(mockHttpServletResponse);
+      final Map<String, String> requestHeaders = new HashMap<String, String>();
+      requestHeaders.put("accept-encoding", "gzip");
+      final StubRequest assertionRequest = assertionRequest("GET", requestHeaders);
+      assertionRequest.setMatchResult(new StubMatchResult());
+
+      new DefaultResponseHandlingStrategy(stubResponse).handle(mockHttpServletResponse, assertionRequest);
+
+      assertThat(gunzip(writtenContent.toByteArray())).isEqualTo("{\"id\": \"<% url.1 %>\"}");
+      verify(mockHttpServletResponse, times(1)).setHeader(HttpHeader.CONTENT_ENCODING.asString(), "gzip");
+      verify(mockHttpServletResponse, times(1)).setHeader(HttpHeader.VARY.asString(), HttpHeader.ACCEPT_ENCODING.asString());
+   }
+
+   @Test
+   public void shouldCompressBodyWithoutContentType_OnlyWhenClientAcceptsEncoding() throws Exception {
+
+      final String body = new String(new char[512]).replace('\0', 'a');
+      final StubResponse stubResponse = StubResponse.newStubResponse("200", body);
+
+      final HttpServletResponseWithGetStatus mockGzipResponse = Mockito.mock(HttpServletResponseWithGetStatus.class);
+      final ByteArrayOutputStream gzippedContent = mockOutputStream(mockGzipResponse);
+      final Map<String, String> requestHeaders = new HashMap<String, String>();
+      requestHeaders.put("accept-encoding", "gzip");
+      new DefaultResponseHandlingStrategy(stubResponse).handle(mockGzipResponse, assertionRequest("GET", requestHeaders));
+
+      assertThat(gzippedContent.size()).isLessThan(body.length());
+      assertThat(gunzip(gzippedContent.toByteArray())).isEqualTo(body);
+
+      final HttpServletResponseWithGetStatus mockPlainResponse = Mockito.mock(HttpServletResponseWithGetStatus.class);
+      final ByteArrayOutputStream plainContent = mockOutputStream(mockPlainResponse);
+      new DefaultResponseHandlingStrategy(stubResponse).handle(mockPlainResponse, assertionRequest("GET", new HashMap<String, String>()));
+
+      assertThat(StringUtils.newStringUtf8(plainContent.toByteArray())).isEqualTo(body);
+      verify(mockPlainResponse, never()).setHeader(HttpHeader.CONTENT_ENCODING.asString(), "gzip");
+   }
+
+   private static String gunzip(final byte[] gzipped) throws IOException {
+      final GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(gzipped));
+      final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[1024];
+      for (int read = inputStream.read(buffer); read != -1; read = inputStream.read(buffer)) {
+         outputStream.write(buffer, 0, read);
+      }
+
+      return StringUtils.newStringUtf8(outputStream.toByteArray());
+   }
+
+   private static StubResponse mockFileStubResponse(final byte[] fileContent) {
+      final StubResponse mockFileStubResponse = Mockito.mock(StubResponse.class);
+      when(mockFileStubResponse.getStatusCode()).thenReturn(200);
+      when(mockFileStubResponse.getEntityTag()).thenReturn("\"abc\"");
+      when(mockFileStubResponse.getLastModified()).thenReturn(0L);
+      when(mockFileStubResponse.getEntityLength()).thenReturn((long) fileContent.length);
+      when(mockFileStubResponse.getResponseBodyAsBytes()).thenReturn(fileContent);
+      when(mockFileStubResponse.getRawFile()).thenReturn(new File("file.txt"));
+
+      return mockFileStubResponse;
+   }
+
+   private static StubRequest assertionRequest(final String method, final Map<String, String> requestHeaders) {
+      final StubRequest assertionRequest = StubRequest.newStubRequest();
+      assertionRequest.addMethod(method);
+      assertionRequest.getHeaders().putAll(requestHeaders);
+
+      return assertionRequest;
+   }
+
+   private static ByteArrayOutputStream mockOutputStream(final HttpServletResponseWithGetStatus mockHttpServletResponse) throws IOException {
+      final ByteArrayOutputStream writtenContent = new ByteArrayOutputStream();
+      when(mockHttpServletResponse.getOutputStream()).thenReturn(new ServletOutputStream() {
+
+         @Override
+         public void write(final int i) throws IOException {
+            writtenContent.write(i);
+         }
+      });
+
+      return writtenContent;
+   }
 }
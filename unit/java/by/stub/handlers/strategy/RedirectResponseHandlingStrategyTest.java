@@ -42,7 +42,7 @@ public class RedirectResponseHandlingStrategyTest {
       verify(mockHttpServletResponse, times(1)).setHeader(HttpHeader.CONTENT_TYPE.asString(), MimeTypes.Type.TEXT_HTML_UTF_8.asString());
       verify(mockHttpServletResponse, times(1)).setHeader(HttpHeader.CACHE_CONTROL.asString(), "no-cache, no-store, must-revalidate");
       verify(mockHttpServletResponse, times(1)).setHeader(HttpHeader.PRAGMA.asString(), "no-cache");
-      verify(mockHttpServletResponse, times(1)).setDateHeader(HttpHeader.EXPIRES.asString(), 0);
+      verify(mockHttpServletResponse, times(1)).setHeader(HttpHeader.EXPIRES.asString(), "Thu, 01 Jan 1970 00:00:00 GMT");
    }
 
    @Test
@@ -52,6 +52,7 @@ public class RedirectResponseHandlingStrategyTest {
       final HttpServletResponseWithGetStatus mockHttpServletResponse = Mockito.mock(HttpServletResponseWithGetStatus.class);
 
       when(mockStubResponse.getStatus()).thenReturn("301");
+      when(mockStubResponse.getStatusCode()).thenReturn(301);
       when(mockHttpServletResponse.getWriter()).thenReturn(mockPrintWriter);
 
       redirectResponseStubResponseHandlingStrategy.handle(mockHttpServletResponse, mockAssertionRequest);
@@ -70,6 +71,7 @@ public class RedirectResponseHandlingStrategyTest {
       final HttpServletResponseWithGetStatus mockHttpServletResponse = Mockito.mock(HttpServletResponseWithGetStatus.class);
 
       when(mockStubResponse.getStatus()).thenReturn("301");
+      when(mockStubResponse.getStatusCode()).thenReturn(301);
       when(mockHttpServletResponse.getWriter()).thenReturn(mockPrintWriter);
       when(mockStubResponse.getLatency()).thenReturn("100");
 
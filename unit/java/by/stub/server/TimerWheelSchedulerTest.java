@@ -0,0 +1,193 @@
+package by.stub.server;
+
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class TimerWheelSchedulerTest {
+
+   private static final long TICK_MILLIS = 5;
+   private static final int SLOT_COUNT = 8;
+
+   private TimerWheelScheduler timerWheelScheduler;
+
+   @Before
+   public void beforeEach() throws Exception {
+      timerWheelScheduler = new TimerWheelScheduler("test-timer-wheel", TICK_MILLIS, SLOT_COUNT);
+      timerWheelScheduler.start();
+   }
+
+   @After
+   public void afterEach() throws Exception {
+      timerWheelScheduler.stop();
+   }
+
+   @Test
+   public void shouldRunTask_NotBeforeDelayElapsed() throws Exception {
+      final CountDownLatch ran = new CountDownLatch(1);
+      final AtomicLong ranAfterMillis = new AtomicLong();
+      final long startNanos = System.nanoTime();
+
+      timerWheelScheduler.schedule(new Runnable() {
+         @Override
+         public void run() {
+            ranAfterMillis.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            ran.countDown();
+         }
+      }, 30, TimeUnit.MILLISECONDS);
+
+      assertThat(ran.await(5, TimeUnit.SECONDS)).isTrue();
+      assertThat(ranAfterMillis.get()).isGreaterThanOrEqualTo(30);
+   }
+
+   @Test
+   public void shouldRunTask_WhenDelayIsLongerThanWheelRevolution() throws Exception {
+      final long delayMillis = TICK_MILLIS * SLOT_COUNT * 3 + 7;
+      final CountDownLatch ran = new CountDownLatch(1);
+      final AtomicLong ranAfterMillis = new AtomicLong();
+      final long startNanos = System.nanoTime();
+
+      timerWheelScheduler.schedule(new Runnable() {
+         @Override
+         public void run() {
+            ranAfterMillis.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            ran.countDown();
+         }
+      }, delayMillis, TimeUnit.MILLISECONDS);
+
+      assertThat(ran.await(5, TimeUnit.SECONDS)).isTrue();
+      assertThat(ranAfterMillis.get()).isGreaterThanOrEqualTo(delayMillis);
+   }
+
+   @Test
+   public void shouldRunTaskWithoutDelay_OnNextTick() throws Exception {
+      final CountDownLatch ran = new CountDownLatch(1);
+
+      timerWheelScheduler.schedule(new Runnable() {
+         @Override
+         public void run() {
+            ran.countDown();
+         }
+      }, 0, TimeUnit.MILLISECONDS);
+
+      assertThat(ran.await(5, TimeUnit.SECONDS)).isTrue();
+   }
+
+   @Test
+   public void shouldNotRunCancelledTask() throws Exception {
+      final AtomicInteger runs = new AtomicInteger();
+      final CountDownLatch laterRan = new CountDownLatch(1);
+
+      final Scheduler.Task cancelledTask = timerWheelScheduler.schedule(new Runnable() {
+         @Override
+         public void run() {
+            runs.incrementAndGet();
+         }
+      }, 20, TimeUnit.MILLISECONDS);
+      timerWheelScheduler.schedule(new Runnable() {
+         @Override
+         public void run() {
+            laterRan.countDown();
+         }
+      }, 60, TimeUnit.MILLISECONDS);
+
+      assertThat(cancelledTask.cancel()).isTrue();
+      assertThat(cancelledTask.cancel()).isFalse();
+      assertThat(laterRan.await(5, TimeUnit.SECONDS)).isTrue();
+      assertThat(runs.get()).isEqualTo(0);
+   }
+
+   @Test
+   public void shouldKeepRunningTasks_WhenTaskThrows() throws Exception {
+      final CountDownLatch ran = new CountDownLatch(1);
+
+      timerWheelScheduler.schedule(new Runnable() {
+         @Override
+         public void run() {
+            throw new IllegalStateException("Expected failure");
+         }
+      }, 1, TimeUnit.MILLISECONDS);
+      timerWheelScheduler.schedule(new Runnable() {
+         @Override
+         public void run() {
+            ran.countDown();
+         }
+      }, 20, TimeUnit.MILLISECONDS);
+
+      assertThat(ran.await(5, TimeUnit.SECONDS)).isTrue();
+   }
+
+   @Test
+   public void shouldRunTask_WhenSubmittedWhileParkedUntilLaterDeadline() throws Exception {
+      final CountDownLatch ran = new CountDownLatch(1);
+      final AtomicLong ranAfterMillis = new AtomicLong();
+
+      timerWheelScheduler.schedule(new Runnable() {
+         @Override
+         public void run() {
+         }
+      }, 10, TimeUnit.SECONDS);
+      Thread.sleep(50);
+      final long startNanos = System.nanoTime();
+      timerWheelScheduler.schedule(new Runnable() {
+         @Override
+         public void run() {
+            ranAfterMillis.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            ran.countDown();
+         }
+      }, 20, TimeUnit.MILLISECONDS);
+
+      assertThat(ran.await(5, TimeUnit.SECONDS)).isTrue();
+      assertThat(ranAfterMillis.get()).isGreaterThanOrEqualTo(20);
+   }
+
+   @Test
+   public void shouldRunPendingTasks_WhenStopped() throws Exception {
+      final CountDownLatch ran = new CountDownLatch(2);
+      final AtomicInteger cancelledRuns = new AtomicInteger();
+
+      timerWheelScheduler.schedule(new Runnable() {
+         @Override
+         public void run() {
+            ran.countDown();
+         }
+      }, 0, TimeUnit.MILLISECONDS);
+      timerWheelScheduler.schedule(new Runnable() {
+         @Override
+         public void run() {
+            ran.countDown();
+         }
+      }, 10, TimeUnit.SECONDS);
+      timerWheelScheduler.schedule(new Runnable() {
+         @Override
+         public void run() {
+            cancelledRuns.incrementAndGet();
+         }
+      }, 10, TimeUnit.SECONDS).cancel();
+
+      timerWheelScheduler.stop();
+
+      assertThat(ran.getCount()).isEqualTo(0);
+      assertThat(cancelledRuns.get()).isEqualTo(0);
+   }
+
+   @Test(expected = RejectedExecutionException.class)
+   public void shouldRejectTask_WhenStopped() throws Exception {
+      timerWheelScheduler.stop();
+
+      timerWheelScheduler.schedule(new Runnable() {
+         @Override
+         public void run() {
+         }
+      }, 1, TimeUnit.MILLISECONDS);
+   }
+}
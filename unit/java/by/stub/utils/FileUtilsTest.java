@@ -4,7 +4,12 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.fest.assertions.api.Assertions.assertThat;
 
 /**
  * @author: Alexander Zagniotov
@@ -32,4 +37,62 @@ public class FileUtilsTest {
 
       FileUtils.uriToFile("bad/file/path");
    }
+
+   @Test
+   public void shouldMapBinaryFileAsItIs() throws Exception {
+      final byte[] content = new byte[]{0, 1, 2, (byte) 0xFF, '\r', '\n', ' '};
+      final File binaryFile = writeTempFile(".png", content);
+
+      final ByteBuffer mappedFile = FileUtils.mapFile(binaryFile);
+
+      assertThat(mappedFile.isDirect()).isTrue();
+      assertThat(FileUtils.mappedFileToBytes(mappedFile)).isEqualTo(content);
+   }
+
+   @Test
+   public void shouldMapTextFileTrimmed_SameAsLoadedIntoHeap() throws Exception {
+      final File textFile = writeTempFile(".json", StringUtils.getBytesUtf8("\n  {\n   \"name\": \"\u017e\u00e1\u010f\"\n}\n\n"));
+
+      final ByteBuffer mappedFile = FileUtils.mapFile(textFile);
+
+      assertThat(FileUtils.mappedFileToBytes(mappedFile)).isEqualTo(FileUtils.fileToBytes(textFile));
+   }
+
+   @Test
+   public void shouldNotMapTextFile_WhenLoadedContentDiffersFromFile() throws Exception {
+      assertThat(FileUtils.mapFile(writeTempFile(".json", StringUtils.getBytesUtf8("{\r\n}")))).isNull();
+      assertThat(FileUtils.mapFile(writeTempFile(".json", StringUtils.getBytesUtf8("{\"id\": \"<% url.1 %>\"}")))).isNull();
+      assertThat(FileUtils.mapFile(writeTempFile(".json", new byte[]{'{', (byte) 0xC3, '}'}))).isNull();
+      assertThat(FileUtils.mapFile(writeTempFile(".json", StringUtils.getBytesUtf8(" \n ")))).isNull();
+   }
+
+   @Test
+   public void shouldRequireMapping_OnlyForFilesReachingThreshold() throws Exception {
+      final File textFile = writeTempFile(".json", StringUtils.getBytesUtf8("{}"));
+
+      try {
+         assertThat(FileUtils.isFileMappingRequired(textFile)).isFalse();
+
+         FileUtils.setFileMappingThreshold(2);
+         assertThat(FileUtils.isFileMappingRequired(textFile)).isTrue();
+
+         FileUtils.setFileMappingThreshold(3);
+         assertThat(FileUtils.isFileMappingRequired(textFile)).isFalse();
+      } finally {
+         FileUtils.setFileMappingThreshold(Long.MAX_VALUE);
+      }
+   }
+
+   private static File writeTempFile(final String extension, final byte[] content) throws IOException {
+      final File tempFile = File.createTempFile("tmp", extension);
+      tempFile.deleteOnExit();
+      final FileOutputStream outputStream = new FileOutputStream(tempFile);
+      try {
+         outputStream.write(content);
+      } finally {
+         outputStream.close();
+      }
+
+      return tempFile;
+   }
 }
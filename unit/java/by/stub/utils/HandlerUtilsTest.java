@@ -3,7 +3,19 @@ package by.stub.utils;
 import org.eclipse.jetty.http.HttpScheme;
 import org.junit.Test;
 
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
 import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * @author Alexander Zagniotov
@@ -82,4 +94,173 @@ public class HandlerUtilsTest {
 
       assertThat(actualUpTime).isEqualTo("2 days, 0 hours, 0 mins, 1 sec");
    }
+
+   @Test
+   public void shouldExtractPostRequestBody_WhenBodyLargerThanPooledBuffer() throws Exception {
+
+      final StringBuilder builder = new StringBuilder();
+      for (int idx = 0; idx < 5000; idx++) {
+         builder.append("chunk-").append(idx).append(" \\/ ");
+      }
+      final String body = builder.toString();
+
+      final HttpServletRequest mockHttpServletRequest = mockRequestWithBody("POST", body);
+      final String extractedBody = HandlerUtils.extractPostRequestBody(mockHttpServletRequest, "stubs");
+
+      assertThat(extractedBody).isEqualTo(body.replace("\\/", "/").trim());
+   }
+
+   @Test
+   public void shouldNotExtractPostRequestBody_WhenRequestMethodHasNoBody() throws Exception {
+
+      final HttpServletRequest mockHttpServletRequest = mockRequestWithBody("GET", "body");
+
+      assertThat(HandlerUtils.extractPostRequestBody(mockHttpServletRequest, "stubs")).isNull();
+      verify(mockHttpServletRequest, never()).getInputStream();
+   }
+
+   @Test
+   public void shouldConsumeWholeRequestBody_WhenBodyDiscarded() throws Exception {
+
+      final HttpServletRequest mockHttpServletRequest = mockRequestWithBody("PUT", "to be discarded");
+      HandlerUtils.discardRequestBody(mockHttpServletRequest);
+
+      assertThat(mockHttpServletRequest.getInputStream().read()).isEqualTo(-1);
+   }
+
+   @Test
+   public void shouldParseSingleByteRange() throws Exception {
+
+      assertThat(HandlerUtils.parseByteRange("bytes=0-499", 1000)).isEqualTo(new long[]{0, 499});
+      assertThat(HandlerUtils.parseByteRange("bytes=500-", 1000)).isEqualTo(new long[]{500, 999});
+      assertThat(HandlerUtils.parseByteRange("bytes=-200", 1000)).isEqualTo(new long[]{800, 999});
+      assertThat(HandlerUtils.parseByteRange("bytes=-2000", 1000)).isEqualTo(new long[]{0, 999});
+      assertThat(HandlerUtils.parseByteRange("bytes=900-5000", 1000)).isEqualTo(new long[]{900, 999});
+   }
+
+   @Test
+   public void shouldServeWholeFile_WhenByteRangeIsMissingMalformedOrMultiple() throws Exception {
+
+      assertThat(HandlerUtils.parseByteRange(null, 1000)).isNull();
+      assertThat(HandlerUtils.parseByteRange("items=0-10", 1000)).isNull();
+      assertThat(HandlerUtils.parseByteRange("bytes=10", 1000)).isNull();
+      assertThat(HandlerUtils.parseByteRange("bytes=20-10", 1000)).isNull();
+      assertThat(HandlerUtils.parseByteRange("bytes=a-b", 1000)).isNull();
+      assertThat(HandlerUtils.parseByteRange("bytes=0-10, 20-30", 1000)).isNull();
+   }
+
+   @Test
+   public void shouldNotSatisfyByteRange_WhenRangeStartsAfterLastByte() throws Exception {
+
+      assertThat(HandlerUtils.parseByteRange("bytes=1000-", 1000)).isSameAs(HandlerUtils.UNSATISFIABLE_BYTE_RANGE);
+      assertThat(HandlerUtils.parseByteRange("bytes=-0", 1000)).isSameAs(HandlerUtils.UNSATISFIABLE_BYTE_RANGE);
+   }
+
+   @Test
+   public void shouldDetectNotModified_ByEntityTagBeforeModificationDate() throws Exception {
+
+      final String entityTag = "\"abc\"";
+      final long lastModified = HandlerUtils.parseHttpDate("Sun, 06 Nov 1994 08:49:37 GMT");
+      final Map<String, String> requestHeaders = new HashMap<String, String>();
+
+      assertThat(HandlerUtils.isNotModified(requestHeaders, entityTag, lastModified)).isFalse();
+
+      requestHeaders.put("if-modified-since", "Sun, 06 Nov 1994 08:49:37 GMT");
+      assertThat(HandlerUtils.isNotModified(requestHeaders, entityTag, lastModified)).isTrue();
+
+      requestHeaders.put("if-none-match", "\"xyz\", W/\"abc\"");
+      assertThat(HandlerUtils.isNotModified(requestHeaders, entityTag, lastModified)).isTrue();
+
+      requestHeaders.put("if-none-match", "\"xyz\"");
+      assertThat(HandlerUtils.isNotModified(requestHeaders, entityTag, lastModified)).isFalse();
+
+      requestHeaders.put("if-none-match", "*");
+      assertThat(HandlerUtils.isNotModified(requestHeaders, entityTag, lastModified)).isTrue();
+   }
+
+   @Test
+   public void shouldDetectModified_WhenFileChangedAfterGivenDate() throws Exception {
+
+      final long lastModified = HandlerUtils.parseHttpDate("Sun, 06 Nov 1994 08:49:37 GMT");
+      final Map<String, String> requestHeaders = new HashMap<String, String>();
+      requestHeaders.put("if-modified-since", "Sun, 06 Nov 1994 08:49:36 GMT");
+
+      assertThat(HandlerUtils.isNotModified(requestHeaders, "\"abc\"", lastModified)).isFalse();
+   }
+
+   @Test
+   public void shouldApplyRange_OnlyWhenIfRangeStillMatches() throws Exception {
+
+      final String entityTag = "\"abc\"";
+      final long lastModified = HandlerUtils.parseHttpDate("Sun, 06 Nov 1994 08:49:37 GMT");
+      final Map<String, String> requestHeaders = new HashMap<String, String>();
+
+      assertThat(HandlerUtils.isRangeApplicable(requestHeaders, entityTag, lastModified)).isTrue();
+
+      requestHeaders.put("if-range", "\"abc\"");
+      assertThat(HandlerUtils.isRangeApplicable(requestHeaders, entityTag, lastModified)).isTrue();
+
+      requestHeaders.put("if-range", "W/\"abc\"");
+      assertThat(HandlerUtils.isRangeApplicable(requestHeaders, entityTag, lastModified)).isFalse();
+
+      requestHeaders.put("if-range", "Sun, 06 Nov 1994 08:49:37 GMT");
+      assertThat(HandlerUtils.isRangeApplicable(requestHeaders, entityTag, lastModified)).isTrue();
+
+      requestHeaders.put("if-range", "Mon, 07 Nov 1994 08:49:37 GMT");
+      assertThat(HandlerUtils.isRangeApplicable(requestHeaders, entityTag, lastModified)).isFalse();
+   }
+
+   @Test
+   public void shouldNotApplyRange_WhenIfRangeGivenForWeakEntityTag() throws Exception {
+
+      final String entityTag = "W/\"abc\"";
+      final long lastModified = HandlerUtils.parseHttpDate("Sun, 06 Nov 1994 08:49:37 GMT");
+      final Map<String, String> requestHeaders = new HashMap<String, String>();
+
+      assertThat(HandlerUtils.isRangeApplicable(requestHeaders, entityTag, lastModified)).isTrue();
+
+      requestHeaders.put("if-range", "W/\"abc\"");
+      assertThat(HandlerUtils.isRangeApplicable(requestHeaders, entityTag, lastModified)).isFalse();
+
+      requestHeaders.put("if-range", "Sun, 06 Nov 1994 08:49:37 GMT");
+      assertThat(HandlerUtils.isRangeApplicable(requestHeaders, entityTag, lastModified)).isFalse();
+   }
+
+   @Test
+   public void shouldNotBeModified_WhenIfNoneMatchListsWeakEntityTag() throws Exception {
+
+      final Map<String, String> requestHeaders = new HashMap<String, String>();
+
+      requestHeaders.put("if-none-match", "W/\"abc\"");
+      assertThat(HandlerUtils.isNotModified(requestHeaders, "W/\"abc\"", -1)).isTrue();
+
+      requestHeaders.put("if-none-match", "\"abc\"");
+      assertThat(HandlerUtils.isNotModified(requestHeaders, "W/\"abc\"", -1)).isTrue();
+
+      requestHeaders.put("if-none-match", "W/\"xyz\"");
+      assertThat(HandlerUtils.isNotModified(requestHeaders, "W/\"abc\"", -1)).isFalse();
+   }
+
+   @Test
+   public void shouldNotParseHttpDate_WhenDateIsMalformed() throws Exception {
+
+      assertThat(HandlerUtils.parseHttpDate("Sun, 06 Nov 1994 08:49:37 GMT")).isEqualTo(784111777000L);
+      assertThat(HandlerUtils.parseHttpDate("yesterday")).isEqualTo(-1);
+      assertThat(HandlerUtils.parseHttpDate(null)).isEqualTo(-1);
+   }
+
+   private static HttpServletRequest mockRequestWithBody(final String method, final String body) throws Exception {
+      final HttpServletRequest mockHttpServletRequest = mock(HttpServletRequest.class);
+      final InputStream inputStream = new ByteArrayInputStream(body.getBytes(StringUtils.UTF_8));
+      final ServletInputStream servletInputStream = new ServletInputStream() {
+         @Override
+         public int read() throws IOException {
+            return inputStream.read();
+         }
+      };
+      when(mockHttpServletRequest.getMethod()).thenReturn(method);
+      when(mockHttpServletRequest.getInputStream()).thenReturn(servletInputStream);
+
+      return mockHttpServletRequest;
+   }
 }
@@ -0,0 +1,79 @@
+package by.stub.utils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class JsonUtilsTest {
+
+   @Test
+   public void shouldParseJsonTree_WhenJsonObjectOrArrayGiven() throws Exception {
+
+      assertThat(JsonUtils.parseJsonTree("  {\"name\": \"value\"}")).isInstanceOf(JSONObject.class);
+      assertThat(JsonUtils.parseJsonTree("[1, 2, 3]  ")).isInstanceOf(JSONArray.class);
+   }
+
+   @Test
+   public void shouldNotParseJsonTree_WhenTextIsNotJsonObjectOrArray() throws Exception {
+
+      assertThat(JsonUtils.parseJsonTree(null)).isNull();
+      assertThat(JsonUtils.parseJsonTree("  ")).isNull();
+      assertThat(JsonUtils.parseJsonTree("name=value")).isNull();
+      assertThat(JsonUtils.parseJsonTree("{\"name\": ")).isNull();
+      assertThat(JsonUtils.parseJsonTree("\"value\"")).isNull();
+   }
+
+   @Test
+   public void shouldMatchJsonTrees_WhenObjectKeysComeInDifferentOrder() throws Exception {
+
+      final Object expected = JsonUtils.parseJsonTree("{\"name\": \"value\", \"nested\": {\"id\": 1, \"flag\": true}}");
+      final Object actual = JsonUtils.parseJsonTree("{\"nested\": {\"flag\": true, \"id\": 1}, \"name\": \"value\"}");
+
+      assertThat(JsonUtils.jsonTreesMatch(expected, actual)).isTrue();
+   }
+
+   @Test
+   public void shouldNotMatchJsonTrees_WhenActualObjectHasExtraOrMissingKeys() throws Exception {
+
+      final Object expected = JsonUtils.parseJsonTree("{\"name\": \"value\"}");
+
+      assertThat(JsonUtils.jsonTreesMatch(expected, JsonUtils.parseJsonTree("{\"name\": \"value\", \"extra\": 1}"))).isFalse();
+      assertThat(JsonUtils.jsonTreesMatch(expected, JsonUtils.parseJsonTree("{\"other\": \"value\"}"))).isFalse();
+      assertThat(JsonUtils.jsonTreesMatch(expected, JsonUtils.parseJsonTree("{\"name\": \"another\"}"))).isFalse();
+   }
+
+   @Test
+   public void shouldMatchJsonTrees_WhenArrayElementsComeInDifferentOrder() throws Exception {
+
+      final Object expected = JsonUtils.parseJsonTree("[{\"id\": 1}, {\"id\": 2}, 3, 3, \"four\"]");
+      final Object actual = JsonUtils.parseJsonTree("[\"four\", 3, {\"id\": 2}, 3, {\"id\": 1}]");
+
+      assertThat(JsonUtils.jsonTreesMatch(expected, actual)).isTrue();
+   }
+
+   @Test
+   public void shouldNotMatchJsonTrees_WhenArrayElementsDifferInCardinality() throws Exception {
+
+      final Object expected = JsonUtils.parseJsonTree("[1, 1, 2]");
+      final Object actual = JsonUtils.parseJsonTree("[1, 2, 2]");
+
+      assertThat(JsonUtils.jsonTreesMatch(expected, actual)).isFalse();
+   }
+
+   @Test
+   public void shouldMatchJsonTrees_WhenNumbersHaveSameValueButDifferentType() throws Exception {
+
+      final Object expected = JsonUtils.parseJsonTree("{\"amount\": 1, \"nothing\": null}");
+      final Object actual = JsonUtils.parseJsonTree("{\"amount\": 1.0, \"nothing\": null}");
+
+      assertThat(JsonUtils.jsonTreesMatch(expected, actual)).isTrue();
+   }
+
+   @Test
+   public void shouldNotMatchJsonTrees_WhenObjectComparedToArray() throws Exception {
+
+      assertThat(JsonUtils.jsonTreesMatch(JsonUtils.parseJsonTree("{}"), JsonUtils.parseJsonTree("[]"))).isFalse();
+   }
+}
@@ -1,9 +1,12 @@
 package by.stub.utils;
 
 import by.stub.yaml.stubs.StubRequest;
+import by.stub.yaml.stubs.StubResponse;
 import com.google.api.client.http.HttpMethods;
 import org.junit.Test;
 
+import java.io.File;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -28,6 +31,19 @@ public class ReflectionUtilsTest {
       assertThat(properties.get("headers")).isNull();
    }
 
+   @Test
+   public void shouldMarkPropertiesWithoutReadingThem_WhenMarkedPropertiesAreSet() throws Exception {
+      final File responseFile = File.createTempFile("tmp", ".json");
+      responseFile.deleteOnExit();
+      final StubResponse stubResponse = new StubResponse("200", "", responseFile, null, null);
+
+      final Map<String, String> properties = ReflectionUtils.getProperties(stubResponse, Arrays.asList("file", "body"), "marked");
+
+      assertThat(properties.get("status")).isEqualTo("200");
+      assertThat(properties.get("file")).isEqualTo("marked");
+      assertThat(properties.containsKey("body")).isFalse();
+   }
+
    @Test
    public void shouldSetValueOnObjectProperty_WhenCorrectPropertyNameGiven() throws Exception {
       final StubRequest stubRequest = StubRequest.newStubRequest();
@@ -0,0 +1,72 @@
+package by.stub.utils;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class RegexUtilsTest {
+
+   @Test
+   public void shouldReturnSamePatternInstance_WhenSameRegexCompiledTwice() throws Exception {
+
+      final Pattern first = RegexUtils.compilePattern("^/resource/([0-9]+)$");
+      final Pattern second = RegexUtils.compilePattern("^/resource/([0-9]+)$");
+
+      assertThat(first).isNotNull();
+      assertThat(first).isSameAs(second);
+   }
+
+   @Test
+   public void shouldCompilePatternWithMultilineFlag_WhenRegexValid() throws Exception {
+
+      final Pattern pattern = RegexUtils.compilePattern("^/multiline/[a-z]+$");
+
+      assertThat(pattern.flags() & Pattern.MULTILINE).isEqualTo(Pattern.MULTILINE);
+      assertThat(pattern.matcher("/multiline/abc").matches()).isTrue();
+   }
+
+   @Test
+   public void shouldReturnNull_WhenRegexInvalid() throws Exception {
+
+      assertThat(RegexUtils.compilePattern("/invalid/{{[[")).isNull();
+      assertThat(RegexUtils.compilePattern("/invalid/{{[[")).isNull();
+   }
+
+   @Test
+   public void shouldNotGrowBeyondLimit_WhenManyDistinctRegexesCompiled() throws Exception {
+
+      for (int idx = 0; idx <= RegexUtils.MAX_CACHED_PATTERNS; idx++) {
+         RegexUtils.compilePattern(String.format("^/bounded/%s$", idx));
+      }
+
+      assertThat(RegexUtils.getCachedPatternsCount()).isLessThanOrEqualTo(RegexUtils.MAX_CACHED_PATTERNS);
+   }
+
+   @Test
+   public void shouldExtractLiteralPrefix_WhenRegexStartsWithLiteralText() throws Exception {
+
+      assertThat(RegexUtils.extractLiteralPrefix("^/resource/([0-9]+)$")).isEqualTo("/resource/");
+      assertThat(RegexUtils.extractLiteralPrefix("/resource/item/1")).isEqualTo("/resource/item/1");
+      assertThat(RegexUtils.extractLiteralPrefix("/resources?/1")).isEqualTo("/resource");
+      assertThat(RegexUtils.extractLiteralPrefix("/resource{1,2}")).isEqualTo("/resourc");
+   }
+
+   @Test
+   public void shouldExtractEmptyLiteralPrefix_WhenRegexCanMatchAnyText() throws Exception {
+
+      assertThat(RegexUtils.extractLiteralPrefix(".*")).isEmpty();
+      assertThat(RegexUtils.extractLiteralPrefix("^/item|^/product")).isEmpty();
+      assertThat(RegexUtils.extractLiteralPrefix("\\/resource")).isEmpty();
+   }
+
+   @Test
+   public void shouldDetectLiteral_WhenRegexHasNoMetaCharacters() throws Exception {
+
+      assertThat(RegexUtils.isLiteral("/resource/item-1/some_name")).isTrue();
+      assertThat(RegexUtils.isLiteral("/resource/item/1.json")).isFalse();
+      assertThat(RegexUtils.isLiteral("^/resource/item/1$")).isFalse();
+      assertThat(RegexUtils.isLiteral("/resource/item/[0-9]")).isFalse();
+   }
+}
@@ -0,0 +1,46 @@
+package by.stub.yaml.stubs;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class LowerCaseHeadersTest {
+
+   @Test
+   public void shouldLowerCaseHeaderNames_WhenConstructedFromMap() throws Exception {
+
+      final Map<String, String> headers = new LinkedHashMap<String, String>();
+      headers.put("Content-Type", "application/json");
+      headers.put("X-Custom-Header", "value");
+
+      final LowerCaseHeaders lowerCaseHeaders = new LowerCaseHeaders(headers);
+
+      assertThat(lowerCaseHeaders.keySet()).containsExactly("content-type", "x-custom-header");
+   }
+
+   @Test
+   public void shouldFindHeader_WhenHeaderNameInDifferentCase() throws Exception {
+
+      final LowerCaseHeaders lowerCaseHeaders = new LowerCaseHeaders();
+      lowerCaseHeaders.put("Content-Type", "application/json");
+
+      assertThat(lowerCaseHeaders.get("CONTENT-TYPE")).isEqualTo("application/json");
+      assertThat(lowerCaseHeaders.containsKey("content-type")).isTrue();
+      assertThat(lowerCaseHeaders.remove("Content-type")).isEqualTo("application/json");
+      assertThat(lowerCaseHeaders).isEmpty();
+   }
+
+   @Test
+   public void shouldKeepOneHeader_WhenSameHeaderPutInDifferentCase() throws Exception {
+
+      final LowerCaseHeaders lowerCaseHeaders = new LowerCaseHeaders();
+      lowerCaseHeaders.put("Content-Type", "text/plain");
+      lowerCaseHeaders.put("content-type", "application/json");
+
+      assertThat(lowerCaseHeaders.size()).isEqualTo(1);
+      assertThat(lowerCaseHeaders.get("content-type")).isEqualTo("application/json");
+   }
+}
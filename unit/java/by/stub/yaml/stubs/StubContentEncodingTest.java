@@ -0,0 +1,81 @@
+package by.stub.yaml.stubs;
+
+import by.stub.utils.StringUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class StubContentEncodingTest {
+
+   @Test
+   public void shouldNegotiateMostPreferredAcceptedEncoding() throws Exception {
+
+      assertThat(StubContentEncoding.negotiate("gzip, deflate")).isEqualTo(StubContentEncoding.GZIP);
+      assertThat(StubContentEncoding.negotiate("deflate, gzip")).isEqualTo(StubContentEncoding.GZIP);
+      assertThat(StubContentEncoding.negotiate("gzip;q=0.5, deflate")).isEqualTo(StubContentEncoding.DEFLATE);
+      assertThat(StubContentEncoding.negotiate("DEFLATE")).isEqualTo(StubContentEncoding.DEFLATE);
+      assertThat(StubContentEncoding.negotiate("x-gzip")).isEqualTo(StubContentEncoding.GZIP);
+      assertThat(StubContentEncoding.negotiate("*")).isEqualTo(StubContentEncoding.GZIP);
+      assertThat(StubContentEncoding.negotiate("gzip;q=0, *")).isEqualTo(StubContentEncoding.DEFLATE);
+   }
+
+   @Test
+   public void shouldNotNegotiateEncoding_WhenNoSupportedEncodingIsAccepted() throws Exception {
+
+      assertThat(StubContentEncoding.negotiate(null)).isNull();
+      assertThat(StubContentEncoding.negotiate("")).isNull();
+      assertThat(StubContentEncoding.negotiate("identity")).isNull();
+      assertThat(StubContentEncoding.negotiate("br, compress")).isNull();
+      assertThat(StubContentEncoding.negotiate("gzip;q=0, deflate;q=0")).isNull();
+      assertThat(StubContentEncoding.negotiate("gzip;q=zero")).isNull();
+   }
+
+   @Test
+   public void shouldNotCompressContentTypesWhichAreCompressedAlready() throws Exception {
+
+      assertThat(StubContentEncoding.isCompressibleContentType(null)).isTrue();
+      assertThat(StubContentEncoding.isCompressibleContentType("application/json")).isTrue();
+      assertThat(StubContentEncoding.isCompressibleContentType("text/html; charset=UTF-8")).isTrue();
+      assertThat(StubContentEncoding.isCompressibleContentType("image/svg+xml")).isTrue();
+      assertThat(StubContentEncoding.isCompressibleContentType("image/PNG")).isFalse();
+      assertThat(StubContentEncoding.isCompressibleContentType("application/zip; name=a.zip")).isFalse();
+      assertThat(StubContentEncoding.isCompressibleContentType("video/mp4")).isFalse();
+   }
+
+   @Test
+   public void shouldEncodeContent_WhichDecodesBackToOriginal() throws Exception {
+
+      final byte[] content = StringUtils.getBytesUtf8("{\"name\": \"stubby4j\", \"name\": \"stubby4j\", \"name\": \"stubby4j\"}");
+
+      final byte[] gzipped = StubContentEncoding.GZIP.encode(content);
+      final byte[] deflated = StubContentEncoding.DEFLATE.encode(content);
+
+      assertThat(decode(new GZIPInputStream(new ByteArrayInputStream(gzipped)))).isEqualTo(content);
+      assertThat(decode(new InflaterInputStream(new ByteArrayInputStream(deflated)))).isEqualTo(content);
+   }
+
+   @Test
+   public void shouldTagEachEncodedVariantApart() throws Exception {
+
+      assertThat(StubContentEncoding.GZIP.tagVariant("\"abc\"")).isEqualTo("\"abc-gzip\"");
+      assertThat(StubContentEncoding.DEFLATE.tagVariant("\"abc\"")).isEqualTo("\"abc-deflate\"");
+   }
+
+   private static byte[] decode(final InputStream decodingStream) throws Exception {
+      final ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[256];
+      int read;
+      while ((read = decodingStream.read(buffer)) != -1) {
+         decoded.write(buffer, 0, read);
+      }
+      decodingStream.close();
+
+      return decoded.toByteArray();
+   }
+}
@@ -0,0 +1,111 @@
+package by.stub.yaml.stubs;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class StubLatencyTest {
+
+   private static final int SAMPLES = 20000;
+
+   @Test
+   public void shouldNotParseLatency_WhenLatencyNotStubbed() throws Exception {
+      assertThat(StubLatency.parse(null)).isNull();
+      assertThat(StubLatency.parse("")).isNull();
+   }
+
+   @Test
+   public void shouldSampleFixedLatency() throws Exception {
+      final StubLatency stubLatency = StubLatency.parse(" 1500 ");
+
+      assertThat(stubLatency.sampleMillis()).isEqualTo(1500L);
+      assertThat(stubLatency.sampleMillis()).isEqualTo(1500L);
+   }
+
+   @Test(expected = NumberFormatException.class)
+   public void shouldFailToSample_WhenLatencyIsNotANumber() throws Exception {
+      StubLatency.parse("43rl4knt3l").sampleMillis();
+   }
+
+   @Test
+   public void shouldSampleUniformLatencyWithinBounds() throws Exception {
+      final long[] samples = sample(StubLatency.parse("uniform(100, 200)"));
+
+      assertThat(samples[0]).isGreaterThanOrEqualTo(100L);
+      assertThat(samples[SAMPLES - 1]).isLessThanOrEqualTo(200L);
+      assertThat(samples[SAMPLES / 2]).isGreaterThan(140L).isLessThan(160L);
+   }
+
+   @Test
+   public void shouldSampleNormalLatencyAroundMean_WithoutNegativeSamples() throws Exception {
+      final long[] samples = sample(StubLatency.parse("Normal( 100 , 150 )"));
+
+      assertThat(samples[0]).isEqualTo(0L);
+      assertThat(samples[SAMPLES / 2]).isGreaterThan(90L).isLessThan(110L);
+   }
+
+   @Test
+   public void shouldSampleLogNormalLatencyAroundMedian_WithLongTail() throws Exception {
+      final long[] samples = sample(StubLatency.parse("lognormal(100, 1)"));
+
+      assertThat(samples[0]).isGreaterThanOrEqualTo(0L);
+      assertThat(samples[SAMPLES / 2]).isGreaterThan(90L).isLessThan(110L);
+      // exp(2.326) of the median at 99th percentile
+      assertThat(samples[SAMPLES * 99 / 100]).isGreaterThan(850L).isLessThan(1200L);
+   }
+
+   @Test
+   public void shouldSamplePercentileTableLatency() throws Exception {
+      final long[] samples = sample(StubLatency.parse("p99=800, p50=100, p999=2000"));
+
+      assertThat(samples[0]).isEqualTo(100L);
+      assertThat(samples[SAMPLES * 4 / 10]).isEqualTo(100L);
+      assertThat(samples[SAMPLES / 2]).isGreaterThanOrEqualTo(100L).isLessThan(120L);
+      assertThat(samples[SAMPLES * 9 / 10]).isGreaterThan(600L).isLessThan(700L);
+      assertThat(samples[SAMPLES - 1]).isLessThanOrEqualTo(2000L);
+   }
+
+   @Test
+   public void shouldInterpolateBetweenLowestAndHighestPercentiles() throws Exception {
+      final long[] samples = sample(StubLatency.parse("p0=0, p100=1000"));
+
+      assertThat(samples[0]).isGreaterThanOrEqualTo(0L);
+      assertThat(samples[SAMPLES - 1]).isLessThanOrEqualTo(1000L);
+      assertThat(samples[SAMPLES / 4]).isGreaterThan(230L).isLessThan(270L);
+   }
+
+   @Test
+   public void shouldFailToSample_WhenLatencyDistributionIsInvalid() throws Exception {
+      final String[] invalidLatencies = {
+         "uniform(200, 100)",
+         "uniform(100)",
+         "normal(100, -1)",
+         "gamma(1, 2)",
+         "p50=100, p99=50",
+         "p50=100, p50=200",
+         "p50=100, 99=200",
+         "p50=-100"
+      };
+
+      for (final String invalidLatency : invalidLatencies) {
+         try {
+            StubLatency.parse(invalidLatency).sampleMillis();
+         } catch (final NumberFormatException ex) {
+            continue;
+         }
+         throw new AssertionError(String.format("Latency '%s' should not have been sampled", invalidLatency));
+      }
+   }
+
+   private static long[] sample(final StubLatency stubLatency) {
+      final long[] samples = new long[SAMPLES];
+      for (int idx = 0; idx < SAMPLES; idx++) {
+         samples[idx] = stubLatency.sampleMillis();
+      }
+      Arrays.sort(samples);
+
+      return samples;
+   }
+}
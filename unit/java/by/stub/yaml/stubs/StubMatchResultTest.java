@@ -0,0 +1,65 @@
+package by.stub.yaml.stubs;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class StubMatchResultTest {
+
+   @Test
+   public void shouldBuildTemplateTokenNames_WhenRegexGroupsRequested() throws Exception {
+
+      final StubMatchResult matchResult = new StubMatchResult();
+      matchResult.addRegexGroup("url", 1, "abc");
+      matchResult.addRegexGroup("query.type", 0, "xyz");
+
+      assertThat(matchResult.getRegexGroupsCount()).isEqualTo(2);
+      assertThat(matchResult.getRegexGroups().toString()).isEqualTo("{query.type.0=xyz, url.1=abc}");
+   }
+
+   @Test
+   public void shouldFindRegexGroup_WhenTokenNameAndGroupIndexGiven() throws Exception {
+
+      final StubMatchResult matchResult = new StubMatchResult();
+      matchResult.addRegexGroup("url", 1, "abc");
+      matchResult.addRegexGroup("query", "type", 0, "xyz");
+
+      assertThat(matchResult.findRegexGroup("url", 1)).isEqualTo("abc");
+      assertThat(matchResult.findRegexGroup("query.type", 0)).isEqualTo("xyz");
+      assertThat(matchResult.findRegexGroup("query", 0)).isNull();
+      assertThat(matchResult.findRegexGroup("url", 0)).isNull();
+   }
+
+   @Test
+   public void shouldGrow_WhenMoreRegexGroupsCapturedThanInitialCapacity() throws Exception {
+
+      final StubMatchResult matchResult = new StubMatchResult();
+      for (int idx = 0; idx < 20; idx++) {
+         matchResult.addRegexGroup("url", idx, String.valueOf(idx));
+      }
+
+      assertThat(matchResult.getRegexGroupsCount()).isEqualTo(20);
+      assertThat(matchResult.getRegexGroups().get("url.19")).isEqualTo("19");
+   }
+
+   @Test
+   public void shouldDiscardRegexGroups_WhenCleared() throws Exception {
+
+      final StubMatchResult matchResult = new StubMatchResult();
+      matchResult.addRegexGroup("url", 0, "abc");
+      matchResult.clearRegexGroups();
+
+      assertThat(matchResult.getRegexGroupsCount()).isZero();
+      assertThat(matchResult.getRegexGroups()).isEmpty();
+   }
+
+   @Test
+   public void shouldNotBeMatched_WhenMatchedLifecycleNotSet() throws Exception {
+
+      final StubMatchResult matchResult = new StubMatchResult();
+      assertThat(matchResult.isMatched()).isFalse();
+
+      matchResult.setMatchedLifecycle(new StubHttpLifecycle());
+      assertThat(matchResult.isMatched()).isTrue();
+   }
+}
@@ -5,9 +5,12 @@ import by.stub.utils.FileUtils;
 import com.google.api.client.http.HttpMethods;
 import org.junit.Test;
 
+import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -16,6 +19,9 @@ import java.util.Map;
 import static by.stub.utils.FileUtils.BR;
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -214,51 +220,69 @@ public class
 
 
    @Test
-   public void arraysIntersect_ShouldReturnTrue_WhenDataStoreArrayEmpty() throws Exception {
-      final StubRequest stubRequest = StubRequest.newStubRequest();
-      final boolean isArraysIntersect = stubRequest.arraysIntersect(new ArrayList<String>(), new ArrayList<String>() {{
-         add("apple");
-      }});
+   public void methodsMatch_ShouldReturnTrue_WhenNoMethodStubbed() throws Exception {
+      final StubRequest stubbedRequest = BUILDER.withUrl("/invoice").build();
+      final StubRequest assertingRequest = BUILDER.withUrl("/invoice").withMethod("PATCH").build();
 
-      assertThat(isArraysIntersect).isTrue();
+      assertThat(stubbedRequest).isEqualTo(assertingRequest);
    }
 
    @Test
-   public void arraysIntersect_ShouldReturnFalse_WhenAssertingArrayEmpty() throws Exception {
-      final StubRequest stubRequest = StubRequest.newStubRequest();
-      final boolean isArraysIntersect = stubRequest.arraysIntersect(new ArrayList<String>() {{
-         add("apple");
-      }}, new ArrayList<String>());
+   public void methodsMatch_ShouldReturnFalse_WhenNoMethodSubmitted() throws Exception {
+      final StubRequest stubbedRequest = BUILDER.withUrl("/invoice").withMethodGet().build();
+      final StubRequest assertingRequest = BUILDER.withUrl("/invoice").build();
 
-      assertThat(isArraysIntersect).isFalse();
+      assertThat(stubbedRequest).isNotEqualTo(assertingRequest);
    }
 
    @Test
-   public void arraysIntersect_ShouldReturnTrue_WhenTwoArraysHaveTheSameElements() throws Exception {
-      final StubRequest stubRequest = StubRequest.newStubRequest();
-      final boolean isArraysIntersect = stubRequest.arraysIntersect(
-         new ArrayList<String>() {{
-            add("apple");
-         }}, new ArrayList<String>() {{
-            add("apple");
-         }}
-      );
+   public void methodsMatch_ShouldReturnTrue_WhenOneOfStubbedMethodsSubmitted() throws Exception {
+      final StubRequest stubbedRequest = BUILDER.withUrl("/invoice").withMethodGet().withMethod("post").build();
+      final StubRequest assertingRequest = BUILDER.withUrl("/invoice").withMethodPost().build();
+
+      assertThat(stubbedRequest).isEqualTo(assertingRequest);
+   }
+
+   @Test
+   public void methodsMatch_ShouldReturnFalse_WhenOtherMethodSubmitted() throws Exception {
+      final StubRequest stubbedRequest = BUILDER.withUrl("/invoice").withMethodGet().withMethodHead().build();
+      final StubRequest assertingRequest = BUILDER.withUrl("/invoice").withMethodPut().build();
 
-      assertThat(isArraysIntersect).isTrue();
+      assertThat(stubbedRequest).isNotEqualTo(assertingRequest);
    }
 
    @Test
-   public void arraysIntersect_ShouldReturnFalse_WhenTwoArraysDontHaveTheSameElements() throws Exception {
+   public void methodsMatch_ShouldReturnTrue_WhenSameCustomMethodSubmitted() throws Exception {
+      final StubRequest stubbedRequest = BUILDER.withUrl("/invoice").withMethodGet().withMethod("purge").build();
+      final StubRequest assertingRequest = BUILDER.withUrl("/invoice").withMethod("PURGE").build();
+
+      assertThat(stubbedRequest).isEqualTo(assertingRequest);
+   }
+
+   @Test
+   public void methodsMatch_ShouldReturnFalse_WhenOtherCustomMethodSubmitted() throws Exception {
+      final StubRequest stubbedRequest = BUILDER.withUrl("/invoice").withMethod("PURGE").build();
+      final StubRequest assertingRequest = BUILDER.withUrl("/invoice").withMethod("PROPFIND").build();
+
+      assertThat(stubbedRequest).isNotEqualTo(assertingRequest);
+   }
+
+   @Test
+   public void shouldResolveMethodsToMask_WhenStandardMethodsGiven() throws Exception {
+      final StubRequest stubRequest = BUILDER.withMethod("get").withMethodHead().withMethod("MKCOL").build();
+
+      assertThat(stubRequest.getMethodMask()).isEqualTo(StubHttpMethod.GET.getBit() | StubHttpMethod.HEAD.getBit());
+      assertThat(stubRequest.getCustomMethods()).containsOnly("MKCOL");
+      assertThat(stubRequest.getMethod()).containsExactly("GET", "HEAD", "MKCOL");
+   }
+
+   @Test
+   public void shouldResolveMethodToMask_WhenMethodAddedLater() throws Exception {
       final StubRequest stubRequest = StubRequest.newStubRequest();
-      final boolean isArraysIntersect = stubRequest.arraysIntersect(
-         new ArrayList<String>() {{
-            add("apple");
-         }}, new ArrayList<String>() {{
-            add("orange");
-         }}
-      );
+      stubRequest.addMethod("delete");
 
-      assertThat(isArraysIntersect).isFalse();
+      assertThat(stubRequest.getMethodMask()).isEqualTo(StubHttpMethod.DELETE.getBit());
+      assertThat(stubRequest.getCustomMethods()).isEmpty();
    }
 
    @Test
@@ -1615,10 +1639,11 @@ public class
       final StubRequest expectedRequest = BUILDER.withUrl(url).withMethodGet().build();
       final StubRequest assertingRequest = BUILDER.withUrl("/abc-efg/12/KM/jhgjkhg234234l2").withMethodGet().build();
 
-      final boolean equals = assertingRequest.equals(expectedRequest);
+      final StubMatchResult matchResult = new StubMatchResult();
+      final boolean equals = expectedRequest.matches(assertingRequest, matchResult);
       assertThat(equals).isTrue();
-      assertThat(assertingRequest.getRegexGroups().size()).isEqualTo(1);
-      assertThat(assertingRequest.getRegexGroups().toString()).isEqualTo("{url.0=/abc-efg/12/KM/jhgjkhg234234l2}");
+      assertThat(matchResult.getRegexGroups().size()).isEqualTo(1);
+      assertThat(matchResult.getRegexGroups().toString()).isEqualTo("{url.0=/abc-efg/12/KM/jhgjkhg234234l2}");
    }
 
    @Test
@@ -1629,11 +1654,12 @@ public class
       final StubRequest expectedRequest = BUILDER.withUrl(url).withMethodGet().build();
       final StubRequest assertingRequest = BUILDER.withUrl("/abc-efg/12/KM/jhgjkhg234234l2").withMethodGet().build();
 
-      final boolean equals = assertingRequest.equals(expectedRequest);
+      final StubMatchResult matchResult = new StubMatchResult();
+      final boolean equals = expectedRequest.matches(assertingRequest, matchResult);
       assertThat(equals).isTrue();
-      assertThat(assertingRequest.getRegexGroups().keySet().size()).isEqualTo(2);
-      assertThat(assertingRequest.getRegexGroups().values().size()).isEqualTo(2);
-      assertThat(assertingRequest.getRegexGroups().toString()).isEqualTo("{url.0=/abc-efg/12/KM/jhgjkhg234234l2, url.1=jhgjkhg234234l2}");
+      assertThat(matchResult.getRegexGroups().keySet().size()).isEqualTo(2);
+      assertThat(matchResult.getRegexGroups().values().size()).isEqualTo(2);
+      assertThat(matchResult.getRegexGroups().toString()).isEqualTo("{url.0=/abc-efg/12/KM/jhgjkhg234234l2, url.1=jhgjkhg234234l2}");
    }
 
    @Test
@@ -1644,11 +1670,51 @@ public class
       final StubRequest expectedRequest = BUILDER.withUrl(url).withMethodGet().build();
       final StubRequest assertingRequest = BUILDER.withUrl("/abc-efg/12/KM/jhgjkhg234234l2").withMethodGet().build();
 
-      final boolean equals = assertingRequest.equals(expectedRequest);
+      final StubMatchResult matchResult = new StubMatchResult();
+      final boolean equals = expectedRequest.matches(assertingRequest, matchResult);
       assertThat(equals).isTrue();
-      assertThat(assertingRequest.getRegexGroups().keySet().size()).isEqualTo(3);
-      assertThat(assertingRequest.getRegexGroups().values().size()).isEqualTo(3);
-      assertThat(assertingRequest.getRegexGroups().toString()).isEqualTo("{url.0=/abc-efg/12/KM/jhgjkhg234234l2, url.1=abc-efg, url.2=jhgjkhg234234l2}");
+      assertThat(matchResult.getRegexGroups().keySet().size()).isEqualTo(3);
+      assertThat(matchResult.getRegexGroups().values().size()).isEqualTo(3);
+      assertThat(matchResult.getRegexGroups().toString()).isEqualTo("{url.0=/abc-efg/12/KM/jhgjkhg234234l2, url.1=abc-efg, url.2=jhgjkhg234234l2}");
+   }
+
+   @Test
+   public void stubbedRequestShouldNotReturnRegexGroups_WhenRequestMatchedPartiallyBeforeFailing() throws Exception {
+
+      final StubRequest partiallyMatchingRequest =
+         BUILDER.withUrl("^/([a-z]{3})/resource$").withMethodGet().withQuery("paramOne", "(\\d{1,})").build();
+      final StubRequest assertingRequest =
+         BUILDER.withUrl("/abc/resource").withQuery("paramOne", "not-a-number").withMethodGet().build();
+
+      final StubMatchResult matchResult = new StubMatchResult();
+      final boolean equals = partiallyMatchingRequest.matches(assertingRequest, matchResult);
+      assertThat(equals).isFalse();
+      assertThat(matchResult.getRegexGroups()).isEmpty();
+   }
+
+   @Test
+   public void stubbedRequestShouldOnlyReturnRegexGroupsOfLastComparedRequest_WhenComparedToSeveralRequests() throws Exception {
+
+      final StubRequest firstRequest = BUILDER.withUrl("^/([a-z]{3})/resource$").withMethodPost().build();
+      final StubRequest secondRequest = BUILDER.withUrl("^/abc/(resource)$").withMethodGet().build();
+      final StubRequest assertingRequest = BUILDER.withUrl("/abc/resource").withMethodGet().build();
+
+      final StubMatchResult matchResult = new StubMatchResult();
+      assertThat(firstRequest.matches(assertingRequest, matchResult)).isFalse();
+      assertThat(secondRequest.matches(assertingRequest, matchResult)).isTrue();
+      assertThat(matchResult.getRegexGroups().toString()).isEqualTo("{url.0=/abc/resource, url.1=resource}");
+   }
+
+   @Test
+   public void stubbedRequestShouldNotCaptureRegexGroups_WhenComparedByEquals() throws Exception {
+
+      final StubRequest expectedRequest = BUILDER.withUrl("^/abc/(resource)$").withMethodGet().build();
+      final StubRequest assertingRequest = BUILDER.withUrl("/abc/resource").withMethodGet().build();
+
+      assertThat(assertingRequest.equals(expectedRequest)).isTrue();
+      assertThat(assertingRequest.getMatchResult()).isNull();
+      assertThat(expectedRequest.getMatchResult()).isNull();
+      assertThat(assertingRequest.getRegexGroups()).isEmpty();
    }
 
    @Test
@@ -1659,11 +1725,12 @@ public class
       final StubRequest expectedRequest = BUILDER.withUrl(url).withMethodGet().build();
       final StubRequest assertingRequest = BUILDER.withUrl("abc").withMethodGet().build();
 
-      final boolean equals = assertingRequest.equals(expectedRequest);
+      final StubMatchResult matchResult = new StubMatchResult();
+      final boolean equals = expectedRequest.matches(assertingRequest, matchResult);
       assertThat(equals).isTrue();
-      assertThat(assertingRequest.getRegexGroups().keySet().size()).isEqualTo(2);
-      assertThat(assertingRequest.getRegexGroups().values().size()).isEqualTo(2);
-      assertThat(assertingRequest.getRegexGroups().toString()).isEqualTo("{url.0=abc, url.1=abc}");
+      assertThat(matchResult.getRegexGroups().keySet().size()).isEqualTo(2);
+      assertThat(matchResult.getRegexGroups().values().size()).isEqualTo(2);
+      assertThat(matchResult.getRegexGroups().toString()).isEqualTo("{url.0=abc, url.1=abc}");
    }
 
    @Test
@@ -1676,11 +1743,12 @@ public class
       final StubRequest assertingRequest =
          BUILDER.withUrl("/abc-efg/12/KM/jhgjkhg234234l2").withQuery("paramOne", "12345").withMethodGet().build();
 
-      final boolean equals = assertingRequest.equals(expectedRequest);
+      final StubMatchResult matchResult = new StubMatchResult();
+      final boolean equals = expectedRequest.matches(assertingRequest, matchResult);
       assertThat(equals).isTrue();
-      assertThat(assertingRequest.getRegexGroups().keySet().size()).isEqualTo(5);
-      assertThat(assertingRequest.getRegexGroups().values().size()).isEqualTo(5);
-      assertThat(assertingRequest.getRegexGroups()
+      assertThat(matchResult.getRegexGroups().keySet().size()).isEqualTo(5);
+      assertThat(matchResult.getRegexGroups().values().size()).isEqualTo(5);
+      assertThat(matchResult.getRegexGroups()
          .toString()).isEqualTo("{query.paramOne.0=12345, query.paramOne.1=12345, url.0=/abc-efg/12/KM/jhgjkhg234234l2, url.1=abc-efg, url.2=jhgjkhg234234l2}");
    }
 
@@ -1694,11 +1762,12 @@ public class
       final StubRequest assertingRequest =
          BUILDER.withUrl("/abc-efg/12/KM/jhgjkhg234234l2").withQuery("paramOne", "12345").withQuery("paramTwo", "ABCDE").withMethodGet().build();
 
-      final boolean equals = assertingRequest.equals(expectedRequest);
+      final StubMatchResult matchResult = new StubMatchResult();
+      final boolean equals = expectedRequest.matches(assertingRequest, matchResult);
       assertThat(equals).isTrue();
-      assertThat(assertingRequest.getRegexGroups().keySet().size()).isEqualTo(7);
-      assertThat(assertingRequest.getRegexGroups().values().size()).isEqualTo(7);
-      assertThat(assertingRequest.getRegexGroups()
+      assertThat(matchResult.getRegexGroups().keySet().size()).isEqualTo(7);
+      assertThat(matchResult.getRegexGroups().values().size()).isEqualTo(7);
+      assertThat(matchResult.getRegexGroups()
          .toString()).isEqualTo("{query.paramOne.0=12345, query.paramOne.1=12345, query.paramTwo.0=ABCDE, query.paramTwo.1=ABCDE, url.0=/abc-efg/12/KM/jhgjkhg234234l2, url.1=abc-efg, url.2=jhgjkhg234234l2}");
    }
 
@@ -1712,11 +1781,12 @@ public class
       final StubRequest assertingRequest =
          BUILDER.withUrl("/abc-efg/jhgjkhg234234l2").withMethodGet().build();
 
-      final boolean equals = assertingRequest.equals(expectedRequest);
+      final StubMatchResult matchResult = new StubMatchResult();
+      final boolean equals = expectedRequest.matches(assertingRequest, matchResult);
       assertThat(equals).isTrue();
-      assertThat(assertingRequest.getRegexGroups().keySet().size()).isEqualTo(4);
-      assertThat(assertingRequest.getRegexGroups().values().size()).isEqualTo(4);
-      assertThat(assertingRequest.getRegexGroups()
+      assertThat(matchResult.getRegexGroups().keySet().size()).isEqualTo(4);
+      assertThat(matchResult.getRegexGroups().values().size()).isEqualTo(4);
+      assertThat(matchResult.getRegexGroups()
          .toString()).isEqualTo("{url.0=/abc-efg/jhgjkhg234234l2, url.1=abc-efg, url.2=efg, url.3=jhgjkhg234234l2}");
    }
 
@@ -1730,11 +1800,12 @@ public class
       final StubRequest assertingRequest =
          BUILDER.withUrl("/abc-efg/jhgjkhg234234l2").withMethodGet().build();
 
-      final boolean equals = assertingRequest.equals(expectedRequest);
+      final StubMatchResult matchResult = new StubMatchResult();
+      final boolean equals = expectedRequest.matches(assertingRequest, matchResult);
       assertThat(equals).isTrue();
-      assertThat(assertingRequest.getRegexGroups().keySet().size()).isEqualTo(5);
-      assertThat(assertingRequest.getRegexGroups().values().size()).isEqualTo(5);
-      assertThat(assertingRequest.getRegexGroups()
+      assertThat(matchResult.getRegexGroups().keySet().size()).isEqualTo(5);
+      assertThat(matchResult.getRegexGroups().values().size()).isEqualTo(5);
+      assertThat(matchResult.getRegexGroups()
          .toString()).isEqualTo("{url.0=/abc-efg/jhgjkhg234234l2, url.1=abc-efg, url.2=abc, url.3=efg, url.4=jhgjkhg234234l2}");
    }
 
@@ -2177,4 +2248,44 @@ public class
 
       assertThat(actualRequest.toString()).isEqualTo(expectedToStringOutput);
    }
-}
\ No newline at end of file
+
+   @Test
+   public void shouldNotReadIncomingPostBody_WhenStubbedRequestHasNoPost() throws Exception {
+
+      final StubRequest expectedRequest = BUILDER.withUrl("/invoice/789").withMethodPost().build();
+
+      final HttpServletRequest mockHttpServletRequest = mock(HttpServletRequest.class);
+      when(mockHttpServletRequest.getPathInfo()).thenReturn("/invoice/789");
+      when(mockHttpServletRequest.getMethod()).thenReturn(HttpMethods.POST);
+
+      final StubRequest assertingRequest = StubRequest.createFromHttpServletRequest(mockHttpServletRequest);
+
+      assertThat(assertingRequest.equals(expectedRequest)).isTrue();
+      verify(mockHttpServletRequest, never()).getInputStream();
+   }
+
+   @Test
+   public void shouldReadIncomingPostBodyOnce_WhenStubbedRequestsHavePost() throws Exception {
+
+      final StubRequest firstRequest = BUILDER.withUrl("/invoice/789").withMethodPost().withPost("another post").build();
+      final StubRequest secondRequest = BUILDER.withUrl("/invoice/789").withMethodPost().withPost("incoming post").build();
+
+      final HttpServletRequest mockHttpServletRequest = mock(HttpServletRequest.class);
+      final InputStream inputStream = new ByteArrayInputStream("incoming post".getBytes());
+      when(mockHttpServletRequest.getPathInfo()).thenReturn("/invoice/789");
+      when(mockHttpServletRequest.getMethod()).thenReturn(HttpMethods.POST);
+      when(mockHttpServletRequest.getInputStream()).thenReturn(new ServletInputStream() {
+         @Override
+         public int read() throws IOException {
+            return inputStream.read();
+         }
+      });
+
+      final StubRequest assertingRequest = StubRequest.createFromHttpServletRequest(mockHttpServletRequest);
+
+      assertThat(assertingRequest.equals(firstRequest)).isFalse();
+      assertThat(assertingRequest.equals(secondRequest)).isTrue();
+      assertThat(assertingRequest.getPost()).isEqualTo("incoming post");
+      verify(mockHttpServletRequest, times(1)).getInputStream();
+   }
+}
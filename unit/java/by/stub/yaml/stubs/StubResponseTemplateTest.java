@@ -0,0 +1,101 @@
+package by.stub.yaml.stubs;
+
+import by.stub.utils.StringUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class StubResponseTemplateTest {
+
+   @Test
+   public void shouldReplaceTokensInATemplateWhenAllTokensPresent() throws Exception {
+
+      final StubMatchResult matchResult = new StubMatchResult();
+      matchResult.addRegexGroup("url", 1, "ALEX");
+      matchResult.addRegexGroup("url", 2, "JOHN");
+      matchResult.addRegexGroup("url", 3, "TRACY");
+      matchResult.addRegexGroup("query", 1, "KOKO");
+      final String template = "This is a response <% url.1 %> content <%url.2%> that going to be <%query.1    %> returned";
+
+      final String replacedTemplate = parse(template).render(matchResult);
+      assertThat(replacedTemplate).isEqualTo("This is a response ALEX content JOHN that going to be KOKO returned");
+   }
+
+   @Test
+   public void shouldReplaceTokensInATemplateWhenNotAllTokenValuesPresent() throws Exception {
+
+      final StubMatchResult matchResult = new StubMatchResult();
+      matchResult.addRegexGroup("url", 1, "ALEX");
+      matchResult.addRegexGroup("url", 2, "JOHN");
+      final String template = "This is a response <% url.1 %> content <%url.2%> that going to be <% query.1 %> returned";
+
+      final String replacedTemplate = parse(template).render(matchResult);
+      assertThat(replacedTemplate).isEqualTo("This is a response ALEX content JOHN that going to be <% query.1 %> returned");
+   }
+
+   @Test
+   public void shouldReplaceTokensOfMapProperties_WhenGroupsCapturedForEntryKeys() throws Exception {
+
+      final StubMatchResult matchResult = new StubMatchResult();
+      matchResult.addRegexGroup("query", "type", 0, "json");
+      matchResult.addRegexGroup("headers", "x.trace.id", 1, "42");
+      matchResult.addRegexGroup("query.type", 1, "js");
+      final String template = "<% query.type.0 %>|<% headers.x.trace.id.1 %>|<% query.type.1 %>|<% query.0 %>";
+
+      assertThat(parse(template).render(matchResult)).isEqualTo("json|42|js|<% query.0 %>");
+   }
+
+   @Test
+   public void shouldReplaceTokenWithLastCapturedValue_WhenSameGroupCapturedTwice() throws Exception {
+
+      final StubMatchResult matchResult = new StubMatchResult();
+      matchResult.addRegexGroup("url", 1, "first");
+      matchResult.addRegexGroup("url", 1, "second");
+
+      assertThat(parse("<% url.1 %>").render(matchResult)).isEqualTo("second");
+   }
+
+   @Test
+   public void shouldWriteValuesLiterally_WhenValuesLookLikeRegexReplacements() throws Exception {
+
+      final StubMatchResult matchResult = new StubMatchResult();
+      matchResult.addRegexGroup("url", 1, "$1 \\ <% url.1 %>");
+
+      assertThat(parse("[<% url.1 %>]").render(matchResult)).isEqualTo("[$1 \\ <% url.1 %>]");
+   }
+
+   @Test
+   public void shouldKeepTextAsIs_WhenTokensAreNotValid() throws Exception {
+
+      final StubMatchResult matchResult = new StubMatchResult();
+      matchResult.addRegexGroup("url", 1, "ALEX");
+      final String template = "<% if x %> <%%> <% url %> <% url.x %> <% <% url.1 %> <% url.1";
+
+      assertThat(parse(template).render(matchResult)).isEqualTo("<% if x %> <%%> <% url %> <% url.x %> <% ALEX <% url.1");
+   }
+
+   @Test
+   public void shouldNotParseTemplate_WhenBodyHasNoValidTokens() throws Exception {
+
+      assertThat(parse("no tokens here")).isNull();
+      assertThat(parse("<% not a token %> and <% url.1")).isNull();
+   }
+
+   @Test
+   public void shouldWriteRenderedTemplateToStream_WhenBodyHasMultibyteCharacters() throws Exception {
+
+      final StubMatchResult matchResult = new StubMatchResult();
+      matchResult.addRegexGroup("url", 0, "résumé");
+      final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+      parse("Ünïcödé <% url.0 %> ✓").writeTo(outputStream, matchResult);
+
+      assertThat(StringUtils.newStringUtf8(outputStream.toByteArray())).isEqualTo("Ünïcödé résumé ✓");
+   }
+
+   private static StubResponseTemplate parse(final String template) {
+      return StubResponseTemplate.parse(StringUtils.getBytesUtf8(template));
+   }
+}
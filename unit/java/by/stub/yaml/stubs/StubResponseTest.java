@@ -3,8 +3,15 @@ package by.stub.yaml.stubs;
 import by.stub.utils.FileUtils;
 import by.stub.utils.StringUtils;
 import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
 
+import javax.servlet.http.HttpServletResponse;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static org.fest.assertions.api.Assertions.assertThat;
 
@@ -104,4 +111,244 @@ public class StubResponseTest {
 
       assertThat(stubResponse.isRecordingRequired()).isFalse();
    }
+
+   @Test
+   public void shouldParseTemplateOnce_WhenBodyHasTemplateTokens() throws Exception {
+
+      final StubResponse stubResponse = StubResponse.newStubResponse("200", "item <% url.1 %>");
+
+      assertThat(stubResponse.isContainsTemplateTokens()).isTrue();
+      assertThat(stubResponse.getTemplate()).isSameAs(stubResponse.getTemplate());
+   }
+
+   @Test
+   public void shouldNotParseTemplate_WhenBodyHasNoTemplateTokens() throws Exception {
+
+      final StubResponse stubResponse = StubResponse.newStubResponse("200", "item 1");
+
+      assertThat(stubResponse.isContainsTemplateTokens()).isFalse();
+      assertThat(stubResponse.getTemplate()).isNull();
+   }
+
+   @Test
+   public void shouldParseStatusCodeOnce_WhenStatusIsANumber() throws Exception {
+
+      final StubResponse stubResponse = StubResponse.newStubResponse("201", "item 1");
+
+      assertThat(stubResponse.getStatusCode()).isEqualTo(201);
+      assertThat(StubResponse.newStubResponse().getStatusCode()).isEqualTo(200);
+   }
+
+   @Test(expected = NumberFormatException.class)
+   public void shouldFailToReturnStatusCode_WhenStatusIsNotANumber() throws Exception {
+
+      StubResponse.newStubResponse("OK", "item 1").getStatusCode();
+   }
+
+   @Test
+   public void shouldSetStubbedHeadersInOrder_IncludingResourceIdHeaderAddedAfterLoading() throws Exception {
+
+      final Map<String, String> headers = new LinkedHashMap<String, String>();
+      headers.put("content-type", "application/json");
+      headers.put("x-custom", "custom");
+      final StubResponse stubResponse = new StubResponse("200", "item 1", null, null, headers).withResourceId(3);
+
+      final HttpServletResponse mockHttpServletResponse = Mockito.mock(HttpServletResponse.class);
+      stubResponse.setHeadersTo(mockHttpServletResponse);
+
+      final InOrder inOrder = Mockito.inOrder(mockHttpServletResponse);
+      inOrder.verify(mockHttpServletResponse).setHeader(StubResponse.STUBBY_RESOURCE_ID_HEADER, "3");
+      inOrder.verify(mockHttpServletResponse).setHeader("content-type", "application/json");
+      inOrder.verify(mockHttpServletResponse).setHeader("x-custom", "custom");
+      Mockito.verifyNoMoreInteractions(mockHttpServletResponse);
+   }
+
+   @Test
+   public void shouldNotModifyResponse_WhenCopiedForAnotherResourceId() throws Exception {
+
+      final StubResponse stubResponse = StubResponse.newStubResponse("200", "item 1").withResourceId(3);
+      final StubResponse copiedResponse = stubResponse.withResourceId(5);
+
+      assertThat(stubResponse.getResourceId()).isEqualTo(3);
+      assertThat(stubResponse.getHeaders().get(StubResponse.STUBBY_RESOURCE_ID_HEADER)).isEqualTo("3");
+      assertThat(copiedResponse.getResourceId()).isEqualTo(5);
+      assertThat(copiedResponse.getHeaders().get(StubResponse.STUBBY_RESOURCE_ID_HEADER)).isEqualTo("5");
+      assertThat(copiedResponse.getHeaders()).hasSize(1);
+   }
+
+   @Test
+   public void shouldServeFileFromMemoryMapping_WhenFileReachesMappingThreshold() throws Exception {
+
+      final File responseFile = File.createTempFile("tmp", ".json");
+      responseFile.deleteOnExit();
+      final FileOutputStream outputStream = new FileOutputStream(responseFile);
+      outputStream.write(StringUtils.getBytesUtf8("{\"mapped\": true}\n"));
+      outputStream.close();
+
+      FileUtils.setFileMappingThreshold(1);
+      try {
+         final StubResponse stubResponse = new StubResponse("200", "body is ignored", responseFile, null, null);
+
+         assertThat(stubResponse.getMappedFile().remaining()).isEqualTo(16);
+         assertThat(stubResponse.getMappedFile()).isNotSameAs(stubResponse.getMappedFile());
+         assertThat(stubResponse.isContainsTemplateTokens()).isFalse();
+         assertThat(StringUtils.newStringUtf8(stubResponse.getResponseBodyAsBytes())).isEqualTo("{\"mapped\": true}");
+         assertThat(StringUtils.newStringUtf8(stubResponse.getFile())).isEqualTo("{\"mapped\": true}");
+      } finally {
+         FileUtils.setFileMappingThreshold(Long.MAX_VALUE);
+      }
+   }
+
+   @Test
+   public void shouldStreamFileFromDisk_WhenFileIsLargerThanSingleMapping() throws Exception {
+
+      final File responseFile = File.createTempFile("tmp", ".bin");
+      responseFile.deleteOnExit();
+      final long fileLength = FileUtils.MAX_MAPPED_FILE_BYTES + 1024;
+      // Sparse file, no blocks are written
+      final RandomAccessFile randomAccessFile = new RandomAccessFile(responseFile, "rw");
+      randomAccessFile.setLength(fileLength);
+      randomAccessFile.close();
+
+      FileUtils.setFileMappingThreshold(1);
+      try {
+         final StubResponse stubResponse = new StubResponse("200", null, responseFile, null, null);
+
+         assertThat(stubResponse.isStreamedFile()).isTrue();
+         assertThat(stubResponse.getMappedFile()).isNull();
+         assertThat(stubResponse.getFile()).isEmpty();
+         assertThat(stubResponse.isContainsTemplateTokens()).isFalse();
+         assertThat(stubResponse.isCompressible()).isFalse();
+         assertThat(stubResponse.getEntityLength()).isEqualTo(fileLength);
+         assertThat(stubResponse.getEntityTag()).startsWith("W/\"");
+      } finally {
+         FileUtils.setFileMappingThreshold(Long.MAX_VALUE);
+         responseFile.delete();
+      }
+   }
+
+   @Test
+   public void shouldLoadFileIntoHeap_WhenFileIsBelowMappingThreshold() throws Exception {
+
+      final File responseFile = File.createTempFile("tmp", ".json");
+      responseFile.deleteOnExit();
+      final FileOutputStream outputStream = new FileOutputStream(responseFile);
+      outputStream.write(StringUtils.getBytesUtf8("{\"mapped\": false}"));
+      outputStream.close();
+
+      final StubResponse stubResponse = new StubResponse("200", null, responseFile, null, null);
+
+      assertThat(stubResponse.getMappedFile()).isNull();
+      assertThat(StringUtils.newStringUtf8(stubResponse.getResponseBodyAsBytes())).isEqualTo("{\"mapped\": false}");
+   }
+
+   @Test
+   public void shouldBuildSameEntityTag_WhenSameFileIsMappedOrLoadedIntoHeap() throws Exception {
+
+      final File responseFile = writeResponseFile("{\"tagged\": true}");
+
+      final StubResponse loadedStubResponse = new StubResponse("200", null, responseFile, null, null);
+      FileUtils.setFileMappingThreshold(1);
+      final StubResponse mappedStubResponse;
+      try {
+         mappedStubResponse = new StubResponse("200", null, responseFile, null, null);
+      } finally {
+         FileUtils.setFileMappingThreshold(Long.MAX_VALUE);
+      }
+
+      assertThat(mappedStubResponse.getMappedFile()).isNotNull();
+      assertThat(loadedStubResponse.getEntityTag()).matches("\"[0-9a-f]{40}\"");
+      assertThat(mappedStubResponse.getEntityTag()).isEqualTo(loadedStubResponse.getEntityTag());
+      assertThat(loadedStubResponse.getEntityLength()).isEqualTo(16);
+      assertThat(mappedStubResponse.getEntityLength()).isEqualTo(16);
+      assertThat(loadedStubResponse.getLastModified()).isEqualTo(responseFile.lastModified() / 1000 * 1000);
+   }
+
+   @Test
+   public void shouldBuildDifferentEntityTags_WhenFileContentDiffers() throws Exception {
+
+      final StubResponse stubResponse = new StubResponse("200", null, writeResponseFile("{\"version\": 1}"), null, null);
+      final StubResponse changedStubResponse = new StubResponse("200", null, writeResponseFile("{\"version\": 2}"), null, null);
+
+      assertThat(stubResponse.getEntityTag()).isNotEqualTo(changedStubResponse.getEntityTag());
+   }
+
+   @Test
+   public void shouldNotBuildEntityTag_WhenResponseIsNotServedFromFileAsIs() throws Exception {
+
+      final StubResponse bodyStubResponse = StubResponse.newStubResponse("200", "this is some body");
+      final StubResponse templateStubResponse = new StubResponse("200", null, writeResponseFile("Hello <% url.1 %>"), null, null);
+
+      assertThat(bodyStubResponse.getEntityTag()).isNull();
+      assertThat(bodyStubResponse.getLastModified()).isEqualTo(-1);
+      assertThat(templateStubResponse.isContainsTemplateTokens()).isTrue();
+      assertThat(templateStubResponse.getEntityTag()).isNull();
+   }
+
+   @Test
+   public void shouldCompressBodyOnce_WhenBodyIsCompressible() throws Exception {
+
+      final String body = new String(new char[StubResponse.MIN_COMPRESSIBLE_BYTES]).replace('\0', 'a');
+      final Map<String, String> headers = new LinkedHashMap<String, String>();
+      headers.put("Content-Type", "text/plain");
+      final StubResponse stubResponse = new StubResponse("200", body, null, null, headers);
+
+      final byte[] gzippedBody = stubResponse.getEncodedBody(StubContentEncoding.GZIP);
+
+      assertThat(stubResponse.isCompressible()).isTrue();
+      assertThat(gzippedBody.length).isLessThan(body.length());
+      assertThat(stubResponse.getEncodedBody(StubContentEncoding.GZIP)).isSameAs(gzippedBody);
+      assertThat(stubResponse.getEncodedBody(StubContentEncoding.DEFLATE)).isNotEqualTo(gzippedBody);
+   }
+
+   @Test
+   public void shouldNotCompressBody_WhenBodyIsSmallOrCompressedAlready() throws Exception {
+
+      final String body = new String(new char[StubResponse.MIN_COMPRESSIBLE_BYTES]).replace('\0', 'a');
+      final Map<String, String> headers = new LinkedHashMap<String, String>();
+      headers.put("Content-Type", "image/png");
+
+      final StubResponse smallStubResponse = StubResponse.newStubResponse("200", body.substring(1));
+      final StubResponse imageStubResponse = new StubResponse("200", body, null, null, headers);
+
+      assertThat(smallStubResponse.isCompressible()).isFalse();
+      assertThat(smallStubResponse.getEncodedBody(StubContentEncoding.GZIP)).isNull();
+      assertThat(imageStubResponse.isCompressible()).isFalse();
+   }
+
+   @Test
+   public void shouldNotCompressBody_WhenContentTypeIsNotStubbed() throws Exception {
+
+      final String body = new String(new char[StubResponse.MIN_COMPRESSIBLE_BYTES]).replace('\0', 'a');
+      final StubResponse stubResponse = StubResponse.newStubResponse("200", body);
+
+      assertThat(stubResponse.isCompressible()).isFalse();
+      assertThat(stubResponse.getEncodedBody(StubContentEncoding.GZIP)).isNull();
+   }
+
+   @Test
+   public void shouldCompressBodyPerRequest_WhenBodyCannotBePrecompressed() throws Exception {
+
+      final String body = new String(new char[StubResponse.MIN_COMPRESSIBLE_BYTES]).replace('\0', 'a');
+      final Map<String, String> jsonHeaders = new LinkedHashMap<String, String>();
+      jsonHeaders.put("Content-Type", "application/json");
+      final Map<String, String> imageHeaders = new LinkedHashMap<String, String>();
+      imageHeaders.put("Content-Type", "image/png");
+
+      assertThat(StubResponse.newStubResponse("200", body).isCompressedPerRequest()).isTrue();
+      assertThat(StubResponse.newStubResponse("200", body.substring(1)).isCompressedPerRequest()).isFalse();
+      assertThat(new StubResponse("200", body, null, null, jsonHeaders).isCompressedPerRequest()).isFalse();
+      assertThat(new StubResponse("200", "<% url.1 %>", null, null, jsonHeaders).isCompressedPerRequest()).isTrue();
+      assertThat(new StubResponse("200", "<% url.1 %>", null, null, imageHeaders).isCompressedPerRequest()).isFalse();
+   }
+
+   private static File writeResponseFile(final String content) throws Exception {
+      final File responseFile = File.createTempFile("tmp", ".json");
+      responseFile.deleteOnExit();
+      final FileOutputStream outputStream = new FileOutputStream(responseFile);
+      outputStream.write(StringUtils.getBytesUtf8(content));
+      outputStream.close();
+
+      return responseFile;
+   }
 }